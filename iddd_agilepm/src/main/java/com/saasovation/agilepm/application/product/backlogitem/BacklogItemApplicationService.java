@@ -14,7 +14,10 @@
 
 package com.saasovation.agilepm.application.product.backlogitem;
 
+import com.saasovation.agilepm.application.ApplicationServiceLifeCycle;
+import com.saasovation.agilepm.domain.model.product.ProductId;
 import com.saasovation.agilepm.domain.model.product.backlogitem.BacklogItemRepository;
+import com.saasovation.agilepm.domain.model.tenant.TenantId;
 
 public class BacklogItemApplicationService {
 
@@ -33,6 +36,22 @@ public class BacklogItemApplicationService {
         this.backlogItemRepository();
     }
 
+    public void repairBusinessPriorityTotals(String aTenantId, String aProductId) {
+        ApplicationServiceLifeCycle.begin(false);
+
+        try {
+            this.backlogItemRepository()
+                .repairProductBusinessPriorityTotals(
+                        new TenantId(aTenantId),
+                        new ProductId(aProductId));
+
+            ApplicationServiceLifeCycle.success();
+
+        } catch (RuntimeException e) {
+            ApplicationServiceLifeCycle.fail(e);
+        }
+    }
+
     private BacklogItemRepository backlogItemRepository() {
         return this.backlogItemRepository;
     }
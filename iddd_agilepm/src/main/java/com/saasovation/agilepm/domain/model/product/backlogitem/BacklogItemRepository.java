@@ -35,10 +35,14 @@ public interface BacklogItemRepository {
 
     public BacklogItemId nextIdentity();
 
+    public BusinessPriorityTotals productBusinessPriorityTotals(TenantId aTenantId, ProductId aProductId);
+
     public void remove(BacklogItem aBacklogItem);
 
     public void removeAll(Collection<BacklogItem> aBacklogItemCollection);
 
+    public BusinessPriorityTotals repairProductBusinessPriorityTotals(TenantId aTenantId, ProductId aProductId);
+
     public void save(BacklogItem aBacklogItem);
 
     public void saveAll(Collection<BacklogItem> aBacklogItemCollection);
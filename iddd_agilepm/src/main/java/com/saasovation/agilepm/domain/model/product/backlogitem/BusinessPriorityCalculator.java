@@ -14,8 +14,6 @@
 
 package com.saasovation.agilepm.domain.model.product.backlogitem;
 
-import java.util.Collection;
-
 import com.saasovation.agilepm.domain.model.product.ProductId;
 import com.saasovation.agilepm.domain.model.tenant.TenantId;
 
@@ -35,34 +33,12 @@ public class BusinessPriorityCalculator {
             TenantId aTenantId,
             ProductId aProductId) {
 
-        int totalBenefit = 0;
-        int totalPenalty = 0;
-        int totalCost = 0;
-        int totalRisk = 0;
-
-        Collection<BacklogItem> outstandingBacklogItems =
-                this.backlogItemRepository()
-                    .allOutstandingProductBacklogItems(aTenantId, aProductId);
-
-        for (BacklogItem backlogItem : outstandingBacklogItems) {
-            if (backlogItem.hasBusinessPriority()) {
-                BusinessPriorityRatings ratings =
-                        backlogItem.businessPriority().ratings();
-
-                totalBenefit += ratings.benefit();
-                totalPenalty += ratings.penalty();
-                totalCost += ratings.cost();
-                totalRisk += ratings.risk();
-            }
-        }
+        // the totals of the outstanding backlog items are
+        // maintained by the repository as each is saved
 
         BusinessPriorityTotals businessPriorityTotals =
-                new BusinessPriorityTotals(
-                        totalBenefit,
-                        totalPenalty,
-                        totalBenefit + totalPenalty,
-                        totalCost,
-                        totalRisk);
+                this.backlogItemRepository()
+                    .productBusinessPriorityTotals(aTenantId, aProductId);
 
         return businessPriorityTotals;
     }
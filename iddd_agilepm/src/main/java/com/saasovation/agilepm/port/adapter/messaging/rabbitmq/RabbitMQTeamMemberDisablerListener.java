@@ -35,6 +35,11 @@ public class RabbitMQTeamMemberDisablerListener extends ExchangeListener {
         this.teamApplicationService = aTeamApplicationService;
     }
 
+    @Override
+    protected int consumerCount() {
+        return 4;
+    }
+
     protected String exchangeName() {
         return Exchanges.IDENTITY_ACCESS_EXCHANGE_NAME;
     }
@@ -34,6 +34,11 @@ public class RabbitMQTeamMemberEmailAddressChangedListener extends ExchangeListe
         this.teamApplicationService = aTeamApplicationService;
     }
 
+    @Override
+    protected int consumerCount() {
+        return 4;
+    }
+
     protected String exchangeName() {
         return Exchanges.IDENTITY_ACCESS_EXCHANGE_NAME;
     }
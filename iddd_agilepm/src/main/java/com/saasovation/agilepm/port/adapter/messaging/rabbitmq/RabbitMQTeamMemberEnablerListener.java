@@ -35,6 +35,11 @@ public class RabbitMQTeamMemberEnablerListener extends ExchangeListener {
         this.teamApplicationService = aTeamApplicationService;
     }
 
+    @Override
+    protected int consumerCount() {
+        return 4;
+    }
+
     @Override
     protected String exchangeName() {
         return Exchanges.IDENTITY_ACCESS_EXCHANGE_NAME;
@@ -30,6 +30,11 @@ public class RabbitMQTeamMemberNameChangedListener extends ExchangeListener {
         super();
     }
 
+    @Override
+    protected int consumerCount() {
+        return 4;
+    }
+
     protected String exchangeName() {
         return Exchanges.IDENTITY_ACCESS_EXCHANGE_NAME;
     }
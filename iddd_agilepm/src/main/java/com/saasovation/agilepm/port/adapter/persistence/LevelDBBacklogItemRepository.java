@@ -14,20 +14,26 @@
 
 package com.saasovation.agilepm.port.adapter.persistence;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
+import org.iq80.leveldb.DBIterator;
+
 import com.saasovation.agilepm.domain.model.product.ProductId;
 import com.saasovation.agilepm.domain.model.product.backlogitem.BacklogItem;
 import com.saasovation.agilepm.domain.model.product.backlogitem.BacklogItemId;
 import com.saasovation.agilepm.domain.model.product.backlogitem.BacklogItemRepository;
+import com.saasovation.agilepm.domain.model.product.backlogitem.BusinessPriorityRatings;
+import com.saasovation.agilepm.domain.model.product.backlogitem.BusinessPriorityTotals;
 import com.saasovation.agilepm.domain.model.product.release.ReleaseId;
 import com.saasovation.agilepm.domain.model.product.sprint.SprintId;
 import com.saasovation.agilepm.domain.model.tenant.TenantId;
 import com.saasovation.common.port.adapter.persistence.leveldb.AbstractLevelDBRepository;
+import com.saasovation.common.port.adapter.persistence.leveldb.LevelDBBinarySerializer;
 import com.saasovation.common.port.adapter.persistence.leveldb.LevelDBKey;
 import com.saasovation.common.port.adapter.persistence.leveldb.LevelDBUnitOfWork;
 
@@ -35,56 +41,46 @@ public class LevelDBBacklogItemRepository
         extends AbstractLevelDBRepository
         implements BacklogItemRepository {
 
+    private static final String BUSINESS_PRIORITY = "BLI#PRIORITY";
     private static final String PRIMARY = "BLI#PK";
+    private static final String PRODUCT_BUSINESS_PRIORITY_TOTALS = "BLI#PROD#PRIORITY";
+    private static final String PRODUCT_BUSINESS_PRIORITY_TOTALS_KEPT = "BLI#PROD#PRIORITY#KEPT";
     private static final String PRODUCT_BACKLOG_ITEMS = "BLI#PROD";
     private static final String RELEASE_BACKLOG_ITEMS = "BLI#RELEASE";
     private static final String SPRINT_BACKLOG_ITEMS = "BLI#SPRINT";
+    private static final int CACHED_BACKLOG_ITEMS = 1000;
+    private static final int NUMBER_OF_RATINGS = 4;
 //    private static final String BACKLOG_ITEM_OF_DISCUSSION = "BLI#D";
 
     public LevelDBBacklogItemRepository() {
-        super(LevelDBDatabasePath.agilePMPath());
+        // the backlog item collections answered here are read
+        // through a cache of the serialized backlog items
+
+        super(LevelDBDatabasePath.agilePMPath(), CACHED_BACKLOG_ITEMS, LevelDBBinarySerializer.instance());
+
+        this.keepProductBusinessPriorityTotals();
     }
 
     @Override
     public Collection<BacklogItem> allBacklogItemsComittedTo(TenantId aTenantId, SprintId aSprintId) {
-        List<BacklogItem> backlogItems = new ArrayList<BacklogItem>();
-
         LevelDBKey sprintBacklogItems = new LevelDBKey(SPRINT_BACKLOG_ITEMS, aTenantId.id(), aSprintId.id());
 
         LevelDBUnitOfWork uow = LevelDBUnitOfWork.readOnly(this.database());
 
         List<Object> keys = uow.readKeys(sprintBacklogItems);
 
-        for (Object backlogItemId : keys) {
-            BacklogItem backlogItem = uow.readObject(backlogItemId.toString().getBytes(), BacklogItem.class);
-
-            if (backlogItem != null) {
-                backlogItems.add(backlogItem);
-            }
-        }
-
-        return backlogItems;
+        return uow.readObjects(keys, BacklogItem.class, this.serializer());
     }
 
     @Override
     public Collection<BacklogItem> allBacklogItemsScheduledFor(TenantId aTenantId, ReleaseId aReleaseId) {
-        List<BacklogItem> backlogItems = new ArrayList<BacklogItem>();
-
         LevelDBKey releaseBacklogItems = new LevelDBKey(RELEASE_BACKLOG_ITEMS, aTenantId.id(), aReleaseId.id());
 
         LevelDBUnitOfWork uow = LevelDBUnitOfWork.readOnly(this.database());
 
         List<Object> keys = uow.readKeys(releaseBacklogItems);
 
-        for (Object backlogItemId : keys) {
-            BacklogItem backlogItem = uow.readObject(backlogItemId.toString().getBytes(), BacklogItem.class);
-
-            if (backlogItem != null) {
-                backlogItems.add(backlogItem);
-            }
-        }
-
-        return backlogItems;
+        return uow.readObjects(keys, BacklogItem.class, this.serializer());
     }
 
     @Override
@@ -93,7 +89,7 @@ public class LevelDBBacklogItemRepository
 
         Iterator<BacklogItem> iterator = productBacklogItems.listIterator();
 
-        if (iterator.hasNext()) {
+        while (iterator.hasNext()) {
             BacklogItem backlogItem = iterator.next();
 
             if (backlogItem.isDone() || backlogItem.isRemoved()) {
@@ -115,7 +111,7 @@ public class LevelDBBacklogItemRepository
 
         BacklogItem backlogItem =
                 LevelDBUnitOfWork.readOnly(this.database())
-                    .readObject(primaryKey.key().getBytes(), BacklogItem.class);
+                    .readObject(primaryKey.key().getBytes(), BacklogItem.class, this.serializer());
 
         return backlogItem;
     }
@@ -126,83 +122,174 @@ public class LevelDBBacklogItemRepository
     }
 
     @Override
-    public void remove(BacklogItem aBacklogItem) {
-        LevelDBKey lockKey = new LevelDBKey(PRIMARY, aBacklogItem.tenantId().id());
+    public BusinessPriorityTotals productBusinessPriorityTotals(TenantId aTenantId, ProductId aProductId) {
+        LevelDBKey productBusinessPriorityTotals =
+                new LevelDBKey(PRODUCT_BUSINESS_PRIORITY_TOTALS, aTenantId.id(), aProductId.id());
 
-        LevelDBUnitOfWork uow = LevelDBUnitOfWork.current();
+        long[] totals =
+                LevelDBUnitOfWork.readOnly(this.database())
+                    .readCounters(productBusinessPriorityTotals, NUMBER_OF_RATINGS);
 
-        uow.lock(lockKey.key());
+        return this.businessPriorityTotalsOf(totals);
+    }
 
-        this.remove(aBacklogItem, uow);
+    @Override
+    public void remove(BacklogItem aBacklogItem) {
+        this.remove(aBacklogItem, LevelDBUnitOfWork.current());
     }
 
     @Override
     public void removeAll(Collection<BacklogItem> aBacklogItemCollection) {
-        boolean locked = false;
-
         LevelDBUnitOfWork uow = LevelDBUnitOfWork.current();
 
         for (BacklogItem backlogItem : aBacklogItemCollection) {
-            if (!locked) {
-                LevelDBKey lockKey = new LevelDBKey(PRIMARY, backlogItem.tenantId().id());
-
-                uow.lock(lockKey.key());
-
-                locked = true;
-            }
-
             this.remove(backlogItem, uow);
         }
     }
 
     @Override
-    public void save(BacklogItem aBacklogItem) {
-        LevelDBKey lockKey = new LevelDBKey(PRIMARY, aBacklogItem.tenantId().id());
+    public BusinessPriorityTotals repairProductBusinessPriorityTotals(TenantId aTenantId, ProductId aProductId) {
+        long[] totals =
+                this.repairProductBusinessPriorityTotals(
+                        aTenantId,
+                        aProductId,
+                        LevelDBUnitOfWork.current());
+
+        return this.businessPriorityTotalsOf(totals);
+    }
 
-        LevelDBUnitOfWork uow = LevelDBUnitOfWork.current();
+    @Override
+    public void save(BacklogItem aBacklogItem) {
 
-        uow.lock(lockKey.key());
+        // not locked; the unit of work's commit fails when
+        // another has modified this backlog item since it
+        // was read, and the references to it are merged
 
-        this.save(aBacklogItem, uow);
+        this.save(aBacklogItem, LevelDBUnitOfWork.current());
     }
 
     @Override
     public void saveAll(Collection<BacklogItem> aBacklogItemCollection) {
-        boolean locked = false;
-
         LevelDBUnitOfWork uow = LevelDBUnitOfWork.current();
 
         for (BacklogItem backlogItem : aBacklogItemCollection) {
-            if (!locked) {
-                LevelDBKey lockKey = new LevelDBKey(PRIMARY, backlogItem.tenantId().id());
+            this.save(backlogItem, uow);
+        }
+    }
 
-                uow.lock(lockKey.key());
+    private long[] businessPriorityRatingsOf(BacklogItem aBacklogItem) {
+        long[] ratings = new long[NUMBER_OF_RATINGS];
 
-                locked = true;
-            }
+        if (!aBacklogItem.isDone() && !aBacklogItem.isRemoved() && aBacklogItem.hasBusinessPriority()) {
+            BusinessPriorityRatings businessPriorityRatings = aBacklogItem.businessPriority().ratings();
 
-            this.save(backlogItem, uow);
+            ratings[0] = businessPriorityRatings.benefit();
+            ratings[1] = businessPriorityRatings.penalty();
+            ratings[2] = businessPriorityRatings.cost();
+            ratings[3] = businessPriorityRatings.risk();
         }
+
+        return ratings;
     }
 
-    private List<BacklogItem> listProductBacklogItems(TenantId aTenantId, ProductId aProductId) {
-        List<BacklogItem> backlogItems = new ArrayList<BacklogItem>();
+    private BusinessPriorityTotals businessPriorityTotalsOf(long[] aTotals) {
+        return new BusinessPriorityTotals(
+                (int) aTotals[0],
+                (int) aTotals[1],
+                (int) (aTotals[0] + aTotals[1]),
+                (int) aTotals[2],
+                (int) aTotals[3]);
+    }
 
-        LevelDBKey productBacklogItems = new LevelDBKey(PRODUCT_BACKLOG_ITEMS, aTenantId.id(), aProductId.id());
+    private void close(DBIterator anIterator) {
+        try {
+            anIterator.close();
+        } catch (Throwable t) {
+            // ignore
+        }
+    }
 
-        LevelDBUnitOfWork uow = LevelDBUnitOfWork.readOnly(this.database());
+    private void keepProductBusinessPriorityTotals() {
+        LevelDBKey totalsKept = new LevelDBKey(PRODUCT_BUSINESS_PRIORITY_TOTALS_KEPT);
 
-        List<Object> keys = uow.readKeys(productBacklogItems);
+        if (this.database().get(totalsKept.keyAsBytes()) != null) {
+            return;
+        }
+
+        // the totals are kept in a unit of work of their own, which
+        // would commit or roll back the work of a caller as well
+
+        if (LevelDBUnitOfWork.isStarted()) {
+            throw new IllegalStateException(
+                    "Cannot keep product business priority totals within an open unit of work.");
+        }
+
+        // backlog items saved before the business priority totals
+        // were kept are counted once, for each of their products,
+        // and the totals are maintained as they are saved after
+
+        Map<String,BacklogItem> backlogItemsOfProducts = new LinkedHashMap<String,BacklogItem>();
 
-        for (Object backlogItemId : keys) {
-            BacklogItem backlogItem = uow.readObject(backlogItemId.toString().getBytes(), BacklogItem.class);
+        String primaryKeyPrefix = PRIMARY + ':';
 
-            if (backlogItem != null) {
-                backlogItems.add(backlogItem);
+        DBIterator iterator = this.database().iterator();
+
+        try {
+            for (iterator.seek(primaryKeyPrefix.getBytes()); iterator.hasNext(); ) {
+                Map.Entry<byte[],byte[]> entry = iterator.next();
+
+                if (!new String(entry.getKey()).startsWith(primaryKeyPrefix)) {
+                    break;
+                }
+
+                BacklogItem backlogItem = this.serializer().deserialize(entry.getValue(), BacklogItem.class);
+
+                backlogItemsOfProducts.put(
+                        backlogItem.tenantId().id() + ':' + backlogItem.productId().id(),
+                        backlogItem);
             }
+        } finally {
+            this.close(iterator);
         }
 
-        return backlogItems;
+        LevelDBUnitOfWork uow = LevelDBUnitOfWork.start(this.database());
+
+        try {
+            // read first, so that only one of concurrent
+            // repositories keeps the totals
+
+            uow.readObjectAsBytes(totalsKept);
+
+            for (BacklogItem backlogItem : backlogItemsOfProducts.values()) {
+                this.repairProductBusinessPriorityTotals(backlogItem.tenantId(), backlogItem.productId(), uow);
+            }
+
+            uow.write(totalsKept, Boolean.TRUE);
+
+            uow.commit();
+
+        } catch (RuntimeException e) {
+            uow.rollback();
+
+            // a concurrent repository kept them first, which
+            // is the concurrency violation intended above
+
+            if (this.database().get(totalsKept.keyAsBytes()) != null) {
+                return;
+            }
+
+            throw e;
+        }
+    }
+
+    private List<BacklogItem> listProductBacklogItems(TenantId aTenantId, ProductId aProductId) {
+        LevelDBKey productBacklogItems = new LevelDBKey(PRODUCT_BACKLOG_ITEMS, aTenantId.id(), aProductId.id());
+
+        LevelDBUnitOfWork uow = LevelDBUnitOfWork.readOnly(this.database());
+
+        List<Object> keys = uow.readKeys(productBacklogItems);
+
+        return uow.readObjects(keys, BacklogItem.class, this.serializer());
     }
 
     private void remove(BacklogItem aBacklogItem, LevelDBUnitOfWork aUoW) {
@@ -212,19 +299,53 @@ public class LevelDBBacklogItemRepository
         LevelDBKey productBacklogItems = new LevelDBKey(primaryKey, PRODUCT_BACKLOG_ITEMS, aBacklogItem.tenantId().id(), aBacklogItem.productId().id());
         aUoW.removeKeyReference(productBacklogItems);
 
+        this.updateBusinessPriorityTotals(aBacklogItem, new long[NUMBER_OF_RATINGS], aUoW);
+
 //        if (aBacklogItem.discussionInitiationId() != null) {
 //            LevelDBKey backlogItemsOfDiscussion = new LevelDBKey(primaryKey, BACKLOG_ITEM_OF_DISCUSSION, aBacklogItem.tenantId().id(), aBacklogItem.discussionInitiationId());
 //            aUoW.removeKeyReference(backlogItemsOfDiscussion);
 //        }
     }
 
+    private long[] repairProductBusinessPriorityTotals(
+            TenantId aTenantId,
+            ProductId aProductId,
+            LevelDBUnitOfWork aUoW) {
+
+        LevelDBKey productBusinessPriorityTotals =
+                new LevelDBKey(PRODUCT_BUSINESS_PRIORITY_TOTALS, aTenantId.id(), aProductId.id());
+
+        // read first, so that the repair fails rather than loses
+        // totals committed while the backlog items are read
+
+        aUoW.readCounters(productBusinessPriorityTotals, NUMBER_OF_RATINGS);
+
+        long[] totals = new long[NUMBER_OF_RATINGS];
+
+        for (BacklogItem backlogItem : this.listProductBacklogItems(aTenantId, aProductId)) {
+            long[] ratings = this.businessPriorityRatingsOf(backlogItem);
+
+            this.writeBusinessPriorityRatings(backlogItem, ratings, aUoW);
+
+            for (int idx = 0; idx < NUMBER_OF_RATINGS; ++idx) {
+                totals[idx] += ratings[idx];
+            }
+        }
+
+        aUoW.writeCounters(productBusinessPriorityTotals, totals);
+
+        return totals;
+    }
+
     private void save(BacklogItem aBacklogItem, LevelDBUnitOfWork aUoW) {
         LevelDBKey primaryKey = new LevelDBKey(PRIMARY, aBacklogItem.tenantId().id(), aBacklogItem.backlogItemId().id());
-        aUoW.write(primaryKey, aBacklogItem);
+        aUoW.write(primaryKey, aBacklogItem, this.serializer());
 
         LevelDBKey productBacklogItems = new LevelDBKey(primaryKey, PRODUCT_BACKLOG_ITEMS, aBacklogItem.tenantId().id(), aBacklogItem.productId().id());
         aUoW.updateKeyReference(productBacklogItems);
 
+        this.updateBusinessPriorityTotals(aBacklogItem, this.businessPriorityRatingsOf(aBacklogItem), aUoW);
+
         if (aBacklogItem.isScheduledForRelease()) {
             LevelDBKey releaseBacklogItems = new LevelDBKey(primaryKey, RELEASE_BACKLOG_ITEMS, aBacklogItem.tenantId().id(), aBacklogItem.releaseId().id());
             aUoW.updateKeyReference(releaseBacklogItems);
@@ -243,4 +364,59 @@ public class LevelDBBacklogItemRepository
 //            aUoW.updateKeyReference(backlogItemsOfDiscussion);
 //        }
     }
+
+    private void updateBusinessPriorityTotals(
+            BacklogItem aBacklogItem,
+            long[] aRatings,
+            LevelDBUnitOfWork aUoW) {
+
+        // the ratings that a backlog item last added to its
+        // product's totals are kept with it, so that only the
+        // difference is added to the totals
+
+        LevelDBKey businessPriority =
+                new LevelDBKey(BUSINESS_PRIORITY, aBacklogItem.tenantId().id(), aBacklogItem.backlogItemId().id());
+
+        long[] savedRatings = aUoW.readCounters(businessPriority, NUMBER_OF_RATINGS);
+
+        long[] increments = new long[NUMBER_OF_RATINGS];
+
+        boolean changed = false;
+
+        for (int idx = 0; idx < NUMBER_OF_RATINGS; ++idx) {
+            increments[idx] = aRatings[idx] - savedRatings[idx];
+
+            changed = changed || increments[idx] != 0;
+        }
+
+        if (changed) {
+            this.writeBusinessPriorityRatings(aBacklogItem, aRatings, aUoW);
+
+            LevelDBKey productBusinessPriorityTotals =
+                    new LevelDBKey(PRODUCT_BUSINESS_PRIORITY_TOTALS, aBacklogItem.tenantId().id(), aBacklogItem.productId().id());
+
+            aUoW.incrementCounters(productBusinessPriorityTotals, increments);
+        }
+    }
+
+    private void writeBusinessPriorityRatings(
+            BacklogItem aBacklogItem,
+            long[] aRatings,
+            LevelDBUnitOfWork aUoW) {
+
+        LevelDBKey businessPriority =
+                new LevelDBKey(BUSINESS_PRIORITY, aBacklogItem.tenantId().id(), aBacklogItem.backlogItemId().id());
+
+        boolean rated = false;
+
+        for (long rating : aRatings) {
+            rated = rated || rating != 0;
+        }
+
+        if (rated) {
+            aUoW.writeCounters(businessPriority, aRatings);
+        } else {
+            aUoW.remove(businessPriority);
+        }
+    }
 }
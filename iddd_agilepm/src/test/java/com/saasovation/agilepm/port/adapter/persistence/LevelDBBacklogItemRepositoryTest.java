@@ -14,26 +14,42 @@
 
 package com.saasovation.agilepm.port.adapter.persistence;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
 
 import junit.framework.TestCase;
 
 import org.iq80.leveldb.DB;
 
+import com.saasovation.agilepm.domain.model.discussion.DiscussionAvailability;
+import com.saasovation.agilepm.domain.model.discussion.DiscussionDescriptor;
 import com.saasovation.agilepm.domain.model.product.ProductId;
 import com.saasovation.agilepm.domain.model.product.backlogitem.BacklogItem;
 import com.saasovation.agilepm.domain.model.product.backlogitem.BacklogItemId;
 import com.saasovation.agilepm.domain.model.product.backlogitem.BacklogItemRepository;
 import com.saasovation.agilepm.domain.model.product.backlogitem.BacklogItemStatus;
 import com.saasovation.agilepm.domain.model.product.backlogitem.BacklogItemType;
+import com.saasovation.agilepm.domain.model.product.backlogitem.BusinessPriority;
+import com.saasovation.agilepm.domain.model.product.backlogitem.BusinessPriorityRatings;
+import com.saasovation.agilepm.domain.model.product.backlogitem.BusinessPriorityTotals;
 import com.saasovation.agilepm.domain.model.product.backlogitem.StoryPoints;
+import com.saasovation.agilepm.domain.model.product.backlogitem.Task;
+import com.saasovation.agilepm.domain.model.product.backlogitem.TaskId;
 import com.saasovation.agilepm.domain.model.product.release.Release;
 import com.saasovation.agilepm.domain.model.product.release.ReleaseId;
 import com.saasovation.agilepm.domain.model.product.sprint.Sprint;
 import com.saasovation.agilepm.domain.model.product.sprint.SprintId;
+import com.saasovation.agilepm.domain.model.team.TeamMember;
 import com.saasovation.agilepm.domain.model.tenant.TenantId;
 import com.saasovation.common.domain.model.DomainEventPublisher;
+import com.saasovation.common.port.adapter.persistence.leveldb.LevelDBBinarySerializer;
+import com.saasovation.common.port.adapter.persistence.leveldb.LevelDBKey;
 import com.saasovation.common.port.adapter.persistence.leveldb.LevelDBProvider;
 import com.saasovation.common.port.adapter.persistence.leveldb.LevelDBUnitOfWork;
 
@@ -236,6 +252,379 @@ public class LevelDBBacklogItemRepositoryTest extends TestCase {
         assertEquals(1, savedBacklogItems.size());
     }
 
+    public void testConcurrentTransactionsOfOneTenant() throws Exception {
+        final List<Integer> orderOfCommits = new ArrayList<Integer>();
+
+        BacklogItem backlogItem1 = this.backlogItemWithTasks(0);
+
+        LevelDBUnitOfWork.start(this.database);
+        backlogItemRepository.save(backlogItem1);
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                BacklogItem backlogItem2 =
+                        new BacklogItem(
+                                new TenantId("12345"),
+                                new ProductId("p00000"),
+                                new BacklogItemId("bli2"),
+                                "My backlog item 2.",
+                                "Domain Model",
+                                BacklogItemType.FEATURE,
+                                BacklogItemStatus.PLANNED,
+                                StoryPoints.FIVE);
+
+                LevelDBUnitOfWork.start(database);
+                backlogItemRepository.save(backlogItem2);
+                LevelDBUnitOfWork.current().commit();
+                orderOfCommits.add(2);
+            }
+        };
+
+        thread.start();
+        thread.join(5000L);
+
+        // the other backlog item of the same tenant was
+        // committed without waiting for this unit of work
+        orderOfCommits.add(1);
+        LevelDBUnitOfWork.current().commit();
+
+        assertEquals(2, orderOfCommits.get(0).intValue());
+        assertEquals(1, orderOfCommits.get(1).intValue());
+
+        Collection<BacklogItem> savedBacklogItems =
+                backlogItemRepository
+                    .allProductBacklogItems(backlogItem1.tenantId(), backlogItem1.productId());
+
+        assertEquals(2, savedBacklogItems.size());
+    }
+
+    public void testConcurrencyViolation() throws Exception {
+        final BacklogItem backlogItem = this.backlogItemWithTasks(0);
+
+        LevelDBUnitOfWork.start(this.database);
+        backlogItemRepository.save(backlogItem);
+        LevelDBUnitOfWork.current().commit();
+
+        LevelDBUnitOfWork.start(this.database);
+        BacklogItem staleBacklogItem =
+                backlogItemRepository.backlogItemOfId(backlogItem.tenantId(), backlogItem.backlogItemId());
+        staleBacklogItem.summarize("My stale summary.");
+        backlogItemRepository.save(staleBacklogItem);
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                LevelDBUnitOfWork.start(database);
+                BacklogItem modifiedBacklogItem =
+                        backlogItemRepository.backlogItemOfId(backlogItem.tenantId(), backlogItem.backlogItemId());
+                modifiedBacklogItem.summarize("My modified summary.");
+                backlogItemRepository.save(modifiedBacklogItem);
+                LevelDBUnitOfWork.current().commit();
+            }
+        };
+
+        thread.start();
+        thread.join(5000L);
+
+        try {
+            LevelDBUnitOfWork.current().commit();
+
+            fail("The stale backlog item should not have been committed.");
+
+        } catch (IllegalStateException e) {
+            LevelDBUnitOfWork.current().rollback();
+        }
+
+        BacklogItem savedBacklogItem =
+                backlogItemRepository.backlogItemOfId(backlogItem.tenantId(), backlogItem.backlogItemId());
+
+        assertEquals("My modified summary.", savedBacklogItem.summary());
+    }
+
+    public void testProductBusinessPriorityTotals() throws Exception {
+        TenantId tenantId = new TenantId("12345");
+        ProductId productId = new ProductId("p00000");
+
+        BacklogItem backlogItem1 = this.backlogItemWithTasks(0);
+        backlogItem1.assignBusinessPriority(new BusinessPriority(new BusinessPriorityRatings(2, 4, 1, 1)));
+
+        BacklogItem backlogItem2 =
+                new BacklogItem(
+                        tenantId,
+                        productId,
+                        new BacklogItemId("bli2"),
+                        "My backlog item 2.",
+                        "Domain Model",
+                        BacklogItemType.FEATURE,
+                        BacklogItemStatus.PLANNED,
+                        StoryPoints.FIVE);
+        backlogItem2.assignBusinessPriority(new BusinessPriority(new BusinessPriorityRatings(5, 5, 2, 3)));
+
+        LevelDBUnitOfWork.start(this.database);
+        backlogItemRepository.save(backlogItem1);
+        backlogItemRepository.save(backlogItem2);
+        LevelDBUnitOfWork.current().commit();
+
+        assertEquals(
+                new BusinessPriorityTotals(7, 9, 16, 3, 4),
+                backlogItemRepository.productBusinessPriorityTotals(tenantId, productId));
+
+        LevelDBUnitOfWork.start(this.database);
+        backlogItem1.assignBusinessPriority(new BusinessPriority(new BusinessPriorityRatings(3, 4, 1, 1)));
+        backlogItemRepository.save(backlogItem1);
+        backlogItemRepository.save(backlogItem1);
+        backlogItem2.markAsRemoved();
+        backlogItemRepository.save(backlogItem2);
+        LevelDBUnitOfWork.current().commit();
+
+        assertEquals(
+                new BusinessPriorityTotals(3, 4, 7, 1, 1),
+                backlogItemRepository.productBusinessPriorityTotals(tenantId, productId));
+
+        LevelDBUnitOfWork.start(this.database);
+        backlogItemRepository.remove(backlogItem1);
+        LevelDBUnitOfWork.current().commit();
+
+        assertEquals(
+                new BusinessPriorityTotals(0, 0, 0, 0, 0),
+                backlogItemRepository.productBusinessPriorityTotals(tenantId, productId));
+    }
+
+    public void testKeepTotalsOfBacklogItemsSavedBefore() throws Exception {
+        TenantId tenantId = new TenantId("12345");
+        ProductId productId = new ProductId("p00000");
+
+        BacklogItem backlogItem1 = this.backlogItemWithTasks(0);
+        backlogItem1.assignBusinessPriority(new BusinessPriority(new BusinessPriorityRatings(2, 4, 1, 1)));
+
+        BacklogItem backlogItem2 =
+                new BacklogItem(
+                        tenantId,
+                        productId,
+                        new BacklogItemId("bli2"),
+                        "My backlog item 2.",
+                        "Domain Model",
+                        BacklogItemType.FEATURE,
+                        BacklogItemStatus.PLANNED,
+                        StoryPoints.FIVE);
+        backlogItem2.assignBusinessPriority(new BusinessPriority(new BusinessPriorityRatings(5, 5, 2, 3)));
+
+        LevelDBUnitOfWork.start(this.database);
+        backlogItemRepository.save(backlogItem1);
+        backlogItemRepository.save(backlogItem2);
+        LevelDBUnitOfWork.current().commit();
+
+        // as saved before the totals were kept
+
+        this.database.delete(new LevelDBKey("BLI#PROD#PRIORITY", tenantId.id(), productId.id()).keyAsBytes());
+        this.database.delete(new LevelDBKey("BLI#PRIORITY", tenantId.id(), "bli1").keyAsBytes());
+        this.database.delete(new LevelDBKey("BLI#PRIORITY", tenantId.id(), "bli2").keyAsBytes());
+        this.database.delete(new LevelDBKey("BLI#PROD#PRIORITY#KEPT").keyAsBytes());
+
+        assertEquals(
+                new BusinessPriorityTotals(0, 0, 0, 0, 0),
+                backlogItemRepository.productBusinessPriorityTotals(tenantId, productId));
+
+        BacklogItemRepository reopenedRepository = new LevelDBBacklogItemRepository();
+
+        assertEquals(
+                new BusinessPriorityTotals(7, 9, 16, 3, 4),
+                reopenedRepository.productBusinessPriorityTotals(tenantId, productId));
+
+        LevelDBUnitOfWork.start(this.database);
+        backlogItem1.assignBusinessPriority(new BusinessPriority(new BusinessPriorityRatings(3, 4, 1, 1)));
+        reopenedRepository.save(backlogItem1);
+        LevelDBUnitOfWork.current().commit();
+
+        assertEquals(
+                new BusinessPriorityTotals(8, 9, 17, 3, 4),
+                reopenedRepository.productBusinessPriorityTotals(tenantId, productId));
+    }
+
+    public void testKeepTotalsRefusedWithinOpenUnitOfWork() throws Exception {
+        TenantId tenantId = new TenantId("12345");
+        ProductId productId = new ProductId("p00000");
+
+        BacklogItem backlogItem = this.backlogItemWithTasks(0);
+        backlogItem.assignBusinessPriority(new BusinessPriority(new BusinessPriorityRatings(2, 4, 1, 1)));
+
+        LevelDBUnitOfWork.start(this.database);
+        backlogItemRepository.save(backlogItem);
+        LevelDBUnitOfWork.current().commit();
+
+        this.database.delete(new LevelDBKey("BLI#PROD#PRIORITY", tenantId.id(), productId.id()).keyAsBytes());
+        this.database.delete(new LevelDBKey("BLI#PRIORITY", tenantId.id(), "bli1").keyAsBytes());
+        this.database.delete(new LevelDBKey("BLI#PROD#PRIORITY#KEPT").keyAsBytes());
+
+        // the work of the caller is neither committed nor rolled back
+
+        LevelDBUnitOfWork uow = LevelDBUnitOfWork.start(this.database);
+        backlogItem.summarize("Summarized within the open unit of work.");
+        backlogItemRepository.save(backlogItem);
+
+        try {
+            new LevelDBBacklogItemRepository();
+
+            fail("Should have refused to keep the totals.");
+
+        } catch (IllegalStateException e) {
+            // good
+        }
+
+        assertSame(uow, LevelDBUnitOfWork.current());
+        uow.commit();
+
+        assertEquals(
+                "Summarized within the open unit of work.",
+                backlogItemRepository.backlogItemOfId(tenantId, backlogItem.backlogItemId()).summary());
+
+        assertEquals(
+                new BusinessPriorityTotals(2, 4, 6, 1, 1),
+                new LevelDBBacklogItemRepository().productBusinessPriorityTotals(tenantId, productId));
+    }
+
+    public void testConcurrentRepositoriesKeepTotalsOnce() throws Exception {
+        TenantId tenantId = new TenantId("12345");
+        ProductId productId = new ProductId("p00000");
+
+        LevelDBUnitOfWork.start(this.database);
+
+        for (int idx = 0; idx < 100; ++idx) {
+            BacklogItem backlogItem =
+                    new BacklogItem(
+                            tenantId,
+                            productId,
+                            new BacklogItemId("bli" + idx),
+                            "My backlog item " + idx + ".",
+                            "Domain Model",
+                            BacklogItemType.FEATURE,
+                            BacklogItemStatus.PLANNED,
+                            StoryPoints.FIVE);
+            backlogItem.assignBusinessPriority(new BusinessPriority(new BusinessPriorityRatings(1, 2, 1, 1)));
+
+            backlogItemRepository.save(backlogItem);
+        }
+
+        LevelDBUnitOfWork.current().commit();
+
+        this.database.delete(new LevelDBKey("BLI#PROD#PRIORITY", tenantId.id(), productId.id()).keyAsBytes());
+        this.database.delete(new LevelDBKey("BLI#PROD#PRIORITY#KEPT").keyAsBytes());
+
+        // the repositories that lose the race find the totals kept
+
+        final CyclicBarrier barrier = new CyclicBarrier(4);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+
+        Thread[] threads = new Thread[4];
+
+        for (int idx = 0; idx < threads.length; ++idx) {
+            threads[idx] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+
+                        new LevelDBBacklogItemRepository();
+
+                    } catch (Throwable t) {
+                        synchronized (failures) {
+                            failures.add(t);
+                        }
+                    }
+                }
+            };
+
+            threads[idx].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+
+        assertEquals(
+                new BusinessPriorityTotals(100, 200, 300, 100, 100),
+                backlogItemRepository.productBusinessPriorityTotals(tenantId, productId));
+    }
+
+    public void testRepairProductBusinessPriorityTotals() throws Exception {
+        TenantId tenantId = new TenantId("12345");
+        ProductId productId = new ProductId("p00000");
+
+        BacklogItem backlogItem = this.backlogItemWithTasks(0);
+        backlogItem.assignBusinessPriority(new BusinessPriority(new BusinessPriorityRatings(2, 4, 1, 1)));
+
+        LevelDBUnitOfWork.start(this.database);
+        backlogItemRepository.save(backlogItem);
+        LevelDBUnitOfWork.current().commit();
+
+        LevelDBUnitOfWork.start(this.database);
+        LevelDBUnitOfWork.current().writeCounters(
+                new LevelDBKey("BLI#PROD#PRIORITY", tenantId.id(), productId.id()),
+                new long[] { 99, 99, 99, 99 });
+        LevelDBUnitOfWork.current().commit();
+
+        LevelDBUnitOfWork.start(this.database);
+        BusinessPriorityTotals repairedTotals =
+                backlogItemRepository.repairProductBusinessPriorityTotals(tenantId, productId);
+        LevelDBUnitOfWork.current().commit();
+
+        assertEquals(new BusinessPriorityTotals(2, 4, 6, 1, 1), repairedTotals);
+        assertEquals(repairedTotals, backlogItemRepository.productBusinessPriorityTotals(tenantId, productId));
+    }
+
+    public void testReadBacklogItemSavedAsJSON() throws Exception {
+        BacklogItem backlogItem = this.backlogItemWithTasks(3);
+
+        LevelDBUnitOfWork.start(this.database);
+        LevelDBUnitOfWork.current().write(
+                new LevelDBKey("BLI#PK", backlogItem.tenantId().id(), backlogItem.backlogItemId().id()),
+                backlogItem);
+        LevelDBUnitOfWork.current().commit();
+
+        BacklogItem savedBacklogItem =
+                backlogItemRepository
+                    .backlogItemOfId(
+                            backlogItem.tenantId(),
+                            backlogItem.backlogItemId());
+
+        assertNotNull(savedBacklogItem);
+        assertEquals(3, savedBacklogItem.allTasks().size());
+        assertEquals(backlogItem.totalTaskHoursRemaining(), savedBacklogItem.totalTaskHoursRemaining());
+    }
+
+    public void testBinaryRoundTripOfEveryField() throws Exception {
+        BacklogItem backlogItem = this.backlogItemWithTasks(2);
+
+        backlogItem.associateWithIssue("ISSUE-7");
+        backlogItem.assignBusinessPriority(new BusinessPriority(new BusinessPriorityRatings(2, 4, 1, 1)));
+        backlogItem.tellStory("As a user I want everything round tripped.");
+        backlogItem.requestDiscussion(DiscussionAvailability.REQUESTED);
+        backlogItem.startDiscussionInitiation("discussion-initiation-1");
+        backlogItem.initiateDiscussion(new DiscussionDescriptor("discussion-1"));
+
+        backlogItem.scheduleFor(new Release(
+                new TenantId("12345"), new ProductId("p00000"), new ReleaseId("r11111"),
+                "release1", "My release 1.", new Date(), new Date()));
+
+        backlogItem.commitTo(new Sprint(
+                new TenantId("12345"), new ProductId("p00000"), new SprintId("s11111"),
+                "sprint1", "My sprint 1.", new Date(), new Date()));
+
+        for (Task task : backlogItem.allTasks()) {
+            backlogItem.estimateTaskHoursRemaining(this.taskIdOf(task), 5);
+        }
+
+        byte[] serialization = LevelDBBinarySerializer.instance().serialize(backlogItem);
+
+        BacklogItem deserializedBacklogItem =
+                LevelDBBinarySerializer.instance().deserialize(serialization, BacklogItem.class);
+
+        this.assertSameState(backlogItem, deserializedBacklogItem, "BacklogItem");
+    }
+
     @Override
     protected void setUp() throws Exception {
         DomainEventPublisher.instance().reset();
@@ -246,4 +635,99 @@ public class LevelDBBacklogItemRepositoryTest extends TestCase {
 
         super.setUp();
     }
+
+    private BacklogItem backlogItemWithTasks(int aNumberOfTasks) {
+        BacklogItem backlogItem =
+                new BacklogItem(
+                        new TenantId("12345"),
+                        new ProductId("p00000"),
+                        new BacklogItemId("bli1"),
+                        "My backlog item 1.",
+                        "Domain Model",
+                        BacklogItemType.FEATURE,
+                        BacklogItemStatus.PLANNED,
+                        StoryPoints.EIGHT);
+
+        TeamMember teamMember =
+                new TeamMember(
+                        new TenantId("12345"),
+                        "zoe",
+                        "Zoe",
+                        "Doe",
+                        "zoe@saasovation.com",
+                        new Date());
+
+        for (int idx = 1; idx <= aNumberOfTasks; ++idx) {
+            backlogItem.defineTask(teamMember, "Task " + idx, "The description of task " + idx + ".", 8);
+        }
+
+        return backlogItem;
+    }
+
+    private void assertSameState(Object anExpected, Object anActual, String aPath) throws Exception {
+
+        // every field of the aggregate is compared, and the
+        // aggregate must be built with none of them left null
+
+        assertNotNull(aPath, anExpected);
+        assertNotNull(aPath, anActual);
+
+        Class<?> type = anExpected.getClass();
+
+        if (type.isPrimitive() || type.isEnum() || anExpected instanceof String ||
+            anExpected instanceof Number || anExpected instanceof Boolean || anExpected instanceof Date) {
+
+            assertEquals(aPath, anExpected, anActual);
+
+        } else if (anExpected instanceof Set) {
+            Set<?> actualSet = (Set<?>) anActual;
+
+            assertFalse(aPath, actualSet.isEmpty());
+            assertEquals(aPath, ((Set<?>) anExpected).size(), actualSet.size());
+
+            for (Object expectedElement : (Set<?>) anExpected) {
+                Object actualElement = null;
+
+                for (Object element : actualSet) {
+                    if (element.equals(expectedElement)) {
+                        actualElement = element;
+                    }
+                }
+
+                this.assertSameState(expectedElement, actualElement, aPath + "[" + expectedElement + "]");
+            }
+
+        } else if (anExpected instanceof Collection) {
+            List<Object> expectedElements = new ArrayList<Object>((Collection<?>) anExpected);
+            List<Object> actualElements = new ArrayList<Object>((Collection<?>) anActual);
+
+            assertFalse(aPath, expectedElements.isEmpty());
+            assertEquals(aPath, expectedElements.size(), actualElements.size());
+
+            for (int idx = 0; idx < expectedElements.size(); ++idx) {
+                this.assertSameState(expectedElements.get(idx), actualElements.get(idx), aPath + "[" + idx + "]");
+            }
+
+        } else {
+            assertEquals(aPath, type, anActual.getClass());
+
+            for (Class<?> declaringType = type; declaringType != Object.class; declaringType = declaringType.getSuperclass()) {
+                for (Field field : declaringType.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+                        field.setAccessible(true);
+
+                        this.assertSameState(field.get(anExpected), field.get(anActual), aPath + "." + field.getName());
+                    }
+                }
+            }
+        }
+    }
+
+    private TaskId taskIdOf(Task aTask) throws Exception {
+        Field taskId = Task.class.getDeclaredField("taskId");
+
+        taskId.setAccessible(true);
+
+        return (TaskId) taskId.get(aTask);
+    }
 }
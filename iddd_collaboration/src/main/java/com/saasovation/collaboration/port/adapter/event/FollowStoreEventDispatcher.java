@@ -32,6 +32,8 @@ import com.saasovation.common.port.adapter.persistence.ConnectionProvider;
 
 public class FollowStoreEventDispatcher implements EventDispatcher, EventNotifiable {
 
+    private static final int DISPATCH_BATCH_SIZE = 500;
+
     private DataSource collaborationDataSource;
     private long lastDispatchedEventId;
     private List<EventDispatcher> registeredDispatchers;
@@ -63,10 +65,11 @@ public class FollowStoreEventDispatcher implements EventDispatcher, EventNotifia
     @Override
     public void notifyDispatchableEvents() {
 
-        // this could be multi-threaded from here,
-        // but is not for simplicity
+        // projections are run in parallel by the
+        // MySQLProjectionDispatcher, which commits
+        // each on its own connection
 
-        // child EventDispatchers should use only
+        // other child EventDispatchers should use only
         // ConnectionProvider.connection() and
         // not commit. i will commit and close the
         // connection here
@@ -76,26 +79,41 @@ public class FollowStoreEventDispatcher implements EventDispatcher, EventNotifia
                     .connection(this.collaborationDataSource());
 
         try {
-            List<DispatchableDomainEvent> undispatchedEvents =
-                    EventStoreProvider
-                        .instance()
-                        .eventStore()
-                        .eventsSince(this.lastDispatchedEventId());
+            // dispatch in bounded batches, saving the last
+            // dispatched event id with each, so that a large
+            // backlog is never loaded at once and a failure
+            // only redispatches the current batch
 
-            if (!undispatchedEvents.isEmpty()) {
+            boolean more = true;
 
-                for (DispatchableDomainEvent event : undispatchedEvents) {
-                    this.dispatch(event);
-                }
+            while (more) {
+                List<DispatchableDomainEvent> undispatchedEvents =
+                        EventStoreProvider
+                            .instance()
+                            .eventStore()
+                            .eventsSince(
+                                    this.lastDispatchedEventId(),
+                                    DISPATCH_BATCH_SIZE);
+
+                if (!undispatchedEvents.isEmpty()) {
+
+                    for (DispatchableDomainEvent event : undispatchedEvents) {
+                        this.dispatch(event);
+                    }
 
-                DispatchableDomainEvent withLastEventId =
-                        undispatchedEvents.get(undispatchedEvents.size() - 1);
+                    DispatchableDomainEvent withLastEventId =
+                            undispatchedEvents.get(undispatchedEvents.size() - 1);
 
-                long lastDispatchedEventId = withLastEventId.eventId();
+                    long lastDispatchedEventId = withLastEventId.eventId();
 
-                this.setLastDispatchedEventId(lastDispatchedEventId);
+                    this.saveLastDispatchedEventId(connection, lastDispatchedEventId);
+
+                    connection.commit();
+
+                    this.setLastDispatchedEventId(lastDispatchedEventId);
+                }
 
-                this.saveLastDispatchedEventId(connection, lastDispatchedEventId);
+                more = undispatchedEvents.size() == DISPATCH_BATCH_SIZE;
             }
 
             connection.commit();
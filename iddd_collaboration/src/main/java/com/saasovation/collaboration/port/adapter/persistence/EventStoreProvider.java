@@ -14,16 +14,37 @@
 
 package com.saasovation.collaboration.port.adapter.persistence;
 
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.saasovation.common.domain.model.DomainEvent;
+import com.saasovation.common.domain.model.EventSourcedRootEntity;
+import com.saasovation.common.event.sourcing.AggregateSnapshot;
+import com.saasovation.common.event.sourcing.EventCountSnapshotPolicy;
 import com.saasovation.common.event.sourcing.EventStore;
+import com.saasovation.common.event.sourcing.EventStream;
+import com.saasovation.common.event.sourcing.EventStreamId;
+import com.saasovation.common.event.sourcing.SnapshotPolicy;
+import com.saasovation.common.event.sourcing.SnapshotStore;
 import com.saasovation.common.port.adapter.persistence.eventsourcing.leveldb.LevelDBEventStore;
+import com.saasovation.common.port.adapter.persistence.eventsourcing.leveldb.LevelDBSnapshotStore;
 import com.saasovation.common.port.adapter.persistence.eventsourcing.mysql.MySQLJDBCEventStore;
+import com.saasovation.common.port.adapter.persistence.eventsourcing.mysql.MySQLJDBCSnapshotStore;
+import com.saasovation.common.serializer.ObjectSerializer;
 
 public class EventStoreProvider {
 
+    private static final int EVENTS_PER_SNAPSHOT = 100;
     private static final boolean FOR_LEVELDB = true;
     private static final boolean FOR_MYSQL = false;
 
+    private static final Log log = LogFactory.getLog(EventStoreProvider.class);
+
     private EventStore eventStore;
+    private SnapshotPolicy snapshotPolicy;
+    private SnapshotStore snapshotStore;
 
     public static EventStoreProvider instance() {
         return new EventStoreProvider();
@@ -33,25 +54,115 @@ public class EventStoreProvider {
         return this.eventStore;
     }
 
+    public SnapshotStore snapshotStore() {
+        return this.snapshotStore;
+    }
+
     protected EventStoreProvider() {
         super();
 
+        this.snapshotPolicy = new EventCountSnapshotPolicy(EVENTS_PER_SNAPSHOT);
+
         this.initializeLevelDB();
 
         this.initializeMySQL();
     }
 
+    protected <T extends EventSourcedRootEntity> T snapshotOf(
+            EventStreamId anEventId,
+            Class<T> anAggregateType) {
+
+        AggregateSnapshot snapshot =
+                this.snapshotStore().snapshotOf(anEventId.streamName());
+
+        if (snapshot == null || !snapshot.snapshotType().equals(anAggregateType.getName())) {
+            return null;
+        }
+
+        T aggregate = null;
+
+        try {
+            aggregate =
+                    ObjectSerializer
+                        .instance()
+                        .deserialize(snapshot.snapshotData(), anAggregateType);
+
+        } catch (RuntimeException e) {
+            // a snapshot the aggregate type can no longer read is only
+            // an optimization lost; the caller replays the full stream
+            return null;
+        }
+
+        // the tail starts at the last event the snapshot holds, so
+        // it is never empty even when the snapshot is current; a
+        // failure to read it is the event store's, and is not hidden
+
+        EventStream eventStream =
+                this.eventStore().eventStreamSince(
+                        anEventId.withStreamVersion(snapshot.streamVersion()));
+
+        List<DomainEvent> events = eventStream.events();
+
+        aggregate.mutateSinceSnapshot(
+                events.subList(1, events.size()),
+                eventStream.version());
+
+        return aggregate;
+    }
+
+    protected void snapshotWhenDue(
+            EventStreamId anEventId,
+            EventSourcedRootEntity anAggregate) {
+
+        int previousVersion = anAggregate.unmutatedVersion();
+
+        int streamVersion = previousVersion + anAggregate.mutatingEvents().size();
+
+        if (!this.snapshotPolicy().isSnapshotDue(previousVersion, streamVersion)) {
+            return;
+        }
+
+        // the events are already appended, so a snapshot that cannot
+        // be saved must not fail the save; it is logged, and the
+        // stream is replayed in full until the next one is due
+
+        try {
+            this.snapshotStore().save(
+                    new AggregateSnapshot(
+                            anEventId.streamName(),
+                            streamVersion,
+                            anAggregate.getClass().getName(),
+                            ObjectSerializer.instance().serialize(anAggregate)));
+
+        } catch (RuntimeException e) {
+            log.warn(
+                    "Could not save the snapshot of: "
+                    + anEventId.streamName()
+                    + " at version: "
+                    + streamVersion,
+                    e);
+        }
+    }
+
     private void initializeLevelDB() {
         if (FOR_LEVELDB) {
-            this.eventStore =
-                    LevelDBEventStore
-                            .instance(this.getClass().getResource("/").getPath() + "/data/leveldb/iddd_collaboration_es");
+            String dataPath = this.getClass().getResource("/").getPath() + "/data/leveldb/";
+
+            this.eventStore = LevelDBEventStore.instance(dataPath + "iddd_collaboration_es");
+
+            this.snapshotStore = LevelDBSnapshotStore.instance(dataPath + "iddd_collaboration_snapshots");
         }
     }
 
     private void initializeMySQL() {
         if (FOR_MYSQL) {
             this.eventStore = MySQLJDBCEventStore.instance();
+
+            this.snapshotStore = MySQLJDBCSnapshotStore.instance();
         }
     }
+
+    private SnapshotPolicy snapshotPolicy() {
+        return this.snapshotPolicy;
+    }
 }
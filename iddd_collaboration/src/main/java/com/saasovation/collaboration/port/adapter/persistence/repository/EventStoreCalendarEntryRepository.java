@@ -34,13 +34,15 @@ public class EventStoreCalendarEntryRepository
 
     @Override
     public CalendarEntry calendarEntryOfId(Tenant aTenant, CalendarEntryId aCalendarEntryId) {
-        // snapshots not currently supported; always use version 1
-
         EventStreamId eventId = new EventStreamId(aTenant.id(), aCalendarEntryId.id());
 
-        EventStream eventStream = this.eventStore().eventStreamSince(eventId);
+        CalendarEntry calendarEntry = this.snapshotOf(eventId, CalendarEntry.class);
+
+        if (calendarEntry == null) {
+            EventStream eventStream = this.eventStore().eventStreamSince(eventId);
 
-        CalendarEntry calendarEntry = new CalendarEntry(eventStream.events(), eventStream.version());
+            calendarEntry = new CalendarEntry(eventStream.events(), eventStream.version());
+        }
 
         return calendarEntry;
     }
@@ -59,5 +61,7 @@ public class EventStoreCalendarEntryRepository
                         aCalendarEntry.mutatedVersion());
 
         this.eventStore().appendWith(eventId, aCalendarEntry.mutatingEvents());
+
+        this.snapshotWhenDue(eventId, aCalendarEntry);
     }
 }
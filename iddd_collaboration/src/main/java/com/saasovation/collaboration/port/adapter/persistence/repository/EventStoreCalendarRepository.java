@@ -34,13 +34,15 @@ public class EventStoreCalendarRepository
 
     @Override
     public Calendar calendarOfId(Tenant aTenant, CalendarId aCalendarId) {
-        // snapshots not currently supported; always use version 1
-
         EventStreamId eventId = new EventStreamId(aTenant.id(), aCalendarId.id());
 
-        EventStream eventStream = this.eventStore().eventStreamSince(eventId);
+        Calendar calendar = this.snapshotOf(eventId, Calendar.class);
+
+        if (calendar == null) {
+            EventStream eventStream = this.eventStore().eventStreamSince(eventId);
 
-        Calendar calendar = new Calendar(eventStream.events(), eventStream.version());
+            calendar = new Calendar(eventStream.events(), eventStream.version());
+        }
 
         return calendar;
     }
@@ -59,5 +61,7 @@ public class EventStoreCalendarRepository
                         aCalendar.mutatedVersion());
 
         this.eventStore().appendWith(eventId, aCalendar.mutatingEvents());
+
+        this.snapshotWhenDue(eventId, aCalendar);
     }
 }
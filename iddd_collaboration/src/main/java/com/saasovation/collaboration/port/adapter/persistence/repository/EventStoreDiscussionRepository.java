@@ -34,15 +34,17 @@ public class EventStoreDiscussionRepository
 
     @Override
     public Discussion discussionOfId(Tenant aTenant, DiscussionId aDiscussionId) {
-        // snapshots not currently supported; always use version 1
-
         EventStreamId eventId = new EventStreamId(aTenant.id(), aDiscussionId.id());
 
-        EventStream eventStream = this.eventStore().eventStreamSince(eventId);
+        Discussion discussion = this.snapshotOf(eventId, Discussion.class);
+
+        if (discussion == null) {
+            EventStream eventStream = this.eventStore().eventStreamSince(eventId);
 
-        Discussion Discussion = new Discussion(eventStream.events(), eventStream.version());
+            discussion = new Discussion(eventStream.events(), eventStream.version());
+        }
 
-        return Discussion;
+        return discussion;
     }
 
     @Override
@@ -59,5 +61,7 @@ public class EventStoreDiscussionRepository
                         aDiscussion.mutatedVersion());
 
         this.eventStore().appendWith(eventId, aDiscussion.mutatingEvents());
+
+        this.snapshotWhenDue(eventId, aDiscussion);
     }
 }
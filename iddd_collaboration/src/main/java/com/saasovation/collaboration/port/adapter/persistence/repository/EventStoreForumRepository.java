@@ -34,13 +34,15 @@ public class EventStoreForumRepository
 
     @Override
     public Forum forumOfId(Tenant aTenant, ForumId aForumId) {
-        // snapshots not currently supported; always use version 1
-
         EventStreamId eventId = new EventStreamId(aTenant.id(), aForumId.id());
 
-        EventStream eventStream = this.eventStore().eventStreamSince(eventId);
+        Forum forum = this.snapshotOf(eventId, Forum.class);
+
+        if (forum == null) {
+            EventStream eventStream = this.eventStore().eventStreamSince(eventId);
 
-        Forum forum = new Forum(eventStream.events(), eventStream.version());
+            forum = new Forum(eventStream.events(), eventStream.version());
+        }
 
         return forum;
     }
@@ -59,5 +61,7 @@ public class EventStoreForumRepository
                         aForum.mutatedVersion());
 
         this.eventStore().appendWith(eventId, aForum.mutatingEvents());
+
+        this.snapshotWhenDue(eventId, aForum);
     }
 }
@@ -34,15 +34,17 @@ public class EventStorePostRepository
 
     @Override
     public Post postOfId(Tenant aTenantId, PostId aPostId) {
-        // snapshots not currently supported; always use version 1
-
         EventStreamId eventId = new EventStreamId(aTenantId.id(), aPostId.id());
 
-        EventStream eventStream = this.eventStore().eventStreamSince(eventId);
+        Post post = this.snapshotOf(eventId, Post.class);
+
+        if (post == null) {
+            EventStream eventStream = this.eventStore().eventStreamSince(eventId);
 
-        Post Post = new Post(eventStream.events(), eventStream.version());
+            post = new Post(eventStream.events(), eventStream.version());
+        }
 
-        return Post;
+        return post;
     }
 
     @Override
@@ -59,5 +61,7 @@ public class EventStorePostRepository
                         aPost.mutatedVersion());
 
         this.eventStore().appendWith(eventId, aPost.mutatingEvents());
+
+        this.snapshotWhenDue(eventId, aPost);
     }
 }
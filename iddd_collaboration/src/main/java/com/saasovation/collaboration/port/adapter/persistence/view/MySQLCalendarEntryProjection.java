@@ -14,7 +14,6 @@
 
 package com.saasovation.collaboration.port.adapter.persistence.view;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 
 import com.saasovation.collaboration.domain.model.calendar.CalendarEntryDescriptionChanged;
@@ -29,7 +28,6 @@ import com.saasovation.collaboration.domain.model.tenant.Tenant;
 import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
 import com.saasovation.common.event.sourcing.EventDispatcher;
 import com.saasovation.common.port.adapter.persistence.AbstractProjection;
-import com.saasovation.common.port.adapter.persistence.ConnectionProvider;
 
 public class MySQLCalendarEntryProjection
         extends AbstractProjection
@@ -44,6 +42,11 @@ public class MySQLCalendarEntryProjection
         CalendarEntryScheduled.class
     };
 
+    private static final String viewTables[] = {
+        "tbl_vw_calendar_entry",
+        "tbl_vw_calendar_entry_invitee"
+    };
+
     public MySQLCalendarEntryProjection(EventDispatcher aParentEventDispatcher) {
         super();
 
@@ -67,11 +70,14 @@ public class MySQLCalendarEntryProjection
                 understoodEventTypes);
     }
 
-    protected void when(CalendarEntryDescriptionChanged anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
+    @Override
+    public String[] viewTables() {
+        return viewTables.clone();
+    }
 
+    protected void when(CalendarEntryDescriptionChanged anEvent) throws Exception {
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "update tbl_vw_calendar_entry set description=? "
                         + " where calendar_entry_id = ?");
 
@@ -86,10 +92,8 @@ public class MySQLCalendarEntryProjection
     }
 
     protected void when(CalendarEntryParticipantUninvited anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "delete from tbl_vw_calendar_entry_invitee "
                         + "where tenant_id = ? and calendar_entry_id = ? and participant_identity = ?");
 
@@ -101,10 +105,8 @@ public class MySQLCalendarEntryProjection
     }
 
     protected void when(CalendarEntryRelocated anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "update tbl_vw_calendar_entry set location=? "
                         + " where calendar_entry_id = ?");
 
@@ -115,10 +117,8 @@ public class MySQLCalendarEntryProjection
     }
 
     protected void when(CalendarEntryRescheduled anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "update tbl_vw_calendar_entry "
                         + "set alarm_alarm_units = ?, alarm_alarm_units_type = ?, "
                         + "repetition_ends = ?, repetition_type = ?, "
@@ -138,26 +138,17 @@ public class MySQLCalendarEntryProjection
     }
 
     protected void when(CalendarEntryScheduled anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         // idempotent operation
-        if (this.exists(
-                "select calendar_entry_id from tbl_vw_calendar_entry "
-                    + "where tenant_id = ? and calendar_entry_id = ?",
-                anEvent.tenant().id(),
-                anEvent.calendarEntryId().id())) {
-            return;
-        }
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "insert into tbl_vw_calendar_entry( "
                         + "calendar_entry_id, alarm_alarm_units, alarm_alarm_units_type, "
                         + "calendar_id, description, location, "
                         + "owner_email_address, owner_identity, owner_name, "
                         + "repetition_ends, repetition_type, "
                         + "tenant_id, time_span_begins, time_span_ends"
-                        + ") values(?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
+                        + ") values(?,?,?,?,?,?,?,?,?,?,?,?,?,?) "
+                        + "on duplicate key update calendar_entry_id=calendar_entry_id");
 
         statement.setString(1, anEvent.calendarEntryId().id());
         statement.setInt(2, anEvent.alarm().alarmUnits());
@@ -187,25 +178,15 @@ public class MySQLCalendarEntryProjection
             Participant aParticipant)
     throws Exception {
 
-        Connection connection = ConnectionProvider.connection();
-
         // idempotent operation
-        if (this.exists(
-                "select id from tbl_vw_calendar_entry_invitee "
-                    + "where tenant_id = ? and calendar_entry_id = ? and participant_identity = ?",
-                aTenant.id(),
-                aCalendarEntryId.id(),
-                aParticipant.identity())) {
-            return;
-        }
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "insert into tbl_vw_calendar_entry_invitee( "
                         + "id, calendar_entry_id, "
                         + "participant_email_address, participant_identity, participant_name, "
                         + "tenant_id"
-                        + ") values(?,?,?,?,?,?)");
+                        + ") values(?,?,?,?,?,?) "
+                        + "on duplicate key update id=id");
 
         statement.setLong(1, 0);
         statement.setString(2, aCalendarEntryId.id());
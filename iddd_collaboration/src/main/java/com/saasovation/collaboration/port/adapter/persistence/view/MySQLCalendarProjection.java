@@ -14,7 +14,6 @@
 
 package com.saasovation.collaboration.port.adapter.persistence.view;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 
 import com.saasovation.collaboration.domain.model.calendar.CalendarCreated;
@@ -28,7 +27,6 @@ import com.saasovation.collaboration.domain.model.tenant.Tenant;
 import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
 import com.saasovation.common.event.sourcing.EventDispatcher;
 import com.saasovation.common.port.adapter.persistence.AbstractProjection;
-import com.saasovation.common.port.adapter.persistence.ConnectionProvider;
 
 public class MySQLCalendarProjection
         extends AbstractProjection
@@ -42,6 +40,11 @@ public class MySQLCalendarProjection
         CalendarUnshared.class
     };
 
+    private static final String viewTables[] = {
+        "tbl_vw_calendar",
+        "tbl_vw_calendar_sharer"
+    };
+
     public MySQLCalendarProjection(EventDispatcher aParentEventDispatcher) {
         super();
 
@@ -65,25 +68,21 @@ public class MySQLCalendarProjection
                 understoodEventTypes);
     }
 
-    protected void when(CalendarCreated anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
+    @Override
+    public String[] viewTables() {
+        return viewTables.clone();
+    }
 
+    protected void when(CalendarCreated anEvent) throws Exception {
         // idempotent operation
-        if (this.exists(
-                "select calendar_id from tbl_vw_calendar "
-                    + "where tenant_id = ? and calendar_id = ?",
-                anEvent.tenant().id(),
-                anEvent.calendarId().id())) {
-            return;
-        }
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "insert into tbl_vw_calendar("
                         + "calendar_id, description, name, "
                         + "owner_email_address, owner_identity, owner_name, "
                         + "tenant_id"
-                        + ") values(?,?,?,?,?,?,?)");
+                        + ") values(?,?,?,?,?,?,?) "
+                        + "on duplicate key update calendar_id=calendar_id");
 
         statement.setString(1, anEvent.calendarId().id());
         statement.setString(2, anEvent.description());
@@ -101,10 +100,8 @@ public class MySQLCalendarProjection
     }
 
     protected void when(CalendarDescriptionChanged anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "update tbl_vw_calendar set description=? "
                         + "where calendar_id = ?");
 
@@ -115,10 +112,8 @@ public class MySQLCalendarProjection
     }
 
     protected void when(CalendarRenamed anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "update tbl_vw_calendar set name=? "
                         + "where calendar_id = ?");
 
@@ -133,10 +128,8 @@ public class MySQLCalendarProjection
     }
 
     protected void when(CalendarUnshared anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "delete from tbl_vw_calendar_sharer "
                         + "where tenant_id=? and calendar_id=? and participant_identity=?");
 
@@ -153,25 +146,15 @@ public class MySQLCalendarProjection
             CalendarSharer aCalendarSharer)
     throws Exception {
 
-        Connection connection = ConnectionProvider.connection();
-
         // idempotent operation
-        if (this.exists(
-                "select id from tbl_vw_calendar_sharer "
-                    + "where tenant_id = ? and calendar_id = ? and participant_identity = ?",
-                aTenant.id(),
-                aCalendarId.id(),
-                aCalendarSharer.participant().identity())) {
-            return;
-        }
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "insert into tbl_vw_calendar_sharer("
                         + "id, calendar_id, "
                         + "participant_email_address, participant_identity, participant_name, "
                         + "tenant_id"
-                        + ") values(?,?,?,?,?,?)");
+                        + ") values(?,?,?,?,?,?) "
+                        + "on duplicate key update id=id");
 
         statement.setLong(1, 0);
         statement.setString(2, aCalendarId.id());
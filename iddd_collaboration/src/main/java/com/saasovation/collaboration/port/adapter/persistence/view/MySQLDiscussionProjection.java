@@ -14,7 +14,6 @@
 
 package com.saasovation.collaboration.port.adapter.persistence.view;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 
 import com.saasovation.collaboration.domain.model.forum.DiscussionClosed;
@@ -23,7 +22,6 @@ import com.saasovation.collaboration.domain.model.forum.DiscussionStarted;
 import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
 import com.saasovation.common.event.sourcing.EventDispatcher;
 import com.saasovation.common.port.adapter.persistence.AbstractProjection;
-import com.saasovation.common.port.adapter.persistence.ConnectionProvider;
 
 public class MySQLDiscussionProjection
         extends AbstractProjection
@@ -35,6 +33,10 @@ public class MySQLDiscussionProjection
         DiscussionStarted.class
     };
 
+    private static final String viewTables[] = {
+        "tbl_vw_discussion"
+    };
+
     public MySQLDiscussionProjection(EventDispatcher aParentEventDispatcher) {
         super();
 
@@ -58,11 +60,14 @@ public class MySQLDiscussionProjection
                 understoodEventTypes);
     }
 
-    protected void when(DiscussionClosed anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
+    @Override
+    public String[] viewTables() {
+        return viewTables.clone();
+    }
 
+    protected void when(DiscussionClosed anEvent) throws Exception {
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "update tbl_vw_discussion "
                         + "set closed=1 "
                         + "where tenant_id = ? and discussion_id = ?");
@@ -74,10 +79,8 @@ public class MySQLDiscussionProjection
     }
 
     protected void when(DiscussionReopened anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "update tbl_vw_discussion "
                         + "set closed=0 "
                         + "where tenant_id = ? and discussion_id = ?");
@@ -89,24 +92,15 @@ public class MySQLDiscussionProjection
     }
 
     protected void when(DiscussionStarted anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         // idempotent operation
-        if (this.exists(
-                "select discussion_id from tbl_vw_discussion "
-                    + "where tenant_id = ? and discussion_id = ?",
-                anEvent.tenant().id(),
-                anEvent.discussionId().id())) {
-            return;
-        }
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "insert into tbl_vw_discussion( "
                         + "discussion_id, author_email_address, author_identity, author_name, "
                         + "closed, exclusive_owner, forum_id, "
                         + "subject, tenant_id"
-                        + ") values(?,?,?,?,?,?,?,?,?)");
+                        + ") values(?,?,?,?,?,?,?,?,?) "
+                        + "on duplicate key update discussion_id=discussion_id");
 
         statement.setString(1, anEvent.discussionId().id());
         statement.setString(2, anEvent.author().emailAddress());
@@ -14,7 +14,6 @@
 
 package com.saasovation.collaboration.port.adapter.persistence.view;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 
 import com.saasovation.collaboration.domain.model.forum.ForumClosed;
@@ -26,7 +25,6 @@ import com.saasovation.collaboration.domain.model.forum.ForumSubjectChanged;
 import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
 import com.saasovation.common.event.sourcing.EventDispatcher;
 import com.saasovation.common.port.adapter.persistence.AbstractProjection;
-import com.saasovation.common.port.adapter.persistence.ConnectionProvider;
 
 public class MySQLForumProjection
         extends AbstractProjection
@@ -41,6 +39,10 @@ public class MySQLForumProjection
         ForumSubjectChanged.class
     };
 
+    private static final String viewTables[] = {
+        "tbl_vw_forum"
+    };
+
     public MySQLForumProjection(EventDispatcher aParentEventDispatcher) {
         super();
 
@@ -64,11 +66,14 @@ public class MySQLForumProjection
                 understoodEventTypes);
     }
 
-    protected void when(ForumClosed anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
+    @Override
+    public String[] viewTables() {
+        return viewTables.clone();
+    }
 
+    protected void when(ForumClosed anEvent) throws Exception {
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "update tbl_vw_forum "
                         + "set closed=1 "
                         + "where tenant_id = ? and forum_id = ?");
@@ -80,10 +85,8 @@ public class MySQLForumProjection
     }
 
     protected void when(ForumDescriptionChanged anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "update tbl_vw_forum "
                         + "set description=? "
                         + "where tenant_id = ? and forum_id = ?");
@@ -96,10 +99,8 @@ public class MySQLForumProjection
     }
 
     protected void when(ForumModeratorChanged anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "update tbl_vw_forum "
                         + "set moderator_email_address=?, moderator_identity=?, moderator_name=?  "
                         + "where tenant_id = ? and forum_id = ?");
@@ -114,10 +115,8 @@ public class MySQLForumProjection
     }
 
     protected void when(ForumReopened anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "update tbl_vw_forum "
                         + "set closed=0 "
                         + "where tenant_id = ? and forum_id = ?");
@@ -129,26 +128,17 @@ public class MySQLForumProjection
     }
 
     protected void when(ForumStarted anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         // idempotent operation
-        if (this.exists(
-                "select forum_id from tbl_vw_forum "
-                    + "where tenant_id = ? and forum_id = ?",
-                anEvent.tenant().id(),
-                anEvent.forumId().id())) {
-            return;
-        }
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "insert into tbl_vw_forum( "
                         + "forum_id, closed, "
                         + "creator_email_address, creator_identity, creator_name, "
                         + "description, exclusive_owner, "
                         + "moderator_email_address, moderator_identity, moderator_name, "
                         + "subject, tenant_id"
-                        + ") values(?,?,?,?,?,?,?,?,?,?,?,?)");
+                        + ") values(?,?,?,?,?,?,?,?,?,?,?,?) "
+                        + "on duplicate key update forum_id=forum_id");
 
         statement.setString(1, anEvent.forumId().id());
         statement.setInt(2, 0);
@@ -167,10 +157,8 @@ public class MySQLForumProjection
     }
 
     protected void when(ForumSubjectChanged anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "update tbl_vw_forum "
                         + "set subject=? "
                         + "where tenant_id = ? and forum_id = ?");
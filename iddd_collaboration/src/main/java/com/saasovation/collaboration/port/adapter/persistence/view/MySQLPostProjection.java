@@ -14,7 +14,6 @@
 
 package com.saasovation.collaboration.port.adapter.persistence.view;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 
 import com.saasovation.collaboration.domain.model.forum.PostContentAltered;
@@ -22,7 +21,6 @@ import com.saasovation.collaboration.domain.model.forum.PostedToDiscussion;
 import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
 import com.saasovation.common.event.sourcing.EventDispatcher;
 import com.saasovation.common.port.adapter.persistence.AbstractProjection;
-import com.saasovation.common.port.adapter.persistence.ConnectionProvider;
 
 public class MySQLPostProjection extends AbstractProjection implements EventDispatcher {
 
@@ -31,6 +29,10 @@ public class MySQLPostProjection extends AbstractProjection implements EventDisp
         PostedToDiscussion.class
     };
 
+    private static final String viewTables[] = {
+        "tbl_vw_post"
+    };
+
     public MySQLPostProjection(EventDispatcher aParentEventDispatcher) {
         super();
 
@@ -54,11 +56,14 @@ public class MySQLPostProjection extends AbstractProjection implements EventDisp
                 understoodEventTypes);
     }
 
-    protected void when(PostContentAltered anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
+    @Override
+    public String[] viewTables() {
+        return viewTables.clone();
+    }
 
+    protected void when(PostContentAltered anEvent) throws Exception {
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "update tbl_vw_post "
                         + "set body_text=?, subject=?, changed_on=? "
                         + "where tenant_id = ? and forum_id = ?");
@@ -73,26 +78,17 @@ public class MySQLPostProjection extends AbstractProjection implements EventDisp
     }
 
     protected void when(PostedToDiscussion anEvent) throws Exception {
-        Connection connection = ConnectionProvider.connection();
-
         // idempotent operation
-        if (this.exists(
-                "select post_id from tbl_vw_post "
-                    + "where tenant_id = ? and post_id = ?",
-                anEvent.tenant().id(),
-                anEvent.postId().id())) {
-            return;
-        }
-
         PreparedStatement statement =
-                connection.prepareStatement(
+                this.prepareStatement(
                         "insert into tbl_vw_post( "
                         + "post_id, "
                         + "author_email_address, author_identity, author_name, "
                         + "body_text, changed_on, created_on, "
                         + "discussion_id, forum_id, reply_to_post_id, "
                         + "subject, tenant_id"
-                        + ") values(?,?,?,?,?,?,?,?,?,?,?,?)");
+                        + ") values(?,?,?,?,?,?,?,?,?,?,?,?) "
+                        + "on duplicate key update post_id=post_id");
 
         statement.setString(1, anEvent.postId().id());
         statement.setString(2, anEvent.author().emailAddress());
@@ -14,34 +14,148 @@
 
 package com.saasovation.collaboration.port.adapter.persistence.view;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.saasovation.collaboration.domain.model.tenant.Tenant;
+import com.saasovation.collaboration.port.adapter.persistence.EventStoreProvider;
+import com.saasovation.common.domain.model.DomainEvent;
 import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
 import com.saasovation.common.event.sourcing.EventDispatcher;
+import com.saasovation.common.event.sourcing.EventStore;
+import com.saasovation.common.port.adapter.persistence.AbstractProjection;
+import com.saasovation.common.port.adapter.persistence.ConnectionProvider;
 
+/**
+ * I dispatch events to each registered projection on a pool of
+ * workers. Each projection is partitioned by tenant, and each
+ * partition projects its events in order and keeps its own
+ * checkpoint, so a slow projection never holds back the others.
+ * All streams of a tenant share a partition, which preserves
+ * the order of every stream. A batch that fails stays pending
+ * and is retried after a growing delay, even when no further
+ * events arrive for its partition.
+ */
 public class MySQLProjectionDispatcher implements EventDispatcher {
 
-    private List<EventDispatcher> registeredProjections;
+    private static final int CATCH_UP_BATCH_SIZE = 500;
+    private static final int MAX_EVENTS_PER_COMMIT = 100;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60000L;
+    private static final int PARTITION_QUEUE_CAPACITY = 10000;
+    private static final MethodType TENANT_TYPE =
+            MethodType.methodType(Tenant.class, DomainEvent.class);
+
+    static final long MIN_RETRY_DELAY_MILLIS = 1000L;
+
+    // changing this remaps tenants to other checkpoints,
+    // so the views must be rebuilt when it changes
+    static final int PARTITIONS_PER_PROJECTION = 4;
+
+    private static final Log log = LogFactory.getLog(MySQLProjectionDispatcher.class);
+
+    private static final ClassValue<MethodHandle> tenantMethods =
+            new ClassValue<MethodHandle>() {
+                @Override
+                protected MethodHandle computeValue(Class<?> anEventType) {
+                    try {
+                        Method method = anEventType.getMethod("tenant");
+
+                        if (Tenant.class.isAssignableFrom(method.getReturnType())) {
+                            return MethodHandles
+                                        .lookup()
+                                        .unreflect(method)
+                                        .asType(TENANT_TYPE);
+                        }
+                    } catch (NoSuchMethodException e) {
+                        // fall through
+                    } catch (IllegalAccessException e) {
+                        // fall through
+                    }
+
+                    return null;
+                }
+            };
+
+    private DataSource collaborationDataSource;
+    private List<RegisteredProjection> registeredProjections;
+    private ScheduledExecutorService workers;
+
+    public MySQLProjectionDispatcher(
+            EventDispatcher aParentEventDispatcher,
+            DataSource aDataSource) {
 
-    public MySQLProjectionDispatcher(EventDispatcher aParentEventDispatcher) {
         super();
 
-        aParentEventDispatcher.registerEventDispatcher(this);
+        this.setCollaborationDataSource(aDataSource);
+        this.setRegisteredProjections(new CopyOnWriteArrayList<RegisteredProjection>());
+        this.setWorkers(
+                Executors.newScheduledThreadPool(
+                        Runtime.getRuntime().availableProcessors(),
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable aRunnable) {
+                                Thread thread = new Thread(aRunnable, "projection-worker");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        }));
 
-        this.setRegisteredProjections(new ArrayList<EventDispatcher>());
+        aParentEventDispatcher.registerEventDispatcher(this);
     }
 
     @Override
     public void dispatch(DispatchableDomainEvent aDispatchableDomainEvent) {
-        for (EventDispatcher projection : this.registeredProjections()) {
+        for (RegisteredProjection projection : this.registeredProjections()) {
             projection.dispatch(aDispatchableDomainEvent);
         }
     }
 
     @Override
     public void registerEventDispatcher(EventDispatcher aProjection) {
-        this.registeredProjections().add(aProjection);
+
+        String projectionName = aProjection.getClass().getSimpleName();
+
+        long[] checkpoints = this.queryCheckpoints(projectionName);
+
+        RegisteredProjection projection =
+                new RegisteredProjection(aProjection, projectionName, checkpoints);
+
+        // the live events dispatched while the projection catches
+        // up are held, since queuing a newer one first would drop
+        // the older events that catch-up has yet to read
+
+        this.registeredProjections().add(projection);
+
+        try {
+            this.catchUp(projection, projection.lowestCheckpoint());
+
+        } catch (RuntimeException e) {
+            this.registeredProjections().remove(projection);
+
+            throw e;
+        }
+
+        projection.releaseHeldEvents();
     }
 
     @Override
@@ -49,11 +163,403 @@ public class MySQLProjectionDispatcher implements EventDispatcher {
         return true;
     }
 
-    private List<EventDispatcher> registeredProjections() {
+    private void catchUp(RegisteredProjection aProjection, long aLastProjectedEventId) {
+
+        // the parent dispatcher may have moved past
+        // events that this projection never committed
+
+        EventStore eventStore = EventStoreProvider.instance().eventStore();
+
+        long lastEventId = aLastProjectedEventId;
+
+        boolean more = true;
+
+        while (more) {
+            List<DispatchableDomainEvent> events =
+                    eventStore.eventsSince(lastEventId, CATCH_UP_BATCH_SIZE);
+
+            for (DispatchableDomainEvent event : events) {
+                aProjection.enqueue(event);
+
+                lastEventId = event.eventId();
+            }
+
+            more = events.size() == CATCH_UP_BATCH_SIZE;
+        }
+    }
+
+    private DataSource collaborationDataSource() {
+        return this.collaborationDataSource;
+    }
+
+    private void setCollaborationDataSource(DataSource aDataSource) {
+        this.collaborationDataSource = aDataSource;
+    }
+
+    static int partitionOf(DomainEvent aDomainEvent) {
+
+        MethodHandle tenantMethod = tenantMethods.get(aDomainEvent.getClass());
+
+        if (tenantMethod == null) {
+            return 0;
+        }
+
+        try {
+            Tenant tenant = (Tenant) tenantMethod.invokeExact(aDomainEvent);
+
+            int hash = tenant.id().hashCode();
+
+            return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % PARTITIONS_PER_PROJECTION;
+
+        } catch (Throwable t) {
+            throw new IllegalStateException(
+                    "Cannot partition event: "
+                        + aDomainEvent.getClass().getName()
+                        + " because: "
+                        + t.getMessage(),
+                    t);
+        }
+    }
+
+    private long[] queryCheckpoints(String aProjectionName) {
+
+        long[] checkpoints = new long[PARTITIONS_PER_PROJECTION];
+
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet result = null;
+
+        try {
+            connection = this.collaborationDataSource().getConnection();
+
+            statement =
+                    connection.prepareStatement(
+                            "select partition_id, event_id from tbl_projection_checkpoint "
+                            + "where projection_name = ?");
+
+            statement.setString(1, aProjectionName);
+
+            result = statement.executeQuery();
+
+            while (result.next()) {
+                int partition = result.getInt("partition_id");
+
+                if (partition < PARTITIONS_PER_PROJECTION) {
+                    checkpoints[partition] = result.getLong("event_id");
+                }
+            }
+
+            connection.commit();
+
+        } catch (Exception e) {
+            throw new IllegalStateException(
+                    "Cannot query projection checkpoints for: "
+                        + aProjectionName
+                        + " because: "
+                        + e.getMessage(),
+                    e);
+        } finally {
+            close(result);
+            close(statement);
+            close(connection);
+        }
+
+        return checkpoints;
+    }
+
+    static void saveCheckpoint(
+            Connection aConnection,
+            String aProjectionName,
+            int aPartition,
+            long anEventId)
+    throws Exception {
+
+        PreparedStatement statement = null;
+
+        try {
+            statement =
+                    aConnection.prepareStatement(
+                            "insert into tbl_projection_checkpoint values(?, ?, ?) "
+                            + "on duplicate key update event_id = values(event_id)");
+
+            statement.setString(1, aProjectionName);
+            statement.setInt(2, aPartition);
+            statement.setLong(3, anEventId);
+
+            statement.executeUpdate();
+
+        } finally {
+            close(statement);
+        }
+    }
+
+    static void close(AutoCloseable aResource) {
+        if (aResource != null) {
+            try {
+                aResource.close();
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+    }
+
+    private List<RegisteredProjection> registeredProjections() {
         return this.registeredProjections;
     }
 
-    private void setRegisteredProjections(List<EventDispatcher> aDispatchers) {
-        this.registeredProjections = aDispatchers;
+    private void setRegisteredProjections(List<RegisteredProjection> aProjections) {
+        this.registeredProjections = aProjections;
+    }
+
+    private ScheduledExecutorService workers() {
+        return this.workers;
+    }
+
+    private void setWorkers(ScheduledExecutorService aWorkers) {
+        this.workers = aWorkers;
+    }
+
+    private class RegisteredProjection {
+
+        private List<DispatchableDomainEvent> heldEvents;
+        private ProjectionPartition[] partitions;
+        private EventDispatcher projection;
+
+        RegisteredProjection(
+                EventDispatcher aProjection,
+                String aProjectionName,
+                long[] aCheckpoints) {
+
+            super();
+
+            this.heldEvents = new ArrayList<DispatchableDomainEvent>();
+            this.projection = aProjection;
+            this.partitions = new ProjectionPartition[aCheckpoints.length];
+
+            for (int idx = 0; idx < aCheckpoints.length; ++idx) {
+                this.partitions[idx] =
+                        new ProjectionPartition(
+                                aProjection,
+                                aProjectionName,
+                                idx,
+                                aCheckpoints[idx]);
+            }
+        }
+
+        void dispatch(DispatchableDomainEvent aDispatchableDomainEvent) {
+            synchronized (this) {
+                if (this.heldEvents != null) {
+                    this.heldEvents.add(aDispatchableDomainEvent);
+
+                    return;
+                }
+            }
+
+            this.enqueue(aDispatchableDomainEvent);
+        }
+
+        void enqueue(DispatchableDomainEvent aDispatchableDomainEvent) {
+            if (this.projection.understands(aDispatchableDomainEvent)) {
+                int partition = partitionOf(aDispatchableDomainEvent.domainEvent());
+
+                this.partitions[partition].enqueue(aDispatchableDomainEvent);
+            }
+        }
+
+        long lowestCheckpoint() {
+            long lowest = Long.MAX_VALUE;
+
+            for (ProjectionPartition partition : this.partitions) {
+                lowest = Math.min(lowest, partition.lastQueuedEventId());
+            }
+
+            return lowest;
+        }
+
+        void releaseHeldEvents() {
+
+            // events held while these are queued are held
+            // too, until none is left to release
+
+            while (true) {
+                List<DispatchableDomainEvent> events = null;
+
+                synchronized (this) {
+                    if (this.heldEvents.isEmpty()) {
+                        this.heldEvents = null;
+
+                        return;
+                    }
+
+                    events = this.heldEvents;
+
+                    this.heldEvents = new ArrayList<DispatchableDomainEvent>();
+                }
+
+                for (DispatchableDomainEvent event : events) {
+                    this.enqueue(event);
+                }
+            }
+        }
+    }
+
+    private class ProjectionPartition implements Runnable {
+
+        private long lastQueuedEventId;
+        private int partition;
+        private List<DispatchableDomainEvent> pending;
+        private EventDispatcher projection;
+        private String projectionName;
+        private BlockingQueue<DispatchableDomainEvent> queue;
+        private long retryDelayMillis;
+        private AtomicBoolean scheduled;
+
+        ProjectionPartition(
+                EventDispatcher aProjection,
+                String aProjectionName,
+                int aPartition,
+                long aCheckpoint) {
+
+            super();
+
+            this.lastQueuedEventId = aCheckpoint;
+            this.partition = aPartition;
+            this.pending = new ArrayList<DispatchableDomainEvent>();
+            this.projection = aProjection;
+            this.projectionName = aProjectionName;
+            this.queue = new LinkedBlockingQueue<DispatchableDomainEvent>(PARTITION_QUEUE_CAPACITY);
+            this.retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+            this.scheduled = new AtomicBoolean(false);
+        }
+
+        synchronized void enqueue(DispatchableDomainEvent aDispatchableDomainEvent) {
+
+            // both catch-up and the parent dispatcher may
+            // deliver an event, but it is queued only once
+
+            if (aDispatchableDomainEvent.eventId() <= this.lastQueuedEventId) {
+                return;
+            }
+
+            try {
+                while (!this.queue.offer(aDispatchableDomainEvent, 100L, TimeUnit.MILLISECONDS)) {
+                    this.schedule();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new IllegalStateException(
+                        "Interrupted while dispatching to: " + this.projectionName, e);
+            }
+
+            this.lastQueuedEventId = aDispatchableDomainEvent.eventId();
+
+            this.schedule();
+        }
+
+        synchronized long lastQueuedEventId() {
+            return this.lastQueuedEventId;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // a failed batch stays pending and is retried
+                // first, ahead of anything queued behind it
+
+                if (this.pending.isEmpty()) {
+                    this.queue.drainTo(this.pending, MAX_EVENTS_PER_COMMIT);
+                }
+
+                if (!this.pending.isEmpty()) {
+                    this.project(this.pending);
+
+                    this.pending.clear();
+                }
+
+                this.retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+
+            } catch (Throwable t) {
+                log.error(
+                        "Cannot project to: "
+                            + this.projectionName
+                            + " partition: "
+                            + this.partition
+                            + " because: "
+                            + t.getMessage()
+                            + " (retrying in "
+                            + this.retryDelayMillis
+                            + " ms)",
+                        t);
+
+                this.scheduleRetry();
+
+                return;
+            }
+
+            this.scheduled.set(false);
+
+            if (!this.queue.isEmpty()) {
+                this.schedule();
+            }
+        }
+
+        private void project(List<DispatchableDomainEvent> anEvents) throws Exception {
+
+            Connection connection =
+                    ConnectionProvider
+                        .connection(collaborationDataSource());
+
+            try {
+                if (this.projection instanceof AbstractProjection) {
+                    ((AbstractProjection) this.projection).dispatchBatch(anEvents);
+                } else {
+                    for (DispatchableDomainEvent event : anEvents) {
+                        this.projection.dispatch(event);
+                    }
+                }
+
+                DispatchableDomainEvent withLastEventId =
+                        anEvents.get(anEvents.size() - 1);
+
+                saveCheckpoint(
+                        connection,
+                        this.projectionName,
+                        this.partition,
+                        withLastEventId.eventId());
+
+                connection.commit();
+
+            } catch (Exception e) {
+                try {
+                    connection.rollback();
+                } catch (Exception re) {
+                    // ignore
+                }
+
+                throw e;
+
+            } finally {
+                ConnectionProvider.closeConnection();
+            }
+        }
+
+        private void schedule() {
+            if (this.scheduled.compareAndSet(false, true)) {
+                workers().execute(this);
+            }
+        }
+
+        private void scheduleRetry() {
+
+            // the partition stays scheduled until the retry runs, so
+            // new events only queue up behind the pending batch
+
+            long delay = this.retryDelayMillis;
+
+            this.retryDelayMillis = Math.min(delay * 2L, MAX_RETRY_DELAY_MILLIS);
+
+            workers().schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
     }
 }
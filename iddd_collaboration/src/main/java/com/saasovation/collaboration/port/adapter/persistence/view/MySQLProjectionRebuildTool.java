@@ -0,0 +1,582 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.collaboration.port.adapter.persistence.view;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import com.saasovation.collaboration.port.adapter.persistence.EventStoreProvider;
+import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
+import com.saasovation.common.event.sourcing.EventDispatcher;
+import com.saasovation.common.event.sourcing.EventStore;
+import com.saasovation.common.port.adapter.persistence.AbstractProjection;
+import com.saasovation.common.port.adapter.persistence.ConnectionProvider;
+
+/**
+ * I rebuild the tbl_vw_* tables of the registered projections from
+ * the whole event store. The projections write to shadow tables in
+ * tenant partitions on a pool of workers, and the shadow tables
+ * replace the live ones in a single RENAME TABLE when all events
+ * are projected. Tables of other projections are left alone. Live
+ * dispatching should be stopped while I run; main() runs me with
+ * the projections of applicationContext-collaboration-rebuild.xml.
+ */
+public class MySQLProjectionRebuildTool implements EventDispatcher {
+
+    private static final long PROGRESS_INTERVAL_MILLIS = 5000L;
+    private static final int READ_BATCH_SIZE = 1000;
+    private static final String RETIRED_TABLE_SUFFIX = "_retired";
+    private static final String SHADOW_TABLE_SUFFIX = "_rebuild";
+    private static final int WORKER_QUEUE_CAPACITY = 64;
+
+    private static final Pattern VIEW_TABLE_NAME = Pattern.compile("tbl_vw_\\w+");
+
+    private static final RebuildBatch NO_MORE_BATCHES = new RebuildBatch(null, null);
+
+    private static final Log log = LogFactory.getLog(MySQLProjectionRebuildTool.class);
+
+    private DataSource collaborationDataSource;
+    private List<AbstractProjection> registeredProjections;
+    private int workerCount;
+
+    public MySQLProjectionRebuildTool(DataSource aDataSource, int aWorkerCount) {
+        super();
+
+        if (aWorkerCount <= 0) {
+            throw new IllegalArgumentException("The worker count must be greater than zero.");
+        }
+
+        this.setCollaborationDataSource(aDataSource);
+        this.setRegisteredProjections(new ArrayList<AbstractProjection>());
+        this.setWorkerCount(aWorkerCount);
+    }
+
+    public static void main(String[] anArguments) {
+        ClassPathXmlApplicationContext applicationContext =
+                new ClassPathXmlApplicationContext("applicationContext-collaboration-rebuild.xml");
+
+        try {
+            MySQLProjectionRebuildTool rebuildTool =
+                    (MySQLProjectionRebuildTool)
+                        applicationContext.getBean("mysqlProjectionRebuildTool");
+
+            rebuildTool.rebuild();
+
+        } finally {
+            applicationContext.close();
+        }
+    }
+
+    @Override
+    public void dispatch(DispatchableDomainEvent aDispatchableDomainEvent) {
+
+        // projects one event to the live tables, such as one
+        // appended after a rebuild, and advances the checkpoint
+        // of its partition for each projection that understands it
+
+        int partition = MySQLProjectionDispatcher.partitionOf(aDispatchableDomainEvent.domainEvent());
+
+        List<DispatchableDomainEvent> events = Collections.singletonList(aDispatchableDomainEvent);
+
+        Connection connection =
+                ConnectionProvider
+                    .connection(this.collaborationDataSource());
+
+        try {
+            for (AbstractProjection projection : this.registeredProjections()) {
+                if (projection.understands(aDispatchableDomainEvent)) {
+                    projection.dispatchBatch(events);
+
+                    MySQLProjectionDispatcher.saveCheckpoint(
+                            connection,
+                            projection.getClass().getSimpleName(),
+                            partition,
+                            aDispatchableDomainEvent.eventId());
+                }
+            }
+
+            connection.commit();
+
+        } catch (Exception e) {
+            try {
+                connection.rollback();
+            } catch (Exception re) {
+                // ignore
+            }
+
+            throw new IllegalStateException(
+                    "Cannot project event: "
+                        + aDispatchableDomainEvent.eventId()
+                        + " because: "
+                        + e.getMessage(),
+                    e);
+        } finally {
+            ConnectionProvider.closeConnection();
+        }
+    }
+
+    public long rebuild() {
+        if (this.registeredProjections().isEmpty()) {
+            throw new IllegalStateException("There are no projections to rebuild.");
+        }
+
+        List<String> viewTables = this.viewTablesOfRegisteredProjections();
+
+        this.createShadowTables(viewTables);
+
+        long lastEventId = this.projectAllEvents();
+
+        this.swapShadowTables(viewTables);
+
+        this.saveCheckpoints(lastEventId);
+
+        return lastEventId;
+    }
+
+    @Override
+    public void registerEventDispatcher(EventDispatcher aProjection) {
+        if (!(aProjection instanceof AbstractProjection)) {
+            throw new IllegalArgumentException(
+                    "Can rebuild only an AbstractProjection, not: "
+                        + aProjection.getClass().getName());
+        }
+
+        for (String viewTable : ((AbstractProjection) aProjection).viewTables()) {
+            if (!VIEW_TABLE_NAME.matcher(viewTable).matches()) {
+                throw new IllegalArgumentException(
+                        "Can rebuild only tbl_vw_* tables, not: "
+                            + viewTable
+                            + " of: "
+                            + aProjection.getClass().getName());
+            }
+        }
+
+        this.registeredProjections().add((AbstractProjection) aProjection);
+    }
+
+    @Override
+    public boolean understands(DispatchableDomainEvent aDispatchableDomainEvent) {
+        return true;
+    }
+
+    private DataSource collaborationDataSource() {
+        return this.collaborationDataSource;
+    }
+
+    private void setCollaborationDataSource(DataSource aDataSource) {
+        this.collaborationDataSource = aDataSource;
+    }
+
+    private void createShadowTables(List<String> aViewTables) {
+        List<String> statements = new ArrayList<String>();
+
+        for (String viewTable : aViewTables) {
+            statements.add("drop table if exists " + viewTable + SHADOW_TABLE_SUFFIX);
+            statements.add("create table " + viewTable + SHADOW_TABLE_SUFFIX + " like " + viewTable);
+        }
+
+        this.executeAll(statements);
+    }
+
+    private void executeAll(List<String> aStatements) {
+        Connection connection = null;
+        Statement statement = null;
+
+        try {
+            connection = this.collaborationDataSource().getConnection();
+
+            statement = connection.createStatement();
+
+            for (String sql : aStatements) {
+                statement.execute(sql);
+            }
+
+            connection.commit();
+
+        } catch (Exception e) {
+            throw new IllegalStateException(
+                    "Cannot alter projection tables because: "
+                        + e.getMessage(),
+                    e);
+        } finally {
+            MySQLProjectionDispatcher.close(statement);
+            MySQLProjectionDispatcher.close(connection);
+        }
+    }
+
+    private long projectAllEvents() {
+
+        long targetEventId = this.queryLastDispatchedEventId();
+
+        RebuildWorker[] workers = new RebuildWorker[this.workerCount()];
+
+        for (int idx = 0; idx < workers.length; ++idx) {
+            workers[idx] = new RebuildWorker();
+            workers[idx].start();
+        }
+
+        EventStore eventStore = EventStoreProvider.instance().eventStore();
+
+        long lastEventId = 0;
+        long readEvents = 0;
+        long startedAt = System.currentTimeMillis();
+        long reportedAt = startedAt;
+
+        try {
+            boolean more = true;
+
+            while (more) {
+                List<DispatchableDomainEvent> events =
+                        eventStore.eventsSince(lastEventId, READ_BATCH_SIZE);
+
+                this.submit(events, workers);
+
+                if (!events.isEmpty()) {
+                    lastEventId = events.get(events.size() - 1).eventId();
+                    readEvents += events.size();
+                }
+
+                more = events.size() == READ_BATCH_SIZE;
+
+                long now = System.currentTimeMillis();
+
+                if (!more || now - reportedAt >= PROGRESS_INTERVAL_MILLIS) {
+                    this.reportProgress(readEvents, lastEventId, targetEventId, now - startedAt);
+
+                    reportedAt = now;
+                }
+            }
+
+        } finally {
+            for (RebuildWorker worker : workers) {
+                worker.finish();
+            }
+        }
+
+        for (RebuildWorker worker : workers) {
+            worker.confirmSucceeded();
+        }
+
+        return lastEventId;
+    }
+
+    private long queryLastDispatchedEventId() {
+        Connection connection = null;
+        Statement statement = null;
+        ResultSet result = null;
+
+        long lastDispatchedEventId = 0;
+
+        try {
+            connection = this.collaborationDataSource().getConnection();
+
+            statement = connection.createStatement();
+
+            result = statement.executeQuery("select max(event_id) from tbl_dispatcher_last_event");
+
+            if (result.next()) {
+                lastDispatchedEventId = result.getLong(1);
+            }
+
+            connection.commit();
+
+        } catch (Exception e) {
+            throw new IllegalStateException(
+                    "Cannot query the last dispatched event because: "
+                        + e.getMessage(),
+                    e);
+        } finally {
+            MySQLProjectionDispatcher.close(result);
+            MySQLProjectionDispatcher.close(statement);
+            MySQLProjectionDispatcher.close(connection);
+        }
+
+        return lastDispatchedEventId;
+    }
+
+    private List<AbstractProjection> registeredProjections() {
+        return this.registeredProjections;
+    }
+
+    private void setRegisteredProjections(List<AbstractProjection> aProjections) {
+        this.registeredProjections = aProjections;
+    }
+
+    private void reportProgress(
+            long aReadEvents,
+            long aLastEventId,
+            long aTargetEventId,
+            long anElapsedMillis) {
+
+        long eventsPerSecond = aReadEvents * 1000L / Math.max(1L, anElapsedMillis);
+
+        String eta = "unknown";
+
+        if (aLastEventId >= aTargetEventId) {
+            eta = "0s";
+        } else if (eventsPerSecond > 0) {
+            eta = ((aTargetEventId - aLastEventId) / eventsPerSecond) + "s";
+        }
+
+        log.info(
+                "Rebuilt projections through event: "
+                + aLastEventId
+                + " of: "
+                + aTargetEventId
+                + " at: "
+                + eventsPerSecond
+                + " events/s ETA: "
+                + eta);
+    }
+
+    private void saveCheckpoints(long aLastEventId) {
+        Connection connection = null;
+
+        try {
+            connection = this.collaborationDataSource().getConnection();
+
+            for (AbstractProjection projection : this.registeredProjections()) {
+                String projectionName = projection.getClass().getSimpleName();
+
+                for (int idx = 0; idx < MySQLProjectionDispatcher.PARTITIONS_PER_PROJECTION; ++idx) {
+                    MySQLProjectionDispatcher.saveCheckpoint(connection, projectionName, idx, aLastEventId);
+                }
+            }
+
+            connection.commit();
+
+        } catch (Exception e) {
+            throw new IllegalStateException(
+                    "Cannot save projection checkpoints because: "
+                        + e.getMessage(),
+                    e);
+        } finally {
+            MySQLProjectionDispatcher.close(connection);
+        }
+    }
+
+    private void submit(List<DispatchableDomainEvent> anEvents, RebuildWorker[] aWorkers) {
+
+        // each projection partition always goes to the same
+        // worker, which projects its batches in order
+
+        int partitions = MySQLProjectionDispatcher.PARTITIONS_PER_PROJECTION;
+
+        List<AbstractProjection> projections = this.registeredProjections();
+
+        List<List<DispatchableDomainEvent>> lanes =
+                new ArrayList<List<DispatchableDomainEvent>>(projections.size() * partitions);
+
+        for (int idx = 0; idx < projections.size() * partitions; ++idx) {
+            lanes.add(new ArrayList<DispatchableDomainEvent>());
+        }
+
+        for (DispatchableDomainEvent event : anEvents) {
+            int partition = MySQLProjectionDispatcher.partitionOf(event.domainEvent());
+
+            for (int idx = 0; idx < projections.size(); ++idx) {
+                if (projections.get(idx).understands(event)) {
+                    lanes.get(idx * partitions + partition).add(event);
+                }
+            }
+        }
+
+        for (int lane = 0; lane < lanes.size(); ++lane) {
+            if (!lanes.get(lane).isEmpty()) {
+                aWorkers[lane % aWorkers.length].submit(
+                        new RebuildBatch(
+                                projections.get(lane / partitions),
+                                lanes.get(lane)));
+            }
+        }
+    }
+
+    private void swapShadowTables(List<String> aViewTables) {
+        if (aViewTables.isEmpty()) {
+            return;
+        }
+
+        List<String> statements = new ArrayList<String>();
+
+        StringBuilder rename = new StringBuilder("rename table ");
+
+        for (String viewTable : aViewTables) {
+            statements.add("drop table if exists " + viewTable + RETIRED_TABLE_SUFFIX);
+
+            if (rename.length() > "rename table ".length()) {
+                rename.append(", ");
+            }
+
+            rename
+                .append(viewTable).append(" to ").append(viewTable).append(RETIRED_TABLE_SUFFIX)
+                .append(", ")
+                .append(viewTable).append(SHADOW_TABLE_SUFFIX).append(" to ").append(viewTable);
+        }
+
+        // one statement, so readers never see a partial swap
+
+        statements.add(rename.toString());
+
+        for (String viewTable : aViewTables) {
+            statements.add("drop table " + viewTable + RETIRED_TABLE_SUFFIX);
+        }
+
+        this.executeAll(statements);
+    }
+
+    private List<String> viewTablesOfRegisteredProjections() {
+
+        // projections may share a table, which is rebuilt once
+
+        Set<String> viewTables = new LinkedHashSet<String>();
+
+        for (AbstractProjection projection : this.registeredProjections()) {
+            Collections.addAll(viewTables, projection.viewTables());
+        }
+
+        return new ArrayList<String>(viewTables);
+    }
+
+    private int workerCount() {
+        return this.workerCount;
+    }
+
+    private void setWorkerCount(int aWorkerCount) {
+        this.workerCount = aWorkerCount;
+    }
+
+    private static class RebuildBatch {
+
+        private List<DispatchableDomainEvent> events;
+        private AbstractProjection projection;
+
+        RebuildBatch(AbstractProjection aProjection, List<DispatchableDomainEvent> anEvents) {
+            super();
+
+            this.events = anEvents;
+            this.projection = aProjection;
+        }
+
+        List<DispatchableDomainEvent> events() {
+            return this.events;
+        }
+
+        AbstractProjection projection() {
+            return this.projection;
+        }
+    }
+
+    private class RebuildWorker extends Thread {
+
+        private BlockingQueue<RebuildBatch> batches;
+        private volatile Throwable failure;
+
+        RebuildWorker() {
+            super("projection-rebuild-worker");
+
+            this.batches = new LinkedBlockingQueue<RebuildBatch>(WORKER_QUEUE_CAPACITY);
+
+            this.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                RebuildBatch batch = this.batches.take();
+
+                while (batch != NO_MORE_BATCHES) {
+                    if (this.failure == null) {
+                        this.project(batch);
+                    }
+
+                    batch = this.batches.take();
+                }
+
+            } catch (InterruptedException e) {
+                this.failure = e;
+            }
+        }
+
+        void confirmSucceeded() {
+            if (this.failure != null) {
+                throw new IllegalStateException(
+                        "Cannot rebuild projections because: "
+                            + this.failure.getMessage(),
+                        this.failure);
+            }
+        }
+
+        void finish() {
+            try {
+                this.batches.put(NO_MORE_BATCHES);
+
+                this.join();
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void submit(RebuildBatch aBatch) {
+            this.confirmSucceeded();
+
+            try {
+                this.batches.put(aBatch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new IllegalStateException("Interrupted while rebuilding projections.", e);
+            }
+        }
+
+        private void project(RebuildBatch aBatch) {
+            Connection connection =
+                    ConnectionProvider
+                        .connection(collaborationDataSource());
+
+            try {
+                aBatch.projection().dispatchBatch(aBatch.events(), SHADOW_TABLE_SUFFIX);
+
+                connection.commit();
+
+            } catch (Throwable t) {
+                this.failure = t;
+
+                try {
+                    connection.rollback();
+                } catch (Exception e) {
+                    // ignore
+                }
+            } finally {
+                ConnectionProvider.closeConnection();
+            }
+        }
+    }
+}
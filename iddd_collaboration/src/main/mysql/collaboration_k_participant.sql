@@ -0,0 +1,26 @@
+-- Adds the k_participant unique keys to a database created before
+-- collaboration.sql declared them. Duplicate participant rows, which
+-- the projections could write before their upserts relied on the
+-- keys, are removed first, keeping the earliest row of each.
+
+USE iddd_collaboration;
+
+DELETE duplicate FROM `tbl_vw_calendar_entry_invitee` duplicate
+    JOIN `tbl_vw_calendar_entry_invitee` kept
+    ON kept.`tenant_id` = duplicate.`tenant_id`
+    AND kept.`calendar_entry_id` = duplicate.`calendar_entry_id`
+    AND kept.`participant_identity` = duplicate.`participant_identity`
+    AND kept.`id` < duplicate.`id`;
+
+ALTER TABLE `tbl_vw_calendar_entry_invitee`
+    ADD UNIQUE KEY `k_participant` (`tenant_id`,`calendar_entry_id`,`participant_identity`);
+
+DELETE duplicate FROM `tbl_vw_calendar_sharer` duplicate
+    JOIN `tbl_vw_calendar_sharer` kept
+    ON kept.`tenant_id` = duplicate.`tenant_id`
+    AND kept.`calendar_id` = duplicate.`calendar_id`
+    AND kept.`participant_identity` = duplicate.`participant_identity`
+    AND kept.`id` < duplicate.`id`;
+
+ALTER TABLE `tbl_vw_calendar_sharer`
+    ADD UNIQUE KEY `k_participant` (`tenant_id`,`calendar_id`,`participant_identity`);
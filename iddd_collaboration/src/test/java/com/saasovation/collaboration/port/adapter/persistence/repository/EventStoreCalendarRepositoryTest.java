@@ -0,0 +1,214 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.collaboration.port.adapter.persistence.repository;
+
+import junit.framework.TestCase;
+
+import com.saasovation.collaboration.domain.model.calendar.Calendar;
+import com.saasovation.collaboration.domain.model.collaborator.Owner;
+import com.saasovation.collaboration.domain.model.tenant.Tenant;
+import com.saasovation.common.event.sourcing.AggregateSnapshot;
+import com.saasovation.common.event.sourcing.EventStream;
+import com.saasovation.common.event.sourcing.EventStreamId;
+import com.saasovation.common.event.sourcing.SnapshotStore;
+import com.saasovation.common.serializer.ObjectSerializer;
+
+public class EventStoreCalendarRepositoryTest extends TestCase {
+
+    private EventStoreCalendarRepository calendarRepository;
+    private Tenant tenant;
+
+    public EventStoreCalendarRepositoryTest() {
+        super();
+    }
+
+    public void testCalendarOfIdFromSnapshotAndTrailingEvents() throws Exception {
+
+        Calendar calendar = this.calendarOfOneHundredEvents();
+
+        EventStreamId eventId = this.eventIdOf(calendar);
+
+        AggregateSnapshot snapshot =
+                this.calendarRepository.snapshotStore().snapshotOf(eventId.streamName());
+
+        assertNotNull(snapshot);
+        assertEquals(100, snapshot.streamVersion());
+
+        // the snapshot alone holds this description, so only a
+        // calendar restored from it can answer it
+
+        Calendar heldBySnapshot = this.fullStreamCalendarOf(eventId);
+        heldBySnapshot.changeDescription("Held by the snapshot.");
+
+        this.calendarRepository.snapshotStore().purge();
+        this.calendarRepository.snapshotStore().save(
+                new AggregateSnapshot(
+                        eventId.streamName(),
+                        100,
+                        Calendar.class.getName(),
+                        ObjectSerializer.instance().serialize(heldBySnapshot)));
+
+        calendar = this.calendarRepository.calendarOfId(this.tenant, calendar.calendarId());
+        calendar.rename("Trailing Name 1");
+        calendar.rename("Trailing Name 2");
+        this.calendarRepository.save(calendar);
+
+        calendar = this.calendarRepository.calendarOfId(this.tenant, calendar.calendarId());
+
+        assertEquals("Trailing Name 2", calendar.name());
+        assertEquals("Held by the snapshot.", calendar.description());
+        assertEquals("jdoe", calendar.owner().identity());
+        assertEquals(102, calendar.unmutatedVersion());
+        assertTrue(calendar.mutatingEvents().isEmpty());
+
+        // and it goes on being saved from there
+
+        calendar.rename("Trailing Name 3");
+        this.calendarRepository.save(calendar);
+
+        calendar = this.calendarRepository.calendarOfId(this.tenant, calendar.calendarId());
+
+        assertEquals("Trailing Name 3", calendar.name());
+        assertEquals(103, calendar.unmutatedVersion());
+        assertEquals(103, this.fullStreamCalendarOf(eventId).unmutatedVersion());
+    }
+
+    public void testCalendarOfIdFromUnreadableSnapshot() throws Exception {
+
+        Calendar calendar = this.calendarOfOneHundredEvents();
+
+        EventStreamId eventId = this.eventIdOf(calendar);
+
+        this.calendarRepository.snapshotStore().purge();
+        this.calendarRepository.snapshotStore().save(
+                new AggregateSnapshot(
+                        eventId.streamName(),
+                        100,
+                        Calendar.class.getName(),
+                        "{\"name\":[\"no longer a calendar\"]}"));
+
+        calendar = this.calendarRepository.calendarOfId(this.tenant, calendar.calendarId());
+
+        assertEquals("Name 99", calendar.name());
+        assertEquals(100, calendar.unmutatedVersion());
+    }
+
+    public void testSaveSucceedsWhenSnapshotCannotBeSaved() throws Exception {
+
+        // the snapshot is saved only after the events are appended
+
+        this.calendarRepository = new EventStoreCalendarRepository() {
+            @Override
+            public SnapshotStore snapshotStore() {
+                return new FailingSnapshotStore();
+            }
+        };
+
+        Calendar calendar = this.calendarOfOneHundredEvents();
+
+        EventStreamId eventId = this.eventIdOf(calendar);
+
+        assertEquals(100, this.fullStreamCalendarOf(eventId).unmutatedVersion());
+
+        calendar = this.calendarRepository.calendarOfId(this.tenant, calendar.calendarId());
+
+        assertEquals("Name 99", calendar.name());
+        assertEquals(100, calendar.unmutatedVersion());
+
+        // and a further save is not taken for a concurrency violation
+
+        calendar.rename("Name 100");
+        this.calendarRepository.save(calendar);
+
+        assertEquals(101, this.fullStreamCalendarOf(eventId).unmutatedVersion());
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        this.calendarRepository = new EventStoreCalendarRepository();
+
+        this.calendarRepository.eventStore().purge();
+        this.calendarRepository.snapshotStore().purge();
+
+        this.tenant = new Tenant("01234567");
+
+        super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.calendarRepository.eventStore().purge();
+        this.calendarRepository.snapshotStore().purge();
+
+        super.tearDown();
+    }
+
+    private Calendar calendarOfOneHundredEvents() {
+        Calendar calendar =
+                new Calendar(
+                        this.tenant,
+                        this.calendarRepository.nextIdentity(),
+                        "John Doe's Calendar",
+                        "John Doe's everyday work calendar.",
+                        new Owner("jdoe", "John Doe", "jdoe@saasovation.com"),
+                        null);
+
+        for (int idx = 1; idx < 100; ++idx) {
+            calendar.rename("Name " + idx);
+        }
+
+        this.calendarRepository.save(calendar);
+
+        return calendar;
+    }
+
+    private EventStreamId eventIdOf(Calendar aCalendar) {
+        return new EventStreamId(this.tenant.id(), aCalendar.calendarId().id());
+    }
+
+    private Calendar fullStreamCalendarOf(EventStreamId anEventId) {
+        EventStream eventStream =
+                this.calendarRepository.eventStore().eventStreamSince(anEventId);
+
+        return new Calendar(eventStream.events(), eventStream.version());
+    }
+
+    private static class FailingSnapshotStore implements SnapshotStore {
+
+        FailingSnapshotStore() {
+            super();
+        }
+
+        @Override
+        public void close() {
+            // no-op
+        }
+
+        @Override
+        public void purge() {
+            // no-op
+        }
+
+        @Override
+        public void save(AggregateSnapshot aSnapshot) {
+            throw new IllegalStateException("The snapshot store is unavailable.");
+        }
+
+        @Override
+        public AggregateSnapshot snapshotOf(String aStreamName) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,537 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.collaboration.port.adapter.persistence.view;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import com.saasovation.collaboration.domain.model.forum.ForumClosed;
+import com.saasovation.collaboration.domain.model.forum.ForumId;
+import com.saasovation.collaboration.domain.model.tenant.Tenant;
+import com.saasovation.collaboration.port.adapter.persistence.EventStoreProvider;
+import com.saasovation.common.domain.model.DomainEvent;
+import com.saasovation.common.event.TestableDomainEvent;
+import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
+import com.saasovation.common.event.sourcing.EventDispatcher;
+import com.saasovation.common.event.sourcing.EventStore;
+import com.saasovation.common.event.sourcing.EventStreamId;
+
+/**
+ * I run MySQLProjectionDispatcher against a recorded checkpoint
+ * table, without a database, to show how it partitions events,
+ * advances checkpoints, and retries a failed batch.
+ */
+public class MySQLProjectionDispatcherTest extends TestCase {
+
+    private static final long WAIT_MILLIS = 10000L;
+
+    private Map<Integer, Long> committedCheckpoints;
+    private int rollbacks;
+    private Map<Integer, Long> storedCheckpoints;
+
+    public MySQLProjectionDispatcherTest() {
+        super();
+    }
+
+    public void testPartitionOfTenant() throws Exception {
+        Tenant tenant = new Tenant("01234567");
+
+        int partition = MySQLProjectionDispatcher.partitionOf(this.forumClosed(tenant));
+
+        assertTrue(partition >= 0);
+        assertTrue(partition < MySQLProjectionDispatcher.PARTITIONS_PER_PROJECTION);
+
+        // every stream of a tenant shares its partition
+
+        for (int idx = 0; idx < 10; ++idx) {
+            assertEquals(partition, MySQLProjectionDispatcher.partitionOf(this.forumClosed(tenant)));
+        }
+
+        // events without a tenant all project in order on the first
+
+        assertEquals(0, MySQLProjectionDispatcher.partitionOf(new TestableDomainEvent(1, "name")));
+
+        // and tenants spread over every partition
+
+        assertEquals(
+                MySQLProjectionDispatcher.PARTITIONS_PER_PROJECTION,
+                this.tenantsOfEachPartition().length);
+    }
+
+    public void testCheckpointAdvancesPerPartition() throws Exception {
+        RecordingProjection projection = new RecordingProjection();
+
+        MySQLProjectionDispatcher dispatcher = this.dispatcherOf(projection);
+
+        Tenant[] tenants = this.tenantsOfEachPartition();
+
+        long[] lastEventIds = new long[tenants.length];
+
+        for (long eventId = 1; eventId <= 1000; ++eventId) {
+            int partition = (int) (eventId * 7 % tenants.length);
+
+            dispatcher.dispatch(
+                    new DispatchableDomainEvent(eventId, this.forumClosed(tenants[partition])));
+
+            lastEventIds[partition] = eventId;
+        }
+
+        projection.waitForProjected(1000);
+
+        // each partition projects its own events in order and
+        // commits a checkpoint after each batch
+
+        for (int partition = 0; partition < tenants.length; ++partition) {
+            long lastEventId = 0;
+
+            for (DispatchableDomainEvent event : projection.projected()) {
+                if (MySQLProjectionDispatcher.partitionOf(event.domainEvent()) == partition) {
+                    assertTrue(event.eventId() > lastEventId);
+
+                    lastEventId = event.eventId();
+                }
+            }
+
+            assertEquals(lastEventIds[partition], lastEventId);
+
+            this.waitForCheckpoint(partition, lastEventIds[partition]);
+        }
+
+        assertEquals(0, this.rollbacks());
+    }
+
+    public void testRegisterResumesFromCheckpoints() throws Exception {
+        Tenant[] tenants = this.tenantsOfEachPartition();
+
+        this.storedCheckpoints.put(0, 10L);
+        this.storedCheckpoints.put(1, 20L);
+
+        RecordingProjection projection = new RecordingProjection();
+
+        MySQLProjectionDispatcher dispatcher = this.dispatcherOf(projection);
+
+        // events at or below the checkpoint of their partition
+        // were already projected and are not projected again
+
+        dispatcher.dispatch(new DispatchableDomainEvent(10, this.forumClosed(tenants[0])));
+        dispatcher.dispatch(new DispatchableDomainEvent(15, this.forumClosed(tenants[1])));
+        dispatcher.dispatch(new DispatchableDomainEvent(11, this.forumClosed(tenants[0])));
+        dispatcher.dispatch(new DispatchableDomainEvent(21, this.forumClosed(tenants[1])));
+        dispatcher.dispatch(new DispatchableDomainEvent(22, this.forumClosed(tenants[2])));
+
+        projection.waitForProjected(3);
+
+        this.waitForCheckpoint(0, 11L);
+        this.waitForCheckpoint(1, 21L);
+        this.waitForCheckpoint(2, 22L);
+
+        List<Long> projectedEventIds = new ArrayList<Long>();
+
+        for (DispatchableDomainEvent event : projection.projected()) {
+            projectedEventIds.add(event.eventId());
+        }
+
+        assertEquals(3, projectedEventIds.size());
+        assertTrue(projectedEventIds.contains(11L));
+        assertTrue(projectedEventIds.contains(21L));
+        assertTrue(projectedEventIds.contains(22L));
+    }
+
+    public void testFailedBatchIsRetriedOnQuietPartition() throws Exception {
+        Tenant tenant = this.tenantsOfEachPartition()[1];
+
+        RecordingProjection projection = new RecordingProjection();
+
+        projection.failNext(1);
+
+        MySQLProjectionDispatcher dispatcher = this.dispatcherOf(projection);
+
+        dispatcher.dispatch(new DispatchableDomainEvent(1, this.forumClosed(tenant)));
+
+        // nothing else arrives for the partition, so only the
+        // scheduled retry can project the failed batch
+
+        projection.waitForProjected(1);
+
+        this.waitForCheckpoint(1, 1L);
+
+        assertEquals(2, projection.attempts());
+        assertEquals(1, this.rollbacks());
+        assertEquals(1, projection.projected().size());
+    }
+
+    public void testFailedBatchHoldsBackItsPartitionOnly() throws Exception {
+        Tenant[] tenants = this.tenantsOfEachPartition();
+
+        RecordingProjection projection = new RecordingProjection();
+
+        projection.failNext(1);
+
+        MySQLProjectionDispatcher dispatcher = this.dispatcherOf(projection);
+
+        dispatcher.dispatch(new DispatchableDomainEvent(1, this.forumClosed(tenants[1])));
+
+        projection.waitForAttempts(1);
+
+        // later events of the failed partition wait behind its
+        // pending batch, while the other partitions go on
+
+        dispatcher.dispatch(new DispatchableDomainEvent(2, this.forumClosed(tenants[1])));
+        dispatcher.dispatch(new DispatchableDomainEvent(3, this.forumClosed(tenants[2])));
+
+        this.waitForCheckpoint(2, 3L);
+
+        assertNull(this.committedCheckpoint(1));
+
+        projection.waitForProjected(3);
+
+        this.waitForCheckpoint(1, 2L);
+
+        List<DispatchableDomainEvent> projected = projection.projected();
+
+        assertEquals(3L, projected.get(0).eventId());
+        assertEquals(1L, projected.get(1).eventId());
+        assertEquals(2L, projected.get(2).eventId());
+    }
+
+    public void testLiveEventDuringCatchUpDoesNotDropStoredEvents() throws Exception {
+        Tenant tenant = this.tenantsOfEachPartition()[1];
+
+        List<DomainEvent> storedEvents = new ArrayList<DomainEvent>();
+
+        for (int idx = 0; idx < 3; ++idx) {
+            storedEvents.add(this.forumClosed(tenant));
+        }
+
+        EventStore eventStore = EventStoreProvider.instance().eventStore();
+
+        eventStore.appendWith(new EventStreamId(tenant.id(), "forum"), storedEvents);
+
+        long lastStoredEventId = eventStore.eventsSince(0).get(2).eventId();
+
+        MySQLProjectionDispatcher dispatcher =
+                new MySQLProjectionDispatcher(
+                        new RecordingProjection(),
+                        this.checkpointDataSource());
+
+        // a newer event arrives while the stored ones are read
+
+        InterleavingProjection projection =
+                new InterleavingProjection(
+                        dispatcher,
+                        new DispatchableDomainEvent(lastStoredEventId + 1, this.forumClosed(tenant)));
+
+        dispatcher.registerEventDispatcher(projection);
+
+        projection.waitForProjected(4);
+
+        this.waitForCheckpoint(1, lastStoredEventId + 1);
+
+        List<DispatchableDomainEvent> projected = projection.projected();
+
+        assertEquals(4, projected.size());
+
+        for (int idx = 0; idx < projected.size(); ++idx) {
+            assertEquals(lastStoredEventId - 2 + idx, projected.get(idx).eventId());
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        this.committedCheckpoints = new HashMap<Integer, Long>();
+        this.rollbacks = 0;
+        this.storedCheckpoints = new HashMap<Integer, Long>();
+
+        EventStoreProvider.instance().eventStore().purge();
+
+        super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        EventStoreProvider.instance().eventStore().purge();
+
+        super.tearDown();
+    }
+
+    private synchronized Long committedCheckpoint(int aPartition) {
+        return this.committedCheckpoints.get(aPartition);
+    }
+
+    private synchronized void commit(Map<Integer, Long> anUncommittedCheckpoints) {
+        this.committedCheckpoints.putAll(anUncommittedCheckpoints);
+    }
+
+    private DataSource checkpointDataSource() {
+        return (DataSource) Proxy.newProxyInstance(
+                this.getClass().getClassLoader(),
+                new Class<?>[] { DataSource.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+                        if (aMethod.getName().equals("getConnection")) {
+                            return checkpointConnection();
+                        }
+
+                        return null;
+                    }
+                });
+    }
+
+    private Connection checkpointConnection() {
+        final Map<Integer, Long> uncommittedCheckpoints = new HashMap<Integer, Long>();
+
+        final InvocationHandler statementHandler = new InvocationHandler() {
+            private Object[] parameters = new Object[4];
+
+            @Override
+            public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+                if (aMethod.getName().startsWith("set")) {
+                    this.parameters[(Integer) anArgs[0]] = anArgs[1];
+                } else if (aMethod.getName().equals("executeUpdate")) {
+                    uncommittedCheckpoints.put((Integer) this.parameters[2], (Long) this.parameters[3]);
+
+                    return 1;
+                } else if (aMethod.getName().equals("executeQuery")) {
+                    return storedCheckpointResult();
+                }
+
+                return null;
+            }
+        };
+
+        return (Connection) Proxy.newProxyInstance(
+                this.getClass().getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+                        if (aMethod.getName().equals("prepareStatement")) {
+                            return Proxy.newProxyInstance(
+                                    this.getClass().getClassLoader(),
+                                    new Class<?>[] { PreparedStatement.class },
+                                    statementHandler);
+                        } else if (aMethod.getName().equals("commit")) {
+                            commit(uncommittedCheckpoints);
+                            uncommittedCheckpoints.clear();
+                        } else if (aMethod.getName().equals("rollback")) {
+                            rollback();
+                            uncommittedCheckpoints.clear();
+                        }
+
+                        return null;
+                    }
+                });
+    }
+
+    private MySQLProjectionDispatcher dispatcherOf(EventDispatcher aProjection) {
+        EventDispatcher parentEventDispatcher = new RecordingProjection();
+
+        MySQLProjectionDispatcher dispatcher =
+                new MySQLProjectionDispatcher(
+                        parentEventDispatcher,
+                        this.checkpointDataSource());
+
+        dispatcher.registerEventDispatcher(aProjection);
+
+        return dispatcher;
+    }
+
+    private DomainEvent forumClosed(Tenant aTenant) {
+        return new ForumClosed(aTenant, new ForumId("forum"), null);
+    }
+
+    private synchronized void rollback() {
+        ++this.rollbacks;
+    }
+
+    private synchronized int rollbacks() {
+        return this.rollbacks;
+    }
+
+    private ResultSet storedCheckpointResult() {
+        final List<Map.Entry<Integer, Long>> rows =
+                new ArrayList<Map.Entry<Integer, Long>>(this.storedCheckpoints.entrySet());
+
+        return (ResultSet) Proxy.newProxyInstance(
+                this.getClass().getClassLoader(),
+                new Class<?>[] { ResultSet.class },
+                new InvocationHandler() {
+                    private int row = -1;
+
+                    @Override
+                    public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+                        if (aMethod.getName().equals("next")) {
+                            return ++this.row < rows.size();
+                        } else if (aMethod.getName().equals("getInt")) {
+                            return rows.get(this.row).getKey();
+                        } else if (aMethod.getName().equals("getLong")) {
+                            return rows.get(this.row).getValue();
+                        }
+
+                        return null;
+                    }
+                });
+    }
+
+    private Tenant[] tenantsOfEachPartition() {
+        Tenant[] tenants = new Tenant[MySQLProjectionDispatcher.PARTITIONS_PER_PROJECTION];
+
+        int found = 0;
+
+        for (int idx = 0; found < tenants.length && idx < 1000; ++idx) {
+            Tenant tenant = new Tenant("tenant-" + idx);
+
+            int partition = MySQLProjectionDispatcher.partitionOf(this.forumClosed(tenant));
+
+            if (tenants[partition] == null) {
+                tenants[partition] = tenant;
+
+                ++found;
+            }
+        }
+
+        return found == tenants.length ? tenants : new Tenant[found];
+    }
+
+    private void waitForCheckpoint(int aPartition, long anEventId) throws Exception {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+
+        while (!Long.valueOf(anEventId).equals(this.committedCheckpoint(aPartition))) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Partition " + aPartition + " checkpoint is "
+                        + this.committedCheckpoint(aPartition) + " not " + anEventId);
+            }
+
+            Thread.sleep(10L);
+        }
+    }
+
+    public static class RecordingProjection implements EventDispatcher {
+
+        private int attempts;
+        private int failures;
+        private List<DispatchableDomainEvent> projected;
+
+        public RecordingProjection() {
+            super();
+
+            this.projected = new ArrayList<DispatchableDomainEvent>();
+        }
+
+        @Override
+        public synchronized void dispatch(DispatchableDomainEvent aDispatchableDomainEvent) {
+            ++this.attempts;
+
+            if (this.failures > 0) {
+                --this.failures;
+
+                throw new IllegalStateException("Projection failed as expected.");
+            }
+
+            this.projected.add(aDispatchableDomainEvent);
+        }
+
+        @Override
+        public void registerEventDispatcher(EventDispatcher anEventDispatcher) {
+        }
+
+        @Override
+        public boolean understands(DispatchableDomainEvent aDispatchableDomainEvent) {
+            return true;
+        }
+
+        synchronized int attempts() {
+            return this.attempts;
+        }
+
+        synchronized void failNext(int aFailures) {
+            this.failures = aFailures;
+        }
+
+        synchronized List<DispatchableDomainEvent> projected() {
+            return new ArrayList<DispatchableDomainEvent>(this.projected);
+        }
+
+        void waitForAttempts(int anAttempts) throws Exception {
+            long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+
+            while (this.attempts() < anAttempts) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("Only " + this.attempts() + " of " + anAttempts + " attempts.");
+                }
+
+                Thread.sleep(10L);
+            }
+        }
+
+        void waitForProjected(int aCount) throws Exception {
+            long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+
+            while (this.projected().size() < aCount) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("Only " + this.projected().size() + " of " + aCount + " events projected.");
+                }
+
+                Thread.sleep(10L);
+            }
+        }
+    }
+
+    private static class InterleavingProjection extends RecordingProjection {
+
+        private MySQLProjectionDispatcher dispatcher;
+        private DispatchableDomainEvent liveEvent;
+
+        InterleavingProjection(
+                MySQLProjectionDispatcher aDispatcher,
+                DispatchableDomainEvent aLiveEvent) {
+
+            super();
+
+            this.dispatcher = aDispatcher;
+            this.liveEvent = aLiveEvent;
+        }
+
+        @Override
+        public boolean understands(DispatchableDomainEvent aDispatchableDomainEvent) {
+            DispatchableDomainEvent liveEvent = null;
+
+            synchronized (this) {
+                liveEvent = this.liveEvent;
+
+                this.liveEvent = null;
+            }
+
+            if (liveEvent != null) {
+                this.dispatcher.dispatch(liveEvent);
+            }
+
+            return true;
+        }
+    }
+}
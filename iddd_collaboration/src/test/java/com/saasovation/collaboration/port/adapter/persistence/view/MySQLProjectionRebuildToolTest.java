@@ -0,0 +1,477 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.collaboration.port.adapter.persistence.view;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import com.saasovation.collaboration.domain.model.collaborator.Creator;
+import com.saasovation.collaboration.domain.model.collaborator.Moderator;
+import com.saasovation.collaboration.domain.model.forum.ForumClosed;
+import com.saasovation.collaboration.domain.model.forum.ForumId;
+import com.saasovation.collaboration.domain.model.forum.ForumStarted;
+import com.saasovation.collaboration.domain.model.forum.ForumSubjectChanged;
+import com.saasovation.collaboration.domain.model.tenant.Tenant;
+import com.saasovation.collaboration.port.adapter.persistence.EventStoreProvider;
+import com.saasovation.common.domain.model.DomainEvent;
+import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
+import com.saasovation.common.event.sourcing.EventDispatcher;
+import com.saasovation.common.event.sourcing.EventStore;
+import com.saasovation.common.event.sourcing.EventStreamId;
+import com.saasovation.common.port.adapter.persistence.AbstractProjection;
+
+/**
+ * I rebuild the forum and post projections from the event store
+ * into view tables held in memory, without a database, to show
+ * that only their tables are rebuilt and swapped in.
+ */
+public class MySQLProjectionRebuildToolTest extends TestCase {
+
+    private static final Pattern INSERT = Pattern.compile("insert into (\\w+)\\(");
+    private static final Pattern RENAME = Pattern.compile("(\\w+) to (\\w+)");
+    private static final Pattern UPDATE_SUBJECT = Pattern.compile("update (\\w+) set subject=\\?");
+
+    private static final int FORUMS_PER_TENANT = 3;
+
+    private Map<String, Long> checkpoints;
+    private String failingTable;
+    private long lastEventId;
+    private List<String> renames;
+    private Map<String, Map<String, String>> tables;
+    private Tenant[] tenants;
+
+    public MySQLProjectionRebuildToolTest() {
+        super();
+    }
+
+    public void testRebuildSwapsInOnlyRegisteredProjectionTables() throws Exception {
+        MySQLProjectionRebuildTool rebuildTool = this.rebuildTool();
+
+        assertEquals(this.lastEventId, rebuildTool.rebuild());
+
+        // the stale row is gone and each forum holds its last subject
+
+        Map<String, String> forums = this.tables.get("tbl_vw_forum");
+
+        assertEquals(this.tenants.length * FORUMS_PER_TENANT, forums.size());
+        assertFalse(forums.containsKey("stale-forum"));
+
+        for (Tenant tenant : this.tenants) {
+            for (int idx = 1; idx <= FORUMS_PER_TENANT; ++idx) {
+                assertEquals(
+                        "Changed " + idx,
+                        forums.get(this.forumIdOf(tenant, idx).id()));
+            }
+        }
+
+        assertTrue(this.tables.get("tbl_vw_post").isEmpty());
+
+        // tables of projections not registered are left alone
+
+        assertEquals("stale-calendar", this.tables.get("tbl_vw_calendar").get("stale-calendar"));
+
+        assertEquals(1, this.renames.size());
+        assertFalse(this.renames.get(0).contains("tbl_vw_calendar"));
+
+        assertEquals(
+                this.sortedTableNames("tbl_vw_calendar", "tbl_vw_forum", "tbl_vw_post"),
+                this.sortedTableNames(this.tables.keySet().toArray(new String[0])));
+
+        // every partition of each projection resumes after the rebuild
+
+        for (int partition = 0; partition < MySQLProjectionDispatcher.PARTITIONS_PER_PROJECTION; ++partition) {
+            assertEquals(
+                    Long.valueOf(this.lastEventId),
+                    this.checkpoints.get("MySQLForumProjection:" + partition));
+            assertEquals(
+                    Long.valueOf(this.lastEventId),
+                    this.checkpoints.get("MySQLPostProjection:" + partition));
+        }
+
+        assertNull(this.checkpoints.get("MySQLCalendarProjection:0"));
+    }
+
+    public void testDispatchProjectsToLiveTables() throws Exception {
+        MySQLProjectionRebuildTool rebuildTool = this.rebuildTool();
+
+        rebuildTool.rebuild();
+
+        ForumId forumId = this.forumIdOf(this.tenants[1], 2);
+
+        DomainEvent event = new ForumSubjectChanged(this.tenants[1], forumId, "Dispatched", null);
+
+        rebuildTool.dispatch(new DispatchableDomainEvent(this.lastEventId + 1, event));
+
+        assertEquals("Dispatched", this.tables.get("tbl_vw_forum").get(forumId.id()));
+
+        int partition = MySQLProjectionDispatcher.partitionOf(event);
+
+        assertEquals(
+                Long.valueOf(this.lastEventId + 1),
+                this.checkpoints.get("MySQLForumProjection:" + partition));
+        assertEquals(
+                Long.valueOf(this.lastEventId),
+                this.checkpoints.get("MySQLPostProjection:" + partition));
+    }
+
+    public void testFailedRebuildLeavesLiveTables() throws Exception {
+        MySQLProjectionRebuildTool rebuildTool = this.rebuildTool();
+
+        this.failingTable = "tbl_vw_forum_rebuild";
+
+        try {
+            rebuildTool.rebuild();
+
+            fail("The failed projection should have stopped the rebuild.");
+
+        } catch (IllegalStateException e) {
+            Throwable cause = e;
+
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+
+            assertTrue(cause instanceof BatchUpdateException);
+        }
+
+        assertTrue(this.renames.isEmpty());
+        assertTrue(this.checkpoints.isEmpty());
+        assertEquals("Stale", this.tables.get("tbl_vw_forum").get("stale-forum"));
+    }
+
+    public void testRegisterRejectsTablesOtherThanViews() throws Exception {
+        MySQLProjectionRebuildTool rebuildTool =
+                new MySQLProjectionRebuildTool(this.viewTableDataSource(), 2);
+
+        try {
+            new EventStoreTableProjection(rebuildTool);
+
+            fail("A table other than tbl_vw_* should have been rejected.");
+
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            rebuildTool.rebuild();
+
+            fail("A rebuild without projections should have been rejected.");
+
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        this.checkpoints = new HashMap<String, Long>();
+        this.renames = new ArrayList<String>();
+        this.tables = new HashMap<String, Map<String, String>>();
+        this.tenants = new Tenant[] { new Tenant("01234567"), new Tenant("76543210") };
+
+        this.tables.put("tbl_vw_calendar", new HashMap<String, String>());
+        this.tables.get("tbl_vw_calendar").put("stale-calendar", "stale-calendar");
+        this.tables.put("tbl_vw_forum", new HashMap<String, String>());
+        this.tables.get("tbl_vw_forum").put("stale-forum", "Stale");
+        this.tables.put("tbl_vw_post", new HashMap<String, String>());
+
+        EventStore eventStore = EventStoreProvider.instance().eventStore();
+
+        eventStore.purge();
+
+        this.appendForumEvents(eventStore);
+
+        super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        EventStoreProvider.instance().eventStore().purge();
+
+        super.tearDown();
+    }
+
+    private void appendForumEvents(EventStore anEventStore) {
+        for (Tenant tenant : this.tenants) {
+            for (int idx = 1; idx <= FORUMS_PER_TENANT; ++idx) {
+                ForumId forumId = this.forumIdOf(tenant, idx);
+
+                List<DomainEvent> events = new ArrayList<DomainEvent>();
+
+                events.add(new ForumStarted(
+                        tenant,
+                        forumId,
+                        new Creator("jdoe", "John Doe", "jdoe@saasovation.com"),
+                        new Moderator("zdoe", "Zoe Doe", "zdoe@saasovation.com"),
+                        "Subject " + idx,
+                        "Description " + idx,
+                        null));
+
+                events.add(new ForumSubjectChanged(tenant, forumId, "Changed " + idx, null));
+
+                if (idx == FORUMS_PER_TENANT) {
+                    events.add(new ForumClosed(tenant, forumId, null));
+                }
+
+                anEventStore.appendWith(new EventStreamId(tenant.id(), forumId.id()), events);
+
+                this.lastEventId += events.size();
+            }
+        }
+    }
+
+    private void execute(String aSql) throws Exception {
+        if (aSql.startsWith("drop table")) {
+            this.tables.remove(aSql.substring(aSql.lastIndexOf(' ') + 1));
+        } else if (aSql.startsWith("create table")) {
+            String[] words = aSql.split(" ");
+            assertTrue(this.tables.containsKey(words[4]));
+            this.tables.put(words[2], new HashMap<String, String>());
+        } else if (aSql.startsWith("rename table")) {
+            this.renames.add(aSql);
+
+            Matcher rename = RENAME.matcher(aSql.substring("rename table ".length()));
+
+            while (rename.find()) {
+                Map<String, String> table = this.tables.remove(rename.group(1));
+                assertNotNull(table);
+                assertNull(this.tables.put(rename.group(2), table));
+            }
+        } else {
+            fail("Unexpected statement: " + aSql);
+        }
+    }
+
+    private void executeUpdate(String aSql, Map<Integer, Object> aParameters) throws Exception {
+        Matcher insert = INSERT.matcher(aSql);
+        Matcher updateSubject = UPDATE_SUBJECT.matcher(aSql);
+
+        String table = null;
+
+        if (aSql.startsWith("insert into tbl_projection_checkpoint")) {
+            this.checkpoints.put(
+                    aParameters.get(1) + ":" + aParameters.get(2),
+                    (Long) aParameters.get(3));
+        } else if (insert.lookingAt()) {
+            table = insert.group(1);
+            this.tableNamed(table).put((String) aParameters.get(1), (String) aParameters.get(11));
+        } else if (updateSubject.lookingAt()) {
+            table = updateSubject.group(1);
+            this.tableNamed(table).put((String) aParameters.get(3), (String) aParameters.get(1));
+        } else {
+            table = aSql.split(" ")[1];
+            this.tableNamed(table);
+        }
+
+        if (table != null && table.equals(this.failingTable)) {
+            throw new BatchUpdateException("Cannot write: " + table, "42S02", 1146, new int[0]);
+        }
+    }
+
+    private ForumId forumIdOf(Tenant aTenant, int anIndex) {
+        return new ForumId(aTenant.id() + "-forum-" + anIndex);
+    }
+
+    private MySQLProjectionRebuildTool rebuildTool() {
+        MySQLProjectionRebuildTool rebuildTool =
+                new MySQLProjectionRebuildTool(this.viewTableDataSource(), 2);
+
+        new MySQLForumProjection(rebuildTool);
+        new MySQLPostProjection(rebuildTool);
+
+        return rebuildTool;
+    }
+
+    private ResultSet resultOf(final long aValue) {
+        return (ResultSet) Proxy.newProxyInstance(
+                this.getClass().getClassLoader(),
+                new Class<?>[] { ResultSet.class },
+                new InvocationHandler() {
+                    private boolean read;
+
+                    @Override
+                    public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+                        if (aMethod.getName().equals("next")) {
+                            boolean next = !this.read && aValue >= 0;
+                            this.read = true;
+                            return next;
+                        } else if (aMethod.getName().equals("getLong")) {
+                            return aValue;
+                        }
+
+                        return null;
+                    }
+                });
+    }
+
+    private List<String> sortedTableNames(String... aTableNames) {
+        List<String> tableNames = new ArrayList<String>();
+
+        for (String tableName : aTableNames) {
+            tableNames.add(tableName);
+        }
+
+        Collections.sort(tableNames);
+
+        return tableNames;
+    }
+
+    private Map<String, String> tableNamed(String aTableName) {
+        Map<String, String> table = this.tables.get(aTableName);
+
+        assertNotNull("No table: " + aTableName, table);
+
+        return table;
+    }
+
+    private synchronized Object viewTableCall(
+            String aSql,
+            Map<Integer, Object> aParameters,
+            List<Map<Integer, Object>> aBatch,
+            Method aMethod,
+            Object[] anArgs)
+    throws Exception {
+
+        // the projection workers share the tables, so each
+        // call on a statement is made one at a time
+
+        String name = aMethod.getName();
+
+        if (name.startsWith("set")) {
+            aParameters.put((Integer) anArgs[0], anArgs[1]);
+        } else if (name.equals("addBatch")) {
+            aBatch.add(new HashMap<Integer, Object>(aParameters));
+        } else if (name.equals("executeBatch")) {
+            try {
+                for (Map<Integer, Object> parameters : aBatch) {
+                    this.executeUpdate(aSql, parameters);
+                }
+            } finally {
+                aBatch.clear();
+            }
+
+            return new int[0];
+        } else if (name.equals("executeUpdate")) {
+            this.executeUpdate(aSql, aParameters);
+
+            return 1;
+        } else if (name.equals("execute")) {
+            this.execute((String) anArgs[0]);
+
+            return false;
+        } else if (name.equals("executeQuery")) {
+            if (anArgs != null && ((String) anArgs[0]).startsWith("select max(event_id)")) {
+                return this.resultOf(this.lastEventId);
+            }
+
+            return this.resultOf(-1);
+        }
+
+        return null;
+    }
+
+    private DataSource viewTableDataSource() {
+        final InvocationHandler connectionHandler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+                if (aMethod.getName().equals("prepareStatement")) {
+                    return statementOf(PreparedStatement.class, (String) anArgs[0]);
+                } else if (aMethod.getName().equals("createStatement")) {
+                    return statementOf(Statement.class, null);
+                }
+
+                return null;
+            }
+        };
+
+        return (DataSource) Proxy.newProxyInstance(
+                this.getClass().getClassLoader(),
+                new Class<?>[] { DataSource.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+                        if (aMethod.getName().equals("getConnection")) {
+                            return Proxy.newProxyInstance(
+                                    this.getClass().getClassLoader(),
+                                    new Class<?>[] { Connection.class },
+                                    connectionHandler);
+                        }
+
+                        return null;
+                    }
+                });
+    }
+
+    private Object statementOf(Class<?> aStatementType, final String aSql) {
+        final Map<Integer, Object> parameters = new HashMap<Integer, Object>();
+        final List<Map<Integer, Object>> batch = new ArrayList<Map<Integer, Object>>();
+
+        return Proxy.newProxyInstance(
+                this.getClass().getClassLoader(),
+                new Class<?>[] { aStatementType },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+                        return viewTableCall(aSql, parameters, batch, aMethod, anArgs);
+                    }
+                });
+    }
+
+    private static class EventStoreTableProjection extends AbstractProjection {
+
+        EventStoreTableProjection(EventDispatcher aParentEventDispatcher) {
+            super();
+
+            aParentEventDispatcher.registerEventDispatcher(this);
+        }
+
+        @Override
+        public void dispatch(DispatchableDomainEvent aDispatchableDomainEvent) {
+            this.projectWhen(aDispatchableDomainEvent);
+        }
+
+        @Override
+        public void registerEventDispatcher(EventDispatcher anEventDispatcher) {
+            throw new UnsupportedOperationException("Cannot register additional dispatchers.");
+        }
+
+        @Override
+        public boolean understands(DispatchableDomainEvent aDispatchableDomainEvent) {
+            return false;
+        }
+
+        @Override
+        public String[] viewTables() {
+            return new String[] { "tbl_es_event_store" };
+        }
+    }
+}
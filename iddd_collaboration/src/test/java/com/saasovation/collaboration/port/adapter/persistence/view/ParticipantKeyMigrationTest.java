@@ -0,0 +1,259 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.collaboration.port.adapter.persistence.view;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.saasovation.collaboration.application.ApplicationTest;
+
+/**
+ * I run collaboration_k_participant.sql against invitee and sharer
+ * tables holding duplicate participants, as a database created
+ * before the k_participant keys may.
+ */
+public class ParticipantKeyMigrationTest extends ApplicationTest {
+
+    private static final String MIGRATION_SCRIPT = "src/main/mysql/collaboration_k_participant.sql";
+
+    public ParticipantKeyMigrationTest() {
+        super();
+    }
+
+    public void testMigrationRemovesDuplicateParticipants() throws Exception {
+        Connection connection = this.dataSource.getConnection();
+
+        try {
+            this.dropParticipantKeys(connection);
+
+            this.insertParticipant(connection, "tbl_vw_calendar_entry_invitee", "calendar_entry_id", "entry1", "zoe");
+            this.insertParticipant(connection, "tbl_vw_calendar_entry_invitee", "calendar_entry_id", "entry1", "zoe");
+            this.insertParticipant(connection, "tbl_vw_calendar_entry_invitee", "calendar_entry_id", "entry1", "zoe");
+            this.insertParticipant(connection, "tbl_vw_calendar_entry_invitee", "calendar_entry_id", "entry1", "jdoe");
+            this.insertParticipant(connection, "tbl_vw_calendar_entry_invitee", "calendar_entry_id", "entry2", "zoe");
+
+            this.insertParticipant(connection, "tbl_vw_calendar_sharer", "calendar_id", "calendar1", "zoe");
+            this.insertParticipant(connection, "tbl_vw_calendar_sharer", "calendar_id", "calendar1", "zoe");
+            this.insertParticipant(connection, "tbl_vw_calendar_sharer", "calendar_id", "calendar2", "zoe");
+
+            connection.commit();
+
+            long keptInviteeId = this.lowestId(connection, "tbl_vw_calendar_entry_invitee", "calendar_entry_id", "entry1", "zoe");
+            long keptSharerId = this.lowestId(connection, "tbl_vw_calendar_sharer", "calendar_id", "calendar1", "zoe");
+
+            this.runMigrationScript(connection);
+
+            assertEquals(3, this.count(connection, "tbl_vw_calendar_entry_invitee"));
+            assertEquals(2, this.count(connection, "tbl_vw_calendar_sharer"));
+
+            assertEquals(keptInviteeId, this.lowestId(connection, "tbl_vw_calendar_entry_invitee", "calendar_entry_id", "entry1", "zoe"));
+            assertEquals(keptSharerId, this.lowestId(connection, "tbl_vw_calendar_sharer", "calendar_id", "calendar1", "zoe"));
+
+            // and the keys now reject another duplicate
+
+            try {
+                this.insertParticipant(connection, "tbl_vw_calendar_entry_invitee", "calendar_entry_id", "entry1", "zoe");
+
+                fail("The k_participant key should reject a duplicate invitee.");
+
+            } catch (SQLException e) {
+                connection.rollback();
+            }
+
+            try {
+                this.insertParticipant(connection, "tbl_vw_calendar_sharer", "calendar_id", "calendar1", "zoe");
+
+                fail("The k_participant key should reject a duplicate sharer.");
+
+            } catch (SQLException e) {
+                connection.rollback();
+            }
+
+        } finally {
+            this.restoreParticipantKeys(connection);
+
+            connection.close();
+        }
+    }
+
+    private int count(Connection aConnection, String aTable) throws Exception {
+        Statement statement = aConnection.createStatement();
+
+        try {
+            ResultSet result = statement.executeQuery("select count(*) from " + aTable);
+
+            result.next();
+
+            return result.getInt(1);
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void dropParticipantKeys(Connection aConnection) throws Exception {
+        Statement statement = aConnection.createStatement();
+
+        try {
+            statement.execute("alter table tbl_vw_calendar_entry_invitee drop index k_participant");
+            statement.execute("alter table tbl_vw_calendar_sharer drop index k_participant");
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void insertParticipant(
+            Connection aConnection,
+            String aTable,
+            String anOwnerColumn,
+            String anOwnerId,
+            String aParticipantIdentity)
+    throws Exception {
+
+        PreparedStatement statement =
+                aConnection.prepareStatement(
+                        "insert into " + aTable + "("
+                        + anOwnerColumn + ", "
+                        + "participant_email_address, participant_identity, participant_name, "
+                        + "tenant_id"
+                        + ") values(?, ?, ?, ?, ?)");
+
+        try {
+            statement.setString(1, anOwnerId);
+            statement.setString(2, aParticipantIdentity + "@saasovation.com");
+            statement.setString(3, aParticipantIdentity);
+            statement.setString(4, aParticipantIdentity);
+            statement.setString(5, "01234567");
+
+            statement.executeUpdate();
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private long lowestId(
+            Connection aConnection,
+            String aTable,
+            String anOwnerColumn,
+            String anOwnerId,
+            String aParticipantIdentity)
+    throws Exception {
+
+        PreparedStatement statement =
+                aConnection.prepareStatement(
+                        "select min(id) from " + aTable
+                        + " where tenant_id = ? and " + anOwnerColumn + " = ? and participant_identity = ?");
+
+        try {
+            statement.setString(1, "01234567");
+            statement.setString(2, anOwnerId);
+            statement.setString(3, aParticipantIdentity);
+
+            ResultSet result = statement.executeQuery();
+
+            result.next();
+
+            return result.getLong(1);
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void restoreParticipantKeys(Connection aConnection) throws Exception {
+
+        // a failed migration must not leave the keys off
+        // for the tests that follow
+
+        Statement statement = aConnection.createStatement();
+
+        try {
+            statement.execute("delete from tbl_vw_calendar_entry_invitee");
+            statement.execute("delete from tbl_vw_calendar_sharer");
+
+            aConnection.commit();
+
+            try {
+                statement.execute(
+                        "alter table tbl_vw_calendar_entry_invitee add unique key "
+                        + "k_participant (tenant_id, calendar_entry_id, participant_identity)");
+            } catch (SQLException e) {
+                // the migration added it
+            }
+
+            try {
+                statement.execute(
+                        "alter table tbl_vw_calendar_sharer add unique key "
+                        + "k_participant (tenant_id, calendar_id, participant_identity)");
+            } catch (SQLException e) {
+                // the migration added it
+            }
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void runMigrationScript(Connection aConnection) throws Exception {
+        List<String> sqlStatements = new ArrayList<String>();
+
+        BufferedReader reader = new BufferedReader(new FileReader(MIGRATION_SCRIPT));
+
+        try {
+            StringBuilder sql = new StringBuilder();
+
+            String line = reader.readLine();
+
+            while (line != null) {
+                if (!line.startsWith("--")) {
+                    sql.append(line).append('\n');
+                }
+
+                line = reader.readLine();
+            }
+
+            for (String sqlStatement : sql.toString().split(";")) {
+                if (sqlStatement.trim().length() > 0) {
+                    sqlStatements.add(sqlStatement.trim());
+                }
+            }
+
+        } finally {
+            reader.close();
+        }
+
+        Statement statement = aConnection.createStatement();
+
+        try {
+            for (String sqlStatement : sqlStatements) {
+                statement.execute(sqlStatement);
+            }
+
+            aConnection.commit();
+
+        } finally {
+            statement.close();
+        }
+    }
+}
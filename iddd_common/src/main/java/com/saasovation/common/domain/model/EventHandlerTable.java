@@ -0,0 +1,149 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.saasovation.common.domain.model;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * I dispatch a DomainEvent to the method of a handler that is named
+ * by my method name and declares the concrete event type as its only
+ * parameter, such as when(ForumStarted). My MethodHandles are resolved
+ * once per handler type and event type pair. After that a dispatch
+ * allocates nothing and takes no monitor.
+ */
+public final class EventHandlerTable {
+
+    private static final MethodType DISPATCH_TYPE =
+            MethodType.methodType(void.class, Object.class, Object.class);
+
+    private ClassValue<ConcurrentMap<Class<?>, MethodHandle>> handlerMethods;
+    private String methodName;
+
+    public EventHandlerTable(String aMethodName) {
+        super();
+
+        this.setMethodName(aMethodName);
+
+        this.handlerMethods =
+                new ClassValue<ConcurrentMap<Class<?>, MethodHandle>>() {
+                    @Override
+                    protected ConcurrentMap<Class<?>, MethodHandle> computeValue(Class<?> aHandlerType) {
+                        return new ConcurrentHashMap<Class<?>, MethodHandle>();
+                    }
+                };
+    }
+
+    public void dispatch(Object aHandler, DomainEvent aDomainEvent) {
+
+        Class<? extends DomainEvent> eventType = aDomainEvent.getClass();
+
+        ConcurrentMap<Class<?>, MethodHandle> handlerMethods =
+                this.handlerMethods.get(aHandler.getClass());
+
+        MethodHandle handlerMethod = handlerMethods.get(eventType);
+
+        if (handlerMethod == null) {
+            handlerMethod = this.cacheHandlerMethodFor(handlerMethods, aHandler.getClass(), eventType);
+        }
+
+        try {
+            handlerMethod.invokeExact(aHandler, (Object) aDomainEvent);
+
+        } catch (Throwable t) {
+            throw new RuntimeException(
+                    "Method "
+                            + this.methodName()
+                            + "("
+                            + eventType.getSimpleName()
+                            + ") failed. See cause: "
+                            + t.getMessage(),
+                    t);
+        }
+    }
+
+    public String methodName() {
+        return this.methodName;
+    }
+
+    private MethodHandle cacheHandlerMethodFor(
+            ConcurrentMap<Class<?>, MethodHandle> aHandlerMethods,
+            Class<?> aHandlerType,
+            Class<? extends DomainEvent> anEventType) {
+
+        try {
+            Method method = this.hiddenOrPublicMethod(aHandlerType, anEventType);
+
+            method.setAccessible(true);
+
+            MethodHandle handlerMethod =
+                    MethodHandles
+                        .lookup()
+                        .unreflect(method)
+                        .asType(DISPATCH_TYPE);
+
+            // a racing thread may have resolved the same method
+
+            MethodHandle cachedHandlerMethod =
+                    aHandlerMethods.putIfAbsent(anEventType, handlerMethod);
+
+            return cachedHandlerMethod == null ? handlerMethod : cachedHandlerMethod;
+
+        } catch (Exception e) {
+            throw new IllegalArgumentException(
+                    "I do not understand "
+                            + this.methodName()
+                            + "("
+                            + anEventType.getSimpleName()
+                            + ") because: "
+                            + e.getClass().getSimpleName() + ">>>" + e.getMessage(),
+                    e);
+        }
+    }
+
+    private Method hiddenOrPublicMethod(
+            Class<?> aHandlerType,
+            Class<? extends DomainEvent> anEventType)
+    throws Exception {
+
+        Method method = null;
+
+        try {
+
+            // assume protected or private...
+
+            method = aHandlerType.getDeclaredMethod(
+                    this.methodName(),
+                    anEventType);
+
+        } catch (Exception e) {
+
+            // then public...
+
+            method = aHandlerType.getMethod(
+                    this.methodName(),
+                    anEventType);
+        }
+
+        return method;
+    }
+
+    private void setMethodName(String aMethodName) {
+        this.methodName = aMethodName;
+    }
+}
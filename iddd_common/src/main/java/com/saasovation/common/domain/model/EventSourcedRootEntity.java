@@ -14,12 +14,8 @@
 
 package com.saasovation.common.domain.model;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import com.saasovation.common.AssertionConcern;
 
@@ -27,10 +23,11 @@ public abstract class EventSourcedRootEntity extends AssertionConcern {
 
     private static final String MUTATOR_METHOD_NAME = "when";
 
-    private static Map<String, Method> mutatorMethods =
-            new HashMap<String, Method>();
+    private static final EventHandlerTable mutatorMethods =
+            new EventHandlerTable(MUTATOR_METHOD_NAME);
 
-    private List<DomainEvent> mutatingEvents;
+    // transient, so that a snapshot of the entity holds only its state
+    private transient List<DomainEvent> mutatingEvents;
     private int unmutatedVersion;
 
     public int mutatedVersion() {
@@ -41,6 +38,33 @@ public abstract class EventSourcedRootEntity extends AssertionConcern {
         return this.mutatingEvents;
     }
 
+    /**
+     * Completes an entity that was restored from a snapshot by
+     * mutating it with the events that followed the snapshot.
+     *
+     * @param anEventStream the List<DomainEvent> that followed the snapshot
+     * @param aStreamVersion the int version of the stream after anEventStream
+     */
+    public void mutateSinceSnapshot(
+            List<DomainEvent> anEventStream,
+            int aStreamVersion) {
+
+        // a deserializer may or may not run the default constructor,
+        // so the transient events are either absent or still empty
+
+        this.assertStateTrue(
+                this.mutatingEvents() == null || this.mutatingEvents().isEmpty(),
+                "Only an entity restored from a snapshot may be mutated since it.");
+
+        this.setMutatingEvents(new ArrayList<DomainEvent>(2));
+
+        for (DomainEvent event : anEventStream) {
+            this.mutateWhen(event);
+        }
+
+        this.setUnmutatedVersion(aStreamVersion);
+    }
+
     public int unmutatedVersion() {
         return this.unmutatedVersion;
     }
@@ -72,108 +96,7 @@ public abstract class EventSourcedRootEntity extends AssertionConcern {
     }
 
     protected void mutateWhen(DomainEvent aDomainEvent) {
-
-        Class<? extends EventSourcedRootEntity> rootType = this.getClass();
-
-        Class<? extends DomainEvent> eventType = aDomainEvent.getClass();
-
-        String key = rootType.getName() + ":" + eventType.getName();
-
-        Method mutatorMethod = mutatorMethods.get(key);
-
-        if (mutatorMethod == null) {
-            mutatorMethod = this.cacheMutatorMethodFor(key, rootType, eventType);
-        }
-
-        try {
-            mutatorMethod.invoke(this, aDomainEvent);
-
-        } catch (InvocationTargetException e) {
-            if (e.getCause() != null) {
-                throw new RuntimeException(
-                        "Method "
-                                + MUTATOR_METHOD_NAME
-                                + "("
-                                + eventType.getSimpleName()
-                                + ") failed. See cause: "
-                                + e.getMessage(),
-                        e.getCause());
-            }
-
-            throw new RuntimeException(
-                    "Method "
-                            + MUTATOR_METHOD_NAME
-                            + "("
-                            + eventType.getSimpleName()
-                            + ") failed. See cause: "
-                            + e.getMessage(),
-                    e);
-
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(
-                    "Method "
-                            + MUTATOR_METHOD_NAME
-                            + "("
-                            + eventType.getSimpleName()
-                            + ") failed because of illegal access. See cause: "
-                            + e.getMessage(),
-                    e);
-        }
-    }
-
-    private Method cacheMutatorMethodFor(
-            String aKey,
-            Class<? extends EventSourcedRootEntity> aRootType,
-            Class<? extends DomainEvent> anEventType) {
-
-        synchronized (mutatorMethods) {
-            try {
-                Method method = this.hiddenOrPublicMethod(aRootType, anEventType);
-
-                method.setAccessible(true);
-
-                mutatorMethods.put(aKey, method);
-
-                return method;
-
-            } catch (Exception e) {
-                throw new IllegalArgumentException(
-                        "I do not understand "
-                                + MUTATOR_METHOD_NAME
-                                + "("
-                                + anEventType.getSimpleName()
-                                + ") because: "
-                                + e.getClass().getSimpleName() + ">>>" + e.getMessage(),
-                        e);
-            }
-        }
-    }
-
-    private Method hiddenOrPublicMethod(
-            Class<? extends EventSourcedRootEntity> aRootType,
-            Class<? extends DomainEvent> anEventType)
-    throws Exception {
-
-        Method method = null;
-
-        try {
-
-            // assume protected or private...
-
-            method = aRootType.getDeclaredMethod(
-                    MUTATOR_METHOD_NAME,
-                    anEventType);
-
-        } catch (Exception e) {
-
-            // then public...
-
-            method = aRootType.getMethod(
-                    MUTATOR_METHOD_NAME,
-                    anEventType);
-        }
-
-        return method;
+        mutatorMethods.dispatch(this, aDomainEvent);
     }
 
     private void setMutatingEvents(List<DomainEvent> aMutatingEventsList) {
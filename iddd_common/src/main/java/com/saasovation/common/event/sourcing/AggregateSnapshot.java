@@ -0,0 +1,68 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.saasovation.common.event.sourcing;
+
+public class AggregateSnapshot {
+
+    private String snapshotData;
+    private String snapshotType;
+    private String streamName;
+    private int streamVersion;
+
+    public AggregateSnapshot(
+            String aStreamName,
+            int aStreamVersion,
+            String aSnapshotType,
+            String aSnapshotData) {
+
+        super();
+
+        this.setSnapshotData(aSnapshotData);
+        this.setSnapshotType(aSnapshotType);
+        this.setStreamName(aStreamName);
+        this.setStreamVersion(aStreamVersion);
+    }
+
+    public String snapshotData() {
+        return this.snapshotData;
+    }
+
+    public String snapshotType() {
+        return this.snapshotType;
+    }
+
+    public String streamName() {
+        return this.streamName;
+    }
+
+    public int streamVersion() {
+        return this.streamVersion;
+    }
+
+    private void setSnapshotData(String aSnapshotData) {
+        this.snapshotData = aSnapshotData;
+    }
+
+    private void setSnapshotType(String aSnapshotType) {
+        this.snapshotType = aSnapshotType;
+    }
+
+    private void setStreamName(String aStreamName) {
+        this.streamName = aStreamName;
+    }
+
+    private void setStreamVersion(int aStreamVersion) {
+        this.streamVersion = aStreamVersion;
+    }
+}
@@ -0,0 +1,48 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.saasovation.common.event.sourcing;
+
+/**
+ * I am a SnapshotPolicy that calls for a snapshot each time
+ * a stream crosses a multiple of a fixed number of events.
+ */
+public class EventCountSnapshotPolicy implements SnapshotPolicy {
+
+    private int eventsPerSnapshot;
+
+    public EventCountSnapshotPolicy(int anEventsPerSnapshot) {
+        super();
+
+        this.setEventsPerSnapshot(anEventsPerSnapshot);
+    }
+
+    public int eventsPerSnapshot() {
+        return this.eventsPerSnapshot;
+    }
+
+    @Override
+    public boolean isSnapshotDue(int aPreviousStreamVersion, int aStreamVersion) {
+        int eventsPerSnapshot = this.eventsPerSnapshot();
+
+        return (aStreamVersion / eventsPerSnapshot) > (aPreviousStreamVersion / eventsPerSnapshot);
+    }
+
+    private void setEventsPerSnapshot(int anEventsPerSnapshot) {
+        if (anEventsPerSnapshot < 1) {
+            throw new IllegalArgumentException("The events per snapshot must be at least 1.");
+        }
+
+        this.eventsPerSnapshot = anEventsPerSnapshot;
+    }
+}
@@ -24,8 +24,12 @@ public interface EventStore {
 
     public void close();
 
+    public EventCursor eventCursorSince(long aLastReceivedEvent);
+
     public List<DispatchableDomainEvent> eventsSince(long aLastReceivedEvent);
 
+    public List<DispatchableDomainEvent> eventsSince(long aLastReceivedEvent, int aMaxBatchSize);
+
     public EventStream eventStreamSince(EventStreamId anIdentity);
 
     public EventStream fullEventStreamFor(EventStreamId anIdentity);
@@ -46,6 +46,17 @@ public class NotificationLog {
         return this.archived;
     }
 
+    public boolean isComplete() {
+        // event ids are unique, so an archived log that holds one
+        // notification for each id of its range can no longer change
+
+        NotificationLogId notificationLogId = this.decodedNotificationLogId();
+
+        return this.isArchived()
+                && this.totalNotifications()
+                    == notificationLogId.high() - notificationLogId.low() + 1;
+    }
+
     public List<Notification> notifications() {
         return Collections.unmodifiableList(this.notifications);
     }
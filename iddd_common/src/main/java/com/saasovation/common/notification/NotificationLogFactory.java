@@ -15,7 +15,10 @@
 package com.saasovation.common.notification;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.saasovation.common.domain.model.DomainEvent;
 import com.saasovation.common.event.EventStore;
@@ -23,54 +26,124 @@ import com.saasovation.common.event.StoredEvent;
 
 public class NotificationLogFactory {
 
-    // this could be a configuration
+    // the default, which may be configured per factory
     private static final int NOTIFICATIONS_PER_LOG = 20;
 
+    // complete archived logs never change, but bound what we hold
+    private static final int MAX_ARCHIVED_LOGS = 1000;
+
+    private Map<NotificationLogId,NotificationLog> archivedNotificationLogs;
+    private NotificationLogId currentNotificationLogId;
+    private Map<Long,Notification> currentNotifications;
     private EventStore eventStore;
+    private int logSize;
+    private long totalLogged;
 
     public static int notificationsPerLog() {
         return NOTIFICATIONS_PER_LOG;
     }
 
     public NotificationLogFactory(EventStore anEventStore) {
+        this(anEventStore, NOTIFICATIONS_PER_LOG);
+    }
+
+    public NotificationLogFactory(EventStore anEventStore, int aNotificationsPerLog) {
         super();
 
+        if (aNotificationsPerLog < 1) {
+            throw new IllegalArgumentException("Notifications per log must be at least 1.");
+        }
+
+        this.setArchivedNotificationLogs(
+                new LinkedHashMap<NotificationLogId,NotificationLog>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(
+                            Map.Entry<NotificationLogId,NotificationLog> anEldest) {
+                        return this.size() > MAX_ARCHIVED_LOGS;
+                    }
+                });
+
         this.setEventStore(anEventStore);
+        this.setLogSize(aNotificationsPerLog);
+        this.setTotalLogged(-1L);
     }
 
+    // one factory serves every request, so only the cache and the
+    // current log state are guarded; the store is read outside of it
+
     public NotificationLog createCurrentNotificationLog() {
-        return this.createNotificationLog(
-                this.calculateCurrentNotificationLogId(eventStore));
+        return this.currentNotificationLog(this.refreshCurrentNotificationLog());
+    }
+
+    public boolean isArchived(NotificationLogId aNotificationLogId) {
+        synchronized (this) {
+            if (this.archivedNotificationLogs().containsKey(aNotificationLogId)) {
+                return true;
+            }
+        }
+
+        NotificationLogInfo currentInfo = this.refreshCurrentNotificationLog();
+
+        return aNotificationLogId.high() < currentInfo.totalLogged();
+    }
+
+    public int logSize() {
+        return this.logSize;
     }
 
     public NotificationLog createNotificationLog(
             NotificationLogId aNotificationLogId) {
 
-        long count = this.eventStore().countStoredEvents();
+        NotificationLog notificationLog = null;
+
+        synchronized (this) {
+            notificationLog = this.archivedNotificationLogs().get(aNotificationLogId);
+        }
+
+        if (notificationLog != null) {
+            return notificationLog;
+        }
+
+        NotificationLogInfo currentInfo = this.refreshCurrentNotificationLog();
+
+        if (aNotificationLogId.equals(currentInfo.notificationLogId())) {
+            notificationLog = this.currentNotificationLog(currentInfo);
+        } else {
+            NotificationLogInfo info =
+                    new NotificationLogInfo(aNotificationLogId, currentInfo.totalLogged());
 
-        NotificationLogInfo info = new NotificationLogInfo(aNotificationLogId, count);
+            notificationLog = this.createNotificationLog(info);
+
+            // a log with a gap is read from the store until it fills, if ever
+
+            if (notificationLog.isComplete()) {
+                synchronized (this) {
+                    this.archivedNotificationLogs().put(aNotificationLogId, notificationLog);
+                }
+            }
+        }
 
-        return this.createNotificationLog(info);
+        return notificationLog;
     }
 
     private NotificationLogInfo calculateCurrentNotificationLogId(
-            EventStore anEventStore) {
-
-        long count = anEventStore.countStoredEvents();
+            long aHighestEventId) {
 
-        long remainder = count % NOTIFICATIONS_PER_LOG;
+        long remainder = aHighestEventId % this.logSize();
 
-        if (remainder == 0 && count > 0) {
-            remainder = NOTIFICATIONS_PER_LOG;
+        if (remainder == 0 && aHighestEventId > 0) {
+            remainder = this.logSize();
         }
 
-        long low = count - remainder + 1;
+        long low = aHighestEventId - remainder + 1;
 
         // ensures a minted id value even though there may
         // not be a full set of notifications at present
-        long high = low + NOTIFICATIONS_PER_LOG - 1;
+        long high = low + this.logSize() - 1;
 
-        return new NotificationLogInfo(new NotificationLogId(low, high), count);
+        return new NotificationLogInfo(new NotificationLogId(low, high), aHighestEventId);
     }
 
     private NotificationLog createNotificationLog(
@@ -84,38 +157,167 @@ public class NotificationLogFactory {
         boolean archivedIndicator =
                 aNotificationLogInfo.notificationLogId().high() < aNotificationLogInfo.totalLogged();
 
-        NotificationLogId next = archivedIndicator ?
-                aNotificationLogInfo.notificationLogId().next(NOTIFICATIONS_PER_LOG) :
+        return this.createNotificationLog(
+                aNotificationLogInfo.notificationLogId(),
+                this.notificationsFrom(storedEvents),
+                archivedIndicator);
+    }
+
+    private NotificationLog createNotificationLog(
+            NotificationLogId aNotificationLogId,
+            List<Notification> aNotifications,
+            boolean anArchivedIndicator) {
+
+        NotificationLogId next = anArchivedIndicator ?
+                aNotificationLogId.next(this.logSize()) :
                 null;
 
         NotificationLogId previous =
-                aNotificationLogInfo.notificationLogId().previous(NOTIFICATIONS_PER_LOG);
+                aNotificationLogId.previous(this.logSize());
 
         NotificationLog notificationLog =
             new NotificationLog(
-                    aNotificationLogInfo.notificationLogId().encoded(),
+                    aNotificationLogId.encoded(),
                     NotificationLogId.encoded(next),
                     NotificationLogId.encoded(previous),
-                    this.notificationsFrom(storedEvents),
-                    archivedIndicator);
+                    aNotifications,
+                    anArchivedIndicator);
 
         return notificationLog;
     }
 
+    private NotificationLog currentNotificationLog(NotificationLogInfo aCurrentInfo) {
+        // the current log is read by its id range every time, so that
+        // an event committed after one with a higher id still appears;
+        // only events not seen before are deserialized
+
+        NotificationLogId currentNotificationLogId = aCurrentInfo.notificationLogId();
+
+        List<StoredEvent> storedEvents =
+                this.eventStore().allStoredEventsBetween(
+                        currentNotificationLogId.low(),
+                        currentNotificationLogId.high());
+
+        Map<Long,Notification> currentNotifications =
+                this.currentNotificationsOf(currentNotificationLogId);
+
+        List<Notification> notifications =
+                new ArrayList<Notification>(storedEvents.size());
+
+        for (StoredEvent storedEvent : storedEvents) {
+            Notification notification =
+                    currentNotifications.get(storedEvent.eventId());
+
+            if (notification == null) {
+                notification = this.notificationFrom(storedEvent);
+
+                currentNotifications.put(storedEvent.eventId(), notification);
+            }
+
+            notifications.add(notification);
+        }
+
+        return this.createNotificationLog(
+                currentNotificationLogId,
+                notifications,
+                false);
+    }
+
+    private synchronized Map<Long,Notification> currentNotificationsOf(
+            NotificationLogId aNotificationLogId) {
+
+        // a log that stopped being current meanwhile is not cached
+
+        if (!aNotificationLogId.equals(this.currentNotificationLogId())) {
+            return new ConcurrentHashMap<Long,Notification>(this.logSize());
+        }
+
+        return this.currentNotifications();
+    }
+
     private List<Notification> notificationsFrom(List<StoredEvent> aStoredEvents) {
         List<Notification> notifications =
             new ArrayList<Notification>(aStoredEvents.size());
 
         for (StoredEvent storedEvent : aStoredEvents) {
-            DomainEvent domainEvent = storedEvent.toDomainEvent();
+            notifications.add(this.notificationFrom(storedEvent));
+        }
 
-            Notification notification =
-                new Notification(storedEvent.eventId(), domainEvent);
+        return notifications;
+    }
 
-            notifications.add(notification);
+    private Notification notificationFrom(StoredEvent aStoredEvent) {
+        DomainEvent domainEvent = aStoredEvent.toDomainEvent();
+
+        Notification notification =
+            new Notification(aStoredEvent.eventId(), domainEvent);
+
+        return notification;
+    }
+
+    private NotificationLogInfo refreshCurrentNotificationLog() {
+        // logs are ranges of event ids, so the highest id decides which
+        // is current; it is never lower than the count of events, and
+        // after that only the events with higher ids are read
+
+        long totalLogged = 0L;
+
+        synchronized (this) {
+            totalLogged = this.totalLogged();
         }
 
-        return notifications;
+        if (totalLogged < 0) {
+            totalLogged = this.eventStore().countStoredEvents();
+        }
+
+        List<StoredEvent> storedEvents =
+                this.eventStore().allStoredEventsSince(totalLogged);
+
+        for (StoredEvent storedEvent : storedEvents) {
+            totalLogged = Math.max(totalLogged, storedEvent.eventId());
+        }
+
+        synchronized (this) {
+
+            // a concurrent refresh may have read further
+
+            this.setTotalLogged(Math.max(this.totalLogged(), totalLogged));
+
+            NotificationLogInfo info =
+                    this.calculateCurrentNotificationLogId(this.totalLogged());
+
+            if (!info.notificationLogId().equals(this.currentNotificationLogId())) {
+                this.setCurrentNotificationLogId(info.notificationLogId());
+                this.setCurrentNotifications(new ConcurrentHashMap<Long,Notification>(this.logSize()));
+            }
+
+            return info;
+        }
+    }
+
+    private Map<NotificationLogId,NotificationLog> archivedNotificationLogs() {
+        return this.archivedNotificationLogs;
+    }
+
+    private void setArchivedNotificationLogs(
+            Map<NotificationLogId,NotificationLog> anArchivedNotificationLogs) {
+        this.archivedNotificationLogs = anArchivedNotificationLogs;
+    }
+
+    private NotificationLogId currentNotificationLogId() {
+        return this.currentNotificationLogId;
+    }
+
+    private void setCurrentNotificationLogId(NotificationLogId aCurrentNotificationLogId) {
+        this.currentNotificationLogId = aCurrentNotificationLogId;
+    }
+
+    private Map<Long,Notification> currentNotifications() {
+        return this.currentNotifications;
+    }
+
+    private void setCurrentNotifications(Map<Long,Notification> aCurrentNotifications) {
+        this.currentNotifications = aCurrentNotifications;
     }
 
     private EventStore eventStore() {
@@ -125,4 +327,16 @@ public class NotificationLogFactory {
     private void setEventStore(EventStore anEventStore) {
         this.eventStore = anEventStore;
     }
+
+    private void setLogSize(int aLogSize) {
+        this.logSize = aLogSize;
+    }
+
+    private long totalLogged() {
+        return this.totalLogged;
+    }
+
+    private void setTotalLogged(long aTotalLogged) {
+        this.totalLogged = aTotalLogged;
+    }
 }
@@ -0,0 +1,202 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.notification;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.saasovation.common.media.AbstractJSONMediaReader;
+import com.saasovation.common.media.Link;
+import com.saasovation.common.media.RepresentationReader;
+
+public class NotificationLogStreamReader
+       extends AbstractJSONMediaReader
+       implements Iterable<NotificationReader>, Closeable {
+
+    private boolean iterated;
+    private JsonParser parser;
+    private JsonReader reader;
+
+    public NotificationLogStreamReader(Reader aJSONRepresentation) {
+        super(new JsonObject());
+
+        this.parser = new JsonParser();
+        this.reader = new JsonReader(aJSONRepresentation);
+
+        try {
+            this.reader.beginObject();
+
+            this.readPropertiesUntilNotifications();
+
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the notification log.", e);
+        }
+    }
+
+    public boolean isArchived() {
+        return this.has("archived") && this.booleanValue("archived");
+    }
+
+    public String id() {
+        return this.has("id") ? this.stringValue("id") : null;
+    }
+
+    public boolean hasNext() {
+        return this.next() != null;
+    }
+
+    public Link next() {
+        return this.linkNamed("linkNext");
+    }
+
+    public boolean hasPrevious() {
+        return this.previous() != null;
+    }
+
+    public Link previous() {
+        return this.linkNamed("linkPrevious");
+    }
+
+    public boolean hasSelf() {
+        return this.self() != null;
+    }
+
+    public Link self() {
+        return this.linkNamed("linkSelf");
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    @Override
+    public Iterator<NotificationReader> iterator() {
+        if (this.iterated) {
+            throw new IllegalStateException("The notifications may be iterated only once.");
+        }
+
+        this.iterated = true;
+
+        return new NotificationReaderIterator();
+    }
+
+    private boolean has(String aName) {
+        JsonElement element = this.representation().get(aName);
+
+        return element != null && !element.isJsonNull();
+    }
+
+    private Link linkNamed(String aLinkName) {
+        Link link = null;
+
+        JsonElement linkElement = this.representation().get(aLinkName);
+
+        if (linkElement != null && linkElement.isJsonObject()) {
+            RepresentationReader rep = new RepresentationReader(linkElement.getAsJsonObject());
+
+            link =
+                    new Link(
+                            rep.stringValue("href"),
+                            rep.stringValue("rel"),
+                            rep.stringValue("title"),
+                            rep.stringValue("type"));
+        }
+
+        return link;
+    }
+
+    private void readPropertiesUntilNotifications() throws IOException {
+
+        // the notifications are parsed one at a time as they are
+        // iterated, so any properties that follow them are read
+        // only once they have all been iterated
+
+        while (this.reader.hasNext()) {
+            String name = this.reader.nextName();
+
+            if (name.equals("notifications") && this.reader.peek() == JsonToken.BEGIN_ARRAY) {
+                this.reader.beginArray();
+
+                return;
+            }
+
+            this.representation().add(name, this.parser.parse(this.reader));
+        }
+
+        // no notifications; the log is complete
+
+        this.reader.endObject();
+    }
+
+    private class NotificationReaderIterator implements Iterator<NotificationReader> {
+
+        private boolean exhausted;
+
+        NotificationReaderIterator() {
+            super();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.exhausted) {
+                return false;
+            }
+
+            try {
+                if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    return true;
+                }
+
+                this.exhausted = true;
+
+                if (reader.peek() == JsonToken.END_ARRAY) {
+                    reader.endArray();
+
+                    readPropertiesUntilNotifications();
+                }
+
+                return false;
+
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read the next notification.", e);
+            }
+        }
+
+        @Override
+        public NotificationReader next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException("No such next element.");
+            }
+
+            JsonObject notification = parser.parse(reader).getAsJsonObject();
+
+            return new NotificationReader(notification);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove.");
+        }
+    }
+}
@@ -14,16 +14,14 @@
 
 package com.saasovation.common.port.adapter.messaging.rabbitmq;
 
-import java.io.IOException;
-
 import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.ConnectionFactory;
-import com.saasovation.common.port.adapter.messaging.MessageException;
 
 /**
  * I am an abstract base class for all channels to
- * the RabbitMQ message broker.
+ * the RabbitMQ message broker. My channel is obtained
+ * from the ConnectionManager, which shares one connection
+ * per ConnectionSettings, and is released back to it when
+ * I am closed.
  *
  * @author Vaughn Vernon
  */
@@ -32,8 +30,11 @@ public abstract class BrokerChannel {
     /** My channel. */
     private Channel channel;
 
-    /** My connection, which is the connection to my host broker. */
-    private Connection connection;
+    /** My channelReusable, which indicates whether or not my channel may be pooled when I am closed. */
+    private boolean channelReusable;
+
+    /** My connectionSettings, which identify the connection to my host broker. */
+    private ConnectionSettings connectionSettings;
 
     /** My durable property, which indicates whether or not messages are durable. */
     private boolean durable;
@@ -79,20 +80,10 @@ public abstract class BrokerChannel {
 
         super();
 
-        ConnectionFactory factory =
-            this.configureConnectionFactoryUsing(aConnectionSettings);
-
         this.setName(aName);
-
-        try {
-
-            this.setConnection(factory.newConnection());
-
-            this.setChannel(this.connection().createChannel());
-
-        } catch (IOException e) {
-            throw new MessageException("Failed to create/open the queue.", e);
-        }
+        this.setChannelReusable(true);
+        this.setConnectionSettings(aConnectionSettings);
+        this.setChannel(ConnectionManager.instance().channel(aConnectionSettings));
     }
 
     /**
@@ -114,8 +105,15 @@ public abstract class BrokerChannel {
 
         this.setHost(aBrokerChannel.host());
         this.setName(aName);
-        this.setConnection(aBrokerChannel.connection());
+        this.setChannelReusable(aBrokerChannel.isChannelReusable());
+        this.setConnectionSettings(aBrokerChannel.connectionSettings());
         this.setChannel(aBrokerChannel.channel());
+
+        // both of us release the shared channel when closed
+
+        if (this.channel() != null) {
+            ConnectionManager.instance().share(this.channel());
+        }
     }
 
     /**
@@ -127,65 +125,38 @@ public abstract class BrokerChannel {
     }
 
     /**
-     * Closes me.
+     * Closes me by releasing my channel to the ConnectionManager.
+     * The shared connection stays open for other channels.
      */
     protected void close() {
 
         // RabbitMQ doesn't guarantee that if isOpen()
         // answers true that close() will work because
         // another client may be racing to close the
-        // same process and/or components. so here just
-        // attempt to close, catch and ignore, and move
-        // on to next steps is the recommended approach.
+        // same process and/or components. the manager
+        // attempts to close, catches and ignores, and
+        // moves on, which is the recommended approach.
         //
-        // for the purpose here, the isOpen() checks prevent
-        // closing a shared channel and connection that is
-        // shared by a subscriber exchange and queue.
-
-        try {
-            if (this.channel() != null && this.channel().isOpen()) {
-                this.channel().close();
-            }
-        } catch (Throwable e) {
-            // fall through
-        }
-
-        try {
-            if (this.connection() != null && this.connection().isOpen()) {
-                this.connection().close();
-            }
-        } catch (Throwable e) {
-            // fall through
+        // a channel shared by a subscriber exchange and
+        // queue is released by both; the manager pools
+        // it only when the last of them releases it.
+
+        if (this.channel() != null) {
+            ConnectionManager.instance().release(
+                    this.connectionSettings(),
+                    this.channel(),
+                    this.isChannelReusable());
         }
 
         this.setChannel(null);
-        this.setConnection(null);
     }
 
     /**
-     * Answers a new ConnectionFactory configured with aConnectionSettings.
-     * @param aConnectionSettings the ConnectionFactory
-     * @return ConnectionFactory
+     * Prevents my channel from being pooled when I am closed,
+     * such as when it has consumers or a prefetch setting.
      */
-    protected ConnectionFactory configureConnectionFactoryUsing(
-            ConnectionSettings aConnectionSettings) {
-
-        ConnectionFactory factory = new ConnectionFactory();
-
-        factory.setHost(aConnectionSettings.hostName());
-
-        if (aConnectionSettings.hasPort()) {
-            factory.setPort(aConnectionSettings.port());
-        }
-
-        factory.setVirtualHost(aConnectionSettings.virtualHost());
-
-        if (aConnectionSettings.hasUserCredentials()) {
-            factory.setUsername(aConnectionSettings.username());
-            factory.setPassword(aConnectionSettings.password());
-        }
-
-        return factory;
+    protected void disallowChannelReuse() {
+        this.setChannelReusable(false);
     }
 
     /**
@@ -255,19 +226,35 @@ public abstract class BrokerChannel {
     }
 
     /**
-     * Answers my connection.
-     * @return Connection
+     * Answers whether or not my channel may be pooled when I am closed.
+     * @return boolean
+     */
+    private boolean isChannelReusable() {
+        return this.channelReusable;
+    }
+
+    /**
+     * Sets my channelReusable.
+     * @param aChannelReusable the boolean to set as my channelReusable
+     */
+    private void setChannelReusable(boolean aChannelReusable) {
+        this.channelReusable = aChannelReusable;
+    }
+
+    /**
+     * Answers my connectionSettings.
+     * @return ConnectionSettings
      */
-    private Connection connection() {
-        return this.connection;
+    private ConnectionSettings connectionSettings() {
+        return this.connectionSettings;
     }
 
     /**
-     * Sets my connection.
-     * @param aConnection the Connection to set as my connection
+     * Sets my connectionSettings.
+     * @param aConnectionSettings the ConnectionSettings to set as my connectionSettings
      */
-    private void setConnection(Connection aConnection) {
-        this.connection = aConnection;
+    private void setConnectionSettings(ConnectionSettings aConnectionSettings) {
+        this.connectionSettings = aConnectionSettings;
     }
 
     /**
@@ -0,0 +1,324 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.port.adapter.messaging.rabbitmq;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.saasovation.common.port.adapter.messaging.MessageException;
+
+/**
+ * I manage the connections to RabbitMQ brokers. I share one
+ * connection for each distinct ConnectionSettings and pool the
+ * channels that are released to me, so that a BrokerChannel
+ * does not pay for a new TCP and AMQP handshake. When a broker
+ * restarts and a connection is lost, the next channel requested
+ * opens a new connection. A channel shared by several holders,
+ * such as an exchange and its queue, is returned to the pool
+ * only by the last of them to release it.
+ */
+public class ConnectionManager {
+
+    /** The maximum number of idle channels I pool for each connection. */
+    private static final int MAX_IDLE_CHANNELS = 16;
+
+    /** My singleton instance. */
+    private static ConnectionManager instance;
+
+    /** My connections, which are shared by their ConnectionSettings. */
+    private Map<ConnectionSettings,Connection> connections;
+
+    /** My holders, which count the holders of each channel in use. */
+    private Map<Channel,Integer> holders;
+
+    /** My idleChannels, which are pooled by their ConnectionSettings. */
+    private Map<ConnectionSettings,LinkedList<Channel>> idleChannels;
+
+    /**
+     * Answers my singleton instance.
+     * @return ConnectionManager
+     */
+    public static synchronized ConnectionManager instance() {
+        if (instance == null) {
+            instance = new ConnectionManager();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Answers an open Channel on the shared connection for
+     * aConnectionSettings, reusing an idle one if possible.
+     * @param aConnectionSettings the ConnectionSettings
+     * @return Channel
+     */
+    public synchronized Channel channel(ConnectionSettings aConnectionSettings) {
+        LinkedList<Channel> idleChannels = this.idleChannelsOf(aConnectionSettings);
+
+        Channel channel = null;
+
+        while (channel == null && !idleChannels.isEmpty()) {
+            channel = idleChannels.removeFirst();
+
+            if (!channel.isOpen()) {
+                channel = null;
+            }
+        }
+
+        if (channel == null) {
+            try {
+                channel = this.connection(aConnectionSettings).createChannel();
+            } catch (IOException e) {
+                throw new MessageException("Failed to create/open the channel.", e);
+            }
+        }
+
+        this.holders().put(channel, 1);
+
+        return channel;
+    }
+
+    /**
+     * Closes all my channels and connections.
+     */
+    public synchronized void close() {
+        for (LinkedList<Channel> idleChannels : this.idleChannels().values()) {
+            for (Channel channel : idleChannels) {
+                this.close(channel);
+            }
+        }
+
+        for (Connection connection : this.connections().values()) {
+            try {
+                if (connection.isOpen()) {
+                    connection.close();
+                }
+            } catch (Throwable t) {
+                // fall through
+            }
+        }
+
+        this.holders().clear();
+        this.idleChannels().clear();
+        this.connections().clear();
+    }
+
+    /**
+     * Releases aChannel that was answered by channel() or shared
+     * by share(). If isReusable it is kept for reuse once its last
+     * holder has released it; otherwise it is closed at once.
+     * @param aConnectionSettings the ConnectionSettings of aChannel
+     * @param aChannel the Channel to release
+     * @param isReusable the boolean indicating whether or not aChannel may be reused
+     */
+    public synchronized void release(
+            ConnectionSettings aConnectionSettings,
+            Channel aChannel,
+            boolean isReusable) {
+
+        Integer holders = this.holders().remove(aChannel);
+
+        if (!isReusable) {
+
+            // its consumers or prefetch setting are those of
+            // this holder, so no other may go on using it
+
+            this.idleChannelsOf(aConnectionSettings).remove(aChannel);
+
+            this.close(aChannel);
+
+            return;
+        }
+
+        if (holders != null && holders > 1) {
+            this.holders().put(aChannel, holders - 1);
+
+            return;
+        }
+
+        LinkedList<Channel> idleChannels = this.idleChannelsOf(aConnectionSettings);
+
+        if (idleChannels.contains(aChannel)) {
+            return;
+        }
+
+        if (aChannel.isOpen() && idleChannels.size() < MAX_IDLE_CHANNELS) {
+            idleChannels.addLast(aChannel);
+        } else {
+            this.close(aChannel);
+        }
+    }
+
+    /**
+     * Shares aChannel, which was answered by channel(), with one
+     * more holder, which must release it as well.
+     * @param aChannel the Channel to share
+     */
+    public synchronized void share(Channel aChannel) {
+        Integer holders = this.holders().get(aChannel);
+
+        if (holders != null) {
+            this.holders().put(aChannel, holders + 1);
+        }
+    }
+
+    /**
+     * Constructs my default state.
+     */
+    protected ConnectionManager() {
+        super();
+
+        this.setConnections(new HashMap<ConnectionSettings,Connection>());
+        this.setHolders(new IdentityHashMap<Channel,Integer>());
+        this.setIdleChannels(new HashMap<ConnectionSettings,LinkedList<Channel>>());
+    }
+
+    /**
+     * Answers a new ConnectionFactory configured with aConnectionSettings.
+     * @param aConnectionSettings the ConnectionFactory
+     * @return ConnectionFactory
+     */
+    protected ConnectionFactory configureConnectionFactoryUsing(
+            ConnectionSettings aConnectionSettings) {
+
+        ConnectionFactory factory = new ConnectionFactory();
+
+        factory.setHost(aConnectionSettings.hostName());
+
+        if (aConnectionSettings.hasPort()) {
+            factory.setPort(aConnectionSettings.port());
+        }
+
+        factory.setVirtualHost(aConnectionSettings.virtualHost());
+
+        if (aConnectionSettings.hasUserCredentials()) {
+            factory.setUsername(aConnectionSettings.username());
+            factory.setPassword(aConnectionSettings.password());
+        }
+
+        return factory;
+    }
+
+    /**
+     * Closes aChannel, ignoring any failure.
+     * @param aChannel the Channel to close
+     */
+    private void close(Channel aChannel) {
+        try {
+            if (aChannel.isOpen()) {
+                aChannel.close();
+            }
+        } catch (Throwable t) {
+            // fall through
+        }
+    }
+
+    /**
+     * Answers the open shared Connection for aConnectionSettings,
+     * opening a new one if there is none or if it has been lost.
+     * @param aConnectionSettings the ConnectionSettings
+     * @return Connection
+     * @throws IOException when the connection cannot be opened
+     */
+    private Connection connection(ConnectionSettings aConnectionSettings) throws IOException {
+        Connection connection = this.connections().get(aConnectionSettings);
+
+        if (connection == null || !connection.isOpen()) {
+
+            // the channels of a lost connection are closed too
+
+            this.idleChannelsOf(aConnectionSettings).clear();
+
+            connection =
+                this.configureConnectionFactoryUsing(aConnectionSettings)
+                    .newConnection();
+
+            this.connections().put(aConnectionSettings, connection);
+        }
+
+        return connection;
+    }
+
+    /**
+     * Answers my connections.
+     * @return Map<ConnectionSettings,Connection>
+     */
+    private Map<ConnectionSettings,Connection> connections() {
+        return this.connections;
+    }
+
+    /**
+     * Sets my connections.
+     * @param aConnections the Map<ConnectionSettings,Connection> to set as my connections
+     */
+    private void setConnections(Map<ConnectionSettings,Connection> aConnections) {
+        this.connections = aConnections;
+    }
+
+    /**
+     * Answers my holders.
+     * @return Map<Channel,Integer>
+     */
+    private Map<Channel,Integer> holders() {
+        return this.holders;
+    }
+
+    /**
+     * Sets my holders.
+     * @param aHolders the Map<Channel,Integer> to set as my holders
+     */
+    private void setHolders(Map<Channel,Integer> aHolders) {
+        this.holders = aHolders;
+    }
+
+    /**
+     * Answers my idleChannels.
+     * @return Map<ConnectionSettings,LinkedList<Channel>>
+     */
+    private Map<ConnectionSettings,LinkedList<Channel>> idleChannels() {
+        return this.idleChannels;
+    }
+
+    /**
+     * Sets my idleChannels.
+     * @param anIdleChannels the Map<ConnectionSettings,LinkedList<Channel>> to set as my idleChannels
+     */
+    private void setIdleChannels(Map<ConnectionSettings,LinkedList<Channel>> anIdleChannels) {
+        this.idleChannels = anIdleChannels;
+    }
+
+    /**
+     * Answers the idle channels of aConnectionSettings.
+     * @param aConnectionSettings the ConnectionSettings
+     * @return LinkedList<Channel>
+     */
+    private LinkedList<Channel> idleChannelsOf(ConnectionSettings aConnectionSettings) {
+        LinkedList<Channel> idleChannels = this.idleChannels().get(aConnectionSettings);
+
+        if (idleChannels == null) {
+            idleChannels = new LinkedList<Channel>();
+
+            this.idleChannels().put(aConnectionSettings, idleChannels);
+        }
+
+        return idleChannels;
+    }
+}
@@ -79,6 +79,54 @@ public class ConnectionSettings extends AssertionConcern {
                 aHostName, aPort, aVirtualHost, aUsername, aPassword);
     }
 
+    /**
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object anObject) {
+        boolean equalObjects = false;
+
+        if (anObject != null && this.getClass() == anObject.getClass()) {
+            ConnectionSettings typedObject = (ConnectionSettings) anObject;
+            equalObjects =
+                this.hostName().equals(typedObject.hostName()) &&
+                this.port() == typedObject.port() &&
+                this.virtualHost().equals(typedObject.virtualHost()) &&
+                (this.username() == null ?
+                        typedObject.username() == null :
+                        this.username().equals(typedObject.username())) &&
+                (this.password() == null ?
+                        typedObject.password() == null :
+                        this.password().equals(typedObject.password()));
+        }
+
+        return equalObjects;
+    }
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        int hashCodeValue =
+            + (71143 * 41)
+            + this.hostName().hashCode()
+            + this.port()
+            + this.virtualHost().hashCode()
+            + (this.username() == null ? 0 : this.username().hashCode());
+
+        return hashCodeValue;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "ConnectionSettings [hostName=" + hostName + ", port=" + port
+                + ", virtualHost=" + virtualHost + ", username=" + username + "]";
+    }
+
     /**
      * Constructs my default state.
      * @param aHostName the String name of the host server
@@ -14,20 +14,30 @@
 
 package com.saasovation.common.port.adapter.messaging.rabbitmq;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * I am an abstract base class for exchange listeners.
  * I perform the basic set up according to the answers
- * from my concrete subclass.
+ * from my concrete subclass. My messages are received by
+ * one or more consumers, each on its own channel, and are
+ * dispatched on a bounded pool of worker threads.
  *
  * @author Vaughn Vernon
  */
 public abstract class ExchangeListener {
 
-    private MessageConsumer messageConsumer;
+    private List<MessageConsumer> messageConsumers;
 
-    private Queue queue;
+    private List<Queue> queues;
+
+    private ThreadPoolExecutor workers;
 
     /**
      * Constructs my default state.
@@ -41,10 +51,28 @@ public abstract class ExchangeListener {
     }
 
     /**
-     * Closes my queue.
+     * Closes my consumers and their queues, and stops my workers.
      */
     public void close() {
-        this.queue().close();
+        for (MessageConsumer messageConsumer : this.messageConsumers()) {
+            messageConsumer.close();
+        }
+
+        this.workers().shutdown();
+    }
+
+    /**
+     * Answers the number of consumers that receive from my
+     * queue, each of which has its own channel and prefetch
+     * limit. By default there is one, so that my messages are
+     * dispatched in the order they were queued. May be overridden
+     * by listeners that tolerate concurrent dispatch, such as those
+     * whose handlers record when each change occurred and ignore
+     * a change older than the one they already applied.
+     * @return int
+     */
+    protected int consumerCount() {
+        return 1;
     }
 
     /**
@@ -66,6 +94,16 @@ public abstract class ExchangeListener {
      */
     protected abstract String[] listensTo();
 
+    /**
+     * Answers the number of unacknowledged messages the broker
+     * delivers to each of my consumers. Acknowledgements are
+     * sent for half as many messages at a time. May be overridden.
+     * @return int
+     */
+    protected int prefetchCount() {
+        return 50;
+    }
+
     /**
      * Answers the String name of the queue I listen to. By
      * default it is the simple name of my concrete class.
@@ -80,33 +118,89 @@ public abstract class ExchangeListener {
      * Attaches to the queues I listen to for messages.
      */
     private void attachToQueue() {
-        Exchange exchange =
-                Exchange.fanOutInstance(
-                        ConnectionSettings.instance(),
-                        this.exchangeName(),
-                        true);
-
-        this.queue =
-                Queue.individualExchangeSubscriberInstance(
-                        exchange,
-                        this.exchangeName() + "." + this.queueName());
+        this.queues = new ArrayList<Queue>();
+
+        for (int idx = 0; idx < this.consumerCount(); ++idx) {
+
+            // each consumer needs its own channel, and
+            // a queue shares the channel of its exchange
+
+            Exchange exchange =
+                    Exchange.fanOutInstance(
+                            ConnectionSettings.instance(),
+                            this.exchangeName(),
+                            true);
+
+            this.queues.add(
+                    Queue.individualExchangeSubscriberInstance(
+                            exchange,
+                            this.exchangeName() + "." + this.queueName()));
+        }
     }
 
     /**
-     * Answers my queue.
-     * @return Queue
+     * Answers my messageConsumers.
+     * @return List<MessageConsumer>
      */
-    private Queue queue() {
-        return this.queue;
+    private List<MessageConsumer> messageConsumers() {
+        return this.messageConsumers;
     }
 
     /**
-     * Registers my listener for queue messages and dispatching.
+     * Answers my queues.
+     * @return List<Queue>
+     */
+    private List<Queue> queues() {
+        return this.queues;
+    }
+
+    /**
+     * Registers my listeners for queue messages and dispatching.
      */
     private void registerConsumer() {
-        this.messageConsumer = MessageConsumer.instance(this.queue(), false);
+        final String threadName = this.getClass().getSimpleName();
+
+        // bounded by the prefetch limit of every consumer, so
+        // deliveries never wait on the AMQP client thread
+
+        this.workers =
+                new ThreadPoolExecutor(
+                        this.consumerCount(),
+                        this.consumerCount(),
+                        0L,
+                        TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<Runnable>(this.consumerCount() * this.prefetchCount()),
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable aRunnable) {
+                                Thread thread = new Thread(aRunnable, threadName);
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        },
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+
+        this.messageConsumers = new ArrayList<MessageConsumer>();
+
+        for (Queue queue : this.queues()) {
+            MessageConsumer messageConsumer = MessageConsumer.instance(queue, false);
+
+            messageConsumer.prefetch(this.prefetchCount());
+
+            messageConsumer.dispatchOn(this.workers(), Math.max(1, this.prefetchCount() / 2));
+
+            this.registerListenerWith(messageConsumer);
 
-        this.messageConsumer.receiveOnly(
+            this.messageConsumers.add(messageConsumer);
+        }
+    }
+
+    /**
+     * Registers my listener with aMessageConsumer.
+     * @param aMessageConsumer the MessageConsumer to receive from
+     */
+    private void registerListenerWith(MessageConsumer aMessageConsumer) {
+        aMessageConsumer.receiveOnly(
                 this.listensTo(),
                 new MessageListener(MessageListener.Type.TEXT) {
 
@@ -123,4 +217,12 @@ public abstract class ExchangeListener {
             }
         });
     }
+
+    /**
+     * Answers my workers.
+     * @return ThreadPoolExecutor
+     */
+    private ThreadPoolExecutor workers() {
+        return this.workers;
+    }
 }
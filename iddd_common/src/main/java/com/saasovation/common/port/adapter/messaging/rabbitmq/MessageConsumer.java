@@ -17,7 +17,11 @@ package com.saasovation.common.port.adapter.messaging.rabbitmq;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
 
 import com.rabbitmq.client.AMQP.BasicProperties;
 import com.rabbitmq.client.Channel;
@@ -30,18 +34,26 @@ import com.saasovation.common.port.adapter.messaging.MessageException;
 /**
  * I am a message consumer, which facilitates receiving messages
  * from a Queue. A MessageListener or a client may close me,
- * terminating message consumption.
+ * terminating message consumption. My messages may be handled
+ * on an Executor rather than on the client's delivery thread,
+ * in which case their acknowledgements are batched.
  *
  * @author Vaughn Vernon
  */
 public class MessageConsumer {
 
+    /** My acknowledgeBatchSize, which is the number of messages acknowledged at once. */
+    private int acknowledgeBatchSize;
+
     /** My autoAcknowledged property. */
     private boolean autoAcknowledged;
 
     /** My closed property, which indicates I have been closed. */
     private boolean closed;
 
+    /** My executor, which handles my messages, or null to handle them on the delivery thread. */
+    private Executor executor;
+
     /** My messageTypes, which indicates the messages of types I accept. */
     private Set<String> messageTypes;
 
@@ -101,15 +113,40 @@ public class MessageConsumer {
         return this.closed;
     }
 
+    /**
+     * Handles my messages on anExecutor rather than on the client's
+     * delivery thread, and acknowledges them anAcknowledgeBatchSize
+     * at a time. Must be used before receiving.
+     * @param anExecutor the Executor that handles my messages
+     * @param anAcknowledgeBatchSize the int number of messages to acknowledge at once
+     */
+    public void dispatchOn(Executor anExecutor, int anAcknowledgeBatchSize) {
+        if (anAcknowledgeBatchSize <= 0) {
+            throw new IllegalArgumentException("The acknowledge batch size must be greater than zero.");
+        }
+
+        this.executor = anExecutor;
+        this.acknowledgeBatchSize = anAcknowledgeBatchSize;
+    }
+
     /**
      * Ensure an equalization of message distribution
      * across all consumers of this queue.
      */
     public void equalizeMessageDistribution() {
+        this.prefetch(1);
+    }
+
+    /**
+     * Limits the number of unacknowledged messages the broker
+     * delivers to me to aPrefetchCount.
+     * @param aPrefetchCount the int maximum number of unacknowledged messages
+     */
+    public void prefetch(int aPrefetchCount) {
         try {
-            this.queue().channel().basicQos(1);
+            this.queue().channel().basicQos(aPrefetchCount);
         } catch (IOException e) {
-            throw new MessageException("Cannot equalize distribution.", e);
+            throw new MessageException("Cannot set the prefetch count.", e);
         }
     }
 
@@ -168,7 +205,22 @@ public class MessageConsumer {
 
         this.setQueue(aQueue);
 
+        // a channel with consumers and a prefetch
+        // setting is closed rather than pooled
+
+        this.queue().disallowChannelReuse();
+
         this.setAutoAcknowledged(isAutoAcknowledged);
+
+        this.acknowledgeBatchSize = 1;
+    }
+
+    /**
+     * Answers my acknowledgeBatchSize.
+     * @return int
+     */
+    private int acknowledgeBatchSize() {
+        return this.acknowledgeBatchSize;
     }
 
     /**
@@ -203,6 +255,14 @@ public class MessageConsumer {
         return this.queue;
     }
 
+    /**
+     * Answers my executor.
+     * @return Executor
+     */
+    private Executor executor() {
+        return this.executor;
+    }
+
     /**
      * Answers my messageTypes.
      * @return Set<String>
@@ -262,10 +322,18 @@ public class MessageConsumer {
 
         private MessageListener messageListener;
 
+        // the delivery tags handled on my executor, mapped to
+        // whether each is done (TRUE when it may be acked and
+        // FALSE when it was nacked) or null while in progress
+
+        private SortedMap<Long,Boolean> unsettledDeliveries;
+
         public DispatchingConsumer(Channel aChannel, MessageListener aMessageListener) {
             super(aChannel);
 
             this.setMessageListener(aMessageListener);
+
+            this.unsettledDeliveries = new TreeMap<Long,Boolean>();
         }
 
         @Override
@@ -275,8 +343,29 @@ public class MessageConsumer {
                 BasicProperties aProperties,
                 byte[] aBody) throws IOException {
 
+            final Delivery delivery = new Delivery(anEnvelope, aProperties, aBody);
+
             if (!isClosed()) {
-                handle(this.messageListener(), new Delivery(anEnvelope, aProperties, aBody));
+                if (executor() == null) {
+                    handle(this.messageListener(), delivery);
+                } else {
+                    synchronized (this.unsettledDeliveries) {
+                        this.unsettledDeliveries.put(anEnvelope.getDeliveryTag(), null);
+                    }
+
+                    executor().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!isClosed()) {
+                                handle(messageListener(), delivery);
+                            }
+
+                            if (isClosed()) {
+                                queue().close();
+                            }
+                        }
+                    });
+                }
             }
 
             if (isClosed()) {
@@ -331,13 +420,20 @@ public class MessageConsumer {
 
         private void ack(Delivery aDelivery) {
             try {
-                if (!isAutoAcknowledged()) {
+                if (isAutoAcknowledged()) {
+                    ;
+                } else if (executor() == null) {
                     this.getChannel().basicAck(
                             aDelivery.getEnvelope().getDeliveryTag(),
                             false);
+                } else {
+                    this.settle(aDelivery.getEnvelope().getDeliveryTag(), true);
                 }
             } catch (IOException ioe) {
                 // fall through
+            } catch (ShutdownSignalException sse) {
+                // the channel closed while handling; the broker
+                // redelivers all that it had not acknowledged
             }
         }
 
@@ -348,9 +444,61 @@ public class MessageConsumer {
                             aDelivery.getEnvelope().getDeliveryTag(),
                             false,
                             isRetry);
+
+                    if (executor() != null) {
+                        this.settle(aDelivery.getEnvelope().getDeliveryTag(), false);
+                    }
                 }
             } catch (IOException ioe) {
                 // fall through
+            } catch (ShutdownSignalException sse) {
+                // fall through, as when acknowledging
+            }
+        }
+
+        /**
+         * Settles aDeliveryTag and acknowledges, with multiple=true,
+         * the longest run of settled deliveries handled by my executor
+         * once it holds a batch or there is nothing left in progress.
+         * The acknowledged tag is the highest acked one in the run, so
+         * that messages still being handled are never acknowledged and
+         * nacked ones are not settled twice.
+         * @param aDeliveryTag the long delivery tag of the handled message
+         * @param isAcked the boolean indicating whether or not the message may be acked
+         * @throws IOException when the acknowledgement fails
+         */
+        private void settle(long aDeliveryTag, boolean isAcked) throws IOException {
+            synchronized (this.unsettledDeliveries) {
+                this.unsettledDeliveries.put(aDeliveryTag, isAcked);
+
+                int settledCount = 0;
+                long ackDeliveryTag = -1L;
+                long lastSettledDeliveryTag = -1L;
+
+                for (Map.Entry<Long,Boolean> entry : this.unsettledDeliveries.entrySet()) {
+                    if (entry.getValue() == null) {
+                        break;
+                    }
+
+                    ++settledCount;
+
+                    lastSettledDeliveryTag = entry.getKey();
+
+                    if (entry.getValue().booleanValue()) {
+                        ackDeliveryTag = entry.getKey();
+                    }
+                }
+
+                if (settledCount < acknowledgeBatchSize() &&
+                        settledCount < this.unsettledDeliveries.size()) {
+                    return;
+                }
+
+                if (ackDeliveryTag >= 0) {
+                    this.getChannel().basicAck(ackDeliveryTag, true);
+                }
+
+                this.unsettledDeliveries.headMap(lastSettledDeliveryTag + 1).clear();
             }
         }
 
@@ -15,14 +15,22 @@
 package com.saasovation.common.port.adapter.messaging.rabbitmq;
 
 import java.io.IOException;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.ConfirmListener;
 import com.rabbitmq.client.MessageProperties;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
 import com.saasovation.common.port.adapter.messaging.MessageException;
 
 /**
  * I am a message producer, which facilitates sending messages to a BrokerChannel.
- * A BrokerChannel may be either an Exchange or a Queue.
+ * A BrokerChannel may be either an Exchange or a Queue. When
+ * I am a confirmed instance the broker confirms each message
+ * asynchronously, so that a burst of messages may be sent
+ * before waiting for all of their confirmations.
  *
  * @author Vaughn Vernon
  */
@@ -31,6 +39,12 @@ public class MessageProducer {
     /** My brokerChannel, which is where I send messages. */
     private BrokerChannel brokerChannel;
 
+    /** My nacked, which are the sequence numbers the broker rejected, or null if I am not confirmed. */
+    private SortedSet<Long> nacked;
+
+    /** My unconfirmed, which are the sequence numbers not yet confirmed, or null if I am not confirmed. */
+    private SortedSet<Long> unconfirmed;
+
     /**
      * Answers a new instance of a MessageProducer.
      * @param aBrokerChannel the BrokerChannel where messages are to be sent
@@ -40,6 +54,22 @@ public class MessageProducer {
         return new MessageProducer(aBrokerChannel);
     }
 
+    /**
+     * Answers a new instance of a MessageProducer whose messages
+     * are confirmed by the broker. The channel of aBrokerChannel
+     * is put in confirm mode, and is therefore not reused by
+     * other producers once I am closed.
+     * @param aBrokerChannel the BrokerChannel where messages are to be sent
+     * @return MessageProducer
+     */
+    public static MessageProducer confirmedInstance(BrokerChannel aBrokerChannel) {
+        MessageProducer messageProducer = new MessageProducer(aBrokerChannel);
+
+        messageProducer.confirmSelect();
+
+        return messageProducer;
+    }
+
     /**
      * Closes me, which closes my broker channel.
      */
@@ -47,6 +77,66 @@ public class MessageProducer {
         this.brokerChannel().close();
     }
 
+    /**
+     * Answers whether or not the message sent with aSequenceNumber
+     * has been confirmed by the broker. If I am not a confirmed
+     * instance, answers false.
+     * @param aSequenceNumber the long sequence number of the message
+     * @return boolean
+     */
+    public boolean isConfirmed(long aSequenceNumber) {
+        if (this.unconfirmed() == null) {
+            return false;
+        }
+
+        return aSequenceNumber < this.brokerChannel().channel().getNextPublishSeqNo() &&
+                !this.unconfirmed().contains(aSequenceNumber) &&
+                !this.nacked().contains(aSequenceNumber);
+    }
+
+    /**
+     * Answers the sequence number that the next message sent
+     * by me will have, which may be tested with isConfirmed().
+     * @return long
+     */
+    public long nextSequenceNumber() {
+        return this.brokerChannel().channel().getNextPublishSeqNo();
+    }
+
+    /**
+     * Answers whether or not all messages sent by me have been
+     * confirmed after waiting no longer than aTimeoutMillis
+     * for the outstanding confirmations to arrive.
+     * @param aTimeoutMillis the long number of milliseconds to wait
+     * @return boolean
+     */
+    public boolean waitForConfirms(long aTimeoutMillis) {
+        if (this.unconfirmed() == null) {
+            throw new IllegalStateException("Not a confirmed producer.");
+        }
+
+        long deadline = System.currentTimeMillis() + aTimeoutMillis;
+
+        synchronized (this.unconfirmed()) {
+            while (!this.unconfirmed().isEmpty() && this.brokerChannel().channel().isOpen()) {
+                long remaining = deadline - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    break;
+                }
+
+                try {
+                    this.unconfirmed().wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            return this.unconfirmed().isEmpty() && this.nacked().isEmpty();
+        }
+    }
+
     /**
      * Answers the receiver after sending aTextMessage to my channel.
      * This is a producer ignorance way to use either an exchange or
@@ -57,7 +147,7 @@ public class MessageProducer {
      */
     public MessageProducer send(String aTextMessage) {
         try {
-            this.brokerChannel().channel().basicPublish(
+            this.publish(
                     this.brokerChannel().exchangeName(),
                     this.brokerChannel().queueName(),
                     this.textDurability(),
@@ -86,7 +176,7 @@ public class MessageProducer {
         this.check(aMessageParameters);
 
         try {
-            this.brokerChannel().channel().basicPublish(
+            this.publish(
                     this.brokerChannel().exchangeName(),
                     this.brokerChannel().queueName(),
                     aMessageParameters.properties(),
@@ -116,7 +206,7 @@ public class MessageProducer {
         this.check(aMessageParameters);
 
         try {
-            this.brokerChannel().channel().basicPublish(
+            this.publish(
                     this.brokerChannel().exchangeName(),
                     aRoutingKey,
                     aMessageParameters.properties(),
@@ -147,7 +237,7 @@ public class MessageProducer {
         this.check(aMessageParameters);
 
         try {
-            this.brokerChannel().channel().basicPublish(
+            this.publish(
                     anExchange,
                     aRoutingKey,
                     aMessageParameters.properties(),
@@ -169,7 +259,7 @@ public class MessageProducer {
      */
     public MessageProducer send(byte[] aBinaryMessage) {
         try {
-            this.brokerChannel().channel().basicPublish(
+            this.publish(
                     this.brokerChannel().exchangeName(),
                     this.brokerChannel().queueName(),
                     this.binaryDurability(),
@@ -197,7 +287,7 @@ public class MessageProducer {
         this.check(aMessageParameters);
 
         try {
-            this.brokerChannel().channel().basicPublish(
+            this.publish(
                     this.brokerChannel().exchangeName(),
                     this.brokerChannel().queueName(),
                     this.binaryDurability(),
@@ -227,7 +317,7 @@ public class MessageProducer {
         this.check(aMessageParameters);
 
         try {
-            this.brokerChannel().channel().basicPublish(
+            this.publish(
                     this.brokerChannel().exchangeName(),
                     aRoutingKey,
                     this.binaryDurability(),
@@ -258,7 +348,7 @@ public class MessageProducer {
         this.check(aMessageParameters);
 
         try {
-            this.brokerChannel().channel().basicPublish(
+            this.publish(
                     anExchange,
                     aRoutingKey,
                     this.binaryDurability(),
@@ -295,6 +385,111 @@ public class MessageProducer {
         this.brokerChannel = aBrokerChannel;
     }
 
+    /**
+     * Puts my channel in confirm mode and listens
+     * for the confirmations of my messages.
+     */
+    private void confirmSelect() {
+        this.nacked = new ConcurrentSkipListSet<Long>();
+        this.unconfirmed = new ConcurrentSkipListSet<Long>();
+
+        this.brokerChannel().disallowChannelReuse();
+
+        try {
+            this.brokerChannel().channel().confirmSelect();
+        } catch (IOException e) {
+            throw new MessageException("Failed to select confirms on channel.", e);
+        }
+
+        this.brokerChannel().channel().addConfirmListener(new ConfirmListener() {
+            @Override
+            public void handleAck(long aDeliveryTag, boolean isMultiple) {
+                settle(aDeliveryTag, isMultiple, false);
+            }
+
+            @Override
+            public void handleNack(long aDeliveryTag, boolean isMultiple) {
+                settle(aDeliveryTag, isMultiple, true);
+            }
+        });
+
+        this.brokerChannel().channel().addShutdownListener(new ShutdownListener() {
+            @Override
+            public void shutdownCompleted(ShutdownSignalException aCause) {
+                synchronized (unconfirmed()) {
+                    unconfirmed().notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Answers my nacked.
+     * @return SortedSet<Long>
+     */
+    private SortedSet<Long> nacked() {
+        return this.nacked;
+    }
+
+    /**
+     * Publishes aBody to my channel, remembering its sequence
+     * number until it is confirmed if I am a confirmed instance.
+     * @param anExchange the String name of the exchange
+     * @param aRoutingKey the String routing key
+     * @param aProperties the BasicProperties
+     * @param aBody the byte[] message
+     * @throws IOException when the message cannot be published
+     */
+    private void publish(
+            String anExchange,
+            String aRoutingKey,
+            BasicProperties aProperties,
+            byte[] aBody)
+    throws IOException {
+
+        if (this.unconfirmed() != null) {
+            this.unconfirmed().add(this.nextSequenceNumber());
+        }
+
+        this.brokerChannel().channel().basicPublish(
+                anExchange,
+                aRoutingKey,
+                aProperties,
+                aBody);
+    }
+
+    /**
+     * Settles the confirmation of aDeliveryTag, and of all the
+     * earlier ones if isMultiple, as either acknowledged or not.
+     * @param aDeliveryTag the long delivery tag confirmed by the broker
+     * @param isMultiple the boolean indicating whether or not all earlier tags are included
+     * @param isNacked the boolean indicating whether or not the broker rejected the messages
+     */
+    private void settle(long aDeliveryTag, boolean isMultiple, boolean isNacked) {
+        synchronized (this.unconfirmed()) {
+            SortedSet<Long> settled =
+                isMultiple ?
+                    this.unconfirmed().headSet(aDeliveryTag + 1) :
+                    this.unconfirmed().subSet(aDeliveryTag, aDeliveryTag + 1);
+
+            if (isNacked) {
+                this.nacked().addAll(settled);
+            }
+
+            settled.clear();
+
+            this.unconfirmed().notifyAll();
+        }
+    }
+
+    /**
+     * Answers my unconfirmed.
+     * @return SortedSet<Long>
+     */
+    private SortedSet<Long> unconfirmed() {
+        return this.unconfirmed;
+    }
+
     /**
      * Checks aMessageParameters for validity.
      * @param aMessageParameters the MessageParameters to check
@@ -0,0 +1,386 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.port.adapter.messaging.slothmq;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * I am the durable log of one exchange. Messages are appended to
+ * memory-mapped segment files, each named by the offset of its
+ * first message, and are read back by offset. I also keep the
+ * offset each subscriber has acknowledged, so that it may resume
+ * where it left off. Segments older than my retention are deleted.
+ */
+class ExchangeLog {
+
+	private static final String OFFSETS_FILE_NAME = "offsets.properties";
+	private static final int RECORD_HEADER_SIZE = 4;
+	private static final int SEGMENT_SIZE = 8 * 1024 * 1024;
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private File directory;
+	private Map<String,Long> offsets;
+	private boolean offsetsChanged;
+	private long retentionMillis;
+	private TreeMap<Long,Segment> segments;
+
+	ExchangeLog(File aDirectory, long aRetentionMillis) throws IOException {
+		super();
+
+		this.directory = aDirectory;
+		this.offsets = new HashMap<String,Long>();
+		this.retentionMillis = aRetentionMillis;
+		this.segments = new TreeMap<Long,Segment>();
+
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			throw new IOException("Cannot create log directory: " + this.directory);
+		}
+
+		this.openSegments();
+		this.loadOffsets();
+	}
+
+	void acknowledge(String aSubscriberName, long anOffset) {
+		Long offset = this.offsets.get(aSubscriberName);
+
+		if (offset == null || offset.longValue() < anOffset) {
+			this.offsets.put(aSubscriberName, anOffset);
+			this.offsetsChanged = true;
+		}
+	}
+
+	long append(String aMessage) throws IOException {
+		byte[] bytes = aMessage.getBytes(UTF_8);
+
+		Segment segment = this.activeSegment();
+
+		if (!segment.hasRoomFor(bytes.length)) {
+			segment = this.rollSegment(bytes.length);
+		}
+
+		long offset = segment.endOffset();
+
+		segment.append(bytes);
+
+		return offset;
+	}
+
+	void close() throws IOException {
+		this.flush();
+	}
+
+	void compact(long aCurrentTimeMillis) {
+
+		// the active segment is never deleted, and a segment
+		// is only deleted once every earlier one has been
+
+		while (this.segments.size() > 1) {
+			Segment oldest = this.segments.firstEntry().getValue();
+
+			// compared by age, which cannot overflow as the sum
+			// of a time and a retention of Long.MAX_VALUE would
+
+			if (aCurrentTimeMillis - oldest.file().lastModified() < this.retentionMillis) {
+				break;
+			}
+
+			this.segments.remove(oldest.baseOffset());
+
+			if (!oldest.file().delete()) {
+				System.out.println("SLOTH SERVER: Cannot delete log segment: " + oldest.file());
+			}
+		}
+	}
+
+	long endOffset() {
+		return this.activeSegment().endOffset();
+	}
+
+	void flush() throws IOException {
+		this.activeSegment().force();
+
+		if (this.offsetsChanged) {
+			this.saveOffsets();
+		}
+	}
+
+	long resumeOffsetOf(String aSubscriberName) {
+		Long offset = this.offsets.get(aSubscriberName);
+
+		// a new subscriber starts with the next message
+
+		if (offset == null) {
+			return this.endOffset();
+		}
+
+		return Math.max(this.startOffset(), Math.min(offset.longValue(), this.endOffset()));
+	}
+
+	Record read(long anOffset) {
+		Map.Entry<Long,Segment> entry = this.segments.floorEntry(anOffset);
+
+		if (entry == null) {
+			entry = this.segments.firstEntry();
+		}
+
+		Segment segment = entry.getValue();
+
+		long offset = Math.max(anOffset, segment.baseOffset());
+
+		if (offset >= segment.endOffset()) {
+			Map.Entry<Long,Segment> next = this.segments.higherEntry(segment.baseOffset());
+
+			return next == null ? null : this.read(next.getKey());
+		}
+
+		return segment.read(offset);
+	}
+
+	long startOffset() {
+		return this.segments.firstKey();
+	}
+
+	private Segment activeSegment() {
+		return this.segments.lastEntry().getValue();
+	}
+
+	private void loadOffsets() throws IOException {
+		File offsetsFile = new File(this.directory, OFFSETS_FILE_NAME);
+
+		if (offsetsFile.exists()) {
+			Properties properties = new Properties();
+
+			InputStream input = new FileInputStream(offsetsFile);
+
+			try {
+				properties.load(input);
+			} finally {
+				input.close();
+			}
+
+			for (String subscriberName : properties.stringPropertyNames()) {
+				this.offsets.put(subscriberName, Long.parseLong(properties.getProperty(subscriberName)));
+			}
+		}
+	}
+
+	private void openSegments() throws IOException {
+		File[] files = this.directory.listFiles();
+
+		for (File file : files) {
+			String fileName = file.getName();
+
+			if (fileName.endsWith(SEGMENT_SUFFIX)) {
+				long baseOffset = Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+
+				this.segments.put(baseOffset, new Segment(file, baseOffset, (int) file.length()));
+			}
+		}
+
+		if (this.segments.isEmpty()) {
+			this.rollSegment(0);
+		}
+	}
+
+	private Segment rollSegment(int aMessageLength) throws IOException {
+		long baseOffset = this.segments.isEmpty() ? 0L : this.endOffset();
+
+		if (!this.segments.isEmpty() && this.activeSegment().baseOffset() == baseOffset) {
+
+			// an empty segment too small for the message is replaced
+
+			this.segments.remove(baseOffset);
+
+		} else if (!this.segments.isEmpty()) {
+
+			// marks when the segment stopped growing, since
+			// writes through a mapping may not update it
+
+			this.activeSegment().force();
+			this.activeSegment().file().setLastModified(System.currentTimeMillis());
+		}
+
+		File file = new File(this.directory, String.format("%020d", baseOffset) + SEGMENT_SUFFIX);
+
+		Segment segment =
+				new Segment(
+						file,
+						baseOffset,
+						Math.max(SEGMENT_SIZE, RECORD_HEADER_SIZE + aMessageLength));
+
+		this.segments.put(baseOffset, segment);
+
+		return segment;
+	}
+
+	private void saveOffsets() throws IOException {
+		Properties properties = new Properties();
+
+		for (Map.Entry<String,Long> entry : this.offsets.entrySet()) {
+			properties.setProperty(entry.getKey(), entry.getValue().toString());
+		}
+
+		File offsetsFile = new File(this.directory, OFFSETS_FILE_NAME);
+		File temporaryFile = new File(this.directory, OFFSETS_FILE_NAME + ".tmp");
+
+		OutputStream output = new FileOutputStream(temporaryFile);
+
+		try {
+			properties.store(output, null);
+		} finally {
+			output.close();
+		}
+
+		if (!temporaryFile.renameTo(offsetsFile)) {
+			offsetsFile.delete();
+
+			if (!temporaryFile.renameTo(offsetsFile)) {
+				throw new IOException("Cannot save offsets: " + offsetsFile);
+			}
+		}
+
+		this.offsetsChanged = false;
+	}
+
+	static class Record {
+
+		private String message;
+		private long nextOffset;
+
+		Record(String aMessage, long aNextOffset) {
+			super();
+
+			this.message = aMessage;
+			this.nextOffset = aNextOffset;
+		}
+
+		String message() {
+			return this.message;
+		}
+
+		long nextOffset() {
+			return this.nextOffset;
+		}
+	}
+
+	private static class Segment {
+
+		private long baseOffset;
+		private MappedByteBuffer buffer;
+		private File file;
+		private int writePosition;
+
+		Segment(File aFile, long aBaseOffset, int aSize) throws IOException {
+			super();
+
+			this.baseOffset = aBaseOffset;
+			this.file = aFile;
+
+			RandomAccessFile randomAccessFile = new RandomAccessFile(aFile, "rw");
+
+			try {
+				randomAccessFile.setLength(aSize);
+
+				this.buffer =
+						randomAccessFile.getChannel().map(
+								FileChannel.MapMode.READ_WRITE, 0, aSize);
+			} finally {
+				randomAccessFile.close();
+			}
+
+			this.recoverWritePosition();
+		}
+
+		void append(byte[] aBytes) {
+
+			// the length is written last, so that a record
+			// is not visible until all of it has been written
+
+			this.buffer.position(this.writePosition + RECORD_HEADER_SIZE);
+			this.buffer.put(aBytes);
+			this.buffer.putInt(this.writePosition, aBytes.length);
+
+			this.writePosition += RECORD_HEADER_SIZE + aBytes.length;
+		}
+
+		long baseOffset() {
+			return this.baseOffset;
+		}
+
+		long endOffset() {
+			return this.baseOffset + this.writePosition;
+		}
+
+		File file() {
+			return this.file;
+		}
+
+		void force() {
+			this.buffer.force();
+		}
+
+		boolean hasRoomFor(int aMessageLength) {
+			return this.writePosition + RECORD_HEADER_SIZE + aMessageLength <= this.buffer.capacity();
+		}
+
+		Record read(long anOffset) {
+			int position = (int) (anOffset - this.baseOffset);
+
+			int length = this.buffer.getInt(position);
+
+			byte[] bytes = new byte[length];
+
+			ByteBuffer view = this.buffer.duplicate();
+
+			view.position(position + RECORD_HEADER_SIZE);
+			view.get(bytes);
+
+			return new Record(
+					new String(bytes, UTF_8),
+					anOffset + RECORD_HEADER_SIZE + length);
+		}
+
+		private void recoverWritePosition() {
+			int position = 0;
+
+			while (position + RECORD_HEADER_SIZE <= this.buffer.capacity()) {
+				int length = this.buffer.getInt(position);
+
+				if (length <= 0 || position + RECORD_HEADER_SIZE + length > this.buffer.capacity()) {
+					break;
+				}
+
+				position += RECORD_HEADER_SIZE + length;
+			}
+
+			this.writePosition = position;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.port.adapter.messaging.slothmq;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * I read length-prefixed frames from a connection. Each frame is
+ * a four byte length followed by that many bytes of UTF-8 text.
+ * I keep the bytes of a partial frame until the rest arrives.
+ */
+class FrameBuffer {
+
+	private static final int FRAME_HEADER_SIZE = 4;
+	private static final int INITIAL_CAPACITY = 64 * 1024;
+	private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private ByteBuffer buffer;
+
+	static ByteBuffer frameOf(String anEncodedMessage) {
+		byte[] bytes = anEncodedMessage.getBytes(UTF_8);
+
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + bytes.length);
+
+		frame.putInt(bytes.length);
+		frame.put(bytes);
+		frame.flip();
+
+		return frame;
+	}
+
+	FrameBuffer() {
+		super();
+
+		this.buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+	}
+
+	int readFrom(ReadableByteChannel aChannel, List<String> aFrames) throws IOException {
+		int count = aChannel.read(this.buffer);
+
+		if (count > 0) {
+			this.extractFramesInto(aFrames);
+		}
+
+		return count;
+	}
+
+	private void extractFramesInto(List<String> aFrames) throws IOException {
+		this.buffer.flip();
+
+		int pendingFrameSize = 0;
+
+		while (this.buffer.remaining() >= FRAME_HEADER_SIZE) {
+			int length = this.buffer.getInt(this.buffer.position());
+
+			if (length < 0 || length > MAX_FRAME_SIZE) {
+				throw new IOException("Malformed frame of length: " + length);
+			}
+
+			if (this.buffer.remaining() < FRAME_HEADER_SIZE + length) {
+				pendingFrameSize = FRAME_HEADER_SIZE + length;
+				break;
+			}
+
+			byte[] bytes = new byte[length];
+
+			this.buffer.position(this.buffer.position() + FRAME_HEADER_SIZE);
+			this.buffer.get(bytes);
+
+			aFrames.add(new String(bytes, UTF_8));
+		}
+
+		this.buffer.compact();
+
+		if (pendingFrameSize > this.buffer.capacity()) {
+			ByteBuffer largerBuffer = ByteBuffer.allocateDirect(pendingFrameSize);
+
+			this.buffer.flip();
+
+			largerBuffer.put(this.buffer);
+
+			this.buffer = largerBuffer;
+		}
+	}
+}
@@ -21,10 +21,14 @@ import java.util.Map;
 
 public class SlothClient extends SlothWorker {
 
+	private static final int ACKNOWLEDGE_BATCH_SIZE = 100;
+
 	private static SlothClient instance;
 
 	private Map<String,ExchangeListener> exchangeListeners;
 	private Object lock;
+	private int unacknowledgedCount;
+	private Map<String,Long> unacknowledgedOffsets;
 
 	public static synchronized SlothClient instance() {
 		if (instance == null) {
@@ -37,14 +41,11 @@ public class SlothClient extends SlothWorker {
 	public void close() {
 		System.out.println("SLOTH CLIENT: Closing...");
 
-		super.close();
+		// unsubscribes while still connected
 
-		List<ExchangeListener> listeners =
-				new ArrayList<ExchangeListener>(this.exchangeListeners.values());
+		this.unregisterAll();
 
-		for (ExchangeListener listener : listeners) {
-			this.unregister(listener);
-		}
+		super.close();
 
 		System.out.println("SLOTH CLIENT: Closed.");
 	}
@@ -52,9 +53,11 @@ public class SlothClient extends SlothWorker {
 	public void closeAll() {
 		instance = null;
 
-		this.close();
+		this.unregisterAll();
 
 		this.sendToServer("CLOSE:");
+
+		this.close();
 	}
 
 	public void publish(String anExchangeName, String aType, String aMessage) {
@@ -68,7 +71,7 @@ public class SlothClient extends SlothWorker {
 			this.exchangeListeners.put(anExchangeListener.name(), anExchangeListener);
 		}
 
-		this.sendToServer("SUBSCRIBE:" + this.port() + ":" + anExchangeListener.exchangeName());
+		this.sendToServer("SUBSCRIBE:" + this.port() + ":" + anExchangeListener.exchangeName() + ":" + anExchangeListener.name());
 	}
 
 	public void unregister(ExchangeListener anExchangeListener) {
@@ -76,7 +79,7 @@ public class SlothClient extends SlothWorker {
 			this.exchangeListeners.remove(anExchangeListener.name());
 		}
 
-		this.sendToServer("UNSUBSCRIBE:" + this.port() + ":" + anExchangeListener.exchangeName());
+		this.sendToServer("UNSUBSCRIBE:" + this.port() + ":" + anExchangeListener.exchangeName() + ":" + anExchangeListener.name());
 	}
 
 	private SlothClient() {
@@ -84,6 +87,7 @@ public class SlothClient extends SlothWorker {
 
 		this.exchangeListeners = new HashMap<String,ExchangeListener>();
 		this.lock = new Object();
+		this.unacknowledgedOffsets = new HashMap<String,Long>();
 
 		this.attach();
 		this.receiveAll();
@@ -93,7 +97,31 @@ public class SlothClient extends SlothWorker {
         this.sendToServer("ATTACH:" + this.port());
 	}
 
+	private void acknowledgeDelivered() {
+
+		// the server resumes each subscriber after the last
+		// offset acknowledged, so only the latest is sent
+
+		for (Map.Entry<String,Long> entry : this.unacknowledgedOffsets.entrySet()) {
+			this.sendToServer("ACK:" + entry.getValue() + ":" + entry.getKey());
+		}
+
+		this.unacknowledgedOffsets.clear();
+		this.unacknowledgedCount = 0;
+	}
+
 	private void dispatchMessage(String anEncodedMessage) {
+		String subscriberName = null;
+		long nextOffset = -1L;
+
+		if (anEncodedMessage.startsWith("DELIVER:")) {
+			int offsetDivider = anEncodedMessage.indexOf(':', 8);
+			int subscriberDivider = anEncodedMessage.indexOf(":PUBLISH:", offsetDivider);
+
+			nextOffset = Long.parseLong(anEncodedMessage.substring(8, offsetDivider));
+			subscriberName = anEncodedMessage.substring(offsetDivider + 1, subscriberDivider);
+		}
+
 		int exchangeDivider = anEncodedMessage.indexOf("PUBLISH:");
 		int typeDivider = anEncodedMessage.indexOf("TYPE:", exchangeDivider + 8);
 		int msgDivider = anEncodedMessage.indexOf("MSG:", typeDivider + 5);
@@ -109,6 +137,10 @@ public class SlothClient extends SlothWorker {
 		}
 
 		for (ExchangeListener listener : listeners) {
+			if (subscriberName != null && !listener.name().equals(subscriberName)) {
+				continue;
+			}
+
 			if (listener.exchangeName().equals(exchangeName) && listener.listensTo(type)) {
 				try {
 					System.out.println("SLOTH CLIENT: Dispatching: Exchange: " + exchangeName + " Type: " + type + " Msg: " + message);
@@ -121,23 +153,31 @@ public class SlothClient extends SlothWorker {
 				}
 			}
 		}
+
+		if (subscriberName != null) {
+			this.unacknowledgedOffsets.put(exchangeName + ":" + subscriberName, nextOffset);
+			++this.unacknowledgedCount;
+		}
 	}
 
 	private void receiveAll() {
 		Thread receiverThread = new Thread() {
 			@Override
 			public void run() {
-				while (!isClosed()) {
-					String receivedData = null;
 
-                    synchronized (lock) {
-                        receivedData = receive();
-                    }
+				// receive() blocks until a message arrives
+				// and answers null once I am closed
+
+				while (!isClosed()) {
+					String receivedData = receive();
 
 					if (receivedData != null) {
 						dispatchMessage(receivedData.trim());
-					} else {
-                        sleepFor(10L);
+
+						if (!hasReceivedMessages() ||
+								unacknowledgedCount >= ACKNOWLEDGE_BATCH_SIZE) {
+							acknowledgeDelivered();
+						}
 					}
 				}
 			}
@@ -145,4 +185,16 @@ public class SlothClient extends SlothWorker {
 
 		receiverThread.start();
 	}
+
+	private void unregisterAll() {
+		List<ExchangeListener> listeners = null;
+
+		synchronized (lock) {
+			listeners = new ArrayList<ExchangeListener>(this.exchangeListeners.values());
+		}
+
+		for (ExchangeListener listener : listeners) {
+			this.unregister(listener);
+		}
+	}
 }
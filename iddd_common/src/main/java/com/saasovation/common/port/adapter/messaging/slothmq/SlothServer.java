@@ -14,17 +14,80 @@
 
 package com.saasovation.common.port.adapter.messaging.slothmq;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * I am a simple messaging server.
+ * I am a simple messaging server. Each client keeps one
+ * connection open to me, over which it sends its requests
+ * and receives the messages published to its subscriptions.
+ * I serve all connections from a single selector loop.
+ * Every published message is appended to the durable log
+ * of its exchange, and each subscriber receives the log from
+ * the offset it last acknowledged, so that a subscriber that
+ * reconnects misses nothing that is still retained.
+ * Each client has a bounded queue of outbound messages that
+ * is written as its socket accepts them, so a slow client does
+ * not delay the others. What a subscriber missed before it
+ * subscribed is replayed from the log only as its queue drains.
+ * When a queue is full of messages published since then, my
+ * OverflowPolicy decides what happens to that client.
  *
  * @author Vaughn Vernon
  */
 public class SlothServer extends SlothWorker {
 
+	private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+	private static final long DEFAULT_RETENTION_MILLIS = 7L * 24L * 60L * 60L * 1000L;
+	private static final long FLUSH_INTERVAL_MILLIS = 1000L;
+	private static final long METRICS_INTERVAL_MILLIS = 10000L;
+
+	private Map<Integer,ClientConnection> clientConnections;
 	private Map<Integer,ClientRegistration> clientRegistrations;
+	private AtomicLong disconnectedClientCount;
+	private AtomicLong droppedMessageCount;
+	private Map<String,ExchangeLog> exchangeLogs;
+	private long lastFlushedAt;
+	private long lastReportedAt;
+	private File logDirectory;
+	private OverflowPolicy overflowPolicy;
+	private int queueCapacity;
+	private Map<Integer,Integer> queueDepths;
+	private long retentionMillis;
+
+	/**
+	 * What happens to a client whose outbound queue is full of
+	 * live messages, those published since it subscribed, when
+	 * another message is published to it. A client still being
+	 * replayed what it missed is never overflowed; what is
+	 * published meanwhile waits in the log behind the replay.
+	 */
+	public static enum OverflowPolicy {
+
+		/** The client falls behind and catches up from the log as its queue drains. */
+		BLOCK,
+
+		/** The client is disconnected, and resumes from its acknowledged offset when it reconnects. */
+		DISCONNECT,
+
+		/** The oldest queued live message is dropped, and the client skips ahead to the new message. */
+		DROP_OLDEST
+	}
 
 	public static void executeInProcessDetachedServer() {
 		Thread serverThread = new Thread() {
@@ -48,19 +111,133 @@ public class SlothServer extends SlothWorker {
 	}
 
 	public SlothServer() {
+		this(new File(System.getProperty(
+					"slothmq.log.directory",
+					new File(System.getProperty("java.io.tmpdir"), "slothmq").getPath())),
+			 DEFAULT_RETENTION_MILLIS,
+			 OverflowPolicy.valueOf(System.getProperty("slothmq.overflow.policy", OverflowPolicy.BLOCK.name())),
+			 Integer.getInteger("slothmq.queue.capacity", DEFAULT_QUEUE_CAPACITY));
+	}
+
+	public SlothServer(File aLogDirectory, long aRetentionMillis) {
+		this(aLogDirectory, aRetentionMillis, OverflowPolicy.BLOCK, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	public SlothServer(
+			File aLogDirectory,
+			long aRetentionMillis,
+			OverflowPolicy anOverflowPolicy,
+			int aQueueCapacity) {
+
 		super();
 
+		if (aQueueCapacity <= 0) {
+			throw new IllegalArgumentException("The queue capacity must be greater than zero.");
+		}
+
+		this.clientConnections = new HashMap<Integer,ClientConnection>();
 		this.clientRegistrations = new HashMap<Integer,ClientRegistration>();
+		this.disconnectedClientCount = new AtomicLong();
+		this.droppedMessageCount = new AtomicLong();
+		this.exchangeLogs = new HashMap<String,ExchangeLog>();
+		this.lastFlushedAt = System.currentTimeMillis();
+		this.lastReportedAt = this.lastFlushedAt;
+		this.logDirectory = aLogDirectory;
+		this.overflowPolicy = anOverflowPolicy;
+		this.queueCapacity = aQueueCapacity;
+		this.queueDepths = new ConcurrentHashMap<Integer,Integer>();
+		this.retentionMillis = aRetentionMillis;
+	}
+
+	public long disconnectedClientCount() {
+		return this.disconnectedClientCount.get();
+	}
+
+	public long droppedMessageCount() {
+		return this.droppedMessageCount.get();
 	}
 
 	public void execute() {
 
 		while (!this.isClosed()) {
-		    String receivedData = this.receive();
+			try {
+				this.selector().select(FLUSH_INTERVAL_MILLIS);
+			} catch (IOException e) {
+				System.out.println("SLOTH SERVER: Failed to select because: " + e.getMessage() + ": Continuing...");
+				continue;
+			}
+
+			if (!this.isClosed()) {
+				this.flushLogsIfDue();
+				this.reportMetricsIfDue();
+			}
+
+			if (this.isClosed()) {
+				break;
+			}
+
+			Iterator<SelectionKey> selectedKeys = this.selector().selectedKeys().iterator();
+
+			while (!this.isClosed() && selectedKeys.hasNext()) {
+				SelectionKey key = selectedKeys.next();
+
+				selectedKeys.remove();
+
+				if (!key.isValid()) {
+					continue;
+				}
+
+				if (key.isAcceptable()) {
+					this.accept((ServerSocketChannel) key.channel());
+				} else {
+					ClientConnection connection = (ClientConnection) key.attachment();
+
+					if (key.isReadable()) {
+						this.readFrom(connection);
+					}
+
+					if (!this.isClosed() && key.isValid() && key.isWritable()) {
+						this.deliverTo(connection);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Answers the number of messages queued for each client
+	 * port. May be used from any thread.
+	 * @return Map<Integer,Integer>
+	 */
+	public Map<Integer,Integer> queueDepths() {
+		return new HashMap<Integer,Integer>(this.queueDepths);
+	}
+
+	@Override
+	protected void close() {
+
+		// releases the port before flushing the logs
+
+		super.close();
+
+		if (this.clientConnections != null) {
+			for (ClientConnection connection : new ArrayList<ClientConnection>(this.clientConnections.values())) {
+				connection.close();
+			}
+
+			this.clientConnections.clear();
+		}
+
+		if (this.exchangeLogs != null) {
+			for (ExchangeLog exchangeLog : this.exchangeLogs.values()) {
+				try {
+					exchangeLog.close();
+				} catch (IOException e) {
+					System.out.println("SLOTH SERVER: Failed to close log because: " + e.getMessage());
+				}
+			}
 
-		    if (receivedData != null) {
-		        this.handleMessage(receivedData);
-		    }
+			this.exchangeLogs.clear();
 		}
 	}
 
@@ -69,13 +246,47 @@ public class SlothServer extends SlothWorker {
 	    return true;
 	}
 
-	private ClientRegistration attach(String aReceivedData) {
+	private void accept(ServerSocketChannel aHubSocket) {
+		try {
+			SocketChannel socketChannel = aHubSocket.accept();
+
+			if (socketChannel == null) {
+				return;
+			}
+
+			socketChannel.configureBlocking(false);
+			socketChannel.socket().setTcpNoDelay(true);
+
+			ClientConnection connection = new ClientConnection(socketChannel);
+
+			connection.setSelectionKey(
+					socketChannel.register(this.selector(), SelectionKey.OP_READ, connection));
+
+		} catch (IOException e) {
+			System.out.println("SLOTH SERVER: Failed to accept because: " + e.getMessage() + ": Continuing...");
+		}
+	}
+
+	private void acknowledge(String anOffsetWithSubscription) {
+		String[] parts = anOffsetWithSubscription.split(":", 3);
+		long offset = Long.parseLong(parts[0]);
+		String exchangeName = parts[1];
+		String subscriberName = parts[2];
+
+		ExchangeLog exchangeLog = this.exchangeLog(exchangeName);
+
+		if (exchangeLog != null) {
+			exchangeLog.acknowledge(subscriberName, offset);
+		}
+	}
+
+	private ClientRegistration attach(String aReceivedData, ClientConnection aConnection) {
 		int port = Integer.parseInt(aReceivedData.substring(7));
 
-		return this.attach(port);
+		return this.attach(port, aConnection);
 	}
 
-    private ClientRegistration attach(int aPort) {
+    private ClientRegistration attach(int aPort, ClientConnection aConnection) {
         ClientRegistration clientRegistration = this.clientRegistrations.get(aPort);
 
         if (clientRegistration == null) {
@@ -83,22 +294,158 @@ public class SlothServer extends SlothWorker {
             this.clientRegistrations.put(aPort, clientRegistration);
         }
 
+        aConnection.setPort(aPort);
+
+        this.clientConnections.put(aPort, aConnection);
+
         return clientRegistration;
     }
 
-	private void handleMessage(String aReceivedData) {
+	private void deliverTo(ClientConnection aConnection) {
+
+		// fills the queue of the connection with the messages
+		// logged after the offset of each of its subscriptions,
+		// writes what the socket accepts, and fills it again
+		// until nothing is left or the socket stops accepting;
+		// replayed and live messages are each held to capacity
+
+		boolean delivered = true;
+
+		while (delivered && aConnection.isOpen()) {
+			delivered = false;
+
+			for (Subscription subscription : aConnection.subscriptions()) {
+				ExchangeLog exchangeLog = this.exchangeLog(subscription.exchangeName());
+
+				if (exchangeLog == null) {
+					continue;
+				}
+
+				while (subscription.nextOffset() < exchangeLog.endOffset() &&
+						this.hasRoomFor(subscription, aConnection)) {
+
+					boolean live = !subscription.isReplaying();
+
+					ExchangeLog.Record record = exchangeLog.read(subscription.nextOffset());
+
+					if (record == null) {
+						subscription.setNextOffset(exchangeLog.endOffset());
+						break;
+					}
+
+					aConnection.enqueue(
+							FrameBuffer.frameOf(
+									"DELIVER:"
+									+ record.nextOffset() + ":"
+									+ subscription.subscriberName() + ":"
+									+ record.message()),
+							live);
+
+					subscription.setNextOffset(record.nextOffset());
+
+					delivered = true;
+				}
+			}
+
+			int queuedFrameCount = aConnection.outboundFrameCount();
+
+			this.writeTo(aConnection);
+
+			// a write that drains a full queue makes room, and
+			// nothing else would fill it while the socket is idle
+
+			delivered = delivered || aConnection.outboundFrameCount() < queuedFrameCount;
+		}
+	}
+
+	private void detach(ClientConnection aConnection) {
+		aConnection.close();
+
+		if (aConnection.port() >= 0) {
+			this.clientConnections.remove(aConnection.port());
+			this.queueDepths.remove(aConnection.port());
+
+			ClientRegistration clientRegistration =
+					this.clientRegistrations.remove(aConnection.port());
+
+			System.out.println("SLOTH SERVER: Detached: " + clientRegistration);
+		}
+	}
+
+	private ExchangeLog exchangeLog(String anExchangeName) {
+		ExchangeLog exchangeLog = this.exchangeLogs.get(anExchangeName);
+
+		if (exchangeLog == null) {
+			try {
+				exchangeLog =
+						new ExchangeLog(
+								new File(this.logDirectory, anExchangeName.replaceAll("[^A-Za-z0-9._-]", "_")),
+								this.retentionMillis);
+
+				this.exchangeLogs.put(anExchangeName, exchangeLog);
+
+			} catch (IOException e) {
+				System.out.println("SLOTH SERVER: Cannot open log of: " + anExchangeName + " because: " + e.getMessage());
+			}
+		}
+
+		return exchangeLog;
+	}
+
+	private boolean hasRoomFor(Subscription aSubscription, ClientConnection aConnection) {
+		if (aSubscription.isReplaying()) {
+			return aConnection.outboundFrameCount() < this.queueCapacity;
+		}
+
+		return aConnection.liveFrameCount() < this.queueCapacity;
+	}
+
+	private boolean isOverflowedBy(String anExchangeName, ClientConnection aConnection) {
+		if (aConnection.liveFrameCount() < this.queueCapacity) {
+			return false;
+		}
+
+		for (Subscription subscription : aConnection.subscriptions()) {
+			if (subscription.exchangeName().equals(anExchangeName) && subscription.isReplaying()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private void flushLogsIfDue() {
+		long currentTimeMillis = System.currentTimeMillis();
+
+		if (currentTimeMillis - this.lastFlushedAt >= FLUSH_INTERVAL_MILLIS) {
+			for (ExchangeLog exchangeLog : this.exchangeLogs.values()) {
+				try {
+					exchangeLog.flush();
+					exchangeLog.compact(currentTimeMillis);
+				} catch (IOException e) {
+					System.out.println("SLOTH SERVER: Failed to flush log because: " + e.getMessage() + ": Continuing...");
+				}
+			}
+
+			this.lastFlushedAt = currentTimeMillis;
+		}
+	}
+
+	private void handleMessage(String aReceivedData, ClientConnection aConnection) {
 		System.out.println("SLOTH SERVER: Handling: " + aReceivedData);
 
-		if (aReceivedData.startsWith("ATTACH:")) {
-			this.attach(aReceivedData);
+		if (aReceivedData.startsWith("ACK:")) {
+			this.acknowledge(aReceivedData.substring(4));
+		} else if (aReceivedData.startsWith("ATTACH:")) {
+			this.attach(aReceivedData, aConnection);
 		} else if (aReceivedData.startsWith("CLOSE:")) {
 			this.close();
 		} else if (aReceivedData.startsWith("PUBLISH:")) {
 			this.publishToClients(aReceivedData);
 		} else if (aReceivedData.startsWith("SUBSCRIBE:")) {
-			this.subscribeClientTo(aReceivedData.substring(10));
+			this.subscribeClientTo(aReceivedData.substring(10), aConnection);
 		} else if (aReceivedData.startsWith("UNSUBSCRIBE:")) {
-			this.unsubscribeClientFrom(aReceivedData.substring(12));
+			this.unsubscribeClientFrom(aReceivedData.substring(12), aConnection);
 		} else {
 			System.out.println("SLOTH SERVER: Does not understand: " + aReceivedData);
 		}
@@ -116,41 +463,369 @@ public class SlothServer extends SlothWorker {
 		} else {
 			String exchangeName = anExchangeMessage.substring(exchangeDivider + 8, typeDivider);
 
-			for (ClientRegistration clientSubscriptions : this.clientRegistrations.values()) {
+			ExchangeLog exchangeLog = this.exchangeLog(exchangeName);
+
+			if (exchangeLog == null) {
+				return;
+			}
+
+			long offset = 0L;
+
+			try {
+				offset = exchangeLog.append(anExchangeMessage);
+			} catch (IOException e) {
+				System.out.println("SLOTH SERVER: PUBLISH: Cannot log because: " + e.getMessage() + "; ignoring: " + anExchangeMessage);
+				return;
+			}
+
+			for (ClientRegistration clientSubscriptions : new ArrayList<ClientRegistration>(this.clientRegistrations.values())) {
 				if (clientSubscriptions.isSubscribedTo(exchangeName)) {
-					this.sendTo(clientSubscriptions.port(), anExchangeMessage);
+					ClientConnection connection = this.clientConnections.get(clientSubscriptions.port());
+
+					if (connection == null) {
+						;
+					} else if (this.isOverflowedBy(exchangeName, connection)) {
+						this.overflow(connection, exchangeName, offset);
+					} else {
+						this.deliverTo(connection);
+					}
+				}
+			}
+		}
+	}
+
+	private void overflow(ClientConnection aConnection, String anExchangeName, long anOffset) {
+		switch (this.overflowPolicy) {
+		case BLOCK:
+
+			// the log holds what the queue cannot
+
+			break;
+
+		case DISCONNECT:
+			System.out.println("SLOTH SERVER: Queue full; disconnecting: " + this.clientRegistrations.get(aConnection.port()));
+
+			this.disconnectedClientCount.incrementAndGet();
+
+			this.detach(aConnection);
+
+			break;
+
+		case DROP_OLDEST:
+			if (aConnection.dropOldestLiveFrame()) {
+				this.droppedMessageCount.incrementAndGet();
+			}
+
+			// messages still in the log behind the new one are skipped
+
+			for (Subscription subscription : aConnection.subscriptions()) {
+				if (subscription.exchangeName().equals(anExchangeName) &&
+						subscription.nextOffset() < anOffset) {
+					subscription.setNextOffset(anOffset);
 				}
 			}
+
+			this.deliverTo(aConnection);
+
+			break;
+		}
+	}
+
+	private void readFrom(ClientConnection aConnection) {
+		List<String> receivedMessages = new ArrayList<String>();
+
+		try {
+			if (aConnection.readFrom(receivedMessages) == -1) {
+				this.detach(aConnection);
+			}
+		} catch (IOException e) {
+			System.out.println("SLOTH SERVER: Failed to receive because: " + e.getMessage() + ": Continuing...");
+
+			this.detach(aConnection);
+		}
+
+		for (String receivedData : receivedMessages) {
+			this.handleMessage(receivedData, aConnection);
+
+			if (this.isClosed()) {
+				break;
+			}
+		}
+	}
+
+	private void reportMetricsIfDue() {
+		long currentTimeMillis = System.currentTimeMillis();
+
+		if (currentTimeMillis - this.lastReportedAt >= METRICS_INTERVAL_MILLIS) {
+			int fullQueues = 0;
+
+			for (Integer queueDepth : this.queueDepths.values()) {
+				if (queueDepth.intValue() >= this.queueCapacity) {
+					++fullQueues;
+				}
+			}
+
+			if (fullQueues > 0) {
+				System.out.println(
+						"SLOTH SERVER: Queue depths: " + this.queueDepths
+						+ " full: " + fullQueues
+						+ " dropped: " + this.droppedMessageCount()
+						+ " disconnected: " + this.disconnectedClientCount());
+			}
+
+			this.lastReportedAt = currentTimeMillis;
 		}
 	}
 
-	private void subscribeClientTo(String aPortWithExchangeName) {
-	    String[] parts = aPortWithExchangeName.split(":");
+	private void subscribeClientTo(String aPortWithExchangeName, ClientConnection aConnection) {
+	    String[] parts = aPortWithExchangeName.split(":", 3);
 		int port = Integer.parseInt(parts[0]);
 		String exchangeName = parts[1];
 
+		// subscribers without a name are known by their port
+
+		String subscriberName = parts.length > 2 ? parts[2] : parts[0];
+
 		ClientRegistration clientRegistration = this.clientRegistrations.get(port);
 
 		if (clientRegistration == null) {
-			clientRegistration = this.attach(port);
+			clientRegistration = this.attach(port, aConnection);
+		}
+
+		ExchangeLog exchangeLog = this.exchangeLog(exchangeName);
+
+		if (exchangeLog != null && aConnection.subscriptionOf(exchangeName, subscriberName) == null) {
+			aConnection.subscriptions().add(
+					new Subscription(
+							exchangeName,
+							subscriberName,
+							exchangeLog.resumeOffsetOf(subscriberName),
+							exchangeLog.endOffset()));
 		}
 
 		clientRegistration.addSubscription(exchangeName);
 
-		System.out.println("SLOTH SERVER: Subscribed: " + clientRegistration + " TO: " + exchangeName);
+		System.out.println("SLOTH SERVER: Subscribed: " + clientRegistration + " TO: " + exchangeName + " AS: " + subscriberName);
+
+		this.deliverTo(aConnection);
 	}
 
-	private void unsubscribeClientFrom(String aPortWithExchangeName) {
-        String[] parts = aPortWithExchangeName.split(":");
+	private void unsubscribeClientFrom(String aPortWithExchangeName, ClientConnection aConnection) {
+        String[] parts = aPortWithExchangeName.split(":", 3);
         int port = Integer.parseInt(parts[0]);
         String exchangeName = parts[1];
+        String subscriberName = parts.length > 2 ? parts[2] : parts[0];
+
+		Subscription subscription = aConnection.subscriptionOf(exchangeName, subscriberName);
+
+		if (subscription != null) {
+			aConnection.subscriptions().remove(subscription);
+		}
 
 		ClientRegistration clientRegistration = this.clientRegistrations.get(port);
 
 		if (clientRegistration != null) {
-			clientRegistration.removeSubscription(exchangeName);
+			if (!aConnection.isSubscribedTo(exchangeName)) {
+				clientRegistration.removeSubscription(exchangeName);
+			}
+
+			System.out.println("SLOTH SERVER: Unsubscribed: " + clientRegistration + " FROM: " + exchangeName + " AS: " + subscriberName);
+		}
+	}
+
+	private void writeTo(ClientConnection aConnection) {
+		try {
+			aConnection.flush();
+
+			if (aConnection.port() >= 0) {
+				this.queueDepths.put(aConnection.port(), aConnection.outboundFrameCount());
+			}
+		} catch (IOException e) {
+			System.out.println("SLOTH SERVER: Failed to send because: " + e.getMessage() + ": Continuing...");
+
+			this.detach(aConnection);
+		}
+	}
+
+	private static class ClientConnection {
+
+		private FrameBuffer frameBuffer;
+		private Set<ByteBuffer> liveFrames;
+		private LinkedList<ByteBuffer> outboundFrames;
+		private int port;
+		private SelectionKey selectionKey;
+		private SocketChannel socketChannel;
+		private List<Subscription> subscriptions;
+
+		ClientConnection(SocketChannel aSocketChannel) {
+			super();
+
+			this.frameBuffer = new FrameBuffer();
+			this.liveFrames = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer,Boolean>());
+			this.outboundFrames = new LinkedList<ByteBuffer>();
+			this.port = -1;
+			this.socketChannel = aSocketChannel;
+			this.subscriptions = new ArrayList<Subscription>();
+		}
+
+		void close() {
+			if (this.selectionKey != null) {
+				this.selectionKey.cancel();
+			}
+
+			try {
+				this.socketChannel.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+
+		boolean dropOldestLiveFrame() {
+
+			// a frame partly written must be finished, and
+			// replayed frames are never dropped
+
+			Iterator<ByteBuffer> frames = this.outboundFrames.iterator();
+
+			while (frames.hasNext()) {
+				ByteBuffer frame = frames.next();
+
+				if (frame.position() == 0 && this.liveFrames.remove(frame)) {
+					frames.remove();
+
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		void enqueue(ByteBuffer aFrame, boolean isLive) {
+			this.outboundFrames.addLast(aFrame);
+
+			if (isLive) {
+				this.liveFrames.add(aFrame);
+			}
+		}
+
+		void flush() throws IOException {
+
+			// writes as many queued frames as the socket
+			// accepts, and waits to be writable for the rest
+
+			if (!this.outboundFrames.isEmpty()) {
+				this.socketChannel.write(
+						this.outboundFrames.toArray(new ByteBuffer[this.outboundFrames.size()]));
+
+				while (!this.outboundFrames.isEmpty() && !this.outboundFrames.getFirst().hasRemaining()) {
+					this.liveFrames.remove(this.outboundFrames.removeFirst());
+				}
+			}
+
+			if (this.selectionKey.isValid()) {
+				this.selectionKey.interestOps(
+						this.outboundFrames.isEmpty() ?
+								SelectionKey.OP_READ :
+								SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+		}
+
+		boolean isOpen() {
+			return this.socketChannel.isOpen();
+		}
+
+		boolean isSubscribedTo(String anExchangeName) {
+			for (Subscription subscription : this.subscriptions) {
+				if (subscription.exchangeName().equals(anExchangeName)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		int liveFrameCount() {
+			return this.liveFrames.size();
+		}
+
+		int outboundFrameCount() {
+			return this.outboundFrames.size();
+		}
+
+		int port() {
+			return this.port;
+		}
+
+		int readFrom(List<String> aReceivedMessages) throws IOException {
+			return this.frameBuffer.readFrom(this.socketChannel, aReceivedMessages);
+		}
+
+		void setPort(int aPort) {
+			this.port = aPort;
+		}
+
+		void setSelectionKey(SelectionKey aSelectionKey) {
+			this.selectionKey = aSelectionKey;
+		}
+
+		Subscription subscriptionOf(String anExchangeName, String aSubscriberName) {
+			for (Subscription subscription : this.subscriptions) {
+				if (subscription.exchangeName().equals(anExchangeName) &&
+						subscription.subscriberName().equals(aSubscriberName)) {
+					return subscription;
+				}
+			}
+
+			return null;
+		}
+
+		List<Subscription> subscriptions() {
+			return this.subscriptions;
+		}
+	}
+
+	private static class Subscription {
+
+		private String exchangeName;
+		private long nextOffset;
+		private long replayEndOffset;
+		private String subscriberName;
+
+		Subscription(
+				String anExchangeName,
+				String aSubscriberName,
+				long aNextOffset,
+				long aReplayEndOffset) {
+
+			super();
+
+			this.exchangeName = anExchangeName;
+			this.nextOffset = aNextOffset;
+			this.replayEndOffset = aReplayEndOffset;
+			this.subscriberName = aSubscriberName;
+		}
+
+		String exchangeName() {
+			return this.exchangeName;
+		}
+
+		// what was logged before the subscription was made
+		// is replayed, and what follows it is live
+
+		boolean isReplaying() {
+			return this.nextOffset < this.replayEndOffset;
+		}
+
+		long nextOffset() {
+			return this.nextOffset;
+		}
+
+		void setNextOffset(long aNextOffset) {
+			this.nextOffset = aNextOffset;
+		}
 
-			System.out.println("SLOTH SERVER: Unsubscribed: " + clientRegistration + " FROM: " + exchangeName);
+		String subscriberName() {
+			return this.subscriberName;
 		}
 	}
 }
@@ -14,21 +14,28 @@
 
 package com.saasovation.common.port.adapter.messaging.slothmq;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.List;
 
 public abstract class SlothWorker {
 
+	private static final int CONNECT_ATTEMPTS = 50;
 	private static final int HUB_PORT = 55555;
 
+	private FrameBuffer frameBuffer;
+	private volatile ServerSocketChannel hubSocket;
 	private int port;
-	private ServerSocketChannel socket;
+	private List<String> receivedMessages;
+	private Selector selector;
+	private Object sendLock;
+	private volatile SocketChannel socket;
 
 	protected SlothWorker() {
 		super();
@@ -37,17 +44,34 @@ public abstract class SlothWorker {
 	}
 
 	protected void close() {
-	    try {
-            this.socket.close();
+        SocketChannel socketChannel = this.socket;
+        ServerSocketChannel hubSocketChannel = this.hubSocket;
+
+        // marks me closed before a blocked receive() fails
+
+        this.socket = null;
+        this.hubSocket = null;
+
+        try {
+            if (socketChannel != null) {
+                socketChannel.close();
+            }
+
+            if (hubSocketChannel != null) {
+                hubSocketChannel.close();
+                this.selector.close();
+            }
         } catch (IOException e) {
             System.out.println(this.getClass().getSimpleName() + ": problems closing socket.");
         }
+	}
 
-	    this.socket = null;
+	protected boolean hasReceivedMessages() {
+	    return !this.receivedMessages.isEmpty();
 	}
 
 	protected boolean isClosed() {
-	    return this.socket == null;
+	    return this.socket == null && this.hubSocket == null;
 	}
 
 	protected int port() {
@@ -55,81 +79,60 @@ public abstract class SlothWorker {
 	}
 
     protected String receive() {
-        SocketChannel socketChannel = null;
 
-        try {
-            socketChannel = this.socket.accept();
+        // blocks until the next message arrives from the
+        // server, or answers null when the connection closes
 
-            if (socketChannel == null) {
-                return null; // if non-blocking
-            }
-
-            ReadableByteChannel readByteChannel =
-                    Channels.newChannel(socketChannel.socket().getInputStream());
-
-            ByteArrayOutputStream byteArray = new ByteArrayOutputStream();
-
-            ByteBuffer readBuffer = ByteBuffer.allocate(8);
+        try {
+            while (this.receivedMessages.isEmpty()) {
+                SocketChannel socketChannel = this.socket;
 
-            while (readByteChannel.read(readBuffer) != -1) {
-                readBuffer.flip();
+                if (socketChannel == null ||
+                        this.frameBuffer.readFrom(socketChannel, this.receivedMessages) == -1) {
+                    this.close();
 
-                while (readBuffer.hasRemaining()) {
-                    byteArray.write(readBuffer.get());
+                    return null;
                 }
-
-                readBuffer.clear();
             }
 
-            return new String(byteArray.toByteArray());
+            return this.receivedMessages.remove(0);
 
         } catch (IOException e) {
-            System.out.println("SLOTH SERVER: Failed to receive because: " + e.getMessage() + ": Continuing...");
-            e.printStackTrace();
+            if (!this.isClosed()) {
+                System.out.println(this.getClass().getSimpleName() + ": Failed to receive because: " + e.getMessage() + ": Closing...");
 
-            return null;
-
-        } finally {
-            if (socketChannel != null) {
-                try {
-                    socketChannel.close();
-                } catch (IOException e) {
-                    // ignore
-                }
+                this.close();
             }
+
+            return null;
         }
     }
 
-	protected void sendTo(int aPort, String anEncodedMessage) {
-	    SocketChannel socketChannel = null;
-
-        try {
-            socketChannel = SocketChannel.open();
+    protected Selector selector() {
+        return this.selector;
+    }
 
-            socketChannel.connect(new InetSocketAddress(aPort));
+    protected void sendToServer(String anEncodedMessage) {
+        ByteBuffer frame = FrameBuffer.frameOf(anEncodedMessage);
 
-            socketChannel.write(ByteBuffer.wrap(anEncodedMessage.getBytes()));
+        synchronized (this.sendLock) {
+            try {
+                SocketChannel socketChannel = this.socket;
 
-            System.out.println(this.getClass().getSimpleName() + ": Sent: " + anEncodedMessage);
+                if (socketChannel == null) {
+                    throw new IOException("Not connected.");
+                }
 
-        } catch (IOException e) {
-            System.out.println(this.getClass().getSimpleName() + ": Failed to send because: " + e.getMessage() + ": Continuing...");
-            e.printStackTrace();
-        } finally {
-            if (socketChannel != null) {
-                try {
-                    socketChannel.close();
-                } catch (IOException e) {
-                    System.out.println(this.getClass().getSimpleName() + ": Failed to close client socket because: " + e.getMessage() + ": Continuing...");
+                while (frame.hasRemaining()) {
+                    socketChannel.write(frame);
                 }
+
+            } catch (IOException e) {
+                System.out.println(this.getClass().getSimpleName() + ": Failed to send because: " + e.getMessage() + ": Continuing...");
             }
         }
     }
 
-    protected void sendToServer(String anEncodedMessage) {
-        this.sendTo(HUB_PORT, anEncodedMessage);
-    }
-
     protected void sleepFor(long aMillis) {
         try {
             Thread.sleep(aMillis);
@@ -142,29 +145,6 @@ public abstract class SlothWorker {
 	    return false;
 	}
 
-    private int discoverClientPort() {
-        boolean discovered = false;
-        int discoveryPort = HUB_PORT + 1;
-        final int errorPort = discoveryPort + 20;
-
-        while (!discovered && discoveryPort < errorPort) {
-            try {
-                this.socket.bind(new InetSocketAddress(discoveryPort));
-
-                discovered = true;
-
-            } catch (Exception e) {
-                ++discoveryPort;
-            }
-        }
-
-        if (!discovered) {
-            throw new IllegalStateException("No ports available.");
-        }
-
-        return discoveryPort;
-    }
-
 	private void open() {
 	    if (this.slothHub()) {
 	        this.openHub();
@@ -174,27 +154,76 @@ public abstract class SlothWorker {
 	}
 
     private void openClient() {
-        try {
-            this.socket = ServerSocketChannel.open();
-            this.port = this.discoverClientPort();
-            this.socket.configureBlocking(false);
-            System.out.println("SLOTH CLIENT: Opened on port: " + this.port);
+        this.frameBuffer = new FrameBuffer();
+        this.receivedMessages = new LinkedList<String>();
+        this.sendLock = new Object();
+
+        // the server may still be starting, so retry briefly
+
+        for (int attempt = 1; this.socket == null; ++attempt) {
+            try {
+                SocketChannel socketChannel = SocketChannel.open();
+
+                try {
+                    socketChannel.connect(new InetSocketAddress("localhost", HUB_PORT));
+                } catch (IOException e) {
+                    socketChannel.close();
+
+                    throw e;
+                }
+
+                socketChannel.socket().setTcpNoDelay(true);
 
-        } catch (Exception e) {
-            System.out.println("SLOTH CLIENT: Cannot connect because: " + e.getMessage());
+                this.port = socketChannel.socket().getLocalPort();
+                this.socket = socketChannel;
+
+                System.out.println("SLOTH CLIENT: Opened on port: " + this.port);
+
+            } catch (IOException e) {
+                if (attempt == CONNECT_ATTEMPTS) {
+                    System.out.println("SLOTH CLIENT: Cannot connect because: " + e.getMessage());
+                    break;
+                }
+
+                this.sleepFor(100L);
+            }
         }
     }
 
     private void openHub() {
-        try {
-            this.socket = ServerSocketChannel.open();
-            this.socket.bind(new InetSocketAddress(HUB_PORT));
-            this.socket.configureBlocking(true);
-            this.port = HUB_PORT;
-            System.out.println("SLOTH SERVER: Opened on port: " + this.port);
-
-        } catch (Exception e) {
-            System.out.println("SLOTH SERVER: Cannot connect because: " + e.getMessage());
+
+        // a server closed just before may still hold the port
+
+        for (int attempt = 1; this.hubSocket == null; ++attempt) {
+            try {
+                this.selector = Selector.open();
+
+                ServerSocketChannel hubSocketChannel = ServerSocketChannel.open();
+
+                try {
+                    hubSocketChannel.socket().setReuseAddress(true);
+                    hubSocketChannel.bind(new InetSocketAddress(HUB_PORT));
+                    hubSocketChannel.configureBlocking(false);
+                    hubSocketChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+                } catch (IOException e) {
+                    hubSocketChannel.close();
+                    this.selector.close();
+
+                    throw e;
+                }
+
+                this.port = HUB_PORT;
+                this.hubSocket = hubSocketChannel;
+                System.out.println("SLOTH SERVER: Opened on port: " + this.port);
+
+            } catch (IOException e) {
+                if (attempt == CONNECT_ATTEMPTS) {
+                    System.out.println("SLOTH SERVER: Cannot connect because: " + e.getMessage());
+                    break;
+                }
+
+                this.sleepFor(100L);
+            }
         }
     }
 }
@@ -32,8 +32,13 @@ import com.saasovation.common.port.adapter.messaging.rabbitmq.MessageProducer;
 
 public class RabbitMQNotificationPublisher implements NotificationPublisher {
 
+    private static final long CONFIRM_TIMEOUT = 30000L;
+    private static final int DEFAULT_PUBLISH_BATCH_SIZE = 500;
+
     private EventStore eventStore;
     private String exchangeName;
+    private MessageProducer messageProducer;
+    private int publishBatchSize;
 
     private PublishedNotificationTrackerStore publishedNotificationTrackerStore;
 
@@ -42,15 +47,28 @@ public class RabbitMQNotificationPublisher implements NotificationPublisher {
             PublishedNotificationTrackerStore aPublishedNotificationTrackerStore,
             Object aMessagingLocator) {
 
+        this(anEventStore,
+             aPublishedNotificationTrackerStore,
+             aMessagingLocator,
+             DEFAULT_PUBLISH_BATCH_SIZE);
+    }
+
+    public RabbitMQNotificationPublisher(
+            EventStore anEventStore,
+            PublishedNotificationTrackerStore aPublishedNotificationTrackerStore,
+            Object aMessagingLocator,
+            int aPublishBatchSize) {
+
         super();
 
         this.setEventStore(anEventStore);
         this.setExchangeName((String) aMessagingLocator);
+        this.setPublishBatchSize(aPublishBatchSize);
         this.setPublishedNotificationTrackerStore(aPublishedNotificationTrackerStore);
     }
 
     @Override
-    public void publishNotifications() {
+    public synchronized void publishNotifications() {
         PublishedNotificationTracker publishedNotificationTracker =
                 this.publishedNotificationTrackerStore().publishedNotificationTracker();
 
@@ -58,19 +76,33 @@ public class RabbitMQNotificationPublisher implements NotificationPublisher {
             this.listUnpublishedNotifications(
                     publishedNotificationTracker.mostRecentPublishedNotificationId());
 
-        MessageProducer messageProducer = this.messageProducer();
+        // each batch is sent without waiting, and then its
+        // confirms are awaited together. the tracker advances
+        // only through the confirmed prefix of the batch, so
+        // anything after a gap is published again next time.
+        //
+        // the producer and its channel are kept open between
+        // calls, and dropped only when publishing fails so
+        // that the next call opens them on a live connection
 
-        try {
-            for (Notification notification : notifications) {
-                this.publish(notification, messageProducer);
-            }
+        for (int start = 0; start < notifications.size(); start += this.publishBatchSize()) {
+            List<Notification> batch =
+                notifications.subList(
+                        start,
+                        Math.min(start + this.publishBatchSize(), notifications.size()));
+
+            int confirmedCount = this.publishConfirmed(batch);
 
             this.publishedNotificationTrackerStore()
                 .trackMostRecentPublishedNotification(
                     publishedNotificationTracker,
-                    notifications);
-        } finally {
-            messageProducer.close();
+                    batch.subList(0, confirmedCount));
+
+            if (confirmedCount < batch.size()) {
+                this.closeMessageProducer();
+
+                break;
+            }
         }
     }
 
@@ -79,6 +111,18 @@ public class RabbitMQNotificationPublisher implements NotificationPublisher {
         throw new UnsupportedOperationException("Not supported by production implementation.");
     }
 
+    private void closeMessageProducer() {
+        if (this.messageProducer != null) {
+            try {
+                this.messageProducer.close();
+            } catch (Throwable t) {
+                // fall through
+            }
+
+            this.messageProducer = null;
+        }
+    }
+
     private EventStore eventStore() {
         return this.eventStore;
     }
@@ -108,17 +152,20 @@ public class RabbitMQNotificationPublisher implements NotificationPublisher {
 
     private MessageProducer messageProducer() {
 
-        // creates my exchange if non-existing
-        Exchange exchange =
-            Exchange.fanOutInstance(
-                    ConnectionSettings.instance(),
-                    this.exchangeName(),
-                    true);
+        if (this.messageProducer == null) {
 
-        // create a message producer used to forward events
-        MessageProducer messageProducer = MessageProducer.instance(exchange);
+            // creates my exchange if non-existing
+            Exchange exchange =
+                Exchange.fanOutInstance(
+                        ConnectionSettings.instance(),
+                        this.exchangeName(),
+                        true);
 
-        return messageProducer;
+            // create a message producer used to forward events
+            this.messageProducer = MessageProducer.confirmedInstance(exchange);
+        }
+
+        return this.messageProducer;
     }
 
     private List<Notification> notificationsFrom(List<StoredEvent> aStoredEvents) {
@@ -155,6 +202,49 @@ public class RabbitMQNotificationPublisher implements NotificationPublisher {
         aMessageProducer.send(notification, messageParameters);
     }
 
+    private int publishBatchSize() {
+        return this.publishBatchSize;
+    }
+
+    private void setPublishBatchSize(int aPublishBatchSize) {
+        if (aPublishBatchSize <= 0) {
+            throw new IllegalArgumentException("The publish batch size must be greater than zero.");
+        }
+
+        this.publishBatchSize = aPublishBatchSize;
+    }
+
+    private int publishConfirmed(List<Notification> aNotifications) {
+        long[] sequenceNumbers = new long[aNotifications.size()];
+
+        MessageProducer messageProducer = null;
+
+        try {
+            messageProducer = this.messageProducer();
+
+            for (int idx = 0; idx < aNotifications.size(); ++idx) {
+                sequenceNumbers[idx] = messageProducer.nextSequenceNumber();
+
+                this.publish(aNotifications.get(idx), messageProducer);
+            }
+        } catch (RuntimeException e) {
+            this.closeMessageProducer();
+
+            throw e;
+        }
+
+        messageProducer.waitForConfirms(CONFIRM_TIMEOUT);
+
+        int confirmedCount = 0;
+
+        while (confirmedCount < sequenceNumbers.length &&
+                messageProducer.isConfirmed(sequenceNumbers[confirmedCount])) {
+            ++confirmedCount;
+        }
+
+        return confirmedCount;
+    }
+
     private PublishedNotificationTrackerStore publishedNotificationTrackerStore() {
         return publishedNotificationTrackerStore;
     }
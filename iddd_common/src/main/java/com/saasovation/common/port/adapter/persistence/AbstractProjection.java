@@ -14,29 +14,83 @@
 
 package com.saasovation.common.port.adapter.persistence;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
-import com.saasovation.common.domain.model.DomainEvent;
+import com.saasovation.common.domain.model.EventHandlerTable;
 import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
 import com.saasovation.common.event.sourcing.EventDispatcher;
 
 public abstract class AbstractProjection implements EventDispatcher {
 
+    private static final int MAX_BATCHED_STATEMENTS = 500;
     private static final String PROJECTION_METHOD_NAME = "when";
+    private static final Pattern VIEW_TABLE_NAME = Pattern.compile("\\b(tbl_vw_\\w+)");
 
-    private static Map<String, Method> projectionMethods =
-            new HashMap<String, Method>();
+    private static final EventHandlerTable projectionMethods =
+            new EventHandlerTable(PROJECTION_METHOD_NAME);
+
+    private ThreadLocal<StatementBatch> statementBatch;
 
     protected AbstractProjection() {
         super();
+
+        this.statementBatch = new ThreadLocal<StatementBatch>();
+    }
+
+    public void dispatchBatch(List<DispatchableDomainEvent> aDispatchableDomainEvents) throws Exception {
+        this.dispatchBatch(aDispatchableDomainEvents, null);
+    }
+
+    public void dispatchBatch(
+            List<DispatchableDomainEvent> aDispatchableDomainEvents,
+            String aViewTableSuffix)
+    throws Exception {
+
+        // statements are prepared once per batch and their
+        // rows sent with executeBatch(); the caller commits.
+        // a suffix redirects tbl_vw_* tables, e.g. to shadows
+
+        StatementBatch batch =
+                new StatementBatch(
+                        ConnectionProvider.connection(),
+                        aViewTableSuffix);
+
+        this.statementBatch.set(batch);
+
+        try {
+            for (DispatchableDomainEvent dispatchableDomainEvent : aDispatchableDomainEvents) {
+                this.dispatch(dispatchableDomainEvent);
+            }
+
+            batch.flush();
+
+        } finally {
+            this.statementBatch.remove();
+
+            batch.close();
+        }
     }
 
+    // the tbl_vw_* tables this projection writes, which
+    // are the ones a rebuild redirects and swaps
+
+    public abstract String[] viewTables();
+
     protected void execute(PreparedStatement aStatement) throws Exception {
+        StatementBatch batch = this.statementBatch.get();
+
+        if (batch != null) {
+            batch.add(aStatement);
+
+            return;
+        }
+
         try {
             aStatement.executeUpdate();
         } finally {
@@ -45,6 +99,13 @@ public abstract class AbstractProjection implements EventDispatcher {
     }
 
     protected boolean exists(String aQuery, String... anArguments) throws Exception {
+        StatementBatch batch = this.statementBatch.get();
+
+        if (batch != null) {
+            // the query must see rows still in the batch
+            batch.flush();
+        }
+
         boolean exists = false;
 
         PreparedStatement statement = null;
@@ -54,7 +115,7 @@ public abstract class AbstractProjection implements EventDispatcher {
             statement =
                 ConnectionProvider
                     .connection()
-                    .prepareStatement(aQuery);
+                    .prepareStatement(batch == null ? aQuery : batch.sqlFor(aQuery));
 
             for (int idx = 0; idx < anArguments.length; ++idx) {
                 statement.setString(idx+1, anArguments[idx]);
@@ -87,62 +148,25 @@ public abstract class AbstractProjection implements EventDispatcher {
         return exists;
     }
 
-    protected void projectWhen(DispatchableDomainEvent aDispatchableDomainEvent) {
+    protected PreparedStatement prepareStatement(String anUpdate) throws Exception {
+        StatementBatch batch = this.statementBatch.get();
 
-        if (!this.understands(aDispatchableDomainEvent)) {
-            return;
+        if (batch != null) {
+            return batch.statement(anUpdate);
         }
 
-//        System.out.println("Dispatching: " + aDispatchableDomainEvent.domainEvent().getClass().getSimpleName());
-
-        DomainEvent domainEvent = aDispatchableDomainEvent.domainEvent();
-
-        Class<? extends AbstractProjection> rootType = this.getClass();
-
-        Class<? extends DomainEvent> eventType = domainEvent.getClass();
-
-        String key = rootType.getName() + ":" + eventType.getName();
+        return ConnectionProvider.connection().prepareStatement(anUpdate);
+    }
 
-        Method mutatorMethod = projectionMethods.get(key);
+    protected void projectWhen(DispatchableDomainEvent aDispatchableDomainEvent) {
 
-        if (mutatorMethod == null) {
-            mutatorMethod = this.cacheProjectionMethodFor(key, rootType, eventType);
+        if (!this.understands(aDispatchableDomainEvent)) {
+            return;
         }
 
-        try {
-            mutatorMethod.invoke(this, domainEvent);
-
-        } catch (InvocationTargetException e) {
-            if (e.getCause() != null) {
-                throw new RuntimeException(
-                        "Method "
-                                + PROJECTION_METHOD_NAME
-                                + "("
-                                + eventType.getSimpleName()
-                                + ") failed. See cause: "
-                                + e.getMessage(),
-                        e.getCause());
-            }
+//        System.out.println("Dispatching: " + aDispatchableDomainEvent.domainEvent().getClass().getSimpleName());
 
-            throw new RuntimeException(
-                    "Method "
-                            + PROJECTION_METHOD_NAME
-                            + "("
-                            + eventType.getSimpleName()
-                            + ") failed. See cause: "
-                            + e.getMessage(),
-                    e);
-
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(
-                    "Method "
-                            + PROJECTION_METHOD_NAME
-                            + "("
-                            + eventType.getSimpleName()
-                            + ") failed because of illegal access. See cause: "
-                            + e.getMessage(),
-                    e);
-        }
+        projectionMethods.dispatch(this, aDispatchableDomainEvent.domainEvent());
     }
 
     protected boolean understandsAnyOf(
@@ -160,58 +184,80 @@ public abstract class AbstractProjection implements EventDispatcher {
         return false;
     }
 
-    private Method cacheProjectionMethodFor(
-            String aKey,
-            Class<? extends AbstractProjection> aRootType,
-            Class<? extends DomainEvent> anEventType) {
+    private static class StatementBatch {
+
+        private Connection connection;
+        private PreparedStatement pendingStatement;
+        private int pendingRows;
+        private Map<String,PreparedStatement> statements;
+        private String viewTableSuffix;
 
-        synchronized (projectionMethods) {
-            try {
-                Method method = this.hiddenOrPublicMethod(aRootType, anEventType);
+        StatementBatch(Connection aConnection, String aViewTableSuffix) {
+            super();
 
-                method.setAccessible(true);
+            this.connection = aConnection;
+            this.statements = new HashMap<String,PreparedStatement>();
+            this.viewTableSuffix = aViewTableSuffix;
+        }
 
-                projectionMethods.put(aKey, method);
+        void add(PreparedStatement aStatement) throws Exception {
+            aStatement.addBatch();
 
-                return method;
+            this.pendingStatement = aStatement;
 
-            } catch (Exception e) {
-                throw new IllegalArgumentException(
-                        "I do not understand "
-                                + PROJECTION_METHOD_NAME
-                                + "("
-                                + anEventType.getSimpleName()
-                                + ") because: "
-                                + e.getClass().getSimpleName() + ">>>" + e.getMessage(),
-                        e);
+            if (++this.pendingRows >= MAX_BATCHED_STATEMENTS) {
+                this.flush();
             }
         }
-    }
 
-    private Method hiddenOrPublicMethod(
-            Class<? extends AbstractProjection> aRootType,
-            Class<? extends DomainEvent> anEventType)
-    throws Exception {
+        void close() {
+            for (PreparedStatement statement : this.statements.values()) {
+                try {
+                    statement.close();
+                } catch (Exception e) {
+                    // ignore
+                }
+            }
 
-        Method method = null;
+            this.statements.clear();
+        }
 
-        try {
+        void flush() throws Exception {
+            if (this.pendingStatement != null) {
+                try {
+                    this.pendingStatement.executeBatch();
+                } finally {
+                    this.pendingStatement = null;
+                    this.pendingRows = 0;
+                }
+            }
+        }
 
-            // assume protected or private...
+        String sqlFor(String aStatement) {
+            if (this.viewTableSuffix == null) {
+                return aStatement;
+            }
 
-            method = aRootType.getDeclaredMethod(
-                    PROJECTION_METHOD_NAME,
-                    anEventType);
+            return VIEW_TABLE_NAME.matcher(aStatement).replaceAll("$1" + this.viewTableSuffix);
+        }
 
-        } catch (Exception e) {
+        PreparedStatement statement(String anUpdate) throws Exception {
+            PreparedStatement statement = this.statements.get(anUpdate);
 
-            // then public...
+            if (statement == null) {
+                statement = this.connection.prepareStatement(this.sqlFor(anUpdate));
 
-            method = aRootType.getMethod(
-                    PROJECTION_METHOD_NAME,
-                    anEventType);
-        }
+                this.statements.put(anUpdate, statement);
+            }
 
-        return method;
+            // rows are sent in event order, so a different
+            // statement first sends the rows batched before it
+
+            if (this.pendingStatement != null && this.pendingStatement != statement) {
+                this.flush();
+            }
+
+            return statement;
+        }
     }
 }
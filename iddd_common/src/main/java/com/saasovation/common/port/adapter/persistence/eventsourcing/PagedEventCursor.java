@@ -0,0 +1,82 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.saasovation.common.port.adapter.persistence.eventsourcing;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
+import com.saasovation.common.event.sourcing.EventCursor;
+import com.saasovation.common.event.sourcing.EventStore;
+
+/**
+ * I am an EventCursor that reads one bounded page of
+ * events at a time, so only a page is ever held.
+ */
+public class PagedEventCursor implements EventCursor {
+
+    private EventStore eventStore;
+    private long lastEventId;
+    private boolean lastPage;
+    private Iterator<DispatchableDomainEvent> page;
+    private int pageSize;
+
+    public PagedEventCursor(EventStore anEventStore, long aLastReceivedEvent, int aPageSize) {
+        super();
+
+        if (aPageSize <= 0) {
+            throw new IllegalArgumentException("The page size must be greater than zero.");
+        }
+
+        this.eventStore = anEventStore;
+        this.lastEventId = aLastReceivedEvent;
+        this.lastPage = false;
+        this.page = Collections.<DispatchableDomainEvent>emptyList().iterator();
+        this.pageSize = aPageSize;
+    }
+
+    @Override
+    public void close() {
+        this.lastPage = true;
+        this.page = Collections.<DispatchableDomainEvent>emptyList().iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!this.page.hasNext() && !this.lastPage) {
+            List<DispatchableDomainEvent> events =
+                    this.eventStore.eventsSince(this.lastEventId, this.pageSize);
+
+            this.lastPage = events.size() < this.pageSize;
+            this.page = events.iterator();
+        }
+
+        return this.page.hasNext();
+    }
+
+    @Override
+    public DispatchableDomainEvent next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException("There are no more events.");
+        }
+
+        DispatchableDomainEvent event = this.page.next();
+
+        this.lastEventId = event.eventId();
+
+        return event;
+    }
+}
@@ -20,6 +20,7 @@ import com.saasovation.common.domain.model.DomainEvent;
 import com.saasovation.common.event.EventSerializer;
 import com.saasovation.common.event.sourcing.*;
 import com.saasovation.common.port.adapter.persistence.eventsourcing.DefaultEventStream;
+import com.saasovation.common.port.adapter.persistence.eventsourcing.PagedEventCursor;
 
 /**
  * I am an EventStore backed by a HashMap.
@@ -28,6 +29,8 @@ import com.saasovation.common.port.adapter.persistence.eventsourcing.DefaultEven
  */
 public class HashMapEventStore implements EventStore {
 
+    private static final int CURSOR_PAGE_SIZE = 500;
+
     private static HashMapEventStore instance;
 
     private EventNotifiable eventNotifiable;
@@ -85,15 +88,25 @@ public class HashMapEventStore implements EventStore {
         this.journal().close();
     }
 
+    @Override
+    public EventCursor eventCursorSince(long aLastReceivedEvent) {
+        return new PagedEventCursor(this, aLastReceivedEvent, CURSOR_PAGE_SIZE);
+    }
+
     @Override
     public List<DispatchableDomainEvent> eventsSince(long aLastReceivedEvent) {
+        return this.eventsSince(aLastReceivedEvent, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<DispatchableDomainEvent> eventsSince(long aLastReceivedEvent, int aMaxBatchSize) {
 
         List<DispatchableDomainEvent> events = null;
 
         try {
             List<LoggedJournalEntry> entries =
                     this.journal()
-                        .loggedJournalEntriesSince(aLastReceivedEvent);
+                        .loggedJournalEntriesSince(aLastReceivedEvent, aMaxBatchSize);
 
             events = this.toDispatchableDomainEvents(entries);
 
@@ -112,9 +112,16 @@ public class HashMapJournal {
     public List<LoggedJournalEntry> loggedJournalEntriesSince(
             long aJournalSequence) {
 
+        return this.loggedJournalEntriesSince(aJournalSequence, Integer.MAX_VALUE);
+    }
+
+    public List<LoggedJournalEntry> loggedJournalEntriesSince(
+            long aJournalSequence,
+            int aMaxEntries) {
+
         List<LoggedJournalEntry> entries = new ArrayList<LoggedJournalEntry>();
 
-        boolean done = false;
+        boolean done = aMaxEntries <= 0;
 
         for (long journalSequence = aJournalSequence + 1; !done; ++journalSequence) {
             String journalKey =
@@ -135,6 +142,8 @@ public class HashMapJournal {
                 loggedJournalEntry.discardNextMetadataValue();
 
                 entries.add(loggedJournalEntry);
+
+                done = entries.size() >= aMaxEntries;
             } else {
                 done = true;
             }
@@ -14,12 +14,124 @@
 
 package com.saasovation.common.port.adapter.persistence.eventsourcing.leveldb;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * I provide the keys of the journal. Keys are given to clients in
+ * their readable String form, but are stored in LevelDB in a binary
+ * form: a prefix followed by fixed-width big-endian longs. Since
+ * LevelDB orders keys bytewise, journal entries are ordered by journal
+ * sequence and reference entries are ordered by primary resource name
+ * and then by version, so both may be read with one iterator seek.
+ */
 public class JournalKeyProvider {
 
     protected static final String ES_JOURNAL_PREFIX_KEY = "ES_J:";
     protected static final String ES_KEY_DELIMITER = ":";
     protected static final String ES_REFERENCE_PREFIX_KEY = "ES_R:";
 
+    protected static final int ES_LONG_KEY_PART_LENGTH = 8;
+    protected static final byte ES_NAME_TERMINATOR = 0;
+
+    private static final Charset ES_KEY_CHARSET = Charset.forName("UTF-8");
+
+    private static final byte[] ES_JOURNAL_PREFIX_KEY_BYTES =
+            ES_JOURNAL_PREFIX_KEY.getBytes(ES_KEY_CHARSET);
+
+    private static final byte[] ES_REFERENCE_PREFIX_KEY_BYTES =
+            ES_REFERENCE_PREFIX_KEY.getBytes(ES_KEY_CHARSET);
+
+    public static byte[] journalKeyFor(long aJournalSequence) {
+        return ByteBuffer
+                .allocate(ES_JOURNAL_PREFIX_KEY_BYTES.length + ES_LONG_KEY_PART_LENGTH)
+                .put(ES_JOURNAL_PREFIX_KEY_BYTES)
+                .putLong(aJournalSequence)
+                .array();
+    }
+
+    public static boolean isJournalKey(byte[] aKey) {
+        return aKey.length == ES_JOURNAL_PREFIX_KEY_BYTES.length + ES_LONG_KEY_PART_LENGTH
+                && startsWith(aKey, ES_JOURNAL_PREFIX_KEY_BYTES);
+    }
+
+    public static long journalSequenceOf(byte[] aJournalKey) {
+        return longValueOf(aJournalKey, ES_JOURNAL_PREFIX_KEY_BYTES.length);
+    }
+
+    public static byte[] longValueBytes(long aValue) {
+        return ByteBuffer.allocate(ES_LONG_KEY_PART_LENGTH).putLong(aValue).array();
+    }
+
+    public static long longValueOf(byte[] aBytes) {
+        return longValueOf(aBytes, 0);
+    }
+
+    public static byte[] referenceKeyBytesFrom(String aReferenceKey) {
+        String resourceName =
+                aReferenceKey.substring(
+                        ES_REFERENCE_PREFIX_KEY.length(),
+                        aReferenceKey.lastIndexOf(ES_KEY_DELIMITER));
+
+        long version =
+                Long.parseLong(
+                        aReferenceKey.substring(
+                                aReferenceKey.lastIndexOf(ES_KEY_DELIMITER) + 1));
+
+        byte[] prefix = referenceKeyPrefixFor(resourceName);
+
+        return ByteBuffer
+                .allocate(prefix.length + ES_LONG_KEY_PART_LENGTH)
+                .put(prefix)
+                .putLong(version)
+                .array();
+    }
+
+    public static byte[] referenceKeyPrefixFor(String aPrimaryResourceName) {
+        byte[] name = aPrimaryResourceName.getBytes(ES_KEY_CHARSET);
+
+        return ByteBuffer
+                .allocate(ES_REFERENCE_PREFIX_KEY_BYTES.length + name.length + 1)
+                .put(ES_REFERENCE_PREFIX_KEY_BYTES)
+                .put(name)
+                .put(ES_NAME_TERMINATOR)
+                .array();
+    }
+
+    public static String referenceKeyFrom(byte[] aReferenceKeyBytes) {
+        int versionOffset = aReferenceKeyBytes.length - ES_LONG_KEY_PART_LENGTH;
+
+        String resourceName =
+                new String(
+                        aReferenceKeyBytes,
+                        ES_REFERENCE_PREFIX_KEY_BYTES.length,
+                        versionOffset - 1 - ES_REFERENCE_PREFIX_KEY_BYTES.length,
+                        ES_KEY_CHARSET);
+
+        return ES_REFERENCE_PREFIX_KEY
+                + resourceName
+                + ES_KEY_DELIMITER
+                + longValueOf(aReferenceKeyBytes, versionOffset);
+    }
+
+    public static boolean startsWith(byte[] aKey, byte[] aPrefix) {
+        if (aKey.length < aPrefix.length) {
+            return false;
+        }
+
+        for (int idx = 0; idx < aPrefix.length; ++idx) {
+            if (aKey[idx] != aPrefix[idx]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long longValueOf(byte[] aBytes, int anOffset) {
+        return ByteBuffer.wrap(aBytes, anOffset, ES_LONG_KEY_PART_LENGTH).getLong();
+    }
+
     public String compositeReferenceKeyFrom(String aKeyPart1, String aKeyPart2) {
         String referenceKey =
                 this.referenceKeyFrom(
@@ -20,12 +20,14 @@ import java.util.List;
 import com.saasovation.common.domain.model.DomainEvent;
 import com.saasovation.common.event.EventSerializer;
 import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
+import com.saasovation.common.event.sourcing.EventCursor;
 import com.saasovation.common.event.sourcing.EventNotifiable;
 import com.saasovation.common.event.sourcing.EventStore;
 import com.saasovation.common.event.sourcing.EventStoreException;
 import com.saasovation.common.event.sourcing.EventStream;
 import com.saasovation.common.event.sourcing.EventStreamId;
 import com.saasovation.common.port.adapter.persistence.eventsourcing.DefaultEventStream;
+import com.saasovation.common.port.adapter.persistence.eventsourcing.PagedEventCursor;
 
 /**
  * I am an EventStore for LevelDB. I am a pure Java implementation
@@ -35,6 +37,8 @@ import com.saasovation.common.port.adapter.persistence.eventsourcing.DefaultEven
  */
 public class LevelDBEventStore implements EventStore {
 
+    private static final int CURSOR_PAGE_SIZE = 500;
+
     private static LevelDBEventStore instance;
 
     private EventNotifiable eventNotifiable;
@@ -92,15 +96,25 @@ public class LevelDBEventStore implements EventStore {
         this.journal().close();
     }
 
+    @Override
+    public EventCursor eventCursorSince(long aLastReceivedEvent) {
+        return new PagedEventCursor(this, aLastReceivedEvent, CURSOR_PAGE_SIZE);
+    }
+
     @Override
     public List<DispatchableDomainEvent> eventsSince(long aLastReceivedEvent) {
+        return this.eventsSince(aLastReceivedEvent, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<DispatchableDomainEvent> eventsSince(long aLastReceivedEvent, int aMaxBatchSize) {
 
         List<DispatchableDomainEvent> events = null;
 
         try {
             List<LoggedJournalEntry> entries =
                     this.journal()
-                        .loggedJournalEntriesSince(aLastReceivedEvent);
+                        .loggedJournalEntriesSince(aLastReceivedEvent, aMaxBatchSize);
 
             events = this.toDispatchableDomainEvents(entries);
 
@@ -178,6 +192,14 @@ public class LevelDBEventStore implements EventStore {
         this.eventNotifiable = anEventNotifiable;
     }
 
+    public void useGroupCommit(int aMaxBatchSize, long aMaxLingerMillis) {
+        this.journal().useGroupCommit(aMaxBatchSize, aMaxLingerMillis);
+    }
+
+    public void useSingleCommit() {
+        this.journal().useSingleCommit();
+    }
+
     private LevelDBEventStore(String aDirectoryPath) {
         super();
 
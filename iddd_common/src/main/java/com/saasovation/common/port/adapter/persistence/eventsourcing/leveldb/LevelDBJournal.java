@@ -15,17 +15,25 @@
 package com.saasovation.common.port.adapter.persistence.eventsourcing.leveldb;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBFactory;
 import org.iq80.leveldb.DBIterator;
 import org.iq80.leveldb.Options;
+import org.iq80.leveldb.ReadOptions;
+import org.iq80.leveldb.Snapshot;
 import org.iq80.leveldb.WriteBatch;
 import org.iq80.leveldb.impl.Iq80DBFactory;
 
@@ -36,18 +44,33 @@ public class LevelDBJournal {
 
     protected static final String ES_METADATA_DELIMITER = "#";
 
+    protected static final byte[] ES_KEY_FORMAT_KEY = "ES_F:".getBytes();
+    protected static final byte[] ES_KEY_FORMAT_VERSION = "2".getBytes();
+    protected static final byte[] ES_KEY_FORMAT_MIGRATING = "2-MIGRATING".getBytes();
+
     private static final byte[] ES_JOURNAL_SEQUENCE_KEY =
-            (JournalKeyProvider.ES_JOURNAL_PREFIX_KEY+"0").getBytes();
+            JournalKeyProvider.journalKeyFor(0L);
+
+    // a power of two, so a stream hash maps to a stripe with a mask
+    private static final int STREAM_LOCK_STRIPES = 256;
 
     private static LevelDBJournal instance;
-    private static Map<String, Object> lock = new HashMap<String, Object>();
+    private static final Object instanceLock = new Object();
+    private static final Object[] streamLocks = new Object[STREAM_LOCK_STRIPES];
+
+    static {
+        for (int idx = 0; idx < STREAM_LOCK_STRIPES; ++idx) {
+            streamLocks[idx] = new Object();
+        }
+    }
 
     private DB database;
     private String databasePath;
-    private AtomicLong journalSequence;
+    private volatile GroupCommitWriter groupCommitWriter;
+    private final AtomicLong journalSequence = new AtomicLong(0L);
 
     public static LevelDBJournal initializeInstance(String aDirectoryPath) {
-        synchronized (lock) {
+        synchronized (instanceLock) {
             if (instance == null) {
                 instance = new LevelDBJournal(aDirectoryPath);
             } else {
@@ -71,9 +94,11 @@ public class LevelDBJournal {
     }
 
     public void close() {
-        synchronized (lock) {
+        synchronized (instanceLock) {
             if (instance != null) {
                 try {
+                    this.useSingleCommit();
+
                     this.saveJournalSequence();
 
                     this.database().close();
@@ -98,42 +123,22 @@ public class LevelDBJournal {
 
     public void logEntries(LoggableJournalEntry[] aJournalEntries) {
 
-        WriteBatch batch = this.database().createWriteBatch();
-
-        try {
-            synchronized (this.lockFor(aJournalEntries[0].primaryResourceName())) {
-                for (LoggableJournalEntry journalEntry : aJournalEntries) {
-
-                    long journalSequence = this.nextJournalSequence();
-
-                    this.confirmNonExistingReference(journalEntry.referenceKey());
-
-                    String jounralKey =
-                            JournalKeyProvider.ES_JOURNAL_PREFIX_KEY
-                            + journalSequence;
-
-                    String referenceKey =
-                            journalEntry.referenceKey();
+        GroupCommitWriter groupCommitWriter = this.groupCommitWriter();
 
-                    byte[] journalSequenceBytes = (""+journalSequence).getBytes();
+        if (groupCommitWriter != null) {
+            groupCommitWriter.append(aJournalEntries);
 
-                    String journalValue =
-                            this.valueWithMetadata(
-                                    journalEntry.value(),
-                                    referenceKey);
-
-                    // journal entry points to reference
+            return;
+        }
 
-                    batch.put(
-                            jounralKey.getBytes(),
-                            journalValue.getBytes());
+        WriteBatch batch = this.database().createWriteBatch();
 
-                    // reference points to journal entry
+        try {
+            synchronized (this.lockFor(aJournalEntries[0].primaryResourceName())) {
+                byte[][] referenceKeys =
+                        this.confirmedReferenceKeys(aJournalEntries, null);
 
-                    batch.put(
-                            referenceKey.getBytes(),
-                            journalSequenceBytes);
-                }
+                this.batchEntries(batch, aJournalEntries, referenceKeys);
 
                 this.database().write(batch);
             }
@@ -144,45 +149,48 @@ public class LevelDBJournal {
                             + t.getMessage(),
                     t);
         } finally {
-            try {
-                batch.close();
-            } catch (Throwable t) {
-                // ignore
-            }
+            this.close(batch);
         }
     }
 
     public List<LoggedJournalEntry> loggedJournalEntriesSince(
             long aJournalSequence) {
 
+        return this.loggedJournalEntriesSince(aJournalSequence, Integer.MAX_VALUE);
+    }
+
+    public List<LoggedJournalEntry> loggedJournalEntriesSince(
+            long aJournalSequence,
+            int aMaxEntries) {
+
         List<LoggedJournalEntry> entries = new ArrayList<LoggedJournalEntry>();
 
-        boolean done = false;
+        DBIterator iterator = this.database().iterator();
 
-        for (long journalSequence = aJournalSequence + 1; !done; ++journalSequence) {
-            String journalKey =
-                    JournalKeyProvider.ES_JOURNAL_PREFIX_KEY
-                    + journalSequence;
+        try {
+            iterator.seek(JournalKeyProvider.journalKeyFor(aJournalSequence + 1));
 
-            byte[] rawJournalValue =
-                    this.database()
-                        .get(journalKey.getBytes());
+            while (entries.size() < aMaxEntries && iterator.hasNext()) {
+                Entry<byte[],byte[]> entry = iterator.next();
 
-            if (rawJournalValue != null) {
+                if (!JournalKeyProvider.isJournalKey(entry.getKey())) {
+                    break;
+                }
 
                 LoggedJournalEntry loggedJournalEntry =
                     new LoggedJournalEntry(
-                            journalSequence,
+                            JournalKeyProvider.journalSequenceOf(entry.getKey()),
                             null,
-                            new String(rawJournalValue));
+                            new String(entry.getValue()));
 
                 // discard the reference key
                 loggedJournalEntry.discardNextMetadataValue();
 
                 entries.add(loggedJournalEntry);
-            } else {
-                done = true;
             }
+
+        } finally {
+            this.close(iterator);
         }
 
         return entries;
@@ -201,6 +209,8 @@ public class LevelDBJournal {
                 this.database().delete(entry.getKey());
             }
 
+            this.database().put(ES_KEY_FORMAT_KEY, ES_KEY_FORMAT_VERSION);
+
         } catch (Throwable t) {
             throw new EventStoreException(
                     "Cannot purge journal LevelDB database: "
@@ -209,11 +219,7 @@ public class LevelDBJournal {
                         + t.getMessage(),
                     t);
         } finally {
-            try {
-                iterator.close();
-            } catch (Throwable t) {
-                // ignore
-            }
+            this.close(iterator);
 
             this.setJournalSequence(0L);
         }
@@ -224,45 +230,116 @@ public class LevelDBJournal {
 
         List<LoggedJournalEntry> entries = new ArrayList<LoggedJournalEntry>();
 
-        boolean done = false;
+        byte[] referenceKeyPrefix =
+                JournalKeyProvider.referenceKeyPrefixFor(
+                        aReferenceKeyProvider.primaryResourceName());
+
+        // both iterators read the same snapshot, and a stream's journal
+        // sequences ascend, so the journal iterator only seeks forward
+
+        Snapshot snapshot = this.database().getSnapshot();
 
-        while (!done) {
-            String referenceKey = aReferenceKeyProvider.nextReferenceKey();
+        ReadOptions readOptions = new ReadOptions().snapshot(snapshot);
 
-            byte[] rawJournalSequenceValue =
-                    this.database().get(referenceKey.getBytes());
+        DBIterator iterator = this.database().iterator(readOptions);
+
+        DBIterator journalIterator = this.database().iterator(readOptions);
+
+        try {
+            iterator.seek(
+                    JournalKeyProvider.referenceKeyBytesFrom(
+                            aReferenceKeyProvider.nextReferenceKey()));
+
+            while (iterator.hasNext()) {
+                Entry<byte[],byte[]> entry = iterator.next();
+
+                if (!JournalKeyProvider.startsWith(entry.getKey(), referenceKeyPrefix)) {
+                    break;
+                }
 
-            if (rawJournalSequenceValue != null) {
                 long journalSequence =
-                        Long.parseLong(new String(rawJournalSequenceValue));
+                        JournalKeyProvider.longValueOf(entry.getValue());
+
+                byte[] journalKey = JournalKeyProvider.journalKeyFor(journalSequence);
+
+                journalIterator.seek(journalKey);
 
-                String journalKey =
-                        JournalKeyProvider.ES_JOURNAL_PREFIX_KEY
-                        + journalSequence;
+                if (!journalIterator.hasNext() ||
+                    !Arrays.equals(journalKey, journalIterator.peekNext().getKey())) {
+
+                    throw new EventStoreException(
+                            "Missing journal entry: "
+                            + journalSequence
+                            + " of reference: "
+                            + JournalKeyProvider.referenceKeyFrom(entry.getKey()));
+                }
 
-                byte[] rawJournalValue =
-                        this.database()
-                            .get(journalKey.getBytes());
+                byte[] rawJournalValue = journalIterator.peekNext().getValue();
 
                 LoggedJournalEntry loggedJournalEntry =
                     new LoggedJournalEntry(
                             journalSequence,
-                            referenceKey,
+                            JournalKeyProvider.referenceKeyFrom(entry.getKey()),
                             new String(rawJournalValue));
 
                 // discard the stream key
                 loggedJournalEntry.discardNextMetadataValue();
 
                 entries.add(loggedJournalEntry);
+            }
 
-            } else {
-                done = true;
+        } finally {
+            this.close(iterator);
+            this.close(journalIterator);
+
+            try {
+                snapshot.close();
+            } catch (IOException e) {
+                // ignore
             }
         }
 
         return entries;
     }
 
+    /**
+     * Coalesces the entries of concurrent logEntries() callers into
+     * one WriteBatch per tick. A tick ends when aMaxBatchSize callers
+     * are queued or aMaxLingerMillis has passed since the first one.
+     * Each caller still blocks until its own entries are written, and
+     * fails alone on a concurrency violation.
+     *
+     * @param aMaxBatchSize the int maximum number of callers per WriteBatch
+     * @param aMaxLingerMillis the long maximum time to wait for more callers
+     */
+    public synchronized void useGroupCommit(int aMaxBatchSize, long aMaxLingerMillis) {
+        if (aMaxBatchSize < 1) {
+            throw new IllegalArgumentException("The max batch size must be at least 1.");
+        }
+        if (aMaxLingerMillis < 0) {
+            throw new IllegalArgumentException("The max linger time must not be negative.");
+        }
+
+        this.useSingleCommit();
+
+        GroupCommitWriter groupCommitWriter =
+                new GroupCommitWriter(aMaxBatchSize, aMaxLingerMillis);
+
+        groupCommitWriter.start();
+
+        this.setGroupCommitWriter(groupCommitWriter);
+    }
+
+    public synchronized void useSingleCommit() {
+        GroupCommitWriter groupCommitWriter = this.groupCommitWriter();
+
+        if (groupCommitWriter != null) {
+            this.setGroupCommitWriter(null);
+
+            groupCommitWriter.stop();
+        }
+    }
+
     public String valueWithMetadata(String aValue, String aMetadata) {
         String valueWithMetadata =
                 aMetadata + ES_METADATA_DELIMITER + aValue;
@@ -276,6 +353,36 @@ public class LevelDBJournal {
         this.openDatabase(aDirectoryPath);
     }
 
+    private void batchEntries(
+            WriteBatch aBatch,
+            LoggableJournalEntry[] aJournalEntries,
+            byte[][] aReferenceKeys) {
+
+        for (int idx = 0; idx < aJournalEntries.length; ++idx) {
+
+            LoggableJournalEntry journalEntry = aJournalEntries[idx];
+
+            long journalSequence = this.nextJournalSequence();
+
+            String journalValue =
+                    this.valueWithMetadata(
+                            journalEntry.value(),
+                            journalEntry.referenceKey());
+
+            // journal entry points to reference
+
+            aBatch.put(
+                    JournalKeyProvider.journalKeyFor(journalSequence),
+                    journalValue.getBytes());
+
+            // reference points to journal entry
+
+            aBatch.put(
+                    aReferenceKeys[idx],
+                    JournalKeyProvider.longValueBytes(journalSequence));
+        }
+    }
+
     private boolean cacheJournalSequence() {
         boolean cached = false;
 
@@ -284,7 +391,7 @@ public class LevelDBJournal {
 
         if (journalSequenceValue != null) {
             this.setJournalSequence(
-                    Long.parseLong(new String(journalSequenceValue)));
+                    JournalKeyProvider.longValueOf(journalSequenceValue));
 
             // only a successful close() will save the journal sequence.
             // a missing journal sequence on open indicates the need for
@@ -301,10 +408,98 @@ public class LevelDBJournal {
         return cached;
     }
 
-    private void confirmNonExistingReference(String aReferenceKey) {
+    private void close(DBIterator anIterator) {
+        try {
+            anIterator.close();
+        } catch (Throwable t) {
+            // ignore
+        }
+    }
+
+    private void close(WriteBatch aBatch) {
+        try {
+            aBatch.close();
+        } catch (Throwable t) {
+            // ignore
+        }
+    }
+
+    private void commitGroup(List<PendingAppend> aPendingAppends) {
+
+        List<PendingAppend> batchedAppends = new ArrayList<PendingAppend>();
+
+        Set<String> batchedReferenceKeys = new HashSet<String>();
+
+        WriteBatch batch = this.database().createWriteBatch();
+
+        try {
+            for (PendingAppend pendingAppend : aPendingAppends) {
+                try {
+                    byte[][] referenceKeys =
+                            this.confirmedReferenceKeys(
+                                    pendingAppend.journalEntries(),
+                                    batchedReferenceKeys);
+
+                    this.batchEntries(batch, pendingAppend.journalEntries(), referenceKeys);
+
+                    batchedAppends.add(pendingAppend);
+
+                } catch (Throwable t) {
+                    pendingAppend.failed(t);
+                }
+            }
+
+            if (!batchedAppends.isEmpty()) {
+                this.database().write(batch);
+            }
+
+            for (PendingAppend pendingAppend : batchedAppends) {
+                pendingAppend.committed();
+            }
+
+        } catch (Throwable t) {
+            for (PendingAppend pendingAppend : batchedAppends) {
+                pendingAppend.failed(t);
+            }
+        } finally {
+            this.close(batch);
+        }
+    }
+
+    private byte[][] confirmedReferenceKeys(
+            LoggableJournalEntry[] aJournalEntries,
+            Set<String> aBatchedReferenceKeys) {
+
+        byte[][] referenceKeys = new byte[aJournalEntries.length][];
+
+        for (int idx = 0; idx < aJournalEntries.length; ++idx) {
+            String referenceKey = aJournalEntries[idx].referenceKey();
+
+            if (aBatchedReferenceKeys != null
+                    && aBatchedReferenceKeys.contains(referenceKey)) {
+                throw new EventStoreAppendException("Journal concurrency violation.");
+            }
+
+            referenceKeys[idx] = JournalKeyProvider.referenceKeyBytesFrom(referenceKey);
+
+            this.confirmNonExistingReference(referenceKeys[idx]);
+        }
+
+        if (aBatchedReferenceKeys != null) {
+            for (LoggableJournalEntry journalEntry : aJournalEntries) {
+                aBatchedReferenceKeys.add(journalEntry.referenceKey());
+            }
+        }
+
+        return referenceKeys;
+    }
+
+    private void confirmNonExistingReference(byte[] aReferenceKey) {
         // this implementation will not stand up to race conditions
+        // unless appends are serialized by a stream lock or the
+        // group commit writer
 
-        if (this.database().get(aReferenceKey.getBytes()) != null) {
+        if (this.database().get(aReferenceKey) != null) {
             throw new EventStoreAppendException("Journal concurrency violation.");
         }
     }
@@ -321,21 +516,24 @@ public class LevelDBJournal {
         this.databasePath = aDatabasePath;
     }
 
-    private Object lockFor(String aPrimaryResourceName) {
-        // need a reaper to remove the lock after some
-        // size threshold and LRU
+    private GroupCommitWriter groupCommitWriter() {
+        return this.groupCommitWriter;
+    }
+
+    private void setGroupCommitWriter(GroupCommitWriter aGroupCommitWriter) {
+        this.groupCommitWriter = aGroupCommitWriter;
+    }
 
-        synchronized (lock) {
-            Object resourceLock = lock.get(aPrimaryResourceName);
+    private Object lockFor(String aPrimaryResourceName) {
+        // streams share a fixed set of lock stripes, so the table
+        // never grows and finding a lock takes no global monitor;
+        // streams on one stripe merely serialize their appends
 
-            if (resourceLock == null) {
-                resourceLock = new Object();
+        int hash = aPrimaryResourceName.hashCode();
 
-                lock.put(aPrimaryResourceName, resourceLock);
-            }
+        hash ^= (hash >>> 16);
 
-            return resourceLock;
-        }
+        return streamLocks[hash & (STREAM_LOCK_STRIPES - 1)];
     }
 
     private long nextJournalSequence() {
@@ -345,8 +543,7 @@ public class LevelDBJournal {
     }
 
     private void setJournalSequence(long aJournalSequence) {
-        this.journalSequence =
-                new AtomicLong(aJournalSequence);
+        this.journalSequence.set(aJournalSequence);
     }
 
     private void openDatabase(String aDirectoryPath) {
@@ -362,6 +559,8 @@ public class LevelDBJournal {
 
             this.setDatabase(factory.open(new File(aDirectoryPath), options));
 
+            this.migrate();
+
             if (!this.cacheJournalSequence()) {
                 this.repair();
             }
@@ -376,6 +575,13 @@ public class LevelDBJournal {
         }
     }
 
+    private void migrate() {
+        LevelDBJournalRepairTool repairTool =
+                new LevelDBJournalRepairTool(this.database());
+
+        repairTool.migrateDatabase();
+    }
+
     private void repair() {
         LevelDBJournalRepairTool repairTool =
                 new LevelDBJournalRepairTool(this.database());
@@ -391,10 +597,174 @@ public class LevelDBJournal {
 
     private void saveJournalSequence() {
 
-        byte[] journalSequenceBytes = (""+journalSequence.get()).getBytes();
-
         this.database().put(
                 ES_JOURNAL_SEQUENCE_KEY,
-                journalSequenceBytes);
+                JournalKeyProvider.longValueBytes(this.journalSequence.get()));
+    }
+
+    private class GroupCommitWriter implements Runnable {
+
+        private static final long STOP_POLL_MILLIS = 100L;
+
+        private long maxLingerNanos;
+        private int maxBatchSize;
+        private BlockingQueue<PendingAppend> pendingAppends;
+        private volatile boolean running;
+        private Thread thread;
+
+        GroupCommitWriter(int aMaxBatchSize, long aMaxLingerMillis) {
+            super();
+
+            this.maxBatchSize = aMaxBatchSize;
+            this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(aMaxLingerMillis);
+            this.pendingAppends = new LinkedBlockingQueue<PendingAppend>();
+        }
+
+        public void append(LoggableJournalEntry[] aJournalEntries) {
+            PendingAppend pendingAppend = new PendingAppend(aJournalEntries);
+
+            this.pendingAppends.add(pendingAppend);
+
+            // if stop() already drained the queue nobody else will
+            // take this append, so it must be withdrawn
+
+            if (!this.running && this.pendingAppends.remove(pendingAppend)) {
+                throw new EventStoreAppendException(
+                        "Could not append to journal because: "
+                                + "the group commit writer is stopped.");
+            }
+
+            pendingAppend.awaitCommit();
+        }
+
+        @Override
+        public void run() {
+            List<PendingAppend> group = new ArrayList<PendingAppend>();
+
+            while (this.running || !this.pendingAppends.isEmpty()) {
+                try {
+                    PendingAppend pendingAppend =
+                            this.pendingAppends.poll(STOP_POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+                    if (pendingAppend == null) {
+                        continue;
+                    }
+
+                    group.add(pendingAppend);
+
+                    long lingerDeadline = System.nanoTime() + this.maxLingerNanos;
+
+                    while (group.size() < this.maxBatchSize) {
+                        long lingerNanos = lingerDeadline - System.nanoTime();
+
+                        pendingAppend =
+                                lingerNanos > 0 ?
+                                        this.pendingAppends.poll(lingerNanos, TimeUnit.NANOSECONDS) :
+                                        this.pendingAppends.poll();
+
+                        if (pendingAppend == null) {
+                            break;
+                        }
+
+                        group.add(pendingAppend);
+                    }
+
+                } catch (InterruptedException e) {
+                    // stop() drains whatever remains
+                }
+
+                if (!group.isEmpty()) {
+                    commitGroup(group);
+
+                    group.clear();
+                }
+            }
+        }
+
+        public void start() {
+            this.running = true;
+
+            this.thread = new Thread(this, "LevelDBJournal-GroupCommitWriter");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        public void stop() {
+            this.running = false;
+
+            boolean interrupted = false;
+
+            while (this.thread.isAlive()) {
+                try {
+                    this.thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            // an append may slip in after the writer's last poll
+
+            List<PendingAppend> remaining = new ArrayList<PendingAppend>();
+
+            this.pendingAppends.drainTo(remaining);
+
+            if (!remaining.isEmpty()) {
+                commitGroup(remaining);
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class PendingAppend {
+
+        private CountDownLatch committed;
+        private Throwable failure;
+        private LoggableJournalEntry[] journalEntries;
+
+        PendingAppend(LoggableJournalEntry[] aJournalEntries) {
+            super();
+
+            this.committed = new CountDownLatch(1);
+            this.journalEntries = aJournalEntries;
+        }
+
+        public void awaitCommit() {
+            boolean interrupted = false;
+
+            while (this.committed.getCount() > 0) {
+                try {
+                    this.committed.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (this.failure != null) {
+                throw new EventStoreAppendException(
+                        "Could not append to journal because: "
+                                + this.failure.getMessage(),
+                        this.failure);
+            }
+        }
+
+        public void committed() {
+            this.committed.countDown();
+        }
+
+        public void failed(Throwable aFailure) {
+            this.failure = aFailure;
+            this.committed.countDown();
+        }
+
+        public LoggableJournalEntry[] journalEntries() {
+            return this.journalEntries;
+        }
     }
 }
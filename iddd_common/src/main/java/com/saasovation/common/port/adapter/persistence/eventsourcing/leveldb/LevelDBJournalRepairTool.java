@@ -14,6 +14,7 @@
 
 package com.saasovation.common.port.adapter.persistence.eventsourcing.leveldb;
 
+import java.util.Arrays;
 import java.util.Map.Entry;
 
 import org.iq80.leveldb.DB;
@@ -22,7 +23,7 @@ import org.iq80.leveldb.WriteBatch;
 
 public class LevelDBJournalRepairTool {
 
-    private static final int CONTIGUOUS_MISSING_KEY_SAFE_COUNT = 100000;
+    private static final int MIGRATION_BATCH_SIZE = 1000;
 
     private DB database;
     private long lastConfirmedSequence;
@@ -37,6 +38,89 @@ public class LevelDBJournalRepairTool {
         return this.lastConfirmedSequence;
     }
 
+    public void migrateDatabase() {
+
+        if (!this.requiresMigration()) {
+            return;
+        }
+
+        System.out.println("MIGRATING EVENT JOURNAL KEYS...");
+
+        long migratedCount = 0;
+
+        DBIterator iterator = this.database().iterator();
+
+        WriteBatch batch = this.database().createWriteBatch();
+
+        try {
+            // the format is known to be changing from the first
+            // batch on, so that a migration that was interrupted
+            // resumes, skipping the binary keys it already wrote
+
+            batch.put(LevelDBJournal.ES_KEY_FORMAT_KEY, LevelDBJournal.ES_KEY_FORMAT_MIGRATING);
+
+            // the iterator reads from a snapshot, so it never
+            // sees the binary keys written by the migration
+
+            iterator.seekToFirst();
+
+            int batchCount = 0;
+
+            while (iterator.hasNext()) {
+                Entry<byte[],byte[]> entry = iterator.next();
+
+                String legacyKey = new String(entry.getKey());
+
+                if (this.isLegacyJournalKey(legacyKey)) {
+                    long journalSequence =
+                            Long.parseLong(
+                                    legacyKey.substring(
+                                            JournalKeyProvider.ES_JOURNAL_PREFIX_KEY.length()));
+
+                    // the saved journal sequence is the only journal
+                    // value whose format changes
+
+                    byte[] journalValue =
+                            journalSequence == 0 ?
+                                    JournalKeyProvider.longValueBytes(
+                                            Long.parseLong(new String(entry.getValue()))) :
+                                    entry.getValue();
+
+                    batch.put(JournalKeyProvider.journalKeyFor(journalSequence), journalValue);
+
+                } else if (this.isLegacyReferenceKey(legacyKey)) {
+                    batch.put(
+                            JournalKeyProvider.referenceKeyBytesFrom(legacyKey),
+                            JournalKeyProvider.longValueBytes(
+                                    Long.parseLong(new String(entry.getValue()))));
+                } else {
+                    continue;
+                }
+
+                batch.delete(entry.getKey());
+
+                ++migratedCount;
+
+                if (++batchCount >= MIGRATION_BATCH_SIZE) {
+                    this.database().write(batch);
+                    this.close(batch);
+                    batch = this.database().createWriteBatch();
+                    batchCount = 0;
+                }
+            }
+
+            batch.put(LevelDBJournal.ES_KEY_FORMAT_KEY, LevelDBJournal.ES_KEY_FORMAT_VERSION);
+
+            this.database().write(batch);
+
+        } finally {
+            this.close(batch);
+            this.close(iterator);
+        }
+
+        System.out.println("MIGRATED EVENT JOURNAL KEYS: " + migratedCount);
+    }
+
     public void repairDatabase() {
 
         if (!this.requiresRepair()) {
@@ -46,44 +130,41 @@ public class LevelDBJournalRepairTool {
         System.out.println("REPAIRING EVENT JOURNAL...");
 
         boolean cleanUpMode = false;
-        int contiguousMissingKeys = 0;
-        boolean done = false;
         long lastContiguousConfirmedKey = 0;
 
-        for (long journalSequence = 1; !done; ++journalSequence) {
-            byte[] journalKey =
-                    (JournalKeyProvider.ES_JOURNAL_PREFIX_KEY
-                    + journalSequence).getBytes();
+        DBIterator iterator = this.database().iterator();
+
+        try {
+            iterator.seek(JournalKeyProvider.journalKeyFor(1L));
 
-            byte[] rawJournalValue =
-                    this.database()
-                        .get(journalKey);
+            while (iterator.hasNext()) {
+                Entry<byte[],byte[]> entry = iterator.next();
 
-            if (rawJournalValue == null) {
-                cleanUpMode = true;
+                byte[] journalKey = entry.getKey();
 
-                if (++contiguousMissingKeys >= CONTIGUOUS_MISSING_KEY_SAFE_COUNT) {
-                    done = true;
+                if (!JournalKeyProvider.isJournalKey(journalKey)) {
+                    break;
                 }
 
-            } else {
-                if (!cleanUpMode) {
+                long journalSequence = JournalKeyProvider.journalSequenceOf(journalKey);
+
+                if (!cleanUpMode && journalSequence == lastContiguousConfirmedKey + 1) {
                     lastContiguousConfirmedKey = journalSequence;
                 } else {
-                    contiguousMissingKeys = 0;
+                    cleanUpMode = true;
 
                     LoggedJournalEntry loggedJournalEntry =
                             new LoggedJournalEntry(
                                     journalSequence,
                                     null,
-                                    new String(rawJournalValue));
+                                    new String(entry.getValue()));
 
                     String streamKey = loggedJournalEntry.nextMetadataValue();
 
                     WriteBatch batch = this.database().createWriteBatch();
 
                     try {
-                        batch.delete(streamKey.getBytes());
+                        batch.delete(JournalKeyProvider.referenceKeyBytesFrom(streamKey));
                         batch.delete(journalKey);
                         this.database().write(batch);
 
@@ -100,23 +181,69 @@ public class LevelDBJournalRepairTool {
                                 + " and stream entry: "
                                 + streamKey);
                     } finally {
-                        try {
-                            batch.close();
-                        } catch (Throwable t) {
-                            // ignore
-                        }
+                        this.close(batch);
                     }
                 }
             }
+        } finally {
+            this.close(iterator);
         }
 
         this.setLastConfirmedSequence(lastContiguousConfirmedKey);
     }
 
+    private void close(DBIterator anIterator) {
+        try {
+            anIterator.close();
+        } catch (Throwable t) {
+            // ignore
+        }
+    }
+
+    private void close(WriteBatch aBatch) {
+        try {
+            aBatch.close();
+        } catch (Throwable t) {
+            // ignore
+        }
+    }
+
     private DB database() {
         return this.database;
     }
 
+    private boolean isDecimal(String aString, int aBeginIndex) {
+        if (aBeginIndex >= aString.length()) {
+            return false;
+        }
+
+        for (int idx = aBeginIndex; idx < aString.length(); ++idx) {
+            if (!Character.isDigit(aString.charAt(idx))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isLegacyJournalKey(String aKey) {
+
+        // a binary journal key's sequence has leading zero
+        // bytes, never the decimal digits of a legacy key
+
+        return aKey.startsWith(JournalKeyProvider.ES_JOURNAL_PREFIX_KEY)
+                && this.isDecimal(aKey, JournalKeyProvider.ES_JOURNAL_PREFIX_KEY.length());
+    }
+
+    private boolean isLegacyReferenceKey(String aKey) {
+
+        // a binary reference key terminates its stream name
+
+        return aKey.startsWith(JournalKeyProvider.ES_REFERENCE_PREFIX_KEY)
+                && aKey.indexOf(JournalKeyProvider.ES_NAME_TERMINATOR) == -1
+                && this.isDecimal(aKey, aKey.lastIndexOf(JournalKeyProvider.ES_KEY_DELIMITER) + 1);
+    }
+
     private void setDatabase(DB aDatabase) {
         this.database = aDatabase;
     }
@@ -131,23 +258,49 @@ public class LevelDBJournalRepairTool {
         this.lastConfirmedSequence = aLastConfirmedSequence;
     }
 
+    private boolean requiresMigration() {
+        byte[] keyFormat = this.database().get(LevelDBJournal.ES_KEY_FORMAT_KEY);
+
+        if (keyFormat != null) {
+            if (Arrays.equals(keyFormat, LevelDBJournal.ES_KEY_FORMAT_MIGRATING)) {
+                return true;
+            } else if (!Arrays.equals(keyFormat, LevelDBJournal.ES_KEY_FORMAT_VERSION)) {
+                throw new IllegalStateException(
+                        "Unknown journal key format: " + new String(keyFormat));
+            }
+
+            return false;
+        }
+
+        return true;
+    }
+
     private boolean requiresRepair() {
         boolean requiresRepair = false;
 
         DBIterator iterator = this.database().iterator();
 
-        iterator.seekToFirst();
+        try {
+            iterator.seek(JournalKeyProvider.journalKeyFor(1L));
 
-        if (iterator.hasNext()) {
-            requiresRepair = true;
+            if (iterator.hasNext()) {
+                Entry<byte[],byte[]> entry = iterator.next();
 
-            Entry<byte[],byte[]> entry = iterator.next();
+                if (JournalKeyProvider.isJournalKey(entry.getKey())) {
+                    requiresRepair = true;
 
-            System.out.println("REPAIR NEEDED: KEY FOUND: " + new String(entry.getKey()));
+                    System.out.println(
+                            "REPAIR NEEDED: JOURNAL ENTRY FOUND: "
+                            + JournalKeyProvider.journalSequenceOf(entry.getKey()));
+                }
+            }
 
-        } else {
+            if (!requiresRepair) {
+                System.out.println("NOT REPARING: Journal is empty.");
+            }
 
-            System.out.println("NOT REPARING: Database is empty.");
+        } finally {
+            this.close(iterator);
         }
 
         return requiresRepair;
@@ -0,0 +1,128 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.saasovation.common.port.adapter.persistence.eventsourcing.leveldb;
+
+import org.iq80.leveldb.DB;
+
+import com.saasovation.common.event.sourcing.AggregateSnapshot;
+import com.saasovation.common.event.sourcing.EventStoreException;
+import com.saasovation.common.event.sourcing.SnapshotStore;
+import com.saasovation.common.port.adapter.persistence.leveldb.LevelDBProvider;
+
+/**
+ * I am a SnapshotStore for LevelDB. I keep only the latest
+ * snapshot of each stream, in a database of my own.
+ */
+public class LevelDBSnapshotStore implements SnapshotStore {
+
+    private static final String ES_SNAPSHOT_PREFIX_KEY = "ES_S:";
+
+    private static LevelDBSnapshotStore instance;
+
+    private String databasePath;
+
+    public static synchronized LevelDBSnapshotStore instance(String aDirectoryPath) {
+        if (instance == null || !instance.databasePath().equals(aDirectoryPath)) {
+            instance = new LevelDBSnapshotStore(aDirectoryPath);
+        }
+
+        return instance;
+    }
+
+    @Override
+    public void close() {
+        LevelDBProvider.instance().close(this.databasePath());
+    }
+
+    public String databasePath() {
+        return this.databasePath;
+    }
+
+    @Override
+    public void purge() {
+        LevelDBProvider.instance().purge(this.database());
+    }
+
+    @Override
+    public synchronized void save(AggregateSnapshot aSnapshot) {
+        try {
+            AggregateSnapshot latestSnapshot = this.snapshotOf(aSnapshot.streamName());
+
+            // a slower writer must not replace a newer snapshot
+
+            if (latestSnapshot != null
+                    && latestSnapshot.streamVersion() >= aSnapshot.streamVersion()) {
+                return;
+            }
+
+            String snapshotValue =
+                    aSnapshot.streamVersion()
+                    + LevelDBJournal.ES_METADATA_DELIMITER
+                    + aSnapshot.snapshotType()
+                    + LevelDBJournal.ES_METADATA_DELIMITER
+                    + aSnapshot.snapshotData();
+
+            this.database().put(
+                    this.snapshotKey(aSnapshot.streamName()),
+                    snapshotValue.getBytes());
+
+        } catch (Throwable t) {
+            throw new EventStoreException(
+                    "Cannot save snapshot of: "
+                        + aSnapshot.streamName()
+                        + " because: "
+                        + t.getMessage(),
+                    t);
+        }
+    }
+
+    @Override
+    public AggregateSnapshot snapshotOf(String aStreamName) {
+        byte[] rawSnapshotValue = this.database().get(this.snapshotKey(aStreamName));
+
+        if (rawSnapshotValue == null) {
+            return null;
+        }
+
+        String snapshotValue = new String(rawSnapshotValue);
+
+        int typeIndex = snapshotValue.indexOf(LevelDBJournal.ES_METADATA_DELIMITER);
+        int dataIndex = snapshotValue.indexOf(LevelDBJournal.ES_METADATA_DELIMITER, typeIndex + 1);
+
+        return new AggregateSnapshot(
+                aStreamName,
+                Integer.parseInt(snapshotValue.substring(0, typeIndex)),
+                snapshotValue.substring(typeIndex + 1, dataIndex),
+                snapshotValue.substring(dataIndex + 1));
+    }
+
+    private LevelDBSnapshotStore(String aDirectoryPath) {
+        super();
+
+        this.setDatabasePath(aDirectoryPath);
+    }
+
+    private DB database() {
+        // reopens the database after close()
+        return LevelDBProvider.instance().databaseFrom(this.databasePath());
+    }
+
+    private void setDatabasePath(String aDatabasePath) {
+        this.databasePath = aDatabasePath;
+    }
+
+    private byte[] snapshotKey(String aStreamName) {
+        return (ES_SNAPSHOT_PREFIX_KEY + aStreamName).getBytes();
+    }
+}
@@ -20,6 +20,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.sql.DataSource;
 
@@ -30,6 +31,7 @@ import org.springframework.context.ApplicationContextAware;
 import com.saasovation.common.domain.model.DomainEvent;
 import com.saasovation.common.event.EventSerializer;
 import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
+import com.saasovation.common.event.sourcing.EventCursor;
 import com.saasovation.common.event.sourcing.EventNotifiable;
 import com.saasovation.common.event.sourcing.EventStore;
 import com.saasovation.common.event.sourcing.EventStoreAppendException;
@@ -40,10 +42,13 @@ import com.saasovation.common.port.adapter.persistence.eventsourcing.DefaultEven
 
 public class MySQLJDBCEventStore implements EventStore, ApplicationContextAware {
 
+    private static final int DEFAULT_FETCH_SIZE = 500;
+
     private static MySQLJDBCEventStore instance;
 
     private DataSource collaborationDataSource;
     private EventNotifiable eventNotifiable;
+    private int fetchSize;
     private EventSerializer serializer;
 
     public synchronized static MySQLJDBCEventStore instance() {
@@ -51,9 +56,14 @@ public class MySQLJDBCEventStore implements EventStore, ApplicationContextAware
     }
 
     public MySQLJDBCEventStore(DataSource aDataSource) {
+        this(aDataSource, DEFAULT_FETCH_SIZE);
+    }
+
+    public MySQLJDBCEventStore(DataSource aDataSource, int aFetchSize) {
         super();
 
         this.setCollaborationDataSource(aDataSource);
+        this.setFetchSize(aFetchSize);
         this.setSerializer(EventSerializer.instance());
     }
 
@@ -66,20 +76,32 @@ public class MySQLJDBCEventStore implements EventStore, ApplicationContextAware
 
         Connection connection = this.connection();
 
+        PreparedStatement statement = null;
+
         try {
+            statement =
+                    connection
+                        .prepareStatement(
+                                "INSERT INTO tbl_es_event_store VALUES(?, ?, ?, ?, ?)");
+
             int index = 0;
 
             for (DomainEvent event : anEvents) {
-                this.appendEventStore(connection, aStartingIdentity, index++, event);
+                this.appendEventStore(statement, aStartingIdentity, index++, event);
             }
 
+            // with rewriteBatchedStatements the driver sends all
+            // events as one multi-row insert in one round trip
+
+            statement.executeBatch();
+
             connection.commit();
 
             this.notifyDispatchableEvents();
 
         } catch (Throwable t1) {
             try {
-                this.connection().rollback();
+                connection.rollback();
             } catch (Throwable t2) {
                 // ignore
             }
@@ -89,6 +111,13 @@ public class MySQLJDBCEventStore implements EventStore, ApplicationContextAware
                             + t1.getMessage(),
                     t1);
         } finally {
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    // ignore
+                }
+            }
             try {
                 connection.close();
             } catch (SQLException e) {
@@ -102,8 +131,62 @@ public class MySQLJDBCEventStore implements EventStore, ApplicationContextAware
         // no-op
     }
 
+    @Override
+    public EventCursor eventCursorSince(long aLastReceivedEvent) {
+
+        // a forward-only read with a fetch size streams rows
+        // from a server cursor (useCursorFetch=true) instead
+        // of buffering the whole result in the driver
+
+        Connection connection = this.connection();
+
+        PreparedStatement statement = null;
+
+        try {
+            statement =
+                    connection
+                        .prepareStatement(
+                                "SELECT event_id, event_body, event_type FROM tbl_es_event_store "
+                                + "WHERE event_id > ? "
+                                + "ORDER BY event_id",
+                                ResultSet.TYPE_FORWARD_ONLY,
+                                ResultSet.CONCUR_READ_ONLY);
+
+            statement.setFetchSize(this.fetchSize());
+            statement.setLong(1, aLastReceivedEvent);
+
+            return new ResultSetEventCursor(connection, statement, statement.executeQuery());
+
+        } catch (Throwable t) {
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    // ignore
+                }
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // ignore
+            }
+
+            throw new EventStoreException(
+                    "Cannot open event cursor since: "
+                        + aLastReceivedEvent
+                        + " because: "
+                        + t.getMessage(),
+                    t);
+        }
+    }
+
     @Override
     public List<DispatchableDomainEvent> eventsSince(long aLastReceivedEvent) {
+        return this.eventsSince(aLastReceivedEvent, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<DispatchableDomainEvent> eventsSince(long aLastReceivedEvent, int aMaxBatchSize) {
 
         Connection connection = this.connection();
 
@@ -115,9 +198,12 @@ public class MySQLJDBCEventStore implements EventStore, ApplicationContextAware
                         .prepareStatement(
                                 "SELECT event_id, event_body, event_type FROM tbl_es_event_store "
                                 + "WHERE event_id > ? "
-                                + "ORDER BY event_id");
+                                + "ORDER BY event_id "
+                                + "LIMIT ?");
 
+            statement.setFetchSize(this.fetchSize());
             statement.setLong(1, aLastReceivedEvent);
+            statement.setInt(2, aMaxBatchSize);
 
             result = statement.executeQuery();
 
@@ -165,6 +251,7 @@ public class MySQLJDBCEventStore implements EventStore, ApplicationContextAware
                                 + "WHERE stream_name = ? AND stream_version >= ? "
                                 + "ORDER BY stream_version");
 
+            statement.setFetchSize(this.fetchSize());
             statement.setString(1, anIdentity.streamName());
             statement.setInt(2, anIdentity.streamVersion());
 
@@ -224,6 +311,7 @@ public class MySQLJDBCEventStore implements EventStore, ApplicationContextAware
                                 + "WHERE stream_name = ? "
                                 + "ORDER BY stream_version");
 
+            statement.setFetchSize(this.fetchSize());
             statement.setString(1, anIdentity.streamName());
 
             result = statement.executeQuery();
@@ -284,43 +372,27 @@ public class MySQLJDBCEventStore implements EventStore, ApplicationContextAware
     }
 
     private void appendEventStore(
-            Connection aConnection,
+            PreparedStatement aStatement,
             EventStreamId anIdentity,
             int anIndex,
             DomainEvent aDomainEvent)
     throws Exception {
 
-        PreparedStatement statement =
-                aConnection
-                    .prepareStatement(
-                            "INSERT INTO tbl_es_event_store VALUES(?, ?, ?, ?, ?)");
-
-        statement.setLong(1, 0);
-        statement.setString(2, this.serializer().serialize(aDomainEvent));
-        statement.setString(3, aDomainEvent.getClass().getName());
-        statement.setString(4, anIdentity.streamName());
-        statement.setInt(5, anIdentity.streamVersion() + anIndex);
+        aStatement.setLong(1, 0);
+        aStatement.setString(2, this.serializer().serialize(aDomainEvent));
+        aStatement.setString(3, aDomainEvent.getClass().getName());
+        aStatement.setString(4, anIdentity.streamName());
+        aStatement.setInt(5, anIdentity.streamVersion() + anIndex);
 
-        statement.executeUpdate();
+        aStatement.addBatch();
     }
 
-    @SuppressWarnings("unchecked")
     private List<DispatchableDomainEvent> buildEventSequence(ResultSet aResultSet) throws Exception {
 
         List<DispatchableDomainEvent> events = new ArrayList<DispatchableDomainEvent>();
 
         while (aResultSet.next()) {
-            long eventId = aResultSet.getLong("event_id");
-
-            String eventClassName = aResultSet.getString("event_type");
-
-            String eventBody = aResultSet.getString("event_body");
-
-            Class<DomainEvent> eventClass = (Class<DomainEvent>) Class.forName(eventClassName);
-
-            DomainEvent domainEvent = this.serializer().deserialize(eventBody, eventClass);
-
-            events.add(new DispatchableDomainEvent(eventId, domainEvent));
+            events.add(this.serializedEventFrom(aResultSet));
         }
 
         return events;
@@ -374,6 +446,14 @@ public class MySQLJDBCEventStore implements EventStore, ApplicationContextAware
         return this.eventNotifiable;
     }
 
+    private int fetchSize() {
+        return this.fetchSize;
+    }
+
+    private void setFetchSize(int aFetchSize) {
+        this.fetchSize = aFetchSize;
+    }
+
     private void notifyDispatchableEvents() {
         EventNotifiable eventNotifiable = this.eventNotifiable();
 
@@ -382,6 +462,13 @@ public class MySQLJDBCEventStore implements EventStore, ApplicationContextAware
         }
     }
 
+    private DispatchableDomainEvent serializedEventFrom(ResultSet aResultSet) throws SQLException {
+        return new SerializedDispatchableDomainEvent(
+                aResultSet.getLong("event_id"),
+                aResultSet.getString("event_type"),
+                aResultSet.getString("event_body"));
+    }
+
     private EventSerializer serializer() {
         return this.serializer;
     }
@@ -397,4 +484,136 @@ public class MySQLJDBCEventStore implements EventStore, ApplicationContextAware
         instance = (MySQLJDBCEventStore)
                 anApplicationContext.getBean("mysqlJdbcEventStore");
     }
+
+    private class ResultSetEventCursor implements EventCursor {
+
+        private Connection connection;
+        private boolean hasNext;
+        private boolean nextRead;
+        private ResultSet result;
+        private PreparedStatement statement;
+
+        ResultSetEventCursor(
+                Connection aConnection,
+                PreparedStatement aStatement,
+                ResultSet aResult) {
+
+            super();
+
+            this.connection = aConnection;
+            this.result = aResult;
+            this.statement = aStatement;
+        }
+
+        @Override
+        public void close() {
+            if (this.result == null) {
+                return;
+            }
+
+            try {
+                this.result.close();
+                this.statement.close();
+                this.connection.commit();
+            } catch (SQLException e) {
+                // ignore
+            } finally {
+                this.result = null;
+
+                try {
+                    this.connection.close();
+                } catch (SQLException e) {
+                    // ignore
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.result == null) {
+                return false;
+            }
+
+            if (!this.nextRead) {
+                try {
+                    this.hasNext = this.result.next();
+                } catch (SQLException e) {
+                    this.close();
+
+                    throw new EventStoreException(
+                            "Cannot read next event because: " + e.getMessage(), e);
+                }
+
+                this.nextRead = true;
+
+                if (!this.hasNext) {
+                    this.close();
+                }
+            }
+
+            return this.hasNext;
+        }
+
+        @Override
+        public DispatchableDomainEvent next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException("There are no more events.");
+            }
+
+            this.nextRead = false;
+
+            try {
+                return serializedEventFrom(this.result);
+            } catch (SQLException e) {
+                this.close();
+
+                throw new EventStoreException(
+                        "Cannot read next event because: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private class SerializedDispatchableDomainEvent extends DispatchableDomainEvent {
+
+        private DomainEvent domainEvent;
+        private String eventBody;
+        private String eventType;
+
+        SerializedDispatchableDomainEvent(long anEventId, String anEventType, String anEventBody) {
+            super(anEventId, null);
+
+            this.eventBody = anEventBody;
+            this.eventType = anEventType;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized DomainEvent domainEvent() {
+
+            // the body is deserialized only when first used,
+            // possibly by more than one projection worker
+
+            if (this.domainEvent == null) {
+                try {
+                    Class<DomainEvent> eventClass = (Class<DomainEvent>) Class.forName(this.eventType);
+
+                    this.domainEvent = serializer().deserialize(this.eventBody, eventClass);
+
+                    this.eventBody = null;
+
+                } catch (Exception e) {
+                    throw new EventStoreException(
+                            "Cannot deserialize event: "
+                                + this.eventId()
+                                + " of type: "
+                                + this.eventType
+                                + " because: "
+                                + e.getMessage(),
+                            e);
+                }
+            }
+
+            return this.domainEvent;
+        }
+    }
 }
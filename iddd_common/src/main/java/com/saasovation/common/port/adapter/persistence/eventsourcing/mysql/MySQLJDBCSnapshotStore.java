@@ -0,0 +1,208 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.saasovation.common.port.adapter.persistence.eventsourcing.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+
+import com.saasovation.common.event.sourcing.AggregateSnapshot;
+import com.saasovation.common.event.sourcing.EventStoreException;
+import com.saasovation.common.event.sourcing.SnapshotStore;
+
+public class MySQLJDBCSnapshotStore implements SnapshotStore, ApplicationContextAware {
+
+    private static MySQLJDBCSnapshotStore instance;
+
+    private DataSource collaborationDataSource;
+
+    public synchronized static MySQLJDBCSnapshotStore instance() {
+        return instance;
+    }
+
+    public MySQLJDBCSnapshotStore(DataSource aDataSource) {
+        super();
+
+        this.setCollaborationDataSource(aDataSource);
+    }
+
+    @Override
+    public void close() {
+        // no-op
+    }
+
+    @Override
+    public void purge() {
+        Connection connection = this.connection();
+
+        try {
+            connection.createStatement().execute("delete from tbl_es_snapshot_store");
+
+            connection.commit();
+
+        } catch (Throwable t) {
+            throw new EventStoreException(
+                    "Problem purging snapshot store because: "
+                        + t.getMessage(),
+                    t);
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // ignore
+            }
+        }
+    }
+
+    @Override
+    public void save(AggregateSnapshot aSnapshot) {
+
+        // a slower writer must not replace a newer snapshot, so
+        // each column only changes when the version is newer;
+        // stream_version is assigned last, after it is compared
+
+        Connection connection = this.connection();
+
+        try {
+            PreparedStatement statement =
+                    connection
+                        .prepareStatement(
+                                "INSERT INTO tbl_es_snapshot_store VALUES(?, ?, ?, ?) "
+                                + "ON DUPLICATE KEY UPDATE "
+                                + "snapshot_type = IF(VALUES(stream_version) > stream_version, VALUES(snapshot_type), snapshot_type), "
+                                + "snapshot_body = IF(VALUES(stream_version) > stream_version, VALUES(snapshot_body), snapshot_body), "
+                                + "stream_version = GREATEST(VALUES(stream_version), stream_version)");
+
+            statement.setString(1, aSnapshot.streamName());
+            statement.setInt(2, aSnapshot.streamVersion());
+            statement.setString(3, aSnapshot.snapshotType());
+            statement.setString(4, aSnapshot.snapshotData());
+
+            statement.executeUpdate();
+
+            connection.commit();
+
+        } catch (Throwable t1) {
+            try {
+                connection.rollback();
+            } catch (Throwable t2) {
+                // ignore
+            }
+
+            throw new EventStoreException(
+                    "Cannot save snapshot of: "
+                        + aSnapshot.streamName()
+                        + " because: "
+                        + t1.getMessage(),
+                    t1);
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // ignore
+            }
+        }
+    }
+
+    @Override
+    public AggregateSnapshot snapshotOf(String aStreamName) {
+
+        Connection connection = this.connection();
+
+        ResultSet result = null;
+
+        try {
+            PreparedStatement statement =
+                    connection
+                        .prepareStatement(
+                                "SELECT stream_version, snapshot_type, snapshot_body FROM tbl_es_snapshot_store "
+                                + "WHERE stream_name = ?");
+
+            statement.setString(1, aStreamName);
+
+            result = statement.executeQuery();
+
+            AggregateSnapshot snapshot = null;
+
+            if (result.next()) {
+                snapshot =
+                        new AggregateSnapshot(
+                                aStreamName,
+                                result.getInt("stream_version"),
+                                result.getString("snapshot_type"),
+                                result.getString("snapshot_body"));
+            }
+
+            connection.commit();
+
+            return snapshot;
+
+        } catch (Throwable t) {
+            throw new EventStoreException(
+                    "Cannot query snapshot of: "
+                        + aStreamName
+                        + " because: "
+                        + t.getMessage(),
+                    t);
+        } finally {
+            if (result != null) {
+                try {
+                    result.close();
+                } catch (SQLException e) {
+                    // ignore
+                }
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // ignore
+            }
+        }
+    }
+
+    private DataSource collaborationDataSource() {
+        return this.collaborationDataSource;
+    }
+
+    private void setCollaborationDataSource(DataSource aDataSource) {
+        this.collaborationDataSource = aDataSource;
+    }
+
+    private Connection connection() {
+        Connection connection = null;
+
+        try {
+            connection = this.collaborationDataSource().getConnection();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot acquire database connection.");
+        }
+
+        return connection;
+    }
+
+    @Override
+    public synchronized void setApplicationContext(
+            ApplicationContext anApplicationContext)
+    throws BeansException {
+        instance = (MySQLJDBCSnapshotStore)
+                anApplicationContext.getBean("mysqlJdbcSnapshotStore");
+    }
+}
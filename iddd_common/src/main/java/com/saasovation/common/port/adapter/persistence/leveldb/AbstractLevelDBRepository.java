@@ -21,11 +21,30 @@ public abstract class AbstractLevelDBRepository {
 
     private DB database;
     private String databasePath;
+    private LevelDBSerializer serializer;
 
     protected AbstractLevelDBRepository(String aDirectoryPath) {
         super();
 
         this.openDatabase(aDirectoryPath);
+
+        this.setSerializer(LevelDBJSONSerializer.instance());
+    }
+
+    protected AbstractLevelDBRepository(String aDirectoryPath, int aNumberOfCachedObjects) {
+        this(aDirectoryPath);
+
+        LevelDBObjectCache.enable(this.database(), aNumberOfCachedObjects);
+    }
+
+    protected AbstractLevelDBRepository(
+            String aDirectoryPath,
+            int aNumberOfCachedObjects,
+            LevelDBSerializer aSerializer) {
+
+        this(aDirectoryPath, aNumberOfCachedObjects);
+
+        this.setSerializer(aSerializer);
     }
 
     protected DB database() {
@@ -36,6 +55,10 @@ public abstract class AbstractLevelDBRepository {
         return this.databasePath;
     }
 
+    protected LevelDBSerializer serializer() {
+        return this.serializer;
+    }
+
     private void setDatabase(DB aDatabase) {
         this.database = aDatabase;
     }
@@ -44,6 +67,10 @@ public abstract class AbstractLevelDBRepository {
         this.databasePath = aDatabasePath;
     }
 
+    private void setSerializer(LevelDBSerializer aSerializer) {
+        this.serializer = aSerializer;
+    }
+
     private void openDatabase(String aDirectoryPath) {
         LevelDBProvider levelDBProvider = LevelDBProvider.instance();
 
@@ -0,0 +1,52 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.port.adapter.persistence.leveldb;
+
+import com.saasovation.common.serializer.BinaryObjectSerializer;
+
+public class LevelDBBinarySerializer implements LevelDBSerializer {
+
+    private static LevelDBBinarySerializer instance;
+
+    public static synchronized LevelDBBinarySerializer instance() {
+        if (LevelDBBinarySerializer.instance == null) {
+            LevelDBBinarySerializer.instance = new LevelDBBinarySerializer();
+        }
+
+        return LevelDBBinarySerializer.instance;
+    }
+
+    @Override
+    public <T extends Object> T deserialize(byte[] aSerialization, Class<T> aType) {
+
+        // objects saved before the repository used
+        // the binary format are still read as JSON
+
+        if (!BinaryObjectSerializer.isBinarySerialization(aSerialization)) {
+            return LevelDBJSONSerializer.instance().deserialize(aSerialization, aType);
+        }
+
+        return BinaryObjectSerializer.instance().deserialize(aSerialization, aType);
+    }
+
+    @Override
+    public byte[] serialize(Object anObject) {
+        return BinaryObjectSerializer.instance().serialize(anObject);
+    }
+
+    private LevelDBBinarySerializer() {
+        super();
+    }
+}
@@ -0,0 +1,48 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.port.adapter.persistence.leveldb;
+
+import java.nio.charset.Charset;
+
+import com.saasovation.common.serializer.ObjectSerializer;
+
+public class LevelDBJSONSerializer implements LevelDBSerializer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static LevelDBJSONSerializer instance;
+
+    public static synchronized LevelDBJSONSerializer instance() {
+        if (LevelDBJSONSerializer.instance == null) {
+            LevelDBJSONSerializer.instance = new LevelDBJSONSerializer();
+        }
+
+        return LevelDBJSONSerializer.instance;
+    }
+
+    @Override
+    public <T extends Object> T deserialize(byte[] aSerialization, Class<T> aType) {
+        return ObjectSerializer.instance().deserialize(new String(aSerialization, UTF_8), aType);
+    }
+
+    @Override
+    public byte[] serialize(Object anObject) {
+        return ObjectSerializer.instance().serialize(anObject).getBytes(UTF_8);
+    }
+
+    private LevelDBJSONSerializer() {
+        super();
+    }
+}
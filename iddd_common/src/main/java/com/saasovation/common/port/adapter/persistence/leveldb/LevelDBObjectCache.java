@@ -0,0 +1,105 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.port.adapter.persistence.leveldb;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.iq80.leveldb.DB;
+
+public class LevelDBObjectCache {
+
+    private static Map<DB,LevelDBObjectCache> caches =
+            new HashMap<DB,LevelDBObjectCache>();
+
+    private int capacity;
+    private long generation;
+    private LinkedHashMap<String,byte[]> objects;
+
+    public static synchronized LevelDBObjectCache enable(DB aDatabase, int aCapacity) {
+        LevelDBObjectCache cache = caches.get(aDatabase);
+
+        if (cache == null) {
+            cache = new LevelDBObjectCache(aCapacity);
+
+            caches.put(aDatabase, cache);
+        } else {
+            cache.ensureCapacity(aCapacity);
+        }
+
+        return cache;
+    }
+
+    public static synchronized void disable(DB aDatabase) {
+        caches.remove(aDatabase);
+    }
+
+    public static synchronized LevelDBObjectCache of(DB aDatabase) {
+        return caches.get(aDatabase);
+    }
+
+    public synchronized void clear() {
+        ++this.generation;
+
+        this.objects.clear();
+    }
+
+    public synchronized long generation() {
+        return this.generation;
+    }
+
+    public synchronized byte[] get(String aKey) {
+        return this.objects.get(aKey);
+    }
+
+    public synchronized void invalidate(Collection<String> aKeys) {
+        ++this.generation;
+
+        for (String key : aKeys) {
+            this.objects.remove(key);
+        }
+    }
+
+    public synchronized void put(String aKey, byte[] anObjectBytes, long aGenerationRead) {
+
+        // a commit since the object was read may have
+        // changed it, so it is not cached as current
+
+        if (aGenerationRead == this.generation) {
+            this.objects.put(aKey, anObjectBytes);
+        }
+    }
+
+    private LevelDBObjectCache(int aCapacity) {
+        super();
+
+        this.capacity = aCapacity;
+
+        this.objects = new LinkedHashMap<String,byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,byte[]> anEldest) {
+                return this.size() > capacity;
+            }
+        };
+    }
+
+    private synchronized void ensureCapacity(int aCapacity) {
+        this.capacity = Math.max(this.capacity, aCapacity);
+    }
+}
@@ -51,6 +51,8 @@ public class LevelDBProvider {
             if (db != null) {
                 this.databases.remove(aDirectoryPath);
 
+                LevelDBObjectCache.disable(db);
+
                 try {
                     db.close();
                 } catch (IOException e) {
@@ -92,6 +94,12 @@ public class LevelDBProvider {
 
     public void purge(DB aDatabase) {
 
+        LevelDBObjectCache cache = LevelDBObjectCache.of(aDatabase);
+
+        if (cache != null) {
+            cache.clear();
+        }
+
         DBIterator iterator = aDatabase.iterator();
 
         try {
@@ -16,16 +16,24 @@ package com.saasovation.common.port.adapter.persistence.leveldb;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBIterator;
 import org.iq80.leveldb.WriteBatch;
 
 import com.google.gson.reflect.TypeToken;
@@ -33,17 +41,30 @@ import com.saasovation.common.serializer.ObjectSerializer;
 
 public class LevelDBUnitOfWork {
 
-    private static Map<String,ReentrantLock> keyLocks =
+    // each reference is its own key, the reference key and
+    // this separator followed by the referenced primary key
+    private static final char REFERENCE_SEPARATOR = '\u0000';
+
+    private static final long[] NO_COUNTERS = new long[0];
+
+    private static final byte[] NO_VALUE = new byte[0];
+
+    private static ConcurrentMap<String,ReentrantLock> keyLocks =
             new ConcurrentHashMap<String,ReentrantLock>();
 
     private static ThreadLocal<LevelDBUnitOfWork> unitsOfWork =
             new ThreadLocal<LevelDBUnitOfWork>();
 
     private WriteBatch batch;
+    private Map<String,long[]> counterIncrements;
     private DB database;
-    private List<ReentrantLock> locks;
-    private Map<String,Set<Object>> referenceKeys;
+    private Map<String,ReentrantLock> locks;
+    private Set<String> migratedReferenceKeys;
+    private Set<String> modifiedKeys;
+    private Map<String,byte[]> readVersions;
+    private Map<String,Map<Object,Boolean>> referenceKeyChanges;
     private ObjectSerializer serializer;
+    private Map<String,long[]> writtenCounters;
 
     public static LevelDBUnitOfWork current() {
         LevelDBUnitOfWork uow = unitsOfWork.get();
@@ -55,6 +76,15 @@ public class LevelDBUnitOfWork {
         return uow;
     }
 
+    public static boolean isStarted() {
+        LevelDBUnitOfWork uow = unitsOfWork.get();
+
+        // a read-only unit of work stays in place after its reads,
+        // so only one that writes has been started
+
+        return uow != null && uow.batch != null;
+    }
+
     public static LevelDBUnitOfWork readOnly(DB aDatabase) {
         LevelDBUnitOfWork uow = unitsOfWork.get();
 
@@ -82,43 +112,160 @@ public class LevelDBUnitOfWork {
     }
 
     public void commit() {
-        this.database.write(this.batch);
+
+        // only the check of the keys written and the write
+        // itself exclude other units of work, so those of
+        // independent aggregates commit in parallel
+
+        synchronized (this.database) {
+            this.failWhenConcurrencyViolation();
+
+            this.mergeCounterIncrements();
+
+            this.database.write(this.batch);
+        }
+
+        LevelDBObjectCache cache = LevelDBObjectCache.of(this.database);
+
+        if (cache != null && !this.modifiedKeys.isEmpty()) {
+            cache.invalidate(this.modifiedKeys);
+        }
 
         this.close();
     }
 
+    public void incrementCounters(LevelDBKey aKey, long[] anIncrements) {
+        long[] increments = this.counterIncrements.get(aKey.key());
+
+        this.counterIncrements.put(aKey.key(), this.sumOf(increments, anIncrements));
+    }
+
     public void lock(String aLockKey) {
-        ReentrantLock lock = this.findKeyLock(aLockKey);
+        ReentrantLock lock = this.locks.get(aLockKey);
+
+        if (lock != null) {
+            lock.lock();
 
-        this.locks.add(lock);
+            return;
+        }
+
+        while (true) {
+            lock = this.findKeyLock(aLockKey);
+
+            lock.lock();
+
+            // the lock may have expired while waiting for it,
+            // and then it no longer excludes other units of work
+
+            if (keyLocks.get(aLockKey) == lock) {
+                break;
+            }
 
-        lock.lock();
+            lock.unlock();
+        }
+
+        this.locks.put(aLockKey, lock);
+    }
+
+    public long[] readCounters(LevelDBKey aKey, int aNumberOfCounters) {
+        long[] counters = this.writtenCounters.get(aKey.key());
+
+        if (counters == null) {
+            byte[] storedCounters = this.database.get(aKey.keyAsBytes());
+
+            this.readVersion(aKey.key(), storedCounters);
+
+            counters = this.countersOf(storedCounters);
+        }
+
+        counters = this.sumOf(counters, this.counterIncrements.get(aKey.key()));
+
+        return Arrays.copyOf(counters, aNumberOfCounters);
     }
 
     public byte[] readObjectAsBytes(LevelDBKey aKey) {
-        return this.database.get(aKey.keyAsBytes());
+        byte[] objectBytes = this.database.get(aKey.keyAsBytes());
+
+        this.readVersion(aKey.key(), objectBytes);
+
+        return objectBytes;
     }
 
     public <T> T readObject(LevelDBKey aKey, Class<T> aType) {
         return this.readObject(aKey.keyAsBytes(), aType);
     }
 
+    public <T> T readObject(LevelDBKey aKey, Class<T> aType, LevelDBSerializer aSerializer) {
+        return this.readObject(aKey.keyAsBytes(), aType, aSerializer);
+    }
+
     public <T> T readObject(byte[] aKey, Class<T> aType) {
+        return this.readObject(aKey, aType, LevelDBJSONSerializer.instance());
+    }
+
+    public <T> T readObject(byte[] aKey, Class<T> aType, LevelDBSerializer aSerializer) {
         byte[] objectBytes = this.database.get(aKey);
 
+        this.readVersion(new String(aKey), objectBytes);
+
         T object = null;
 
         if (objectBytes != null) {
-            object = this.serializer.deserialize(new String(objectBytes), aType);
+            object = aSerializer.deserialize(objectBytes, aType);
         }
 
         return object;
     }
 
+    public <T> List<T> readObjects(List<Object> aKeys, Class<T> aType) {
+        return this.readObjects(aKeys, aType, LevelDBJSONSerializer.instance());
+    }
+
+    public <T> List<T> readObjects(List<Object> aKeys, Class<T> aType, LevelDBSerializer aSerializer) {
+        List<T> objects = new ArrayList<T>(aKeys.size());
+
+        // only a read-only unit of work reads through the cache,
+        // which holds serialized objects so that each read is
+        // given its own instances
+
+        LevelDBObjectCache cache =
+                this.batch == null ? LevelDBObjectCache.of(this.database) : null;
+
+        long generation = cache == null ? 0 : cache.generation();
+
+        Map<String,T> found = new HashMap<String,T>(aKeys.size());
+
+        List<byte[]> keysToRead = new ArrayList<byte[]>(aKeys.size());
+
+        for (Object key : aKeys) {
+            byte[] objectBytes = cache == null ? null : cache.get(key.toString());
+
+            if (objectBytes != null) {
+                found.put(key.toString(), aSerializer.deserialize(objectBytes, aType));
+            } else {
+                keysToRead.add(key.toString().getBytes());
+            }
+        }
+
+        if (!keysToRead.isEmpty()) {
+            this.readObjects(keysToRead, aType, aSerializer, found, cache, generation);
+        }
+
+        for (Object key : aKeys) {
+            T object = found.get(key.toString());
+
+            if (object != null) {
+                objects.add(object);
+            }
+        }
+
+        return objects;
+    }
+
     public Object readKey(LevelDBKey aKey) {
         Object singleKey = null;
 
-        Set<Object> keys = this.loadReferenceKeyValues(aKey);
+        Set<Object> keys = this.readReferenceKeyValues(aKey, 1);
 
         if (!keys.isEmpty()) {
             singleKey = keys.iterator().next();
@@ -128,25 +275,25 @@ public class LevelDBUnitOfWork {
     }
 
     public List<Object> readKeys(LevelDBKey aKey) {
-        return new ArrayList<Object>(this.loadReferenceKeyValues(aKey));
+        return new ArrayList<Object>(this.readReferenceKeyValues(aKey, Integer.MAX_VALUE));
     }
 
     public void remove(LevelDBKey aPrimaryKey) {
         this.batch.delete(aPrimaryKey.keyAsBytes());
+
+        this.modifiedKeys.add(aPrimaryKey.key());
+
+        // removed counters read as none until committed
+
+        this.writtenCounters.put(aPrimaryKey.key(), NO_COUNTERS);
     }
 
     public void removeKeyReference(LevelDBKey aKey) {
-        Set<Object> allValues = this.loadReferenceKeyValues(aKey);
+        this.migrateReferenceKeyValues(aKey);
 
-        if (allValues.remove(aKey.primaryKeyValue())) {
-            if (allValues.isEmpty()) {
-                this.batch.delete(aKey.keyAsBytes());
-            } else {
-                String serializedValue = this.serializer.serialize(allValues);
+        this.batch.delete(this.referenceKeyOf(aKey, aKey.primaryKeyValue()));
 
-                this.batch.put(aKey.keyAsBytes(), serializedValue.getBytes());
-            }
-        }
+        this.referenceKeyChangesOf(aKey).put(aKey.primaryKeyValue(), Boolean.FALSE);
     }
 
     public void rollback() {
@@ -154,25 +301,43 @@ public class LevelDBUnitOfWork {
     }
 
     public void updateKeyReference(LevelDBKey aKey) {
-        Set<Object> allValues = this.loadReferenceKeyValues(aKey);
+        this.migrateReferenceKeyValues(aKey);
 
-        allValues.add(aKey.primaryKeyValue());
+        this.batch.put(this.referenceKeyOf(aKey, aKey.primaryKeyValue()), NO_VALUE);
 
-        String serializedValue = this.serializer.serialize(allValues);
+        this.referenceKeyChangesOf(aKey).put(aKey.primaryKeyValue(), Boolean.TRUE);
+    }
+
+    public void writeCounters(LevelDBKey aKey, long[] aCounters) {
+        this.batch.put(aKey.keyAsBytes(), this.bytesOf(aCounters));
+
+        this.modifiedKeys.add(aKey.key());
 
-        this.batch.put(aKey.keyAsBytes(), serializedValue.getBytes());
+        // the counters written replace any earlier increments
+
+        this.counterIncrements.remove(aKey.key());
+
+        this.writtenCounters.put(aKey.key(), aCounters.clone());
     }
 
     public void write(LevelDBKey aKey, Object aValue) {
-        String serializedValue = this.serializer.serialize(aValue);
+        this.write(aKey, aValue, LevelDBJSONSerializer.instance());
+    }
 
-        this.batch.put(aKey.keyAsBytes(), serializedValue.getBytes());
+    public void write(LevelDBKey aKey, Object aValue, LevelDBSerializer aSerializer) {
+        this.batch.put(aKey.keyAsBytes(), aSerializer.serialize(aValue));
+
+        this.modifiedKeys.add(aKey.key());
     }
 
     public void write(byte[] aKey, Object aValue) {
-        String serializedValue = this.serializer.serialize(aValue);
+        this.write(aKey, aValue, LevelDBJSONSerializer.instance());
+    }
 
-        this.batch.put(aKey, serializedValue.getBytes());
+    public void write(byte[] aKey, Object aValue, LevelDBSerializer aSerializer) {
+        this.batch.put(aKey, aSerializer.serialize(aValue));
+
+        this.modifiedKeys.add(new String(aKey));
     }
 
     private LevelDBUnitOfWork(DB aDatabase) {
@@ -186,10 +351,15 @@ public class LevelDBUnitOfWork {
             this.createWriteBatch(aDatabase);
         }
 
+        this.counterIncrements = new LinkedHashMap<String,long[]>();
         this.database = aDatabase;
-        this.locks = new ArrayList<ReentrantLock>(1);
-        this.referenceKeys = new HashMap<String,Set<Object>>();
+        this.locks = new LinkedHashMap<String,ReentrantLock>(2);
+        this.migratedReferenceKeys = new HashSet<String>();
+        this.modifiedKeys = new HashSet<String>();
+        this.readVersions = new HashMap<String,byte[]>();
+        this.referenceKeyChanges = new HashMap<String,Map<Object,Boolean>>();
         this.serializer = ObjectSerializer.instance();
+        this.writtenCounters = new HashMap<String,long[]>();
     }
 
     private void createWriteBatch(DB aDatabase) {
@@ -211,7 +381,16 @@ public class LevelDBUnitOfWork {
         }
 
         if (!this.locks.isEmpty()) {
-            for (ReentrantLock lock : this.locks) {
+            for (Map.Entry<String,ReentrantLock> entry : this.locks.entrySet()) {
+                ReentrantLock lock = entry.getValue();
+
+                // a lock that no other unit of work waits for
+                // expires, so that unused locks are not kept
+
+                if (!lock.hasQueuedThreads()) {
+                    keyLocks.remove(entry.getKey(), lock);
+                }
+
                 while (lock.getHoldCount() > 0) {
                     lock.unlock();
                 }
@@ -221,35 +400,289 @@ public class LevelDBUnitOfWork {
         }
     }
 
+    private byte[] bytesOf(long[] aCounters) {
+        ByteBuffer buffer = ByteBuffer.allocate(aCounters.length * 8);
+
+        for (long counter : aCounters) {
+            buffer.putLong(counter);
+        }
+
+        return buffer.array();
+    }
+
+    private long[] countersOf(byte[] aStoredCounters) {
+        if (aStoredCounters == null) {
+            return NO_COUNTERS;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(aStoredCounters);
+
+        long[] counters = new long[aStoredCounters.length / 8];
+
+        for (int idx = 0; idx < counters.length; ++idx) {
+            counters[idx] = buffer.getLong();
+        }
+
+        return counters;
+    }
+
+    private void failWhenConcurrencyViolation() {
+
+        // the value read is the version of an object, and a
+        // value changed since it was read by this unit of work
+        // means that another unit of work has modified it
+
+        for (String key : this.modifiedKeys) {
+            if (this.readVersions.containsKey(key)) {
+                byte[] version = this.database.get(key.getBytes());
+
+                if (!Arrays.equals(version, this.readVersions.get(key))) {
+                    throw new IllegalStateException(
+                            "Concurrency Violation: Stale data detected. Entity was already modified.");
+                }
+            }
+        }
+    }
+
     private ReentrantLock findKeyLock(String aLockKey) {
         ReentrantLock lock = keyLocks.get(aLockKey);
 
         if (lock == null) {
-            lock = new ReentrantLock();
+            ReentrantLock newLock = new ReentrantLock();
+
+            lock = keyLocks.putIfAbsent(aLockKey, newLock);
 
-            keyLocks.put(aLockKey, lock);
+            if (lock == null) {
+                lock = newLock;
+            }
         }
 
         return lock;
     }
 
-    private Set<Object> loadReferenceKeyValues(LevelDBKey aKey) {
-        Set<Object> allValues = this.referenceKeys.get(aKey.key());
+    private Set<Object> legacyReferenceKeyValues(LevelDBKey aKey) {
 
-        if (allValues == null) {
-            byte[] currentValues = this.database.get(aKey.keyAsBytes());
+        // references were once kept as a single serialized set
+        // under the reference key itself; such a set is read
+        // until the first change to it converts it
 
-            if (currentValues == null) {
-                allValues = new HashSet<Object>();
-            } else {
-                Type listType = new TypeToken<HashSet<Object>>() { }.getType();
+        Set<Object> legacyValues = null;
+
+        if (!this.migratedReferenceKeys.contains(aKey.key())) {
+            byte[] serializedValues = this.database.get(aKey.keyAsBytes());
+
+            this.readVersion(aKey.key(), serializedValues);
+
+            if (serializedValues != null) {
+                Type setType = new TypeToken<HashSet<Object>>() { }.getType();
+
+                legacyValues = this.serializer.deserialize(new String(serializedValues), setType);
+            }
+        }
+
+        return legacyValues == null ? new HashSet<Object>() : legacyValues;
+    }
+
+    private void migrateReferenceKeyValues(LevelDBKey aKey) {
+        if (this.migratedReferenceKeys.contains(aKey.key())) {
+            return;
+        }
+
+        Set<Object> legacyValues = this.legacyReferenceKeyValues(aKey);
+
+        if (!legacyValues.isEmpty()) {
+            Map<Object,Boolean> changes = this.referenceKeyChangesOf(aKey);
+
+            for (Object value : legacyValues) {
+                this.batch.put(this.referenceKeyOf(aKey, value.toString()), NO_VALUE);
+
+                if (!changes.containsKey(value)) {
+                    changes.put(value, Boolean.TRUE);
+                }
+            }
+
+            this.batch.delete(aKey.keyAsBytes());
+
+            this.modifiedKeys.add(aKey.key());
+        }
+
+        this.migratedReferenceKeys.add(aKey.key());
+    }
+
+    private void mergeCounterIncrements() {
+
+        // increments are added to the counters as they are
+        // stored at commit, so that units of work incrementing
+        // the same counters do not conflict
+
+        for (Map.Entry<String,long[]> entry : this.counterIncrements.entrySet()) {
+            byte[] key = entry.getKey().getBytes();
+
+            long[] counters = this.writtenCounters.get(entry.getKey());
+
+            if (counters == null) {
+                counters = this.countersOf(this.database.get(key));
+            }
+
+            this.batch.put(key, this.bytesOf(this.sumOf(counters, entry.getValue())));
+
+            this.modifiedKeys.add(entry.getKey());
+        }
+    }
+
+    private void readVersion(String aKey, byte[] aValue) {
+
+        // only a unit of work that may write remembers
+        // the versions that it has read, the first of each
+
+        if (this.batch != null && !this.readVersions.containsKey(aKey)) {
+            this.readVersions.put(aKey, aValue);
+        }
+    }
+
+    private long[] sumOf(long[] aCounters, long[] anIncrements) {
+        if (aCounters == null) {
+            return anIncrements.clone();
+        } else if (anIncrements == null) {
+            return aCounters;
+        }
+
+        long[] sum = Arrays.copyOf(aCounters, Math.max(aCounters.length, anIncrements.length));
+
+        for (int idx = 0; idx < anIncrements.length; ++idx) {
+            sum[idx] += anIncrements[idx];
+        }
+
+        return sum;
+    }
+
+    private <T> void readObjects(
+            List<byte[]> aKeys,
+            Class<T> aType,
+            LevelDBSerializer aSerializer,
+            Map<String,T> aFoundObjects,
+            LevelDBObjectCache aCache,
+            long aGeneration) {
 
-                allValues = this.serializer.deserialize(new String(currentValues), listType);
+        // seeking forward through sorted keys with one iterator
+        // visits each block once, rather than once per get()
+
+        Collections.sort(aKeys, new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] aKey1, byte[] aKey2) {
+                int length = Math.min(aKey1.length, aKey2.length);
+
+                for (int idx = 0; idx < length; ++idx) {
+                    int difference = (aKey1[idx] & 0xff) - (aKey2[idx] & 0xff);
+
+                    if (difference != 0) {
+                        return difference;
+                    }
+                }
+
+                return aKey1.length - aKey2.length;
+            }
+        });
+
+        DBIterator iterator = this.database.iterator();
+
+        try {
+            for (byte[] key : aKeys) {
+                iterator.seek(key);
+
+                if (iterator.hasNext()) {
+                    Map.Entry<byte[],byte[]> entry = iterator.peekNext();
+
+                    if (Arrays.equals(key, entry.getKey())) {
+                        String stringKey = new String(key);
+
+                        this.readVersion(stringKey, entry.getValue());
+
+                        T object = aSerializer.deserialize(entry.getValue(), aType);
+
+                        aFoundObjects.put(stringKey, object);
+
+                        if (aCache != null) {
+                            aCache.put(stringKey, entry.getValue(), aGeneration);
+                        }
+                    }
+                }
+            }
+        } finally {
+            try {
+                iterator.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private Set<Object> readReferenceKeyValues(LevelDBKey aKey, int aMaximum) {
+        Set<Object> values = new LinkedHashSet<Object>();
+
+        Map<Object,Boolean> changes = this.referenceKeyChanges.get(aKey.key());
+
+        if (changes != null) {
+            for (Map.Entry<Object,Boolean> change : changes.entrySet()) {
+                if (change.getValue().booleanValue() && values.size() < aMaximum) {
+                    values.add(change.getKey());
+                }
             }
+        }
 
-            this.referenceKeys.put(aKey.key(), allValues);
+        for (Object value : this.legacyReferenceKeyValues(aKey)) {
+            if (values.size() < aMaximum && (changes == null || !changes.containsKey(value))) {
+                values.add(value);
+            }
         }
 
-        return allValues;
+        String prefix = aKey.key() + REFERENCE_SEPARATOR;
+
+        byte[] prefixBytes = prefix.getBytes();
+
+        DBIterator iterator = this.database.iterator();
+
+        try {
+            iterator.seek(prefixBytes);
+
+            while (values.size() < aMaximum && iterator.hasNext()) {
+                byte[] referenceKey = iterator.next().getKey();
+
+                if (referenceKey.length < prefixBytes.length ||
+                    !Arrays.equals(prefixBytes, Arrays.copyOf(referenceKey, prefixBytes.length))) {
+                    break;
+                }
+
+                String value = new String(referenceKey).substring(prefix.length());
+
+                if (changes == null || !changes.containsKey(value)) {
+                    values.add(value);
+                }
+            }
+        } finally {
+            try {
+                iterator.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+
+        return values;
+    }
+
+    private Map<Object,Boolean> referenceKeyChangesOf(LevelDBKey aKey) {
+        Map<Object,Boolean> changes = this.referenceKeyChanges.get(aKey.key());
+
+        if (changes == null) {
+            changes = new HashMap<Object,Boolean>();
+
+            this.referenceKeyChanges.put(aKey.key(), changes);
+        }
+
+        return changes;
+    }
+
+    private byte[] referenceKeyOf(LevelDBKey aKey, String aPrimaryKeyValue) {
+        return (aKey.key() + REFERENCE_SEPARATOR + aPrimaryKeyValue).getBytes();
     }
 }
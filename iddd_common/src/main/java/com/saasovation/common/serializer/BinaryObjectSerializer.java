@@ -0,0 +1,876 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.serializer;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class BinaryObjectSerializer {
+
+    // the first byte of every serialization, which is
+    // never the first byte of a JSON object serialization
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INTEGER = 3;
+    private static final int LONG = 4;
+    private static final int FLOAT = 5;
+    private static final int DOUBLE = 6;
+    private static final int STRING = 7;
+    private static final int DATE = 8;
+    private static final int ENUM = 9;
+    private static final int BIG_DECIMAL = 10;
+    private static final int BIG_INTEGER = 11;
+    private static final int OBJECT = 12;
+    private static final int ARRAY = 13;
+    private static final int MAP = 14;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static BinaryObjectSerializer instance;
+
+    private Map<Class<?>,ClassDescriptor> classDescriptors;
+
+    public static synchronized BinaryObjectSerializer instance() {
+        if (BinaryObjectSerializer.instance == null) {
+            BinaryObjectSerializer.instance = new BinaryObjectSerializer();
+        }
+
+        return BinaryObjectSerializer.instance;
+    }
+
+    public static boolean isBinarySerialization(byte[] aSerialization) {
+        return aSerialization.length > 0 && aSerialization[0] == FORMAT_VERSION;
+    }
+
+    public <T extends Object> T deserialize(byte[] aSerialization, final Class<T> aType) {
+        if (!isBinarySerialization(aSerialization)) {
+            throw new IllegalArgumentException("The serialization is not in the binary format.");
+        }
+
+        Input input = new Input(aSerialization);
+
+        Object object = this.readValue(input, aType);
+
+        return aType.cast(object);
+    }
+
+    public byte[] serialize(Object anObject) {
+        Output output = new Output();
+
+        output.writeByte(FORMAT_VERSION);
+
+        this.writeValue(output, anObject, anObject == null ? Object.class : anObject.getClass());
+
+        return output.toByteArray();
+    }
+
+    private BinaryObjectSerializer() {
+        super();
+
+        this.classDescriptors = new ConcurrentHashMap<Class<?>,ClassDescriptor>();
+    }
+
+    private void assign(Field aField, Object anObject, Object aValue) throws IllegalAccessException {
+        Class<?> fieldType = aField.getType();
+
+        if (aValue == null) {
+            if (!fieldType.isPrimitive()) {
+                aField.set(anObject, null);
+            }
+        } else if (this.boxed(fieldType).isInstance(aValue)) {
+            aField.set(anObject, aValue);
+        } else {
+            throw new IllegalStateException(
+                    "Cannot assign a " + aValue.getClass().getName() + " to the field: " + aField);
+        }
+    }
+
+    private Class<?> boxed(Class<?> aType) {
+        if (!aType.isPrimitive()) {
+            return aType;
+        } else if (aType == int.class) {
+            return Integer.class;
+        } else if (aType == long.class) {
+            return Long.class;
+        } else if (aType == boolean.class) {
+            return Boolean.class;
+        } else if (aType == double.class) {
+            return Double.class;
+        } else if (aType == float.class) {
+            return Float.class;
+        } else if (aType == short.class) {
+            return Short.class;
+        } else if (aType == byte.class) {
+            return Byte.class;
+        } else if (aType == char.class) {
+            return Character.class;
+        }
+
+        return Void.class;
+    }
+
+    private ClassDescriptor classDescriptorOf(Class<?> aType) {
+        ClassDescriptor descriptor = this.classDescriptors.get(aType);
+
+        if (descriptor == null) {
+            descriptor = new ClassDescriptor(aType);
+
+            this.classDescriptors.put(aType, descriptor);
+        }
+
+        return descriptor;
+    }
+
+    private Object convertNumber(Number aNumber, Class<?> aType) {
+        Class<?> type = this.boxed(aType);
+
+        if (type == Integer.class) {
+            return aNumber.intValue();
+        } else if (type == Long.class) {
+            return aNumber.longValue();
+        } else if (type == Double.class) {
+            return aNumber.doubleValue();
+        } else if (type == Float.class) {
+            return aNumber.floatValue();
+        } else if (type == Short.class) {
+            return aNumber.shortValue();
+        } else if (type == Byte.class) {
+            return aNumber.byteValue();
+        } else if (type == Character.class) {
+            return (char) aNumber.intValue();
+        } else if (type == BigDecimal.class) {
+            return new BigDecimal(aNumber.toString());
+        } else if (type == String.class) {
+            return aNumber.toString();
+        }
+
+        return aNumber;
+    }
+
+    private Object newInstance(Class<?> aType) {
+        Constructor<?> constructor = this.classDescriptorOf(aType).constructor();
+
+        if (constructor == null) {
+            throw new IllegalStateException(
+                    "Cannot instantiate, there is no no-arg constructor: " + aType.getName());
+        }
+
+        try {
+            return constructor.newInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot instantiate: " + aType.getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<Object> newCollection(Class<?> aType) {
+        if (aType.isInterface() || Modifier.isAbstract(aType.getModifiers())) {
+            if (SortedSet.class.isAssignableFrom(aType)) {
+                return new TreeSet<Object>();
+            } else if (Set.class.isAssignableFrom(aType)) {
+                return new LinkedHashSet<Object>();
+            } else if (Queue.class.isAssignableFrom(aType)) {
+                return new LinkedList<Object>();
+            }
+
+            return new ArrayList<Object>();
+        }
+
+        return (Collection<Object>) this.newInstance(aType);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Object,Object> newMap(Class<?> aType) {
+        if (aType.isInterface() || Modifier.isAbstract(aType.getModifiers())) {
+            if (SortedMap.class.isAssignableFrom(aType)) {
+                return new TreeMap<Object,Object>();
+            }
+
+            return new LinkedHashMap<Object,Object>();
+        }
+
+        return (Map<Object,Object>) this.newInstance(aType);
+    }
+
+    private Class<?> rawTypeOf(Type aType) {
+        if (aType instanceof Class) {
+            return (Class<?>) aType;
+        } else if (aType instanceof ParameterizedType) {
+            return this.rawTypeOf(((ParameterizedType) aType).getRawType());
+        } else if (aType instanceof GenericArrayType) {
+            Class<?> componentType = this.rawTypeOf(((GenericArrayType) aType).getGenericComponentType());
+
+            return Array.newInstance(componentType, 0).getClass();
+        } else if (aType instanceof WildcardType) {
+            return this.rawTypeOf(((WildcardType) aType).getUpperBounds()[0]);
+        }
+
+        return Object.class;
+    }
+
+    private Object readArray(Input anInput, Type aType) {
+        Class<?> type = this.rawTypeOf(aType);
+
+        int size = anInput.readVarInt();
+
+        if (type.isArray()) {
+            Type componentType = this.componentTypeOf(aType);
+
+            Class<?> rawComponentType = this.rawTypeOf(componentType);
+
+            Object array = Array.newInstance(rawComponentType, size);
+
+            for (int idx = 0; idx < size; ++idx) {
+                Object element = this.readValue(anInput, componentType);
+
+                if (element == null) {
+                    continue;
+                } else if (!this.boxed(rawComponentType).isInstance(element)) {
+                    throw new IllegalStateException(
+                            "Cannot store a " + element.getClass().getName() +
+                            " in an array of: " + rawComponentType.getName());
+                }
+
+                Array.set(array, idx, element);
+            }
+
+            return array;
+        }
+
+        if (!Collection.class.isAssignableFrom(type) && type != Object.class) {
+            throw new IllegalStateException("Cannot read an array as: " + type.getName());
+        }
+
+        Type elementType = this.typeArgumentOf(aType, 0);
+
+        Collection<Object> collection = this.newCollection(type);
+
+        for (int idx = 0; idx < size; ++idx) {
+            collection.add(this.readValue(anInput, elementType));
+        }
+
+        return collection;
+    }
+
+    private Object readMap(Input anInput, Type aType) {
+        Class<?> type = this.rawTypeOf(aType);
+
+        int size = anInput.readVarInt();
+
+        if (!Map.class.isAssignableFrom(type) && type != Object.class) {
+            throw new IllegalStateException("Cannot read a map as: " + type.getName());
+        }
+
+        Type keyType = this.typeArgumentOf(aType, 0);
+        Type valueType = this.typeArgumentOf(aType, 1);
+
+        Map<Object,Object> map = this.newMap(type);
+
+        for (int idx = 0; idx < size; ++idx) {
+            Object key = this.readValue(anInput, keyType);
+            Object value = this.readValue(anInput, valueType);
+
+            map.put(key, value);
+        }
+
+        return map;
+    }
+
+    private Object readObject(Input anInput, Class<?> aType) {
+        int numberOfFields = anInput.readVarInt();
+
+        // the format does not record an object's class, so
+        // it can only be read as the concrete class declared
+
+        if (aType.isInterface() || Modifier.isAbstract(aType.getModifiers()) || aType == Object.class) {
+            throw new IllegalStateException("Cannot read an object as: " + aType.getName());
+        }
+
+        Object object = this.newInstance(aType);
+
+        ClassDescriptor descriptor = this.classDescriptorOf(aType);
+
+        try {
+            for (int idx = 0; idx < numberOfFields; ++idx) {
+                Field field = descriptor.fieldNamed(anInput.readName());
+
+                // a field that was removed from the class is skipped,
+                // and a field that was added keeps its initial value
+
+                if (field == null) {
+                    this.skipValue(anInput);
+                } else {
+                    this.assign(field, object, this.readValue(anInput, field.getGenericType()));
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot deserialize: " + aType.getName(), e);
+        }
+
+        return object;
+    }
+
+    private Object readValue(Input anInput, Type aType) {
+        Class<?> type = this.rawTypeOf(aType);
+
+        int tag = anInput.readByte();
+
+        switch (tag) {
+        case NULL:
+            return null;
+        case FALSE:
+            return Boolean.FALSE;
+        case TRUE:
+            return Boolean.TRUE;
+        case INTEGER:
+        case LONG:
+            return this.convertNumber(anInput.readVarLong(), type);
+        case FLOAT:
+            return this.convertNumber(Float.intBitsToFloat(anInput.readFixedInt()), type);
+        case DOUBLE:
+            return this.convertNumber(Double.longBitsToDouble(anInput.readFixedLong()), type);
+        case STRING:
+            return anInput.readString();
+        case DATE:
+            return new Date(anInput.readVarLong());
+        case ENUM:
+            return this.valueOfEnum(type, anInput.readString());
+        case BIG_DECIMAL:
+            return this.convertNumber(new BigDecimal(anInput.readString()), type);
+        case BIG_INTEGER:
+            return new BigInteger(anInput.readString());
+        case OBJECT:
+            return this.readObject(anInput, type);
+        case ARRAY:
+            return this.readArray(anInput, aType);
+        case MAP:
+            return this.readMap(anInput, aType);
+        }
+
+        throw new IllegalStateException("Unknown value tag: " + tag);
+    }
+
+    private void skipArray(Input anInput, int aSize) {
+        for (int idx = 0; idx < aSize; ++idx) {
+            this.skipValue(anInput);
+        }
+    }
+
+    private Type componentTypeOf(Type anArrayType) {
+        if (anArrayType instanceof GenericArrayType) {
+            return ((GenericArrayType) anArrayType).getGenericComponentType();
+        }
+
+        Class<?> componentType = this.rawTypeOf(anArrayType).getComponentType();
+
+        return componentType == null ? Object.class : componentType;
+    }
+
+    private void skipValue(Input anInput) {
+        int tag = anInput.readByte();
+
+        switch (tag) {
+        case NULL:
+        case FALSE:
+        case TRUE:
+            break;
+        case INTEGER:
+        case LONG:
+        case DATE:
+            anInput.readVarLong();
+            break;
+        case FLOAT:
+            anInput.readFixedInt();
+            break;
+        case DOUBLE:
+            anInput.readFixedLong();
+            break;
+        case STRING:
+        case ENUM:
+        case BIG_DECIMAL:
+        case BIG_INTEGER:
+            anInput.readString();
+            break;
+        case OBJECT:
+            int numberOfFields = anInput.readVarInt();
+            for (int idx = 0; idx < numberOfFields; ++idx) {
+                anInput.readName();
+                this.skipValue(anInput);
+            }
+            break;
+        case ARRAY:
+            this.skipArray(anInput, anInput.readVarInt());
+            break;
+        case MAP:
+            this.skipArray(anInput, anInput.readVarInt() * 2);
+            break;
+        default:
+            throw new IllegalStateException("Unknown value tag: " + tag);
+        }
+    }
+
+    private Type typeArgumentOf(Type aType, int anIndex) {
+        if (aType instanceof ParameterizedType) {
+            Type[] typeArguments = ((ParameterizedType) aType).getActualTypeArguments();
+
+            if (anIndex < typeArguments.length) {
+                return typeArguments[anIndex];
+            }
+        }
+
+        return Object.class;
+    }
+
+    private Object valueOfEnum(Class<?> aType, String aName) {
+        if (aType.isEnum()) {
+            for (Object constant : aType.getEnumConstants()) {
+                if (((Enum<?>) constant).name().equals(aName)) {
+                    return constant;
+                }
+            }
+        }
+
+        throw new IllegalStateException("No such constant: " + aType.getName() + "." + aName);
+    }
+
+    private void writeObject(Output anOutput, Object anObject, Type aDeclaredType) {
+        Class<?> type = anObject.getClass();
+
+        // what cannot be read back is refused before it is stored
+
+        if (this.rawTypeOf(aDeclaredType) != type) {
+            throw new IllegalArgumentException(
+                    "Cannot serialize a " + type.getName() + " declared as " + aDeclaredType +
+                    ", only as its own concrete class.");
+        }
+
+        ClassDescriptor descriptor = this.classDescriptorOf(type);
+
+        if (descriptor.constructor() == null) {
+            throw new IllegalArgumentException(
+                    "Cannot serialize, there is no no-arg constructor: " + type.getName());
+        }
+
+        Field[] fields = descriptor.fields();
+
+        Object[] values = new Object[fields.length];
+
+        int numberOfFields = 0;
+
+        try {
+            for (int idx = 0; idx < fields.length; ++idx) {
+                values[idx] = fields[idx].get(anObject);
+
+                if (values[idx] != null) {
+                    ++numberOfFields;
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot serialize: " + anObject.getClass().getName(), e);
+        }
+
+        anOutput.writeByte(OBJECT);
+        anOutput.writeVarInt(numberOfFields);
+
+        for (int idx = 0; idx < fields.length; ++idx) {
+            if (values[idx] != null) {
+                anOutput.writeName(fields[idx].getName());
+
+                this.writeValue(anOutput, values[idx], fields[idx].getGenericType());
+            }
+        }
+    }
+
+    private void writeValue(Output anOutput, Object aValue, Type aDeclaredType) {
+        if (aValue == null) {
+            anOutput.writeByte(NULL);
+        } else if (aValue instanceof String) {
+            anOutput.writeByte(STRING);
+            anOutput.writeString((String) aValue);
+        } else if (aValue instanceof Integer || aValue instanceof Short || aValue instanceof Byte) {
+            anOutput.writeByte(INTEGER);
+            anOutput.writeVarLong(((Number) aValue).longValue());
+        } else if (aValue instanceof Long) {
+            anOutput.writeByte(LONG);
+            anOutput.writeVarLong((Long) aValue);
+        } else if (aValue instanceof Boolean) {
+            anOutput.writeByte(((Boolean) aValue) ? TRUE : FALSE);
+        } else if (aValue instanceof Enum) {
+            Class<?> enumType = ((Enum<?>) aValue).getDeclaringClass();
+            if (this.rawTypeOf(aDeclaredType) != enumType) {
+                throw new IllegalArgumentException(
+                        "Cannot serialize a " + enumType.getName() + " declared as " + aDeclaredType);
+            }
+            anOutput.writeByte(ENUM);
+            anOutput.writeString(((Enum<?>) aValue).name());
+        } else if (aValue instanceof Date) {
+            anOutput.writeByte(DATE);
+            anOutput.writeVarLong(((Date) aValue).getTime());
+        } else if (aValue instanceof Double) {
+            anOutput.writeByte(DOUBLE);
+            anOutput.writeFixedLong(Double.doubleToLongBits((Double) aValue));
+        } else if (aValue instanceof Float) {
+            anOutput.writeByte(FLOAT);
+            anOutput.writeFixedInt(Float.floatToIntBits((Float) aValue));
+        } else if (aValue instanceof Character) {
+            anOutput.writeByte(INTEGER);
+            anOutput.writeVarLong((Character) aValue);
+        } else if (aValue instanceof BigDecimal) {
+            anOutput.writeByte(BIG_DECIMAL);
+            anOutput.writeString(aValue.toString());
+        } else if (aValue instanceof BigInteger) {
+            anOutput.writeByte(BIG_INTEGER);
+            anOutput.writeString(aValue.toString());
+        } else if (aValue instanceof Collection) {
+            Collection<?> collection = (Collection<?>) aValue;
+            anOutput.writeByte(ARRAY);
+            anOutput.writeVarInt(collection.size());
+            Type elementType = this.typeArgumentOf(aDeclaredType, 0);
+            for (Object element : collection) {
+                this.writeValue(anOutput, element, elementType);
+            }
+        } else if (aValue.getClass().isArray()) {
+            int length = Array.getLength(aValue);
+            anOutput.writeByte(ARRAY);
+            anOutput.writeVarInt(length);
+            Type componentType = this.componentTypeOf(aDeclaredType);
+            for (int idx = 0; idx < length; ++idx) {
+                this.writeValue(anOutput, Array.get(aValue, idx), componentType);
+            }
+        } else if (aValue instanceof Map) {
+            Map<?,?> map = (Map<?,?>) aValue;
+            anOutput.writeByte(MAP);
+            anOutput.writeVarInt(map.size());
+            Type keyType = this.typeArgumentOf(aDeclaredType, 0);
+            Type valueType = this.typeArgumentOf(aDeclaredType, 1);
+            for (Map.Entry<?,?> entry : map.entrySet()) {
+                this.writeValue(anOutput, entry.getKey(), keyType);
+                this.writeValue(anOutput, entry.getValue(), valueType);
+            }
+        } else {
+            this.writeObject(anOutput, aValue, aDeclaredType);
+        }
+    }
+
+    private static class ClassDescriptor {
+
+        private Constructor<?> constructor;
+        private Field[] fields;
+        private Map<String,Field> fieldsByName;
+
+        ClassDescriptor(Class<?> aType) {
+            super();
+
+            this.fieldsByName = new HashMap<String,Field>();
+
+            List<Field> fields = new ArrayList<Field>();
+
+            // the same fields that Gson serializes, those of
+            // the class and its superclasses that are neither
+            // static nor transient
+
+            for (Class<?> type = aType; type != null && type != Object.class; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+
+                    if (!Modifier.isStatic(modifiers) &&
+                        !Modifier.isTransient(modifiers) &&
+                        !field.isSynthetic() &&
+                        !this.fieldsByName.containsKey(field.getName())) {
+
+                        field.setAccessible(true);
+
+                        fields.add(field);
+
+                        this.fieldsByName.put(field.getName(), field);
+                    }
+                }
+            }
+
+            this.fields = fields.toArray(new Field[fields.size()]);
+
+            try {
+                this.constructor = aType.getDeclaredConstructor();
+                this.constructor.setAccessible(true);
+            } catch (Exception e) {
+                this.constructor = null;
+            }
+        }
+
+        Constructor<?> constructor() {
+            return this.constructor;
+        }
+
+        Field fieldNamed(String aName) {
+            return this.fieldsByName.get(aName);
+        }
+
+        Field[] fields() {
+            return this.fields;
+        }
+    }
+
+    private static class Input {
+
+        private byte[] bytes;
+        private List<String> names;
+        private int position;
+
+        Input(byte[] aBytes) {
+            super();
+
+            this.bytes = aBytes;
+            this.names = new ArrayList<String>();
+            this.position = 1;
+        }
+
+        int readByte() {
+            if (this.position >= this.bytes.length) {
+                throw new IllegalStateException("The serialization is truncated.");
+            }
+
+            return this.bytes[this.position++] & 0xff;
+        }
+
+        int readFixedInt() {
+            int value = 0;
+
+            for (int idx = 0; idx < 4; ++idx) {
+                value = (value << 8) | this.readByte();
+            }
+
+            return value;
+        }
+
+        long readFixedLong() {
+            long high = this.readFixedInt() & 0xffffffffL;
+            long low = this.readFixedInt() & 0xffffffffL;
+
+            return (high << 32) | low;
+        }
+
+        String readName() {
+            int reference = this.readVarInt();
+
+            if (reference == 0) {
+                String name = this.readString();
+
+                this.names.add(name);
+
+                return name;
+            }
+
+            return this.names.get(reference - 1);
+        }
+
+        String readString() {
+            int length = this.readVarInt();
+
+            if (length > this.bytes.length - this.position) {
+                throw new IllegalStateException("The serialization is truncated.");
+            }
+
+            String string = this.readAscii(length);
+
+            if (string == null) {
+                string = new String(this.bytes, this.position, length, UTF_8);
+            }
+
+            this.position += length;
+
+            return string;
+        }
+
+        private String readAscii(int aLength) {
+
+            // most strings are ASCII, which is decoded
+            // here without the cost of a CharsetDecoder
+
+            char[] chars = new char[aLength];
+
+            for (int idx = 0; idx < aLength; ++idx) {
+                byte next = this.bytes[this.position + idx];
+
+                if (next < 0) {
+                    return null;
+                }
+
+                chars[idx] = (char) next;
+            }
+
+            return new String(chars);
+        }
+
+        int readVarInt() {
+            return (int) this.readVarLong();
+        }
+
+        long readVarLong() {
+            long zigZag = 0;
+
+            for (int shift = 0; ; shift += 7) {
+                int next = this.readByte();
+
+                zigZag |= (long) (next & 0x7f) << shift;
+
+                if ((next & 0x80) == 0) {
+                    break;
+                }
+            }
+
+            return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+    }
+
+    private static class Output {
+
+        private byte[] bytes;
+        private Map<String,Integer> names;
+        private int size;
+
+        Output() {
+            super();
+
+            this.bytes = new byte[256];
+            this.names = new HashMap<String,Integer>();
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(this.bytes, this.size);
+        }
+
+        void writeByte(int aByte) {
+            if (this.size == this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, this.size * 2);
+            }
+
+            this.bytes[this.size++] = (byte) aByte;
+        }
+
+        void writeFixedInt(int aValue) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                this.writeByte(aValue >>> shift);
+            }
+        }
+
+        void writeFixedLong(long aValue) {
+            this.writeFixedInt((int) (aValue >>> 32));
+            this.writeFixedInt((int) aValue);
+        }
+
+        void writeName(String aName) {
+
+            // each field name is written once, and then
+            // referred to by the order it was written in
+
+            Integer reference = this.names.get(aName);
+
+            if (reference == null) {
+                this.writeVarInt(0);
+                this.writeString(aName);
+
+                this.names.put(aName, this.names.size() + 1);
+            } else {
+                this.writeVarInt(reference);
+            }
+        }
+
+        void writeString(String aString) {
+            if (this.writeAscii(aString)) {
+                return;
+            }
+
+            byte[] stringBytes = aString.getBytes(UTF_8);
+
+            this.writeVarInt(stringBytes.length);
+
+            if (this.size + stringBytes.length > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.size * 2, this.size + stringBytes.length));
+            }
+
+            System.arraycopy(stringBytes, 0, this.bytes, this.size, stringBytes.length);
+
+            this.size += stringBytes.length;
+        }
+
+        private boolean writeAscii(String aString) {
+            int length = aString.length();
+
+            for (int idx = 0; idx < length; ++idx) {
+                if (aString.charAt(idx) >= 0x80) {
+                    return false;
+                }
+            }
+
+            this.writeVarInt(length);
+
+            if (this.size + length > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.size * 2, this.size + length));
+            }
+
+            for (int idx = 0; idx < length; ++idx) {
+                this.bytes[this.size++] = (byte) aString.charAt(idx);
+            }
+
+            return true;
+        }
+
+        void writeVarInt(int aValue) {
+            this.writeVarLong(aValue);
+        }
+
+        void writeVarLong(long aValue) {
+            long zigZag = (aValue << 1) ^ (aValue >> 63);
+
+            while ((zigZag & ~0x7fL) != 0) {
+                this.writeByte((int) ((zigZag & 0x7f) | 0x80));
+
+                zigZag >>>= 7;
+            }
+
+            this.writeByte((int) zigZag);
+        }
+    }
+}
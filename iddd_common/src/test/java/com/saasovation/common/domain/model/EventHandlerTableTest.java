@@ -0,0 +1,122 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.saasovation.common.domain.model;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.saasovation.common.event.AnotherTestableDomainEvent;
+import com.saasovation.common.event.TestableDomainEvent;
+
+public class EventHandlerTableTest extends TestCase {
+
+    public EventHandlerTableTest() {
+        super();
+    }
+
+    public void testMutateWhen() throws Exception {
+        List<DomainEvent> events = new ArrayList<DomainEvent>();
+
+        events.add(new TestableDomainEvent(1L, "one"));
+        events.add(new TestableDomainEvent(2L, "two"));
+
+        TestableEntity entity = new TestableEntity(events, 2);
+
+        assertEquals(2, entity.unmutatedVersion());
+        assertEquals(3L, entity.idTotal());
+        assertEquals("two", entity.name());
+    }
+
+    public void testDispatchFailures() throws Exception {
+        EventHandlerTable handlerTable = new EventHandlerTable("when");
+
+        try {
+            handlerTable.dispatch(new TestableEntity(), new AnotherTestableDomainEvent(1.0));
+
+            fail("Should have thrown an exception.");
+
+        } catch (IllegalArgumentException e) {
+            // good
+        }
+
+        try {
+            handlerTable.dispatch(new TestableEntity(), new TestableDomainEvent(-1L, "negative"));
+
+            fail("Should have thrown an exception.");
+
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public void testDispatchMatchesReflection() throws Exception {
+        EventHandlerTable handlerTable = new EventHandlerTable("when");
+
+        Method method = TestableEntity.class.getDeclaredMethod("when", TestableDomainEvent.class);
+
+        method.setAccessible(true);
+
+        TestableEntity reflectedEntity = new TestableEntity();
+        TestableEntity dispatchedEntity = new TestableEntity();
+
+        // repeated dispatches reuse the handler found first
+
+        for (long id = 1; id <= 10; ++id) {
+            DomainEvent event = new TestableDomainEvent(id, "name" + id);
+
+            method.invoke(reflectedEntity, event);
+
+            handlerTable.dispatch(dispatchedEntity, event);
+        }
+
+        assertEquals(55L, dispatchedEntity.idTotal());
+        assertEquals(reflectedEntity.idTotal(), dispatchedEntity.idTotal());
+        assertEquals(reflectedEntity.name(), dispatchedEntity.name());
+    }
+
+    private static class TestableEntity extends EventSourcedRootEntity {
+
+        private long idTotal;
+        private String name;
+
+        public TestableEntity(List<DomainEvent> anEventStream, int aStreamVersion) {
+            super(anEventStream, aStreamVersion);
+        }
+
+        public TestableEntity() {
+            super();
+        }
+
+        public long idTotal() {
+            return this.idTotal;
+        }
+
+        public String name() {
+            return this.name;
+        }
+
+        @SuppressWarnings("unused")
+        private void when(TestableDomainEvent anEvent) {
+            if (anEvent.id() < 0) {
+                throw new IllegalStateException("The id must not be negative.");
+            }
+
+            this.idTotal += anEvent.id();
+            this.name = anEvent.name();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.notification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.saasovation.common.domain.model.DomainEvent;
+import com.saasovation.common.event.EventSerializer;
+import com.saasovation.common.event.EventStore;
+import com.saasovation.common.event.StoredEvent;
+import com.saasovation.common.event.TestableDomainEvent;
+
+public class MockOutOfOrderEventStore implements EventStore {
+
+    private Map<Long,StoredEvent> storedEvents;
+
+    public MockOutOfOrderEventStore() {
+        super();
+
+        this.storedEvents = new TreeMap<Long,StoredEvent>();
+    }
+
+    @Override
+    public List<StoredEvent> allStoredEventsBetween(long aLowStoredEventId, long aHighStoredEventId) {
+        List<StoredEvent> events = new ArrayList<StoredEvent>();
+
+        for (StoredEvent storedEvent : this.storedEvents.values()) {
+            if (storedEvent.eventId() >= aLowStoredEventId && storedEvent.eventId() <= aHighStoredEventId) {
+                events.add(storedEvent);
+            }
+        }
+
+        return events;
+    }
+
+    @Override
+    public List<StoredEvent> allStoredEventsSince(long aStoredEventId) {
+        return this.allStoredEventsBetween(aStoredEventId + 1, Long.MAX_VALUE);
+    }
+
+    @Override
+    public StoredEvent append(DomainEvent aDomainEvent) {
+        throw new UnsupportedOperationException("Events are committed by id.");
+    }
+
+    @Override
+    public void close() {
+        // no-op
+    }
+
+    // commits the event that was given anEventId, which may be
+    // lower than that of an event committed before it
+
+    public void commit(long anEventId) {
+        DomainEvent event = new TestableDomainEvent(anEventId, "name" + anEventId);
+
+        StoredEvent storedEvent =
+                new StoredEvent(
+                        event.getClass().getName(),
+                        event.occurredOn(),
+                        EventSerializer.instance().serialize(event),
+                        anEventId);
+
+        this.storedEvents.put(anEventId, storedEvent);
+    }
+
+    @Override
+    public long countStoredEvents() {
+        return this.storedEvents.size();
+    }
+}
@@ -0,0 +1,137 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.notification;
+
+import java.io.StringReader;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import com.saasovation.common.event.TestableDomainEvent;
+import com.saasovation.common.media.Link;
+import com.saasovation.common.serializer.ObjectSerializer;
+
+public class NotificationLogStreamReaderTest extends TestCase {
+
+    public NotificationLogStreamReaderTest() {
+        super();
+    }
+
+    public void testReadBulkNotificationLog() throws Exception {
+        StringBuilder log = new StringBuilder();
+
+        log.append("{\"archived\":true,\"id\":\"1,3000\",\"linkNext\":")
+           .append(this.serializedLink("next", "3001,6000"))
+           .append(",\"linkPrevious\":null,\"linkSelf\":")
+           .append(this.serializedLink("self", "1,3000"))
+           .append(",\"notifications\":[")
+           .append(this.serializedNotifications(1, 3000))
+           .append("]}");
+
+        NotificationLogStreamReader reader =
+                new NotificationLogStreamReader(new StringReader(log.toString()));
+
+        assertTrue(reader.isArchived());
+        assertEquals("1,3000", reader.id());
+        assertTrue(reader.hasNext());
+        assertEquals("http://localhost/notifications/bulk/3001,6000", reader.next().getHref());
+        assertFalse(reader.hasPrevious());
+        assertTrue(reader.hasSelf());
+
+        long expectedId = 1;
+
+        for (NotificationReader notification : reader) {
+            assertEquals(expectedId, notification.notificationId());
+            assertEquals("name" + expectedId, notification.eventStringValue("name"));
+
+            ++expectedId;
+        }
+
+        assertEquals(3001, expectedId);
+
+        reader.close();
+    }
+
+    public void testReadLinksFollowingNotifications() throws Exception {
+        StringBuilder log = new StringBuilder();
+
+        log.append("{\"archived\":false,\"id\":\"21,40\",\"notifications\":[")
+           .append(this.serializedNotifications(21, 25))
+           .append("],\"linkNext\":null,\"linkPrevious\":")
+           .append(this.serializedLink("previous", "1,20"))
+           .append(",\"linkSelf\":")
+           .append(this.serializedLink("self", "21,40"))
+           .append("}");
+
+        NotificationLogStreamReader reader =
+                new NotificationLogStreamReader(new StringReader(log.toString()));
+
+        assertFalse(reader.isArchived());
+        assertEquals("21,40", reader.id());
+        assertFalse(reader.hasPrevious());
+
+        Iterator<NotificationReader> iterator = reader.iterator();
+
+        int count = 0;
+
+        while (iterator.hasNext()) {
+            iterator.next();
+
+            ++count;
+        }
+
+        assertEquals(5, count);
+        assertFalse(reader.hasNext());
+        assertTrue(reader.hasPrevious());
+        assertTrue(reader.hasSelf());
+
+        try {
+            reader.iterator();
+
+            fail("The notifications should be iterable only once.");
+
+        } catch (IllegalStateException e) {
+            // good
+        }
+    }
+
+    private String serializedLink(String aRelationship, String anId) {
+        Link link =
+            new Link(
+                    "http://localhost/notifications/bulk/" + anId,
+                    aRelationship,
+                    null,
+                    "application/vnd.saasovation.idovation+json");
+
+        return ObjectSerializer.instance().serialize(link);
+    }
+
+    private String serializedNotifications(long aLowId, long aHighId) {
+        StringBuilder notifications = new StringBuilder();
+
+        for (long id = aLowId; id <= aHighId; ++id) {
+            if (id > aLowId) {
+                notifications.append(',');
+            }
+
+            Notification notification =
+                new Notification(id, new TestableDomainEvent(id, "name" + id));
+
+            notifications.append(ObjectSerializer.instance().serialize(notification));
+        }
+
+        return notifications.toString();
+    }
+}
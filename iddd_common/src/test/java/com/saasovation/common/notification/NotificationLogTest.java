@@ -14,9 +14,16 @@
 
 package com.saasovation.common.notification;
 
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.saasovation.common.CommonTestCase;
 import com.saasovation.common.event.EventStore;
 import com.saasovation.common.event.MockEventStore;
+import com.saasovation.common.event.StoredEvent;
+import com.saasovation.common.event.TestableDomainEvent;
 import com.saasovation.common.persistence.PersistenceManagerProvider;
 
 public class NotificationLogTest extends CommonTestCase {
@@ -87,6 +94,180 @@ public class NotificationLogTest extends CommonTestCase {
         assertEquals(decodedCurrentLogId, decodedNextLogId);
     }
 
+    public void testArchivedNotificationLogIsCached() throws Exception {
+        EventStore eventStore = this.eventStore();
+        NotificationLogId id = NotificationLogId.first(NotificationLogFactory.notificationsPerLog());
+        NotificationLogFactory factory = new NotificationLogFactory(eventStore);
+        NotificationLog log = factory.createNotificationLog(id);
+
+        assertTrue(log.isArchived());
+        assertSame(log, factory.createNotificationLog(id));
+    }
+
+    public void testCurrentNotificationLogMaintainedIncrementally() throws Exception {
+        EventStore eventStore = this.eventStore();
+        NotificationLogFactory factory = new NotificationLogFactory(eventStore);
+        NotificationLog log = factory.createCurrentNotificationLog();
+
+        NotificationLogId currentId = log.decodedNotificationLogId();
+        int totalNotifications = log.totalNotifications();
+
+        eventStore.append(new TestableDomainEvent(1L, "name1"));
+
+        log = factory.createCurrentNotificationLog();
+
+        if (totalNotifications < NotificationLogFactory.notificationsPerLog()) {
+            assertEquals(currentId, log.decodedNotificationLogId());
+            assertEquals(totalNotifications + 1, log.totalNotifications());
+        } else {
+            assertEquals(currentId.next(NotificationLogFactory.notificationsPerLog()), log.decodedNotificationLogId());
+            assertEquals(1, log.totalNotifications());
+        }
+
+        for (int idx = 0; idx < NotificationLogFactory.notificationsPerLog(); ++idx) {
+            eventStore.append(new TestableDomainEvent(idx + 2, "name" + (idx + 2)));
+        }
+
+        log = factory.createCurrentNotificationLog();
+
+        assertFalse(currentId.equals(log.decodedNotificationLogId()));
+
+        NotificationLog archivedLog = factory.createNotificationLog(currentId);
+
+        assertTrue(archivedLog.isArchived());
+        assertEquals(NotificationLogFactory.notificationsPerLog(), archivedLog.totalNotifications());
+        assertEquals(NotificationLogId.encoded(currentId.next(NotificationLogFactory.notificationsPerLog())), archivedLog.nextNotificationLogId());
+        assertEquals(eventStore.countStoredEvents(), log.notifications().get(log.totalNotifications() - 1).notificationId());
+    }
+
+    public void testNotificationLogsWithEventsCommittedOutOfOrder() throws Exception {
+        MockOutOfOrderEventStore eventStore = new MockOutOfOrderEventStore();
+        NotificationLogFactory factory = new NotificationLogFactory(eventStore, 3);
+        NotificationLogId firstId = NotificationLogId.first(3);
+
+        // event 3 is still in flight when events 4 and 5 commit
+
+        eventStore.commit(1);
+        eventStore.commit(2);
+        eventStore.commit(4);
+
+        NotificationLog log = factory.createCurrentNotificationLog();
+
+        assertEquals(new NotificationLogId(4, 6), log.decodedNotificationLogId());
+        assertEquals(1, log.totalNotifications());
+        assertFalse(log.isComplete());
+
+        eventStore.commit(5);
+
+        log = factory.createNotificationLog(firstId);
+
+        assertTrue(log.isArchived());
+        assertFalse(log.isComplete());
+        assertEquals(2, log.totalNotifications());
+        assertNotSame(log, factory.createNotificationLog(firstId));
+
+        eventStore.commit(3);
+
+        log = factory.createNotificationLog(firstId);
+
+        assertTrue(log.isComplete());
+        assertEquals(3, log.totalNotifications());
+        assertEquals(3, log.notifications().get(2).notificationId());
+        assertSame(log, factory.createNotificationLog(firstId));
+
+        // event 7 commits before event 6 and starts the next log
+
+        eventStore.commit(7);
+
+        log = factory.createCurrentNotificationLog();
+
+        assertEquals(new NotificationLogId(7, 9), log.decodedNotificationLogId());
+        assertEquals(1, log.totalNotifications());
+
+        NotificationLogId secondId = log.decodedPreviousNotificationLogId();
+
+        log = factory.createNotificationLog(secondId);
+
+        assertTrue(log.isArchived());
+        assertEquals(2, log.totalNotifications());
+
+        eventStore.commit(6);
+
+        log = factory.createNotificationLog(secondId);
+
+        assertEquals(3, log.totalNotifications());
+        assertEquals(6, log.notifications().get(2).notificationId());
+        assertSame(log, factory.createNotificationLog(secondId));
+    }
+
+    public void testConfiguredNotificationsPerLog() throws Exception {
+        EventStore eventStore = this.eventStore();
+        NotificationLogFactory factory = new NotificationLogFactory(eventStore, 7);
+        NotificationLog log = factory.createCurrentNotificationLog();
+
+        assertEquals(7, factory.logSize());
+        assertTrue(7 >= log.totalNotifications());
+        assertEquals(0, (log.decodedNotificationLogId().low() - 1) % 7);
+
+        log = factory.createNotificationLog(NotificationLogId.first(7));
+
+        assertEquals(7, log.totalNotifications());
+        assertEquals(new NotificationLogId(8, 14), log.decodedNextNotificationLogId());
+        assertTrue(log.isArchived());
+        assertTrue(factory.isArchived(NotificationLogId.first(7)));
+    }
+
+    public void testNotificationLogsAreReadConcurrently() throws Exception {
+        final CountDownLatch bothReading = new CountDownLatch(2);
+        final AtomicInteger overlappingReads = new AtomicInteger();
+
+        // each read of the first two logs waits for the other,
+        // which it sees only if the factory lets both in at once
+
+        EventStore eventStore = new MockEventStore(new PersistenceManagerProvider() {}) {
+            @Override
+            public List<StoredEvent> allStoredEventsBetween(long aLowStoredEventId, long aHighStoredEventId) {
+                if (aHighStoredEventId <= 10) {
+                    bothReading.countDown();
+
+                    try {
+                        if (bothReading.await(5L, TimeUnit.SECONDS)) {
+                            overlappingReads.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                return super.allStoredEventsBetween(aLowStoredEventId, aHighStoredEventId);
+            }
+        };
+
+        final NotificationLogFactory factory = new NotificationLogFactory(eventStore, 5);
+
+        Thread[] readers = new Thread[2];
+
+        for (int idx = 0; idx < readers.length; ++idx) {
+            final NotificationLogId id = new NotificationLogId(idx * 5 + 1, idx * 5 + 5);
+
+            readers[idx] = new Thread() {
+                @Override
+                public void run() {
+                    factory.createNotificationLog(id);
+                }
+            };
+
+            readers[idx].start();
+        }
+
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertEquals(2, overlappingReads.get());
+        assertTrue(factory.isArchived(new NotificationLogId(6, 10)));
+    }
+
     private EventStore eventStore() {
         EventStore eventStore = new MockEventStore(new PersistenceManagerProvider() {});
 
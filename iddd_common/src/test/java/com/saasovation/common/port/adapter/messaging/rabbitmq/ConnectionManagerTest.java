@@ -0,0 +1,327 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.port.adapter.messaging.rabbitmq;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+/**
+ * I pool channels with a ConnectionManager whose connections
+ * open MockChannels, to show when a channel is reused, closed
+ * or replaced, and when a lost connection is opened again.
+ */
+public class ConnectionManagerTest extends TestCase {
+
+    private static final int MAX_IDLE_CHANNELS = 16;
+
+    private static final ConnectionSettings CONNECTION_SETTINGS =
+            ConnectionSettings.instance("connection.manager.test", "/");
+
+    private ConnectionManager connectionManager;
+    private List<MockConnection> mockConnections;
+
+    public ConnectionManagerTest() {
+        super();
+    }
+
+    public void testReleasedChannelIsReused() throws Exception {
+        Channel channel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        this.connectionManager.release(CONNECTION_SETTINGS, channel, true);
+
+        assertTrue(channel.isOpen());
+        assertSame(channel, this.connectionManager.channel(CONNECTION_SETTINGS));
+
+        // a channel in use is not answered twice
+
+        Channel anotherChannel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        assertNotSame(channel, anotherChannel);
+
+        assertEquals(1, this.mockConnections.size());
+        assertEquals(2, this.mockConnections.get(0).mockChannels().size());
+    }
+
+    public void testUnreusableChannelIsClosed() throws Exception {
+        Channel channel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        this.connectionManager.release(CONNECTION_SETTINGS, channel, false);
+
+        assertFalse(channel.isOpen());
+        assertNotSame(channel, this.connectionManager.channel(CONNECTION_SETTINGS));
+    }
+
+    public void testSharedChannelIsPooledByItsLastHolder() throws Exception {
+
+        // an exchange and its queue share one channel
+
+        Channel channel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        this.connectionManager.share(channel);
+
+        this.connectionManager.release(CONNECTION_SETTINGS, channel, true);
+
+        // the queue still uses it, so it is not answered to another
+
+        Channel anotherChannel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        assertNotSame(channel, anotherChannel);
+
+        this.connectionManager.release(CONNECTION_SETTINGS, channel, true);
+
+        assertTrue(channel.isOpen());
+        assertSame(channel, this.connectionManager.channel(CONNECTION_SETTINGS));
+
+        // and a release of the reused channel is its new holder's alone
+
+        this.connectionManager.release(CONNECTION_SETTINGS, channel, true);
+
+        assertSame(channel, this.connectionManager.channel(CONNECTION_SETTINGS));
+        assertTrue(anotherChannel.isOpen());
+    }
+
+    public void testSharedChannelIsClosedWhenOneHolderDisallowsReuse() throws Exception {
+        Channel channel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        this.connectionManager.share(channel);
+
+        this.connectionManager.release(CONNECTION_SETTINGS, channel, true);
+
+        Channel anotherChannel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        // the queue had consumers on it
+
+        this.connectionManager.release(CONNECTION_SETTINGS, channel, false);
+
+        assertFalse(channel.isOpen());
+        assertTrue(anotherChannel.isOpen());
+
+        Channel nextChannel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        assertNotSame(channel, nextChannel);
+        assertNotSame(anotherChannel, nextChannel);
+
+        // the other holder releases it last, which is harmless
+
+        channel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        this.connectionManager.share(channel);
+
+        this.connectionManager.release(CONNECTION_SETTINGS, channel, false);
+        this.connectionManager.release(CONNECTION_SETTINGS, channel, true);
+
+        assertFalse(channel.isOpen());
+        assertNotSame(channel, this.connectionManager.channel(CONNECTION_SETTINGS));
+    }
+
+    public void testExchangeAndItsQueueReleaseTheirChannelOnce() throws Exception {
+        ConnectionSettings connectionSettings =
+                ConnectionSettings.instance("connection.manager.shared.test", "/");
+
+        MockChannel sharedChannel = new MockChannel();
+        MockChannel otherChannel = new MockChannel();
+
+        ConnectionManager.instance().release(connectionSettings, sharedChannel.channel(), true);
+
+        try {
+            Exchange exchange = Exchange.fanOutInstance(connectionSettings, "shared.exchange", true);
+
+            Queue queue = Queue.individualExchangeSubscriberInstance(exchange, "shared.exchange.queue");
+
+            exchange.close();
+
+            // the queue still uses the channel, so another is answered
+
+            ConnectionManager.instance().release(connectionSettings, otherChannel.channel(), true);
+
+            assertSame(otherChannel.channel(), ConnectionManager.instance().channel(connectionSettings));
+
+            queue.close();
+
+            assertTrue(sharedChannel.channel().isOpen());
+            assertSame(sharedChannel.channel(), ConnectionManager.instance().channel(connectionSettings));
+
+        } finally {
+            sharedChannel.channel().close();
+            otherChannel.channel().close();
+        }
+    }
+
+    public void testIdleChannelsAreBounded() throws Exception {
+        List<Channel> channels = new ArrayList<Channel>();
+
+        for (int idx = 0; idx <= MAX_IDLE_CHANNELS; ++idx) {
+            channels.add(this.connectionManager.channel(CONNECTION_SETTINGS));
+        }
+
+        for (Channel channel : channels) {
+            this.connectionManager.release(CONNECTION_SETTINGS, channel, true);
+        }
+
+        for (int idx = 0; idx < MAX_IDLE_CHANNELS; ++idx) {
+            assertTrue(channels.get(idx).isOpen());
+        }
+
+        assertFalse(channels.get(MAX_IDLE_CHANNELS).isOpen());
+    }
+
+    public void testBrokenIdleChannelIsReplaced() throws Exception {
+        Channel brokenChannel = this.connectionManager.channel(CONNECTION_SETTINGS);
+        Channel idleChannel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        this.connectionManager.release(CONNECTION_SETTINGS, brokenChannel, true);
+        this.connectionManager.release(CONNECTION_SETTINGS, idleChannel, true);
+
+        // the broker closes a pooled channel while it is idle
+
+        this.mockConnections.get(0).mockChannels().get(0).shutDown();
+
+        assertSame(idleChannel, this.connectionManager.channel(CONNECTION_SETTINGS));
+
+        Channel channel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        assertNotSame(brokenChannel, channel);
+        assertTrue(channel.isOpen());
+        assertEquals(1, this.mockConnections.size());
+    }
+
+    public void testLostConnectionIsOpenedAgain() throws Exception {
+        Channel idleChannel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        this.connectionManager.release(CONNECTION_SETTINGS, idleChannel, true);
+
+        // the broker restarts, which closes the lost
+        // connection and all of its channels
+
+        this.mockConnections.get(0).lose();
+
+        Channel channel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        assertNotSame(idleChannel, channel);
+        assertTrue(channel.isOpen());
+        assertEquals(2, this.mockConnections.size());
+        assertSame(channel, this.mockConnections.get(1).mockChannels().get(0).channel());
+    }
+
+    public void testCloseClosesChannelsAndConnections() throws Exception {
+        Channel idleChannel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        this.connectionManager.release(CONNECTION_SETTINGS, idleChannel, true);
+
+        this.connectionManager.close();
+
+        assertFalse(idleChannel.isOpen());
+        assertFalse(this.mockConnections.get(0).connection().isOpen());
+
+        Channel channel = this.connectionManager.channel(CONNECTION_SETTINGS);
+
+        assertNotSame(idleChannel, channel);
+        assertEquals(2, this.mockConnections.size());
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        this.mockConnections = new ArrayList<MockConnection>();
+
+        this.connectionManager = new ConnectionManager() {
+            @Override
+            protected ConnectionFactory configureConnectionFactoryUsing(
+                    ConnectionSettings aConnectionSettings) {
+
+                return new ConnectionFactory() {
+                    @Override
+                    public Connection newConnection() throws IOException {
+                        MockConnection mockConnection = new MockConnection();
+
+                        mockConnections.add(mockConnection);
+
+                        return mockConnection.connection();
+                    }
+                };
+            }
+        };
+    }
+
+    private static class MockConnection implements InvocationHandler {
+
+        private Connection connection;
+        private List<MockChannel> mockChannels;
+        private boolean open;
+
+        MockConnection() {
+            super();
+
+            this.mockChannels = new ArrayList<MockChannel>();
+            this.open = true;
+
+            this.connection =
+                    (Connection) Proxy.newProxyInstance(
+                            this.getClass().getClassLoader(),
+                            new Class<?>[] { Connection.class },
+                            this);
+        }
+
+        @Override
+        public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+            String name = aMethod.getName();
+
+            if (name.equals("isOpen")) {
+                return this.open;
+            } else if (name.equals("close")) {
+                this.open = false;
+            } else if (name.equals("createChannel")) {
+                MockChannel mockChannel = new MockChannel();
+
+                this.mockChannels.add(mockChannel);
+
+                return mockChannel.channel();
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(aProxy);
+            } else if (name.equals("equals")) {
+                return aProxy == anArgs[0];
+            }
+
+            return null;
+        }
+
+        Connection connection() {
+            return this.connection;
+        }
+
+        void lose() {
+            this.open = false;
+
+            for (MockChannel mockChannel : this.mockChannels) {
+                mockChannel.shutDown();
+            }
+        }
+
+        List<MockChannel> mockChannels() {
+            return this.mockChannels;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.port.adapter.messaging.rabbitmq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Envelope;
+import com.saasovation.common.port.adapter.messaging.MessageException;
+
+/**
+ * I settle the deliveries a MessageConsumer handles on an Executor
+ * in the order I choose, on a MockChannel, to show which of them
+ * are acknowledged and when.
+ */
+public class MessageConsumerTest extends TestCase {
+
+    private static final int ACKNOWLEDGE_BATCH_SIZE = 3;
+
+    private static final ConnectionSettings CONNECTION_SETTINGS =
+            ConnectionSettings.instance("message.consumer.test", "/");
+
+    private MessageConsumer messageConsumer;
+    private MockChannel mockChannel;
+    private List<Runnable> executedTasks;
+    private RecordingListener recordingListener;
+    private Map<Long, Runnable> tasks;
+
+    public MessageConsumerTest() {
+        super();
+    }
+
+    public void testOutOfOrderCompletion() throws Exception {
+        this.deliver(1, 2, 3, 4);
+
+        // nothing is acknowledged while an earlier delivery is in progress
+
+        this.complete(3);
+        this.complete(1);
+
+        assertTrue(this.mockChannel.acknowledgements().isEmpty());
+
+        this.complete(2);
+
+        assertEquals(Arrays.asList("ack:3:true"), this.mockChannel.acknowledgements());
+
+        // the last run is acknowledged when nothing is left in progress
+
+        this.complete(4);
+
+        assertEquals(Arrays.asList("ack:3:true", "ack:4:true"), this.mockChannel.acknowledgements());
+
+        assertEquals(Arrays.asList(3L, 1L, 2L, 4L), this.recordingListener.handled());
+    }
+
+    public void testNackMidBatch() throws Exception {
+        this.recordingListener.fail(2, true);
+        this.recordingListener.fail(6, false);
+
+        this.deliver(1, 2, 3);
+
+        this.complete(1);
+        this.complete(2);
+
+        // the nack is sent at once, but the ack waits for the batch
+
+        assertEquals(Arrays.asList("nack:2:true"), this.mockChannel.acknowledgements());
+
+        this.complete(3);
+
+        assertEquals(
+                Arrays.asList("nack:2:true", "ack:3:true"),
+                this.mockChannel.acknowledgements());
+
+        // a nacked delivery that ends a run is not acknowledged too
+
+        this.deliver(4, 5, 6);
+
+        this.complete(4);
+        this.complete(5);
+        this.complete(6);
+
+        assertEquals(
+                Arrays.asList("nack:2:true", "ack:3:true", "nack:6:false", "ack:5:true"),
+                this.mockChannel.acknowledgements());
+    }
+
+    public void testChannelCloseWithUnackedDeliveries() throws Exception {
+        this.deliver(1, 2, 3);
+
+        this.complete(1);
+
+        this.mockChannel.shutDown();
+
+        assertTrue(this.messageConsumer.isClosed());
+
+        // the broker redelivers all three, so the rest are not handled
+
+        this.complete(2);
+        this.complete(3);
+
+        this.deliver(4);
+
+        assertTrue(this.tasks.isEmpty());
+        assertTrue(this.mockChannel.acknowledgements().isEmpty());
+        assertEquals(Arrays.asList(1L), this.recordingListener.handled());
+    }
+
+    public void testChannelCloseWhileHandling() throws Exception {
+        this.recordingListener.shutDownWhenHandling(2);
+
+        this.deliver(1, 2);
+
+        this.complete(1);
+
+        // the ack of the run is refused by the closed
+        // channel, which neither fails nor nacks
+
+        this.complete(2);
+
+        assertTrue(this.messageConsumer.isClosed());
+        assertTrue(this.mockChannel.acknowledgements().isEmpty());
+        assertEquals(Arrays.asList(1L, 2L), this.recordingListener.handled());
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        this.mockChannel = new MockChannel();
+        this.executedTasks = new ArrayList<Runnable>();
+        this.recordingListener = new RecordingListener();
+        this.tasks = new HashMap<Long, Runnable>();
+
+        // the pooled channel is the one the queue opens
+
+        ConnectionManager.instance().release(CONNECTION_SETTINGS, this.mockChannel.channel(), true);
+
+        Queue queue = Queue.instance(CONNECTION_SETTINGS, "message.consumer.test");
+
+        assertSame(this.mockChannel.channel(), queue.channel());
+
+        this.messageConsumer = MessageConsumer.instance(queue);
+
+        this.messageConsumer.dispatchOn(
+                new Executor() {
+                    @Override
+                    public void execute(Runnable aTask) {
+                        executedTasks.add(aTask);
+                    }
+                },
+                ACKNOWLEDGE_BATCH_SIZE);
+
+        this.messageConsumer.receiveAll(this.recordingListener);
+
+        super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.messageConsumer.close();
+
+        super.tearDown();
+    }
+
+    private void complete(long aDeliveryTag) {
+        this.tasks.remove(aDeliveryTag).run();
+    }
+
+    private void deliver(long... aDeliveryTags) throws Exception {
+        for (long deliveryTag : aDeliveryTags) {
+            this.mockChannel.consumer().handleDelivery(
+                    this.mockChannel.consumerTag(),
+                    new Envelope(deliveryTag, false, "", "message.consumer.test"),
+                    new BasicProperties.Builder()
+                        .type("TestMessage")
+                        .messageId(String.valueOf(deliveryTag))
+                        .timestamp(new Date())
+                        .build(),
+                    ("message " + deliveryTag).getBytes());
+
+            // the task that handles it, unless I am closed
+
+            if (!this.executedTasks.isEmpty()) {
+                this.tasks.put(deliveryTag, this.executedTasks.remove(0));
+            }
+        }
+    }
+
+    private class RecordingListener extends MessageListener {
+
+        private List<Long> failedDeliveryTags;
+        private List<Long> handled;
+        private List<Long> retriedDeliveryTags;
+        private long shutDownDeliveryTag;
+
+        RecordingListener() {
+            super(Type.TEXT);
+
+            this.failedDeliveryTags = new ArrayList<Long>();
+            this.handled = new ArrayList<Long>();
+            this.retriedDeliveryTags = new ArrayList<Long>();
+            this.shutDownDeliveryTag = -1L;
+        }
+
+        @Override
+        public void handleMessage(
+                String aType,
+                String aMessageId,
+                Date aTimestamp,
+                String aTextMessage,
+                long aDeliveryTag,
+                boolean isRedelivery) throws Exception {
+
+            this.handled.add(aDeliveryTag);
+
+            if (aDeliveryTag == this.shutDownDeliveryTag) {
+                mockChannel.shutDown();
+            }
+
+            if (this.failedDeliveryTags.contains(aDeliveryTag)) {
+                throw new MessageException(
+                        "Cannot handle: " + aTextMessage,
+                        this.retriedDeliveryTags.contains(aDeliveryTag));
+            }
+        }
+
+        void fail(long aDeliveryTag, boolean isRetry) {
+            this.failedDeliveryTags.add(aDeliveryTag);
+
+            if (isRetry) {
+                this.retriedDeliveryTags.add(aDeliveryTag);
+            }
+        }
+
+        List<Long> handled() {
+            return this.handled;
+        }
+
+        void shutDownWhenHandling(long aDeliveryTag) {
+            this.shutDownDeliveryTag = aDeliveryTag;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.port.adapter.messaging.rabbitmq;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * I am a Channel without a broker. I record the acknowledgements
+ * sent on me, such as "ack:3:true" for basicAck(3, true), and
+ * reject them as a closed channel does once I am shut down.
+ * In confirm mode I ack each message as it is published, unless
+ * I am told to nack it or to leave it unconfirmed.
+ */
+public class MockChannel implements InvocationHandler {
+
+    private static final String CONSUMER_TAG = "mock-consumer";
+
+    private List<String> acknowledgements;
+    private Channel channel;
+    private List<ConfirmListener> confirmListeners;
+    private boolean confirmSelected;
+    private Consumer consumer;
+    private long lastSequenceNumber;
+    private Set<Long> nackedSequenceNumbers;
+    private long nextPublishSeqNo;
+    private boolean open;
+    private List<String> publishedMessageIds;
+    private List<ShutdownListener> shutdownListeners;
+    private Set<Long> unconfirmedSequenceNumbers;
+
+    public MockChannel() {
+        super();
+
+        this.acknowledgements = new ArrayList<String>();
+        this.confirmListeners = new ArrayList<ConfirmListener>();
+        this.lastSequenceNumber = Long.MAX_VALUE;
+        this.nackedSequenceNumbers = new HashSet<Long>();
+        this.nextPublishSeqNo = 1;
+        this.open = true;
+        this.publishedMessageIds = new ArrayList<String>();
+        this.shutdownListeners = new ArrayList<ShutdownListener>();
+        this.unconfirmedSequenceNumbers = new HashSet<Long>();
+
+        this.channel =
+                (Channel) Proxy.newProxyInstance(
+                        this.getClass().getClassLoader(),
+                        new Class<?>[] { Channel.class },
+                        this);
+    }
+
+    public synchronized List<String> acknowledgements() {
+        return new ArrayList<String>(this.acknowledgements);
+    }
+
+    public Channel channel() {
+        return this.channel;
+    }
+
+    public synchronized Consumer consumer() {
+        return this.consumer;
+    }
+
+    public String consumerTag() {
+        return CONSUMER_TAG;
+    }
+
+    public synchronized void closeAfterPublishing(long aSequenceNumber) {
+        this.lastSequenceNumber = aSequenceNumber;
+    }
+
+    public synchronized void leaveUnconfirmedOnPublishing(long aSequenceNumber) {
+        this.unconfirmedSequenceNumbers.add(aSequenceNumber);
+    }
+
+    public synchronized void nackOnPublishing(long aSequenceNumber) {
+        this.nackedSequenceNumbers.add(aSequenceNumber);
+    }
+
+    public synchronized List<String> publishedMessageIds() {
+        return new ArrayList<String>(this.publishedMessageIds);
+    }
+
+    @Override
+    public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+
+        // confirms and shutdown signals are delivered outside
+        // of my lock, as the client library delivers them on
+        // its own thread
+
+        if (aMethod.getName().equals("basicPublish")) {
+            this.publish((AMQP.BasicProperties) anArgs[anArgs.length - 2]);
+
+            return null;
+        }
+
+        return this.invokeLocked(aProxy, aMethod, anArgs);
+    }
+
+    private synchronized Object invokeLocked(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+        String name = aMethod.getName();
+
+        if (name.equals("isOpen")) {
+            return this.open;
+        } else if (name.equals("close")) {
+            this.open = false;
+
+            return null;
+        } else if (name.equals("getNextPublishSeqNo")) {
+            return this.confirmSelected ? this.nextPublishSeqNo : 0L;
+        } else if (name.equals("hashCode")) {
+            return System.identityHashCode(aProxy);
+        } else if (name.equals("equals")) {
+            return aProxy == anArgs[0];
+        } else if (name.equals("toString")) {
+            return "MockChannel";
+        }
+
+        if (!this.open) {
+            throw new AlreadyClosedException("The channel is closed.", this.channel);
+        }
+
+        if (name.equals("queueDeclare")) {
+            return this.declareOk((String) anArgs[0]);
+        } else if (name.equals("basicConsume")) {
+            this.consumer = (Consumer) anArgs[anArgs.length - 1];
+
+            return CONSUMER_TAG;
+        } else if (name.equals("confirmSelect")) {
+            this.confirmSelected = true;
+        } else if (name.equals("addConfirmListener")) {
+            this.confirmListeners.add((ConfirmListener) anArgs[0]);
+        } else if (name.equals("addShutdownListener")) {
+            this.shutdownListeners.add((ShutdownListener) anArgs[0]);
+        } else if (name.equals("basicAck")) {
+            this.acknowledgements.add("ack:" + anArgs[0] + ":" + anArgs[1]);
+        } else if (name.equals("basicNack")) {
+            this.acknowledgements.add("nack:" + anArgs[0] + ":" + anArgs[2]);
+        }
+
+        return null;
+    }
+
+    public void shutDown() {
+        Consumer consumer = null;
+        List<ShutdownListener> shutdownListeners = null;
+
+        synchronized (this) {
+            this.open = false;
+
+            consumer = this.consumer;
+            shutdownListeners = new ArrayList<ShutdownListener>(this.shutdownListeners);
+        }
+
+        ShutdownSignalException signal =
+                new ShutdownSignalException(true, false, "The broker closed the channel.", this.channel);
+
+        if (consumer != null) {
+            consumer.handleShutdownSignal(CONSUMER_TAG, signal);
+        }
+
+        for (ShutdownListener shutdownListener : shutdownListeners) {
+            shutdownListener.shutdownCompleted(signal);
+        }
+    }
+
+    private void publish(AMQP.BasicProperties aProperties) throws Exception {
+        long sequenceNumber = 0;
+        boolean isNacked = false;
+        boolean isConfirmed = false;
+        List<ConfirmListener> confirmListeners = null;
+
+        synchronized (this) {
+            if (!this.open) {
+                throw new AlreadyClosedException("The channel is closed.", this.channel);
+            }
+
+            this.publishedMessageIds.add(aProperties.getMessageId());
+
+            if (this.confirmSelected) {
+                sequenceNumber = this.nextPublishSeqNo++;
+                isNacked = this.nackedSequenceNumbers.contains(sequenceNumber);
+                isConfirmed = !this.unconfirmedSequenceNumbers.contains(sequenceNumber);
+                confirmListeners = new ArrayList<ConfirmListener>(this.confirmListeners);
+            }
+        }
+
+        if (isConfirmed) {
+            for (ConfirmListener confirmListener : confirmListeners) {
+                if (isNacked) {
+                    confirmListener.handleNack(sequenceNumber, false);
+                } else {
+                    confirmListener.handleAck(sequenceNumber, false);
+                }
+            }
+        }
+
+        if (sequenceNumber >= this.lastSequenceNumber()) {
+            this.shutDown();
+        }
+    }
+
+    private synchronized long lastSequenceNumber() {
+        return this.lastSequenceNumber;
+    }
+
+    private AMQP.Queue.DeclareOk declareOk(final String aQueueName) {
+        return (AMQP.Queue.DeclareOk) Proxy.newProxyInstance(
+                this.getClass().getClassLoader(),
+                new Class<?>[] { AMQP.Queue.DeclareOk.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+                        if (aMethod.getName().equals("getQueue")) {
+                            return aQueueName;
+                        }
+
+                        return null;
+                    }
+                });
+    }
+}
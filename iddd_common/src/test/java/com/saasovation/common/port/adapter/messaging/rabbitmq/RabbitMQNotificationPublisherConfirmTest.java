@@ -0,0 +1,242 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.port.adapter.messaging.rabbitmq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.saasovation.common.domain.model.DomainEvent;
+import com.saasovation.common.event.EventSerializer;
+import com.saasovation.common.event.EventStore;
+import com.saasovation.common.event.StoredEvent;
+import com.saasovation.common.event.TestableDomainEvent;
+import com.saasovation.common.notification.Notification;
+import com.saasovation.common.notification.PublishedNotificationTracker;
+import com.saasovation.common.notification.PublishedNotificationTrackerStore;
+import com.saasovation.common.port.adapter.notification.RabbitMQNotificationPublisher;
+
+/**
+ * I publish notifications on MockChannels that ack, nack or never
+ * confirm chosen messages, to show that the tracker advances only
+ * through the messages the broker has confirmed.
+ */
+public class RabbitMQNotificationPublisherConfirmTest extends TestCase {
+
+    private List<MockChannel> mockChannels;
+    private PublishedNotificationTracker publishedNotificationTracker;
+
+    public RabbitMQNotificationPublisherConfirmTest() {
+        super();
+    }
+
+    public void testConfirmedNotificationsArePublished() throws Exception {
+        MockChannel mockChannel = this.pooledMockChannel();
+
+        this.notificationPublisher(5, 2).publishNotifications();
+
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), mockChannel.publishedMessageIds());
+        assertEquals(5, this.publishedNotificationTracker.mostRecentPublishedNotificationId());
+    }
+
+    public void testNackedNotificationIsNotPublished() throws Exception {
+        MockChannel mockChannel = this.pooledMockChannel();
+
+        mockChannel.nackOnPublishing(3);
+
+        RabbitMQNotificationPublisher notificationPublisher = this.notificationPublisher(5, 10);
+
+        notificationPublisher.publishNotifications();
+
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), mockChannel.publishedMessageIds());
+        assertEquals(2, this.publishedNotificationTracker.mostRecentPublishedNotificationId());
+
+        // the rejecting channel is dropped, and the next call
+        // publishes everything after the gap again
+
+        assertFalse(mockChannel.channel().isOpen());
+
+        MockChannel nextMockChannel = this.pooledMockChannel();
+
+        notificationPublisher.publishNotifications();
+
+        assertEquals(Arrays.asList("3", "4", "5"), nextMockChannel.publishedMessageIds());
+        assertEquals(5, this.publishedNotificationTracker.mostRecentPublishedNotificationId());
+    }
+
+    public void testUnconfirmedNotificationIsNotPublished() throws Exception {
+        MockChannel mockChannel = this.pooledMockChannel();
+
+        // the channel is lost before the confirm of 2 arrives,
+        // although the messages after it have been confirmed
+
+        mockChannel.leaveUnconfirmedOnPublishing(2);
+        mockChannel.closeAfterPublishing(5);
+
+        this.notificationPublisher(5, 10).publishNotifications();
+
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), mockChannel.publishedMessageIds());
+        assertEquals(1, this.publishedNotificationTracker.mostRecentPublishedNotificationId());
+    }
+
+    public void testBatchesAfterUnconfirmedBatchAreNotSent() throws Exception {
+        MockChannel mockChannel = this.pooledMockChannel();
+
+        mockChannel.nackOnPublishing(3);
+
+        this.notificationPublisher(6, 2).publishNotifications();
+
+        assertEquals(Arrays.asList("1", "2", "3", "4"), mockChannel.publishedMessageIds());
+        assertEquals(2, this.publishedNotificationTracker.mostRecentPublishedNotificationId());
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        this.mockChannels = new ArrayList<MockChannel>();
+        this.publishedNotificationTracker = new PublishedNotificationTracker("unit.test");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+
+        // the publisher uses the default connection settings, so
+        // none of my channels may be left open in their pool
+
+        for (MockChannel mockChannel : this.mockChannels) {
+            mockChannel.channel().close();
+        }
+
+        super.tearDown();
+    }
+
+    private RabbitMQNotificationPublisher notificationPublisher(
+            int aNumberOfEvents,
+            int aPublishBatchSize) {
+
+        List<StoredEvent> storedEvents = new ArrayList<StoredEvent>();
+
+        for (int idx = 1; idx <= aNumberOfEvents; ++idx) {
+            DomainEvent event = new TestableDomainEvent(idx, "name" + idx);
+
+            storedEvents.add(
+                    new StoredEvent(
+                            event.getClass().getName(),
+                            event.occurredOn(),
+                            EventSerializer.instance().serialize(event),
+                            idx));
+        }
+
+        return new RabbitMQNotificationPublisher(
+                new StoredEventsStore(storedEvents),
+                new TrackingStore(this.publishedNotificationTracker),
+                "unit.test.confirms",
+                aPublishBatchSize);
+    }
+
+    private MockChannel pooledMockChannel() {
+        MockChannel mockChannel = new MockChannel();
+
+        ConnectionManager.instance().release(ConnectionSettings.instance(), mockChannel.channel(), true);
+
+        this.mockChannels.add(mockChannel);
+
+        return mockChannel;
+    }
+
+    private static class StoredEventsStore implements EventStore {
+
+        private List<StoredEvent> storedEvents;
+
+        StoredEventsStore(List<StoredEvent> aStoredEvents) {
+            super();
+
+            this.storedEvents = aStoredEvents;
+        }
+
+        @Override
+        public List<StoredEvent> allStoredEventsBetween(long aLowStoredEventId, long aHighStoredEventId) {
+            List<StoredEvent> storedEvents = new ArrayList<StoredEvent>();
+
+            for (StoredEvent storedEvent : this.storedEvents) {
+                if (storedEvent.eventId() >= aLowStoredEventId && storedEvent.eventId() <= aHighStoredEventId) {
+                    storedEvents.add(storedEvent);
+                }
+            }
+
+            return storedEvents;
+        }
+
+        @Override
+        public List<StoredEvent> allStoredEventsSince(long aStoredEventId) {
+            return this.allStoredEventsBetween(aStoredEventId + 1, Long.MAX_VALUE);
+        }
+
+        @Override
+        public StoredEvent append(DomainEvent aDomainEvent) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            // no-op
+        }
+
+        @Override
+        public long countStoredEvents() {
+            return this.storedEvents.size();
+        }
+    }
+
+    private static class TrackingStore implements PublishedNotificationTrackerStore {
+
+        private PublishedNotificationTracker publishedNotificationTracker;
+
+        TrackingStore(PublishedNotificationTracker aPublishedNotificationTracker) {
+            super();
+
+            this.publishedNotificationTracker = aPublishedNotificationTracker;
+        }
+
+        @Override
+        public PublishedNotificationTracker publishedNotificationTracker() {
+            return this.publishedNotificationTracker;
+        }
+
+        @Override
+        public PublishedNotificationTracker publishedNotificationTracker(String aTypeName) {
+            return this.publishedNotificationTracker;
+        }
+
+        @Override
+        public void trackMostRecentPublishedNotification(
+                PublishedNotificationTracker aPublishedNotificationTracker,
+                List<Notification> aNotifications) {
+
+            if (!aNotifications.isEmpty()) {
+                aPublishedNotificationTracker.setMostRecentPublishedNotificationId(
+                        aNotifications.get(aNotifications.size() - 1).notificationId());
+            }
+        }
+
+        @Override
+        public String typeName() {
+            return this.publishedNotificationTracker.typeName();
+        }
+    }
+}
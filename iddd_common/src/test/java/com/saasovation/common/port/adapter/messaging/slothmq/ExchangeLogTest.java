@@ -0,0 +1,144 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.port.adapter.messaging.slothmq;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+public class ExchangeLogTest extends TestCase {
+
+	private File directory;
+
+	public ExchangeLogTest() {
+		super();
+	}
+
+	public void testAppendAndRead() throws Exception {
+		ExchangeLog exchangeLog = new ExchangeLog(this.directory, Long.MAX_VALUE);
+
+		long startOffset = exchangeLog.endOffset();
+
+		exchangeLog.append("PUBLISH:TestExchangeTYPE:my.test.typeMSG:one");
+		exchangeLog.append("PUBLISH:TestExchangeTYPE:my.test.typeMSG:two");
+
+		ExchangeLog.Record first = exchangeLog.read(startOffset);
+		ExchangeLog.Record second = exchangeLog.read(first.nextOffset());
+
+		assertEquals("PUBLISH:TestExchangeTYPE:my.test.typeMSG:one", first.message());
+		assertEquals("PUBLISH:TestExchangeTYPE:my.test.typeMSG:two", second.message());
+		assertEquals(exchangeLog.endOffset(), second.nextOffset());
+		assertNull(exchangeLog.read(second.nextOffset()));
+	}
+
+	public void testResumeAfterReopen() throws Exception {
+		ExchangeLog exchangeLog = new ExchangeLog(this.directory, Long.MAX_VALUE);
+
+		// a new subscriber starts with the next message
+
+		assertEquals(exchangeLog.endOffset(), exchangeLog.resumeOffsetOf("subscriber"));
+
+		exchangeLog.append("PUBLISH:TestExchangeTYPE:my.test.typeMSG:one");
+
+		long acknowledgedOffset = exchangeLog.endOffset();
+
+		exchangeLog.acknowledge("subscriber", acknowledgedOffset);
+
+		exchangeLog.append("PUBLISH:TestExchangeTYPE:my.test.typeMSG:two");
+		exchangeLog.append("PUBLISH:TestExchangeTYPE:my.test.typeMSG:three");
+
+		long endOffset = exchangeLog.endOffset();
+
+		exchangeLog.close();
+
+		ExchangeLog reopenedLog = new ExchangeLog(this.directory, Long.MAX_VALUE);
+
+		assertEquals(endOffset, reopenedLog.endOffset());
+		assertEquals(acknowledgedOffset, reopenedLog.resumeOffsetOf("subscriber"));
+
+		ExchangeLog.Record record = reopenedLog.read(reopenedLog.resumeOffsetOf("subscriber"));
+
+		assertEquals("PUBLISH:TestExchangeTYPE:my.test.typeMSG:two", record.message());
+	}
+
+	public void testSegmentsRollAndCompact() throws Exception {
+		ExchangeLog exchangeLog = new ExchangeLog(this.directory, 0L);
+
+		StringBuilder builder = new StringBuilder("PUBLISH:TestExchangeTYPE:my.test.typeMSG:");
+
+		while (builder.length() < 3 * 1024 * 1024) {
+			builder.append("A message large enough to fill segments quickly. ");
+		}
+
+		String message = builder.toString();
+
+		for (int idx = 0; idx < 6; ++idx) {
+			exchangeLog.append(message);
+		}
+
+		assertTrue(this.directory.listFiles().length > 2);
+
+		exchangeLog.acknowledge("subscriber", 0L);
+
+		exchangeLog.compact(System.currentTimeMillis() + 1000L);
+
+		// only the active segment remains, and a subscriber
+		// behind it resumes with its first message
+
+		assertTrue(exchangeLog.startOffset() > 0L);
+		assertEquals(exchangeLog.startOffset(), exchangeLog.resumeOffsetOf("subscriber"));
+		assertEquals(message, exchangeLog.read(exchangeLog.resumeOffsetOf("subscriber")).message());
+	}
+
+	public void testUnlimitedRetentionKeepsSegments() throws Exception {
+		ExchangeLog exchangeLog = new ExchangeLog(this.directory, Long.MAX_VALUE);
+
+		StringBuilder builder = new StringBuilder("PUBLISH:TestExchangeTYPE:my.test.typeMSG:");
+
+		while (builder.length() < 3 * 1024 * 1024) {
+			builder.append("A message large enough to fill segments quickly. ");
+		}
+
+		String message = builder.toString();
+
+		for (int idx = 0; idx < 6; ++idx) {
+			exchangeLog.append(message);
+		}
+
+		exchangeLog.compact(System.currentTimeMillis() + 1000L);
+
+		assertEquals(0L, exchangeLog.startOffset());
+		assertEquals(message, exchangeLog.read(0L).message());
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.directory = File.createTempFile("exchange", "log");
+		this.directory.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File file : this.directory.listFiles()) {
+			file.delete();
+		}
+
+		this.directory.delete();
+
+		super.tearDown();
+	}
+}
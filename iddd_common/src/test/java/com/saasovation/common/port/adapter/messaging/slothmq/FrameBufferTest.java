@@ -0,0 +1,93 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.port.adapter.messaging.slothmq;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class FrameBufferTest extends TestCase {
+
+	public FrameBufferTest() {
+		super();
+	}
+
+	public void testFramesSplitAcrossReads() throws Exception {
+		byte[] bytes = this.bytesOf("PUBLISH:one", "PUBLISH:two", "PUBLISH:three");
+
+		FrameBuffer frameBuffer = new FrameBuffer();
+
+		List<String> frames = new ArrayList<String>();
+
+		// one byte per read splits every header and body
+
+		for (int idx = 0; idx < bytes.length; ++idx) {
+			frameBuffer.readFrom(this.channelOf(bytes, idx, 1), frames);
+		}
+
+		assertEquals(3, frames.size());
+		assertEquals("PUBLISH:one", frames.get(0));
+		assertEquals("PUBLISH:two", frames.get(1));
+		assertEquals("PUBLISH:three", frames.get(2));
+	}
+
+	public void testFrameLargerThanBuffer() throws Exception {
+		StringBuilder builder = new StringBuilder("PUBLISH:");
+
+		while (builder.length() < 200 * 1024) {
+			builder.append("A larger message than the initial buffer. ");
+		}
+
+		String message = builder.toString();
+
+		byte[] bytes = this.bytesOf(message, "PUBLISH:after");
+
+		FrameBuffer frameBuffer = new FrameBuffer();
+
+		List<String> frames = new ArrayList<String>();
+
+		ReadableByteChannel channel = this.channelOf(bytes, 0, bytes.length);
+
+		while (frameBuffer.readFrom(channel, frames) != -1) {
+			;
+		}
+
+		assertEquals(2, frames.size());
+		assertEquals(message, frames.get(0));
+		assertEquals("PUBLISH:after", frames.get(1));
+	}
+
+	private byte[] bytesOf(String... anEncodedMessages) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		for (String encodedMessage : anEncodedMessages) {
+			ByteBuffer frame = FrameBuffer.frameOf(encodedMessage);
+
+			bytes.write(frame.array(), 0, frame.limit());
+		}
+
+		return bytes.toByteArray();
+	}
+
+	private ReadableByteChannel channelOf(byte[] aBytes, int anOffset, int aLength) {
+		return Channels.newChannel(new ByteArrayInputStream(aBytes, anOffset, aLength));
+	}
+}
@@ -0,0 +1,412 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.port.adapter.messaging.slothmq;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SlothServerOverflowTest extends TestCase {
+
+	private static final String FILLER;
+	private static final int MESSAGES = 500;
+	private static final int QUEUE_CAPACITY = 10;
+
+	static {
+		StringBuilder builder = new StringBuilder();
+
+		while (builder.length() < 20 * 1024) {
+			builder.append("A message that fills the socket buffers of a slow client. ");
+		}
+
+		FILLER = builder.toString();
+	}
+
+	private File directory;
+	private SocketChannel publisher;
+	private SlothServer slothServer;
+	private Thread serverThread;
+
+	public SlothServerOverflowTest() {
+		super();
+	}
+
+	public void testSlowClientIsDisconnectedWithoutStallingOthers() throws Exception {
+		this.startServer(SlothServer.OverflowPolicy.DISCONNECT);
+
+		SocketChannel slowClient = this.subscriber("slow", 4096);
+		final SocketChannel fastClient = this.subscriber("fast", 256 * 1024);
+
+		final int[] delivered = new int[1];
+
+		Thread fastReader = new Thread() {
+			@Override
+			public void run() {
+				FrameBuffer frameBuffer = new FrameBuffer();
+				List<String> frames = new ArrayList<String>();
+
+				try {
+					while (delivered[0] < MESSAGES && frameBuffer.readFrom(fastClient, frames) != -1) {
+						delivered[0] += frames.size();
+						frames.clear();
+					}
+				} catch (Exception e) {
+					// fall through
+				}
+			}
+		};
+
+		fastReader.start();
+
+		this.publish(0, MESSAGES);
+
+		fastReader.join(10000L);
+
+		assertEquals(MESSAGES, delivered[0]);
+		assertEquals(1, this.slothServer.disconnectedClientCount());
+
+		slowClient.close();
+		fastClient.close();
+	}
+
+	public void testBlockedClientCatchesUpFromLog() throws Exception {
+		this.startServer(SlothServer.OverflowPolicy.BLOCK);
+
+		SocketChannel observer = this.subscriberFromStart("observer", 256 * 1024);
+		SocketChannel slowClient = this.subscriberFromStart("slow", 4096);
+
+		List<String> observed = new ArrayList<String>();
+		Thread observerReader = this.reader(observer, MESSAGES - 1, observed);
+
+		this.publish(0, MESSAGES);
+
+		observerReader.join(20000L);
+
+		assertEquals(MESSAGES, observed.size());
+
+		Integer slowDepth =
+				this.slothServer.queueDepths().get(slowClient.socket().getLocalPort());
+
+		assertTrue(slowDepth != null && slowDepth.intValue() <= QUEUE_CAPACITY);
+
+		List<String> delivered = new ArrayList<String>();
+		Thread slowReader = this.reader(slowClient, MESSAGES - 1, delivered);
+
+		slowReader.join(20000L);
+
+		this.assertIndexes(0, MESSAGES, delivered);
+
+		assertEquals(0, this.slothServer.droppedMessageCount());
+		assertEquals(0, this.slothServer.disconnectedClientCount());
+
+		observer.close();
+		slowClient.close();
+	}
+
+	public void testDropOldestDropsOnlyLiveMessages() throws Exception {
+		this.startServer(SlothServer.OverflowPolicy.DROP_OLDEST);
+
+		SocketChannel observer = this.subscriberFromStart("observer", 256 * 1024);
+
+		List<String> observed = new ArrayList<String>();
+		Thread observerReader = this.reader(observer, MESSAGES - 1, observed);
+
+		this.publish(0, MESSAGES);
+
+		observerReader.join(20000L);
+
+		// the replay of what was published before it subscribed
+		// overflows its queue, while more is published
+
+		SocketChannel slowClient = this.subscriberFromStart("slow", 4096);
+
+		observerReader = this.reader(observer, 2 * MESSAGES - 1, observed);
+
+		this.publish(MESSAGES, 2 * MESSAGES);
+
+		observerReader.join(20000L);
+
+		assertEquals(2 * MESSAGES, observed.size());
+
+		List<String> delivered = new ArrayList<String>();
+		Thread slowReader = this.reader(slowClient, 2 * MESSAGES - 1, delivered);
+
+		slowReader.join(20000L);
+
+		this.assertIndexes(0, 2 * MESSAGES, delivered);
+
+		assertEquals(0, this.slothServer.droppedMessageCount());
+
+		// once caught up, its live messages are dropped
+
+		observerReader = this.reader(observer, 3 * MESSAGES - 1, observed);
+
+		this.publish(2 * MESSAGES, 3 * MESSAGES);
+
+		observerReader.join(20000L);
+
+		delivered.clear();
+		slowReader = this.reader(slowClient, 3 * MESSAGES - 1, delivered);
+
+		slowReader.join(20000L);
+
+		assertTrue(this.slothServer.droppedMessageCount() > 0);
+		assertTrue(delivered.size() < MESSAGES);
+		assertEquals(3 * MESSAGES - 1, this.indexOf(delivered.get(delivered.size() - 1)));
+
+		for (int idx = 1; idx < delivered.size(); ++idx) {
+			assertTrue(this.indexOf(delivered.get(idx - 1)) < this.indexOf(delivered.get(idx)));
+		}
+
+		observer.close();
+		slowClient.close();
+	}
+
+	public void testReconnectDuringReplayResumes() throws Exception {
+		this.startServer(SlothServer.OverflowPolicy.DISCONNECT);
+
+		SocketChannel observer = this.subscriberFromStart("observer", 256 * 1024);
+
+		List<String> observed = new ArrayList<String>();
+		Thread observerReader = this.reader(observer, MESSAGES - 1, observed);
+
+		this.publish(0, MESSAGES);
+
+		observerReader.join(20000L);
+
+		// a client being replayed is not disconnected for what is
+		// published meanwhile, which would only replay it again
+
+		SocketChannel replayedClient = this.subscriberFromStart("replayed", 4096);
+
+		observerReader = this.reader(observer, 2 * MESSAGES - 1, observed);
+
+		this.publish(MESSAGES, 2 * MESSAGES);
+
+		observerReader.join(20000L);
+
+		assertEquals(2 * MESSAGES, observed.size());
+		assertEquals(0, this.slothServer.disconnectedClientCount());
+
+		List<String> delivered = new ArrayList<String>();
+		Thread replayedReader = this.reader(replayedClient, 2 * MESSAGES - 1, 100, delivered);
+
+		replayedReader.join(20000L);
+
+		this.assertIndexes(0, 100, delivered);
+
+		replayedClient.close();
+
+		// it reconnects in the middle of its replay, acknowledging
+		// what it received, and is replayed the rest as more is published
+
+		replayedClient = this.connect(4096);
+
+		int port = replayedClient.socket().getLocalPort();
+
+		this.send(replayedClient, "ACK:" + this.offsetOf(delivered.get(99)) + ":OverflowExchange:replayed");
+		this.send(replayedClient, "ATTACH:" + port);
+		this.send(replayedClient, "SUBSCRIBE:" + port + ":OverflowExchange:replayed");
+
+		observerReader = this.reader(observer, 3 * MESSAGES - 1, observed);
+
+		this.publish(2 * MESSAGES, 3 * MESSAGES);
+
+		observerReader.join(20000L);
+
+		assertEquals(3 * MESSAGES, observed.size());
+		assertEquals(0, this.slothServer.disconnectedClientCount());
+
+		delivered.clear();
+		replayedReader = this.reader(replayedClient, 3 * MESSAGES - 1, delivered);
+
+		replayedReader.join(20000L);
+
+		this.assertIndexes(100, 3 * MESSAGES, delivered);
+
+		assertEquals(0, this.slothServer.disconnectedClientCount());
+
+		observer.close();
+		replayedClient.close();
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.directory = File.createTempFile("slothmq", "overflow");
+		this.directory.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (this.publisher != null) {
+			this.send(this.publisher, "CLOSE:");
+
+			this.publisher.close();
+		}
+
+		this.serverThread.join(5000L);
+
+		for (File exchangeDirectory : this.directory.listFiles()) {
+			for (File file : exchangeDirectory.listFiles()) {
+				file.delete();
+			}
+
+			exchangeDirectory.delete();
+		}
+
+		this.directory.delete();
+
+		super.tearDown();
+	}
+
+	private void assertIndexes(int aFromIndex, int aToIndex, List<String> aFrames) {
+		assertEquals(aToIndex - aFromIndex, aFrames.size());
+
+		for (int idx = aFromIndex; idx < aToIndex; ++idx) {
+			assertEquals(idx, this.indexOf(aFrames.get(idx - aFromIndex)));
+		}
+	}
+
+	private SocketChannel connect(int aReceiveBufferSize) throws Exception {
+		SocketChannel socketChannel = SocketChannel.open();
+
+		socketChannel.socket().setReceiveBufferSize(aReceiveBufferSize);
+		socketChannel.connect(new InetSocketAddress("localhost", 55555));
+
+		return socketChannel;
+	}
+
+	private int indexOf(String aDeliveredFrame) {
+		int start = aDeliveredFrame.indexOf("MSG:") + 4;
+
+		return Integer.parseInt(aDeliveredFrame.substring(start, aDeliveredFrame.indexOf(':', start)));
+	}
+
+	private String offsetOf(String aDeliveredFrame) {
+		return aDeliveredFrame.substring(8, aDeliveredFrame.indexOf(':', 8));
+	}
+
+	private void publish(int aFromIndex, int aToIndex) throws Exception {
+		if (this.publisher == null) {
+			this.publisher = this.connect(64 * 1024);
+		}
+
+		for (int idx = aFromIndex; idx < aToIndex; ++idx) {
+			this.send(this.publisher, "PUBLISH:OverflowExchangeTYPE:my.test.typeMSG:" + idx + ":" + FILLER);
+		}
+	}
+
+	private Thread reader(SocketChannel aClient, int aLastIndex, List<String> aFrames) {
+		return this.reader(aClient, aLastIndex, Integer.MAX_VALUE, aFrames);
+	}
+
+	private Thread reader(
+			final SocketChannel aClient,
+			final int aLastIndex,
+			final int aMaximumFrames,
+			final List<String> aFrames) {
+
+		// reads until the message of the last index, keeping no more
+		// than the maximum; the caller joins it, and so sees aFrames
+
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				FrameBuffer frameBuffer = new FrameBuffer();
+				List<String> frames = new ArrayList<String>();
+
+				try {
+					while (frameBuffer.readFrom(aClient, frames) != -1) {
+						for (String frame : frames) {
+							aFrames.add(frame);
+
+							if (indexOf(frame) == aLastIndex || aFrames.size() == aMaximumFrames) {
+								return;
+							}
+						}
+
+						frames.clear();
+					}
+				} catch (Exception e) {
+					// fall through
+				}
+			}
+		};
+
+		reader.start();
+
+		return reader;
+	}
+
+	private void send(SocketChannel aSocketChannel, String anEncodedMessage) throws Exception {
+		ByteBuffer frame = FrameBuffer.frameOf(anEncodedMessage);
+
+		while (frame.hasRemaining()) {
+			aSocketChannel.write(frame);
+		}
+	}
+
+	private void startServer(SlothServer.OverflowPolicy anOverflowPolicy) {
+		this.slothServer =
+				new SlothServer(
+						this.directory,
+						Long.MAX_VALUE,
+						anOverflowPolicy,
+						QUEUE_CAPACITY);
+
+		this.serverThread = new Thread() {
+			@Override
+			public void run() {
+				slothServer.execute();
+			}
+		};
+
+		this.serverThread.start();
+	}
+
+	private SocketChannel subscriber(String aSubscriberName, int aReceiveBufferSize) throws Exception {
+		SocketChannel socketChannel = this.connect(aReceiveBufferSize);
+
+		int port = socketChannel.socket().getLocalPort();
+
+		this.send(socketChannel, "ATTACH:" + port);
+		this.send(socketChannel, "SUBSCRIBE:" + port + ":OverflowExchange:" + aSubscriberName);
+
+		return socketChannel;
+	}
+
+	private SocketChannel subscriberFromStart(String aSubscriberName, int aReceiveBufferSize) throws Exception {
+
+		// a subscriber that acknowledged the start of the log is
+		// replayed all of it, however the publishing is timed
+
+		SocketChannel socketChannel = this.connect(aReceiveBufferSize);
+
+		int port = socketChannel.socket().getLocalPort();
+
+		this.send(socketChannel, "ACK:0:OverflowExchange:" + aSubscriberName);
+		this.send(socketChannel, "ATTACH:" + port);
+		this.send(socketChannel, "SUBSCRIBE:" + port + ":OverflowExchange:" + aSubscriberName);
+
+		return socketChannel;
+	}
+}
@@ -96,6 +96,37 @@ public class HashMapEventSourcingEventStoreTest extends TestCase {
         this.eventStore.appendWith(eventId.withStreamVersion(11), events);
     }
 
+    public void testEventCursorSince() throws Exception {
+        assertNotNull(this.eventStore);
+
+        List<DomainEvent> events = new ArrayList<DomainEvent>();
+
+        for (int idx = 1; idx <= 10; ++idx) {
+            events.add(new TestableDomainEvent(idx, "Name: " + idx));
+        }
+
+        EventStreamId eventId = new EventStreamId(UUID.randomUUID().toString());
+
+        this.eventStore.appendWith(eventId, events);
+
+        EventCursor cursor = this.eventStore.eventCursorSince(2);
+
+        int expectedId = 3;
+
+        try {
+            while (cursor.hasNext()) {
+                DomainEvent domainEvent = cursor.next().domainEvent();
+
+                assertEquals(expectedId++, ((TestableDomainEvent) domainEvent).id());
+            }
+        } finally {
+            cursor.close();
+        }
+
+        assertEquals(11, expectedId);
+        assertFalse(cursor.hasNext());
+    }
+
     public void testEventsSince() throws Exception {
         assertNotNull(this.eventStore);
 
@@ -114,6 +145,42 @@ public class HashMapEventSourcingEventStoreTest extends TestCase {
         assertEquals(8, loggedEvents.size());
     }
 
+    public void testEventsSinceInBatches() throws Exception {
+        assertNotNull(this.eventStore);
+
+        List<DomainEvent> events = new ArrayList<DomainEvent>();
+
+        for (int idx = 1; idx <= 10; ++idx) {
+            events.add(new TestableDomainEvent(idx, "Name: " + idx));
+        }
+
+        EventStreamId eventId = new EventStreamId(UUID.randomUUID().toString());
+
+        this.eventStore.appendWith(eventId, events);
+
+        long lastReceivedEvent = 0;
+        int totalEvents = 0;
+        int batches = 0;
+
+        List<DispatchableDomainEvent> loggedEvents =
+                this.eventStore.eventsSince(lastReceivedEvent, 4);
+
+        while (!loggedEvents.isEmpty()) {
+            assertTrue(loggedEvents.size() <= 4);
+            assertEquals(lastReceivedEvent + 1, loggedEvents.get(0).eventId());
+
+            lastReceivedEvent = loggedEvents.get(loggedEvents.size() - 1).eventId();
+            totalEvents += loggedEvents.size();
+            ++batches;
+
+            loggedEvents = this.eventStore.eventsSince(lastReceivedEvent, 4);
+        }
+
+        assertEquals(10, totalEvents);
+        assertEquals(3, batches);
+        assertEquals(10, lastReceivedEvent);
+    }
+
     public void testEventStreamSince() throws Exception {
         assertNotNull(this.eventStore);
 
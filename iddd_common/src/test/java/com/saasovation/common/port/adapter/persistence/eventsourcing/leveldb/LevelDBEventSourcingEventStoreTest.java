@@ -14,16 +14,25 @@
 
 package com.saasovation.common.port.adapter.persistence.eventsourcing.leveldb;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.Options;
+import org.iq80.leveldb.impl.Iq80DBFactory;
+
 import com.saasovation.common.domain.model.DomainEvent;
 import com.saasovation.common.domain.model.DomainEventPublisher;
+import com.saasovation.common.event.EventSerializer;
 import com.saasovation.common.event.TestableDomainEvent;
 import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
+import com.saasovation.common.event.sourcing.EventCursor;
 import com.saasovation.common.event.sourcing.EventStore;
 import com.saasovation.common.event.sourcing.EventStoreAppendException;
 import com.saasovation.common.event.sourcing.EventStoreException;
@@ -106,6 +115,99 @@ public class LevelDBEventSourcingEventStoreTest extends TestCase {
         this.eventStore.appendWith(eventId.withStreamVersion(11), events);
     }
 
+    public void testConcurrentAppendThroughput() throws Exception {
+        final int appendsPerWriter = 250;
+
+        int totalAppends = 0;
+
+        for (int writerCount = 1; writerCount <= 8; writerCount *= 2) {
+            final CountDownLatch start = new CountDownLatch(1);
+
+            List<Thread> writers = new ArrayList<Thread>();
+
+            for (int writer = 0; writer < writerCount; ++writer) {
+                writers.add(new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+
+                            for (int idx = 0; idx < appendsPerWriter; ++idx) {
+                                List<DomainEvent> events = new ArrayList<DomainEvent>();
+                                events.add(new TestableDomainEvent(idx, "Name: " + idx));
+
+                                eventStore.appendWith(
+                                        new EventStreamId(UUID.randomUUID().toString()),
+                                        events);
+                            }
+                        } catch (InterruptedException e) {
+                            // ignore
+                        }
+                    }
+                });
+            }
+
+            for (Thread writer : writers) {
+                writer.start();
+            }
+
+            long startTime = System.nanoTime();
+
+            start.countDown();
+
+            for (Thread writer : writers) {
+                writer.join();
+            }
+
+            long elapsedMillis = Math.max(1L, (System.nanoTime() - startTime) / 1000000L);
+
+            int appends = writerCount * appendsPerWriter;
+
+            totalAppends += appends;
+
+            System.out.println(
+                    "LevelDBJournal writers: " + writerCount
+                    + " appends: " + appends
+                    + " appends/sec: " + (appends * 1000L / elapsedMillis));
+        }
+
+        List<DispatchableDomainEvent> loggedEvents = this.eventStore.eventsSince(0);
+
+        assertEquals(totalAppends, loggedEvents.size());
+        assertEquals(totalAppends, loggedEvents.get(totalAppends - 1).eventId());
+    }
+
+    public void testEventCursorSince() throws Exception {
+        assertNotNull(this.eventStore);
+
+        List<DomainEvent> events = new ArrayList<DomainEvent>();
+
+        for (int idx = 1; idx <= 10; ++idx) {
+            events.add(new TestableDomainEvent(idx, "Name: " + idx));
+        }
+
+        EventStreamId eventId = new EventStreamId(UUID.randomUUID().toString());
+
+        this.eventStore.appendWith(eventId, events);
+
+        EventCursor cursor = this.eventStore.eventCursorSince(2);
+
+        int expectedId = 3;
+
+        try {
+            while (cursor.hasNext()) {
+                DomainEvent domainEvent = cursor.next().domainEvent();
+
+                assertEquals(expectedId++, ((TestableDomainEvent) domainEvent).id());
+            }
+        } finally {
+            cursor.close();
+        }
+
+        assertEquals(11, expectedId);
+        assertFalse(cursor.hasNext());
+    }
+
     public void testEventsSince() throws Exception {
         assertNotNull(this.eventStore);
 
@@ -124,6 +226,42 @@ public class LevelDBEventSourcingEventStoreTest extends TestCase {
         assertEquals(8, loggedEvents.size());
     }
 
+    public void testEventsSinceInBatches() throws Exception {
+        assertNotNull(this.eventStore);
+
+        List<DomainEvent> events = new ArrayList<DomainEvent>();
+
+        for (int idx = 1; idx <= 10; ++idx) {
+            events.add(new TestableDomainEvent(idx, "Name: " + idx));
+        }
+
+        EventStreamId eventId = new EventStreamId(UUID.randomUUID().toString());
+
+        this.eventStore.appendWith(eventId, events);
+
+        long lastReceivedEvent = 0;
+        int totalEvents = 0;
+        int batches = 0;
+
+        List<DispatchableDomainEvent> loggedEvents =
+                this.eventStore.eventsSince(lastReceivedEvent, 4);
+
+        while (!loggedEvents.isEmpty()) {
+            assertTrue(loggedEvents.size() <= 4);
+            assertEquals(lastReceivedEvent + 1, loggedEvents.get(0).eventId());
+
+            lastReceivedEvent = loggedEvents.get(loggedEvents.size() - 1).eventId();
+            totalEvents += loggedEvents.size();
+            ++batches;
+
+            loggedEvents = this.eventStore.eventsSince(lastReceivedEvent, 4);
+        }
+
+        assertEquals(10, totalEvents);
+        assertEquals(3, batches);
+        assertEquals(10, lastReceivedEvent);
+    }
+
     public void testEventStreamSince() throws Exception {
         assertNotNull(this.eventStore);
 
@@ -193,6 +331,195 @@ public class LevelDBEventSourcingEventStoreTest extends TestCase {
         }
     }
 
+    public void testGroupCommitAppend() throws Exception {
+        final LevelDBEventStore levelDBEventStore = (LevelDBEventStore) this.eventStore;
+
+        levelDBEventStore.useGroupCommit(8, 5L);
+
+        final EventStreamId contendedId = new EventStreamId(UUID.randomUUID().toString());
+        final AtomicInteger contendedFailures = new AtomicInteger();
+        final AtomicInteger contendedSuccesses = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<EventStreamId> eventIds = new ArrayList<EventStreamId>();
+
+        List<Thread> writers = new ArrayList<Thread>();
+
+        for (int idx = 1; idx <= 10; ++idx) {
+            final EventStreamId eventId = new EventStreamId(UUID.randomUUID().toString());
+
+            eventIds.add(eventId);
+
+            writers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+
+                        List<DomainEvent> events = new ArrayList<DomainEvent>();
+                        events.add(new TestableDomainEvent(1, "Name: 1"));
+                        events.add(new TestableDomainEvent(2, "Name: 2"));
+
+                        levelDBEventStore.appendWith(eventId, events);
+
+                        // every writer races for the first version of the
+                        // same stream; only one of them may succeed
+
+                        events.clear();
+                        events.add(new TestableDomainEvent(1, "Contended"));
+
+                        levelDBEventStore.appendWith(contendedId, events);
+
+                        contendedSuccesses.incrementAndGet();
+
+                    } catch (EventStoreAppendException e) {
+                        contendedFailures.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+            });
+        }
+
+        for (Thread writer : writers) {
+            writer.start();
+        }
+
+        start.countDown();
+
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        levelDBEventStore.useSingleCommit();
+
+        assertEquals(1, contendedSuccesses.get());
+        assertEquals(9, contendedFailures.get());
+
+        for (EventStreamId eventId : eventIds) {
+            EventStream eventStream = this.eventStore.fullEventStreamFor(eventId);
+
+            assertEquals(2, eventStream.version());
+            assertEquals(2, eventStream.events().size());
+        }
+
+        assertEquals(1, this.eventStore.fullEventStreamFor(contendedId).version());
+
+        List<DispatchableDomainEvent> loggedEvents = this.eventStore.eventsSince(0);
+
+        assertEquals(21, loggedEvents.size());
+
+        for (int idx = 0; idx < loggedEvents.size(); ++idx) {
+            assertEquals(idx + 1, loggedEvents.get(idx).eventId());
+        }
+    }
+
+    public void testMigrateLegacyJournalKeys() throws Exception {
+        this.eventStore.close();
+
+        String streamName = UUID.randomUUID().toString();
+
+        File legacyDatabase = new File(TEST_DATABASE + "Legacy");
+
+        Iq80DBFactory.factory.destroy(legacyDatabase, new Options());
+
+        DB database =
+                Iq80DBFactory.factory.open(
+                        legacyDatabase,
+                        new Options().createIfMissing(true));
+
+        for (int idx = 1; idx <= 3; ++idx) {
+            String referenceKey = "ES_R:" + streamName + ":" + idx;
+
+            String eventValue =
+                    referenceKey
+                    + "#" + TestableDomainEvent.class.getName()
+                    + "#" + EventSerializer.instance().serialize(
+                            new TestableDomainEvent(idx, "Name: " + idx));
+
+            database.put(("ES_J:" + idx).getBytes(), eventValue.getBytes());
+            database.put(referenceKey.getBytes(), ("" + idx).getBytes());
+        }
+
+        database.put("ES_J:0".getBytes(), "3".getBytes());
+
+        database.close();
+
+        this.eventStore = LevelDBEventStore.instance(TEST_DATABASE + "Legacy");
+
+        EventStreamId eventId = new EventStreamId(streamName);
+
+        EventStream eventStream = this.eventStore.fullEventStreamFor(eventId);
+
+        assertEquals(3, eventStream.version());
+        assertEquals(3, eventStream.events().size());
+
+        List<DomainEvent> events = new ArrayList<DomainEvent>();
+        events.add(new TestableDomainEvent(4, "Name: " + 4));
+
+        this.eventStore.appendWith(eventId.withStreamVersion(4), events);
+
+        List<DispatchableDomainEvent> loggedEvents = this.eventStore.eventsSince(1);
+
+        assertEquals(3, loggedEvents.size());
+        assertEquals(4, loggedEvents.get(2).eventId());
+        assertEquals(4, ((TestableDomainEvent) loggedEvents.get(2).domainEvent()).id());
+    }
+
+    public void testResumeInterruptedMigration() throws Exception {
+        this.eventStore.close();
+
+        String streamName = UUID.randomUUID().toString();
+
+        File legacyDatabase = new File(TEST_DATABASE + "Legacy");
+
+        Iq80DBFactory.factory.destroy(legacyDatabase, new Options());
+
+        DB database =
+                Iq80DBFactory.factory.open(
+                        legacyDatabase,
+                        new Options().createIfMissing(true));
+
+        // the first two events were migrated before the
+        // migration was interrupted, the third was not
+
+        for (int idx = 1; idx <= 3; ++idx) {
+            String referenceKey = "ES_R:" + streamName + ":" + idx;
+
+            String eventValue =
+                    referenceKey
+                    + "#" + TestableDomainEvent.class.getName()
+                    + "#" + EventSerializer.instance().serialize(
+                            new TestableDomainEvent(idx, "Name: " + idx));
+
+            if (idx <= 2) {
+                database.put(JournalKeyProvider.journalKeyFor(idx), eventValue.getBytes());
+                database.put(
+                        JournalKeyProvider.referenceKeyBytesFrom(referenceKey),
+                        JournalKeyProvider.longValueBytes(idx));
+            } else {
+                database.put(("ES_J:" + idx).getBytes(), eventValue.getBytes());
+                database.put(referenceKey.getBytes(), ("" + idx).getBytes());
+            }
+        }
+
+        database.put("ES_J:0".getBytes(), "3".getBytes());
+        database.put(LevelDBJournal.ES_KEY_FORMAT_KEY, LevelDBJournal.ES_KEY_FORMAT_MIGRATING);
+
+        database.close();
+
+        this.eventStore = LevelDBEventStore.instance(TEST_DATABASE + "Legacy");
+
+        EventStream eventStream = this.eventStore.fullEventStreamFor(new EventStreamId(streamName));
+
+        assertEquals(3, eventStream.version());
+        assertEquals(3, eventStream.events().size());
+        assertEquals(3, ((TestableDomainEvent) eventStream.events().get(2)).id());
+
+        List<DispatchableDomainEvent> loggedEvents = this.eventStore.eventsSince(0);
+
+        assertEquals(3, loggedEvents.size());
+    }
+
     @Override
     protected void setUp() throws Exception {
         this.eventStore = LevelDBEventStore.instance(TEST_DATABASE);
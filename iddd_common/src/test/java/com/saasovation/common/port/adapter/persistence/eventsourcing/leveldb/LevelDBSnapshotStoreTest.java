@@ -0,0 +1,91 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+package com.saasovation.common.port.adapter.persistence.eventsourcing.leveldb;
+
+import java.util.UUID;
+
+import junit.framework.TestCase;
+
+import com.saasovation.common.event.sourcing.AggregateSnapshot;
+import com.saasovation.common.event.sourcing.EventCountSnapshotPolicy;
+import com.saasovation.common.event.sourcing.SnapshotPolicy;
+import com.saasovation.common.event.sourcing.SnapshotStore;
+
+public class LevelDBSnapshotStoreTest extends TestCase {
+
+    protected static final String TEST_DATABASE = LevelDBSnapshotStoreTest.class.getResource("/").getPath() + "/data/leveldb/esSnapshotStore";
+
+    private SnapshotStore snapshotStore;
+
+    public LevelDBSnapshotStoreTest() {
+        super();
+    }
+
+    public void testSaveAndSnapshotOf() throws Exception {
+        String streamName = UUID.randomUUID().toString();
+
+        assertNull(this.snapshotStore.snapshotOf(streamName));
+
+        this.snapshotStore.save(new AggregateSnapshot(streamName, 100, "TestType", "{\"name\":\"a#b\"}"));
+
+        AggregateSnapshot snapshot = this.snapshotStore.snapshotOf(streamName);
+
+        assertNotNull(snapshot);
+        assertEquals(streamName, snapshot.streamName());
+        assertEquals(100, snapshot.streamVersion());
+        assertEquals("TestType", snapshot.snapshotType());
+        assertEquals("{\"name\":\"a#b\"}", snapshot.snapshotData());
+    }
+
+    public void testNewerSnapshotIsKept() throws Exception {
+        String streamName = UUID.randomUUID().toString();
+
+        this.snapshotStore.save(new AggregateSnapshot(streamName, 200, "TestType", "200"));
+        this.snapshotStore.save(new AggregateSnapshot(streamName, 100, "TestType", "100"));
+
+        assertEquals(200, this.snapshotStore.snapshotOf(streamName).streamVersion());
+        assertEquals("200", this.snapshotStore.snapshotOf(streamName).snapshotData());
+
+        this.snapshotStore.save(new AggregateSnapshot(streamName, 300, "TestType", "300"));
+
+        assertEquals(300, this.snapshotStore.snapshotOf(streamName).streamVersion());
+    }
+
+    public void testEventCountSnapshotPolicy() throws Exception {
+        SnapshotPolicy snapshotPolicy = new EventCountSnapshotPolicy(100);
+
+        assertFalse(snapshotPolicy.isSnapshotDue(0, 1));
+        assertFalse(snapshotPolicy.isSnapshotDue(0, 99));
+        assertTrue(snapshotPolicy.isSnapshotDue(99, 100));
+        assertTrue(snapshotPolicy.isSnapshotDue(95, 105));
+        assertFalse(snapshotPolicy.isSnapshotDue(100, 199));
+        assertTrue(snapshotPolicy.isSnapshotDue(100, 301));
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        this.snapshotStore = LevelDBSnapshotStore.instance(TEST_DATABASE);
+
+        super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.snapshotStore.purge();
+
+        this.snapshotStore.close();
+
+        super.tearDown();
+    }
+}
@@ -0,0 +1,348 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.port.adapter.persistence.eventsourcing.mysql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import com.saasovation.common.domain.model.DomainEvent;
+import com.saasovation.common.event.TestableDomainEvent;
+import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
+import com.saasovation.common.event.sourcing.EventStoreAppendException;
+import com.saasovation.common.event.sourcing.EventStream;
+import com.saasovation.common.event.sourcing.EventStreamId;
+
+/**
+ * I run MySQLJDBCEventStore against a tbl_es_event_store held in
+ * memory, without a database, to show the rows it persists and
+ * reads back and the round trips it takes to append them.
+ */
+public class MySQLJDBCEventStoreRoundTripTest extends TestCase {
+
+    private static final int EVENTS_PER_SAVE = 20;
+
+    private long nextEventId;
+    private int roundTrips;
+    private int rollbacks;
+    private List<Map<String, Object>> rows;
+
+    public MySQLJDBCEventStoreRoundTripTest() {
+        super();
+    }
+
+    public void testAppendRoundTripsPerSave() throws Exception {
+        MySQLJDBCEventStore eventStore = new MySQLJDBCEventStore(this.eventStoreDataSource());
+
+        int saves = 50;
+
+        List<EventStreamId> streamIds = new ArrayList<EventStreamId>();
+
+        long start = System.nanoTime();
+
+        for (int save = 0; save < saves; ++save) {
+            EventStreamId streamId = new EventStreamId(UUID.randomUUID().toString());
+
+            eventStore.appendWith(streamId, this.events());
+
+            streamIds.add(streamId);
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(
+                "MySQLJDBCEventStore append: "
+                + EVENTS_PER_SAVE + " events per save, "
+                + (this.roundTrips / saves) + " round trips per save (insert batch and commit), "
+                + (elapsed / saves / 1000L) + " us per save excluding network");
+
+        assertEquals(saves * 2, this.roundTrips);
+
+        assertEquals(saves * EVENTS_PER_SAVE, this.rows.size());
+
+        // each save is one stream, versioned from 1 in event order
+
+        for (EventStreamId streamId : streamIds) {
+            EventStream eventStream = eventStore.eventStreamSince(streamId);
+
+            assertEquals(EVENTS_PER_SAVE, eventStream.version());
+            assertEquals(EVENTS_PER_SAVE, eventStream.events().size());
+
+            for (int idx = 0; idx < EVENTS_PER_SAVE; ++idx) {
+                TestableDomainEvent event = (TestableDomainEvent) eventStream.events().get(idx);
+
+                assertEquals("Name: " + (idx + 1), event.name());
+            }
+        }
+
+        EventStream tail = eventStore.eventStreamSince(streamIds.get(0).withStreamVersion(EVENTS_PER_SAVE - 1));
+
+        assertEquals(EVENTS_PER_SAVE, tail.version());
+        assertEquals(2, tail.events().size());
+
+        // and all events read back in the order they were appended
+
+        List<DispatchableDomainEvent> events = eventStore.eventsSince(0);
+
+        assertEquals(saves * EVENTS_PER_SAVE, events.size());
+
+        for (int idx = 0; idx < events.size(); ++idx) {
+            DispatchableDomainEvent event = events.get(idx);
+
+            assertEquals(idx + 1, event.eventId());
+            assertEquals(
+                    "Name: " + (idx % EVENTS_PER_SAVE + 1),
+                    ((TestableDomainEvent) event.domainEvent()).name());
+        }
+
+        assertEquals(EVENTS_PER_SAVE, eventStore.eventsSince(EVENTS_PER_SAVE * 2, EVENTS_PER_SAVE).size());
+        assertEquals(EVENTS_PER_SAVE * 2 + 1, eventStore.eventsSince(EVENTS_PER_SAVE * 2, EVENTS_PER_SAVE).get(0).eventId());
+    }
+
+    public void testAppendConflictIsAppendException() throws Exception {
+        MySQLJDBCEventStore eventStore = new MySQLJDBCEventStore(this.eventStoreDataSource());
+
+        EventStreamId streamId = new EventStreamId(UUID.randomUUID().toString());
+
+        eventStore.appendWith(streamId, this.events());
+
+        try {
+            eventStore.appendWith(streamId.withStreamVersion(EVENTS_PER_SAVE), this.events());
+
+            fail("The duplicate stream version should have been rejected.");
+
+        } catch (EventStoreAppendException e) {
+            assertTrue(e.getCause() instanceof BatchUpdateException);
+        }
+
+        assertEquals(1, this.rollbacks);
+
+        // none of the conflicting batch is persisted
+
+        assertEquals(EVENTS_PER_SAVE, this.rows.size());
+        assertEquals(EVENTS_PER_SAVE, eventStore.eventStreamSince(streamId).version());
+        assertEquals(EVENTS_PER_SAVE, eventStore.eventsSince(0).size());
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        this.nextEventId = 1;
+        this.rollbacks = 0;
+        this.roundTrips = 0;
+        this.rows = new ArrayList<Map<String, Object>>();
+
+        super.setUp();
+    }
+
+    private void commit(List<Map<String, Object>> anInsertedRows) throws Exception {
+        ++this.roundTrips;
+
+        for (Map<String, Object> row : anInsertedRows) {
+            row.put("event_id", this.nextEventId++);
+
+            this.rows.add(row);
+        }
+
+        anInsertedRows.clear();
+    }
+
+    private DataSource eventStoreDataSource() {
+        return (DataSource) Proxy.newProxyInstance(
+                this.getClass().getClassLoader(),
+                new Class<?>[] { DataSource.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+                        if (aMethod.getName().equals("getConnection")) {
+                            return eventStoreConnection();
+                        }
+
+                        return null;
+                    }
+                });
+    }
+
+    private Connection eventStoreConnection() {
+        final List<Map<String, Object>> insertedRows = new ArrayList<Map<String, Object>>();
+
+        return (Connection) Proxy.newProxyInstance(
+                this.getClass().getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+                        if (aMethod.getName().equals("prepareStatement")) {
+                            return statementOf((String) anArgs[0], insertedRows);
+                        } else if (aMethod.getName().equals("commit")) {
+                            commit(insertedRows);
+                        } else if (aMethod.getName().equals("rollback")) {
+                            ++rollbacks;
+                            insertedRows.clear();
+                        }
+
+                        return null;
+                    }
+                });
+    }
+
+    private List<DomainEvent> events() {
+        List<DomainEvent> events = new ArrayList<DomainEvent>();
+
+        for (int idx = 1; idx <= EVENTS_PER_SAVE; ++idx) {
+            events.add(new TestableDomainEvent(idx, "Name: " + idx));
+        }
+
+        return events;
+    }
+
+    private void insert(
+            List<Map<String, Object>> aBatch,
+            List<Map<String, Object>> anInsertedRows)
+    throws Exception {
+
+        ++this.roundTrips;
+
+        // the composite primary key of {stream_name}:{stream_version}
+
+        for (Map<String, Object> row : aBatch) {
+            if (this.rowOf((String) row.get("stream_name"), (Integer) row.get("stream_version"), anInsertedRows) != null) {
+                throw new BatchUpdateException(
+                        "Duplicate entry for key 'PRIMARY'", "23000", 1062, new int[0]);
+            }
+
+            anInsertedRows.add(row);
+        }
+    }
+
+    private ResultSet resultOf(final List<Map<String, Object>> aRows) {
+        return (ResultSet) Proxy.newProxyInstance(
+                this.getClass().getClassLoader(),
+                new Class<?>[] { ResultSet.class },
+                new InvocationHandler() {
+                    private int row = -1;
+
+                    @Override
+                    public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+                        if (aMethod.getName().equals("next")) {
+                            return ++this.row < aRows.size();
+                        } else if (aMethod.getName().startsWith("get")) {
+                            return aRows.get(this.row).get(anArgs[0]);
+                        }
+
+                        return null;
+                    }
+                });
+    }
+
+    private Map<String, Object> rowOf(
+            String aStreamName,
+            int aStreamVersion,
+            List<Map<String, Object>> anInsertedRows) {
+
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(this.rows);
+
+        rows.addAll(anInsertedRows);
+
+        for (Map<String, Object> row : rows) {
+            if (row.get("stream_name").equals(aStreamName)
+                    && row.get("stream_version").equals(aStreamVersion)) {
+                return row;
+            }
+        }
+
+        return null;
+    }
+
+    private ResultSet select(String aSql, Map<Integer, Object> aParameters) {
+        ++this.roundTrips;
+
+        List<Map<String, Object>> selected = new ArrayList<Map<String, Object>>();
+
+        // rows are kept in event_id order, which is also the
+        // stream_version order of each stream
+
+        for (Map<String, Object> row : this.rows) {
+            if (aSql.contains("WHERE event_id > ?")) {
+                if ((Long) row.get("event_id") > (Long) aParameters.get(1)
+                        && (!aSql.contains("LIMIT ?") || selected.size() < (Integer) aParameters.get(2))) {
+                    selected.add(row);
+                }
+            } else if (aSql.contains("WHERE stream_name = ? AND stream_version >= ?")) {
+                if (row.get("stream_name").equals(aParameters.get(1))
+                        && (Integer) row.get("stream_version") >= (Integer) aParameters.get(2)) {
+                    selected.add(row);
+                }
+            } else {
+                fail("Unexpected query: " + aSql);
+            }
+        }
+
+        return this.resultOf(selected);
+    }
+
+    private PreparedStatement statementOf(
+            final String aSql,
+            final List<Map<String, Object>> anInsertedRows) {
+
+        final Map<Integer, Object> parameters = new HashMap<Integer, Object>();
+        final List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+
+        return (PreparedStatement) Proxy.newProxyInstance(
+                this.getClass().getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object aProxy, Method aMethod, Object[] anArgs) throws Throwable {
+                        if (aMethod.getName().equals("setFetchSize")) {
+                            return null;
+                        } else if (aMethod.getName().startsWith("set")) {
+                            parameters.put((Integer) anArgs[0], anArgs[1]);
+                        } else if (aMethod.getName().equals("addBatch")) {
+                            Map<String, Object> row = new HashMap<String, Object>();
+                            row.put("event_body", parameters.get(2));
+                            row.put("event_type", parameters.get(3));
+                            row.put("stream_name", parameters.get(4));
+                            row.put("stream_version", parameters.get(5));
+                            batch.add(row);
+                        } else if (aMethod.getName().equals("executeBatch")) {
+                            try {
+                                insert(batch, anInsertedRows);
+                            } finally {
+                                batch.clear();
+                            }
+
+                            return new int[0];
+                        } else if (aMethod.getName().equals("executeQuery")) {
+                            return select(aSql, parameters);
+                        }
+
+                        return null;
+                    }
+                });
+    }
+}
@@ -32,6 +32,7 @@ import com.saasovation.common.domain.model.DomainEvent;
 import com.saasovation.common.domain.model.DomainEventPublisher;
 import com.saasovation.common.event.TestableDomainEvent;
 import com.saasovation.common.event.sourcing.DispatchableDomainEvent;
+import com.saasovation.common.event.sourcing.EventCursor;
 import com.saasovation.common.event.sourcing.EventStore;
 import com.saasovation.common.event.sourcing.EventStoreAppendException;
 import com.saasovation.common.event.sourcing.EventStoreException;
@@ -113,6 +114,37 @@ public class MySQLJDBCEventStoreTest extends TestCase {
         this.eventStore.appendWith(eventId.withStreamVersion(11), events);
     }
 
+    public void testEventCursorSince() throws Exception {
+        assertNotNull(this.eventStore);
+
+        List<DomainEvent> events = new ArrayList<DomainEvent>();
+
+        for (int idx = 1; idx <= 10; ++idx) {
+            events.add(new TestableDomainEvent(idx, "Name: " + idx));
+        }
+
+        EventStreamId eventId = new EventStreamId(UUID.randomUUID().toString());
+
+        this.eventStore.appendWith(eventId, events);
+
+        EventCursor cursor = this.eventStore.eventCursorSince(this.greatestEventId() - 8L);
+
+        int expectedId = 3;
+
+        try {
+            while (cursor.hasNext()) {
+                DomainEvent domainEvent = cursor.next().domainEvent();
+
+                assertEquals(expectedId++, ((TestableDomainEvent) domainEvent).id());
+            }
+        } finally {
+            cursor.close();
+        }
+
+        assertEquals(11, expectedId);
+        assertFalse(cursor.hasNext());
+    }
+
     public void testEventsSince() throws Exception {
         assertNotNull(this.eventStore);
 
@@ -141,6 +141,105 @@ public class LevelDBPersistenceTest extends LevelDBTest {
          assertEquals(3, savedLevels.size());
     }
 
+    public void testMigrateSerializedReferenceSet() throws Exception {
+        Level level1 = new Level("1", "One", 1);
+        Level level2 = new Level("2", "Two", 2);
+        Level level3 = new Level("3", "Three", 3);
+
+        LevelDBUnitOfWork.start(this.database());
+        levelRepository.save(level1);
+        levelRepository.save(level2);
+        LevelDBUnitOfWork.current().commit();
+
+        // the former format, one serialized set per reference key
+
+        this.database().delete((LevelRepository.ALL_LEVELS + '\u0000' + "LEVEL#PK:1").getBytes());
+        this.database().delete((LevelRepository.ALL_LEVELS + '\u0000' + "LEVEL#PK:2").getBytes());
+        this.database().put(
+                LevelRepository.ALL_LEVELS.getBytes(),
+                "[\"LEVEL#PK:1\",\"LEVEL#PK:2\"]".getBytes());
+
+        assertEquals(2, levelRepository.allLevels().size());
+
+        LevelDBUnitOfWork.start(this.database());
+        levelRepository.save(level3);
+        assertEquals(3, LevelDBUnitOfWork.current().readKeys(new LevelDBKey(LevelRepository.ALL_LEVELS)).size());
+        LevelDBUnitOfWork.current().commit();
+
+        assertNull(this.database().get(LevelRepository.ALL_LEVELS.getBytes()));
+        assertEquals(3, levelRepository.allLevels().size());
+
+        LevelDBUnitOfWork.start(this.database());
+        levelRepository.remove(level1);
+        LevelDBUnitOfWork.current().commit();
+
+        assertEquals(2, levelRepository.allLevels().size());
+        assertNull(levelRepository.levelOfId("1"));
+        assertEquals(level3.name(), levelRepository.levelOfName("Three").name());
+    }
+
+    public void testReadObjectsThroughCache() throws Exception {
+        LevelDBObjectCache.enable(this.database(), 10);
+
+        try {
+            LevelDBUnitOfWork.start(this.database());
+            levelRepository.save(new Level("1", "One", 1));
+            levelRepository.save(new Level("2", "Two", 2));
+            levelRepository.save(new Level("3", "Three", 3));
+            LevelDBUnitOfWork.current().commit();
+
+            List<Object> keys = new ArrayList<Object>();
+            keys.add("LEVEL#PK:3");
+            keys.add("LEVEL#PK:0");
+            keys.add("LEVEL#PK:1");
+            keys.add("LEVEL#PK:2");
+
+            List<Level> levels = LevelDBUnitOfWork.readOnly(this.database()).readObjects(keys, Level.class);
+
+            assertEquals(3, levels.size());
+            assertEquals("3", levels.get(0).id());
+            assertEquals("1", levels.get(1).id());
+            assertEquals("2", levels.get(2).id());
+
+            // removed behind the unit of work's back, so only the cache has it
+
+            this.database().delete("LEVEL#PK:3".getBytes());
+
+            List<Level> cachedLevels = LevelDBUnitOfWork.readOnly(this.database()).readObjects(keys, Level.class);
+
+            assertEquals(3, cachedLevels.size());
+            assertNotSame(levels.get(0), cachedLevels.get(0));
+            assertEquals(levels.get(0).id(), cachedLevels.get(0).id());
+            assertEquals(levels.get(0).value(), cachedLevels.get(0).value());
+            assertNotSame(levels.get(2), cachedLevels.get(2));
+
+            cachedLevels.get(0).changeValue(33);
+
+            assertEquals(3, LevelDBUnitOfWork.readOnly(this.database()).readObjects(keys, Level.class).get(0).value());
+
+            LevelDBUnitOfWork.start(this.database());
+            levelRepository.save(new Level("2", "Two", 22));
+            LevelDBUnitOfWork.current().commit();
+
+            levels = LevelDBUnitOfWork.readOnly(this.database()).readObjects(keys, Level.class);
+
+            assertEquals("3", levels.get(0).id());
+            assertEquals(22, levels.get(2).value());
+
+            LevelDBUnitOfWork.start(this.database());
+            levelRepository.remove(levels.get(0));
+            LevelDBUnitOfWork.current().commit();
+
+            levels = LevelDBUnitOfWork.readOnly(this.database()).readObjects(keys, Level.class);
+
+            assertEquals(2, levels.size());
+            assertEquals("1", levels.get(0).id());
+
+        } finally {
+            LevelDBObjectCache.disable(this.database());
+        }
+    }
+
     private static class LevelRepository extends AbstractLevelDBRepository {
 
         private static final String PRIMARY = "LEVEL#PK";
@@ -264,5 +363,9 @@ public class LevelDBPersistenceTest extends LevelDBTest {
         public int value() {
             return this.value;
         }
+
+        public void changeValue(int aValue) {
+            this.value = aValue;
+        }
     }
 }
@@ -0,0 +1,226 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.saasovation.common.serializer;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class BinaryObjectSerializerTest extends TestCase {
+
+    public BinaryObjectSerializerTest() {
+        super();
+    }
+
+    public void testRoundTrip() throws Exception {
+        Order order = new Order("o1", new Date(1358000000000L), Status.SHIPPED);
+        order.lines.add(new OrderLine("Widget", 3, 2.5d));
+        order.lines.add(new OrderLine("Gadget éè", 1, 10.0d));
+        order.tags.add("rush");
+        order.tags.add("gift");
+        order.attributes.put("channel", 7L);
+
+        byte[] serialization = BinaryObjectSerializer.instance().serialize(order);
+
+        assertTrue(BinaryObjectSerializer.isBinarySerialization(serialization));
+
+        Order deserializedOrder = BinaryObjectSerializer.instance().deserialize(serialization, Order.class);
+
+        assertEquals("o1", deserializedOrder.id);
+        assertEquals(order.placedOn, deserializedOrder.placedOn);
+        assertEquals(Status.SHIPPED, deserializedOrder.status);
+        assertNull(deserializedOrder.note);
+        assertEquals(2, deserializedOrder.lines.size());
+        assertEquals("Gadget éè", deserializedOrder.lines.get(1).product);
+        assertEquals(3, deserializedOrder.lines.get(0).quantity);
+        assertEquals(2.5d, deserializedOrder.lines.get(0).price);
+        assertEquals(order.tags, deserializedOrder.tags);
+        assertEquals(Long.valueOf(7L), deserializedOrder.attributes.get("channel"));
+    }
+
+    public void testChangedClassIsTolerated() throws Exception {
+        OrderLine line = new OrderLine("Widget", 3, 2.5d);
+
+        byte[] serialization = BinaryObjectSerializer.instance().serialize(line);
+
+        ChangedOrderLine changedLine =
+                BinaryObjectSerializer.instance().deserialize(serialization, ChangedOrderLine.class);
+
+        assertEquals("Widget", changedLine.product);
+        assertEquals(3L, changedLine.quantity);
+        assertEquals("each", changedLine.unit);
+    }
+
+    public void testChangedFieldTypeIsRejected() throws Exception {
+        OrderLine line = new OrderLine("Widget", 3, 2.5d);
+
+        byte[] serialization = BinaryObjectSerializer.instance().serialize(line);
+
+        try {
+            BinaryObjectSerializer.instance().deserialize(serialization, RetypedOrderLine.class);
+
+            fail("The String product should not have been assigned to a Date.");
+
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testUnreadableObjectsAreRejected() throws Exception {
+        Shipment shipment = new Shipment();
+        shipment.carrier = new Courier();
+
+        try {
+            BinaryObjectSerializer.instance().serialize(shipment);
+
+            fail("The subclass of the abstract Carrier should have been rejected.");
+
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            BinaryObjectSerializer.instance().serialize(new Parcel(1));
+
+            fail("The class without a no-arg constructor should have been rejected.");
+
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testJSONIsNotBinary() throws Exception {
+        byte[] serialization = "{\"id\":\"o1\"}".getBytes("UTF-8");
+
+        assertFalse(BinaryObjectSerializer.isBinarySerialization(serialization));
+
+        try {
+            BinaryObjectSerializer.instance().deserialize(serialization, Order.class);
+
+            fail("The JSON serialization should have been rejected.");
+
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private enum Status {
+        PLACED, SHIPPED
+    }
+
+    private static class Order {
+        private Map<String,Long> attributes;
+        private String id;
+        private List<OrderLine> lines;
+        private String note;
+        private Date placedOn;
+        private Status status;
+        private Set<String> tags;
+
+        Order(String anId, Date aPlacedOn, Status aStatus) {
+            this();
+
+            this.id = anId;
+            this.placedOn = aPlacedOn;
+            this.status = aStatus;
+        }
+
+        private Order() {
+            super();
+
+            this.attributes = new HashMap<String,Long>();
+            this.lines = new ArrayList<OrderLine>();
+            this.tags = new LinkedHashSet<String>();
+        }
+    }
+
+    private static class OrderLine {
+        private double price;
+        private String product;
+        private int quantity;
+
+        OrderLine(String aProduct, int aQuantity, double aPrice) {
+            this();
+
+            this.price = aPrice;
+            this.product = aProduct;
+            this.quantity = aQuantity;
+        }
+
+        private OrderLine() {
+            super();
+        }
+    }
+
+    private static class RetypedOrderLine {
+        private Date product;
+
+        private RetypedOrderLine() {
+            super();
+        }
+    }
+
+    private static abstract class Carrier {
+        private String name;
+
+        protected Carrier() {
+            super();
+
+            this.name = "any";
+        }
+    }
+
+    private static class Courier extends Carrier {
+        private Courier() {
+            super();
+        }
+    }
+
+    private static class Parcel {
+        private int weight;
+
+        Parcel(int aWeight) {
+            super();
+
+            this.weight = aWeight;
+        }
+    }
+
+    private static class Shipment {
+        private Carrier carrier;
+
+        private Shipment() {
+            super();
+        }
+    }
+
+    private static class ChangedOrderLine {
+        private String product;
+        private long quantity;
+        private String unit;
+
+        private ChangedOrderLine() {
+            super();
+
+            this.unit = "each";
+        }
+    }
+}
@@ -25,28 +25,56 @@ import com.saasovation.common.notification.NotificationPublisher;
 
 public class NotificationApplicationService {
 
+    private static final int BULK_NOTIFICATIONS_PER_LOG = 5000;
+
+    private int bulkNotificationsPerLog;
+
     @Autowired
     private EventStore eventStore;
 
+    private NotificationLogFactory notificationLogFactory;
+
+    private int notificationsPerLog;
+
     @Autowired
     private NotificationPublisher notificationPublisher;
 
     public NotificationApplicationService() {
         super();
+
+        this.setBulkNotificationsPerLog(BULK_NOTIFICATIONS_PER_LOG);
+        this.setNotificationsPerLog(NotificationLogFactory.notificationsPerLog());
+    }
+
+    public int bulkNotificationsPerLog() {
+        return this.bulkNotificationsPerLog;
+    }
+
+    public void setBulkNotificationsPerLog(int aBulkNotificationsPerLog) {
+        this.bulkNotificationsPerLog = aBulkNotificationsPerLog;
+    }
+
+    public int notificationsPerLog() {
+        return this.notificationsPerLog;
+    }
+
+    public void setNotificationsPerLog(int aNotificationsPerLog) {
+        this.notificationsPerLog = aNotificationsPerLog;
     }
 
     @Transactional(readOnly=true)
     public NotificationLog currentNotificationLog() {
-        NotificationLogFactory factory = new NotificationLogFactory(this.eventStore());
-
-        return factory.createCurrentNotificationLog();
+        return this.notificationLogFactory().createCurrentNotificationLog();
     }
 
     @Transactional(readOnly=true)
     public NotificationLog notificationLog(String aNotificationLogId) {
-        NotificationLogFactory factory = new NotificationLogFactory(this.eventStore());
+        return this.notificationLogFactory().createNotificationLog(new NotificationLogId(aNotificationLogId));
+    }
 
-        return factory.createNotificationLog(new NotificationLogId(aNotificationLogId));
+    @Transactional(readOnly=true)
+    public boolean isArchivedNotificationLog(String aNotificationLogId) {
+        return this.notificationLogFactory().isArchived(new NotificationLogId(aNotificationLogId));
     }
 
     @Transactional
@@ -58,6 +86,20 @@ public class NotificationApplicationService {
         return this.eventStore;
     }
 
+    protected synchronized NotificationLogFactory notificationLogFactory() {
+        // kept for the life of this service so that its
+        // archived logs are cached and its current log is
+        // maintained incrementally
+        if (this.notificationLogFactory == null) {
+            this.notificationLogFactory =
+                    new NotificationLogFactory(
+                            this.eventStore(),
+                            this.notificationsPerLog());
+        }
+
+        return this.notificationLogFactory;
+    }
+
     protected NotificationPublisher notificationPublisher() {
         return this.notificationPublisher;
     }
@@ -14,25 +14,57 @@
 
 package com.saasovation.identityaccess.resource;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import com.saasovation.common.media.Link;
 import com.saasovation.common.media.OvationsMediaType;
+import com.saasovation.common.notification.Notification;
 import com.saasovation.common.notification.NotificationLog;
+import com.saasovation.common.notification.NotificationLogId;
 import com.saasovation.common.serializer.ObjectSerializer;
 import com.saasovation.identityaccess.application.representation.NotificationLogRepresentation;
 
 @Path("/notifications")
 public class NotificationResource extends AbstractResource {
 
+    private static final int COMPLETE_MAX_AGE = 365 * 24 * 60 * 60;
+
+    private static final int MAX_CACHED_LOGS = 1000;
+
+    private static final long MAX_CACHED_LOG_BYTES = 16L * 1024L * 1024L;
+
+    // only complete logs never change, so only their serializations
+    // are kept, keyed by self link, which is the log's id under the
+    // base URI through which it was requested; bounded by count and
+    // by size, the least recently used being dropped first
+    private static final Map<String,byte[]> completeNotificationLogs =
+        new LinkedHashMap<String,byte[]>(16, 0.75f, true);
+
+    private static long completeNotificationLogBytes;
+
     public NotificationResource() {
         super();
     }
@@ -40,7 +72,8 @@ public class NotificationResource extends AbstractResource {
     @GET
     @Produces({ OvationsMediaType.ID_OVATION_TYPE })
     public Response getCurrentNotificationLog(
-            @Context UriInfo aUriInfo) {
+            @Context UriInfo aUriInfo,
+            @Context Request aRequest) {
 
         NotificationLog currentNotificationLog =
             this.notificationApplicationService()
@@ -53,7 +86,8 @@ public class NotificationResource extends AbstractResource {
         Response response =
             this.currentNotificationLogResponse(
                     currentNotificationLog,
-                    aUriInfo);
+                    aUriInfo,
+                    aRequest);
 
         return response;
     }
@@ -63,7 +97,34 @@ public class NotificationResource extends AbstractResource {
     @Produces({ OvationsMediaType.ID_OVATION_TYPE })
     public Response getNotificationLog(
             @PathParam("notificationId") String aNotificationId,
-            @Context UriInfo aUriInfo) {
+            @Context UriInfo aUriInfo,
+            @Context Request aRequest) {
+
+        // the complete tag is given only to a log that holds all of
+        // its notifications, so a client holding it already has the
+        // final state and is answered without reading the log
+
+        EntityTag completeETag =
+            this.completeNotificationLogETag(
+                    new NotificationLogId(aNotificationId));
+
+        ResponseBuilder conditionalBuilder =
+                aRequest.evaluatePreconditions(completeETag);
+
+        if (conditionalBuilder != null) {
+            return conditionalBuilder
+                        .cacheControl(this.completeCacheControl())
+                        .tag(completeETag)
+                        .build();
+        }
+
+        String selfHref = this.linkFor("self", aNotificationId, aUriInfo).href();
+
+        byte[] completeLog = cachedNotificationLog(selfHref);
+
+        if (completeLog != null) {
+            return this.completeNotificationLogResponse(completeLog, completeETag);
+        }
 
         NotificationLog notificationLog =
             this.notificationApplicationService()
@@ -76,14 +137,101 @@ public class NotificationResource extends AbstractResource {
         Response response =
             this.notificationLogResponse(
                     notificationLog,
-                    aUriInfo);
+                    aUriInfo,
+                    aRequest);
+
+        return response;
+    }
+
+    @GET
+    @Path("bulk/{notificationId}")
+    @Produces({ OvationsMediaType.ID_OVATION_TYPE })
+    public Response getBulkNotificationLog(
+            @PathParam("notificationId") String aNotificationId,
+            @Context final UriInfo aUriInfo,
+            @Context Request aRequest) {
+
+        final NotificationLogId bulkNotificationLogId = new NotificationLogId(aNotificationId);
+
+        long totalNotifications = bulkNotificationLogId.high() - bulkNotificationLogId.low() + 1;
+
+        if (bulkNotificationLogId.low() < 1 ||
+            totalNotifications < 1 ||
+            totalNotifications > this.notificationApplicationService().bulkNotificationsPerLog()) {
+
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+
+        EntityTag completeETag =
+            new EntityTag(
+                    "bulk-" + this.completeNotificationLogETag(bulkNotificationLogId).getValue());
+
+        ResponseBuilder conditionalBuilder =
+                aRequest.evaluatePreconditions(completeETag);
+
+        if (conditionalBuilder != null) {
+            return conditionalBuilder
+                        .cacheControl(this.completeCacheControl())
+                        .tag(completeETag)
+                        .build();
+        }
+
+        final boolean archived =
+            this.notificationApplicationService()
+                .isArchivedNotificationLog(bulkNotificationLogId.encoded());
+
+        boolean complete =
+            archived && this.isCompleteBulkNotificationLog(bulkNotificationLogId);
+
+        // the notifications are written a log at a time as they
+        // are read, without a length, so the response is chunked
+
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream anOutputStream) throws IOException {
+                writeBulkNotificationLog(
+                        bulkNotificationLogId,
+                        archived,
+                        aUriInfo,
+                        anOutputStream);
+            }
+        };
+
+        Response response = null;
+
+        if (complete) {
+            response =
+                Response
+                    .ok(output)
+                    .cacheControl(this.completeCacheControl())
+                    .tag(completeETag)
+                    .build();
+        } else {
+            response =
+                Response
+                    .ok(output)
+                    .cacheControl(this.revalidatedCacheControl())
+                    .build();
+        }
 
         return response;
     }
 
     private Response currentNotificationLogResponse(
             NotificationLog aCurrentNotificationLog,
-            UriInfo aUriInfo) {
+            UriInfo aUriInfo,
+            Request aRequest) {
+
+        EntityTag eTag = this.notificationLogETag(aCurrentNotificationLog);
+
+        ResponseBuilder conditionalBuilder = aRequest.evaluatePreconditions(eTag);
+
+        if (conditionalBuilder != null) {
+            return conditionalBuilder
+                        .cacheControl(this.cacheControlFor(60))
+                        .tag(eTag)
+                        .build();
+        }
 
         NotificationLogRepresentation log =
             new NotificationLogRepresentation(aCurrentNotificationLog);
@@ -100,6 +248,7 @@ public class NotificationResource extends AbstractResource {
             Response
                 .ok(serializedLog)
                 .cacheControl(this.cacheControlFor(60))
+                .tag(eTag)
                 .build();
 
         return response;
@@ -107,7 +256,27 @@ public class NotificationResource extends AbstractResource {
 
     private Response notificationLogResponse(
             NotificationLog aNotificationLog,
-            UriInfo aUriInfo) {
+            UriInfo aUriInfo,
+            Request aRequest) {
+
+        EntityTag eTag = this.notificationLogETag(aNotificationLog);
+
+        // until it is complete a log may still gain a notification
+        // that committed late, so it is revalidated by its tag
+
+        CacheControl cacheControl =
+                aNotificationLog.isComplete() ?
+                        this.completeCacheControl() :
+                        this.revalidatedCacheControl();
+
+        ResponseBuilder conditionalBuilder = aRequest.evaluatePreconditions(eTag);
+
+        if (conditionalBuilder != null) {
+            return conditionalBuilder
+                        .cacheControl(cacheControl)
+                        .tag(eTag)
+                        .build();
+        }
 
         NotificationLogRepresentation log =
             new NotificationLogRepresentation(aNotificationLog);
@@ -120,20 +289,182 @@ public class NotificationResource extends AbstractResource {
 
         String serializedLog = ObjectSerializer.instance().serialize(log);
 
+        if (aNotificationLog.isComplete()) {
+            byte[] completeLog = this.bytesOf(serializedLog);
+
+            cacheNotificationLog(log.getLinkSelf().href(), completeLog);
+
+            return this.completeNotificationLogResponse(completeLog, eTag);
+        }
+
         Response response =
             Response
                 .ok(serializedLog)
-                .cacheControl(this.cacheControlFor(3600))
+                .cacheControl(cacheControl)
+                .tag(eTag)
+                .build();
+
+        return response;
+    }
+
+    private static byte[] cachedNotificationLog(String aSelfHref) {
+        synchronized (completeNotificationLogs) {
+            return completeNotificationLogs.get(aSelfHref);
+        }
+    }
+
+    private static void cacheNotificationLog(String aSelfHref, byte[] aCompleteLog) {
+        synchronized (completeNotificationLogs) {
+            byte[] replacedLog = completeNotificationLogs.put(aSelfHref, aCompleteLog);
+
+            if (replacedLog != null) {
+                completeNotificationLogBytes -= replacedLog.length;
+            }
+
+            completeNotificationLogBytes += aCompleteLog.length;
+
+            Iterator<byte[]> eldest = completeNotificationLogs.values().iterator();
+
+            while (eldest.hasNext()
+                    && (completeNotificationLogs.size() > MAX_CACHED_LOGS
+                        || completeNotificationLogBytes > MAX_CACHED_LOG_BYTES)) {
+
+                completeNotificationLogBytes -= eldest.next().length;
+
+                eldest.remove();
+            }
+        }
+    }
+
+    private Response completeNotificationLogResponse(
+            byte[] aCompleteLog,
+            EntityTag anETag) {
+
+        Response response =
+            Response
+                .ok(aCompleteLog)
+                .cacheControl(this.completeCacheControl())
+                .tag(anETag)
                 .build();
 
         return response;
     }
 
+    private CacheControl completeCacheControl() {
+        CacheControl cacheControl = this.cacheControlFor(COMPLETE_MAX_AGE);
+        cacheControl.getCacheExtension().put("immutable", null);
+        return cacheControl;
+    }
+
+    private CacheControl revalidatedCacheControl() {
+        CacheControl cacheControl = this.cacheControlFor(0);
+        cacheControl.setMustRevalidate(true);
+        return cacheControl;
+    }
+
+    private EntityTag completeNotificationLogETag(
+            NotificationLogId aNotificationLogId) {
+
+        return new EntityTag(
+                aNotificationLogId.low()
+                + "-" + aNotificationLogId.high()
+                + "-complete");
+    }
+
+    private EntityTag notificationLogETag(NotificationLog aNotificationLog) {
+        NotificationLogId notificationLogId =
+                aNotificationLog.decodedNotificationLogId();
+
+        if (aNotificationLog.isComplete()) {
+            return this.completeNotificationLogETag(notificationLogId);
+        }
+
+        long highWaterId = notificationLogId.low() - 1;
+
+        if (aNotificationLog.totalNotifications() > 0) {
+            highWaterId =
+                aNotificationLog
+                    .notifications()
+                    .get(aNotificationLog.totalNotifications() - 1)
+                    .notificationId();
+        }
+
+        // a notification that commits late may fill a gap below the
+        // high-water id, so the count is part of the tag; so is being
+        // archived, which adds the next link; no commas, which separate
+        // the tags of If-None-Match
+
+        String tag =
+                notificationLogId.low()
+                + "-" + notificationLogId.high()
+                + "-" + highWaterId
+                + "-" + aNotificationLog.totalNotifications()
+                + (aNotificationLog.isArchived() ? "-archived" : "");
+
+        return new EntityTag(tag);
+    }
+
+    private boolean isCompleteBulkNotificationLog(
+            NotificationLogId aBulkNotificationLogId) {
+
+        // as with a single log, complete when it holds one notification
+        // for each id of its range; the complete logs read here are then
+        // cached for writing the response
+
+        long expectedNotifications =
+            aBulkNotificationLogId.high() - aBulkNotificationLogId.low() + 1;
+
+        int notificationsPerLog = this.notificationApplicationService().notificationsPerLog();
+
+        long low = ((aBulkNotificationLogId.low() - 1) / notificationsPerLog) * notificationsPerLog + 1;
+
+        long totalNotifications = 0;
+
+        while (low <= aBulkNotificationLogId.high()) {
+            NotificationLog notificationLog =
+                this.notificationApplicationService()
+                    .notificationLog(new NotificationLogId(low, low + notificationsPerLog - 1).encoded());
+
+            for (Notification notification : notificationLog.notifications()) {
+                if (notification.notificationId() >= aBulkNotificationLogId.low() &&
+                    notification.notificationId() <= aBulkNotificationLogId.high()) {
+
+                    ++totalNotifications;
+                }
+            }
+
+            if (!notificationLog.isArchived()) {
+                break;
+            }
+
+            low += notificationsPerLog;
+        }
+
+        return totalNotifications == expectedNotifications;
+    }
+
+    private byte[] bytesOf(String aSerializedLog) {
+        try {
+            return aSerializedLog.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported.", e);
+        }
+    }
+
     private Link linkFor(
             String aRelationship,
             String anId,
             UriInfo aUriInfo) {
 
+        return this.linkFor(aRelationship, "notifications", anId, aUriInfo);
+    }
+
+    private Link linkFor(
+            String aRelationship,
+            String aPath,
+            String anId,
+            UriInfo aUriInfo) {
+
         Link link = null;
 
         if (anId != null) {
@@ -142,7 +473,7 @@ public class NotificationResource extends AbstractResource {
 
             String linkUrl =
                 builder
-                    .path("notifications")
+                    .path(aPath)
                     .path(anId)
                     .build()
                     .toString();
@@ -187,4 +518,85 @@ public class NotificationResource extends AbstractResource {
                     aNotificationLog.notificationLogId(),
                     aUriInfo);
     }
+
+    private void writeBulkNotificationLog(
+            NotificationLogId aBulkNotificationLogId,
+            boolean isArchived,
+            UriInfo aUriInfo,
+            OutputStream anOutputStream)
+    throws IOException {
+
+        ObjectSerializer serializer = ObjectSerializer.instance();
+
+        int totalNotifications =
+            (int) (aBulkNotificationLogId.high() - aBulkNotificationLogId.low() + 1);
+
+        NotificationLogId next =
+            isArchived ? aBulkNotificationLogId.next(totalNotifications) : null;
+
+        NotificationLogId previous =
+            aBulkNotificationLogId.previous(totalNotifications);
+
+        Writer writer =
+            new BufferedWriter(new OutputStreamWriter(anOutputStream, "UTF-8"));
+
+        // the notifications are last so that a streaming
+        // reader has the links before it iterates them
+
+        writer.write("{\"archived\":");
+        writer.write(serializer.serialize(isArchived));
+        writer.write(",\"id\":");
+        writer.write(serializer.serialize(aBulkNotificationLogId.encoded()));
+        writer.write(",\"linkNext\":");
+        writer.write(serializer.serialize(
+                this.linkFor("next", "notifications/bulk", NotificationLogId.encoded(next), aUriInfo)));
+        writer.write(",\"linkPrevious\":");
+        writer.write(serializer.serialize(
+                this.linkFor("previous", "notifications/bulk", NotificationLogId.encoded(previous), aUriInfo)));
+        writer.write(",\"linkSelf\":");
+        writer.write(serializer.serialize(
+                this.linkFor("self", "notifications/bulk", aBulkNotificationLogId.encoded(), aUriInfo)));
+        writer.write(",\"notifications\":[");
+
+        // read through the logs that the bulk log spans, which
+        // are aligned as they are cached, so complete ones are
+        // served without reading the event store
+
+        int notificationsPerLog = this.notificationApplicationService().notificationsPerLog();
+
+        long low = ((aBulkNotificationLogId.low() - 1) / notificationsPerLog) * notificationsPerLog + 1;
+
+        boolean first = true;
+
+        while (low <= aBulkNotificationLogId.high()) {
+            NotificationLog notificationLog =
+                this.notificationApplicationService()
+                    .notificationLog(new NotificationLogId(low, low + notificationsPerLog - 1).encoded());
+
+            for (Notification notification : notificationLog.notifications()) {
+                if (notification.notificationId() >= aBulkNotificationLogId.low() &&
+                    notification.notificationId() <= aBulkNotificationLogId.high()) {
+
+                    if (!first) {
+                        writer.write(',');
+                    }
+
+                    writer.write(serializer.serialize(notification));
+
+                    first = false;
+                }
+            }
+
+            writer.flush();
+
+            if (!notificationLog.isArchived()) {
+                break;
+            }
+
+            low += notificationsPerLog;
+        }
+
+        writer.write("]}");
+        writer.flush();
+    }
 }
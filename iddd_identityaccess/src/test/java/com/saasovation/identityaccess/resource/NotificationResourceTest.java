@@ -14,6 +14,8 @@
 
 package com.saasovation.identityaccess.resource;
 
+import java.io.StringReader;
+
 import org.jboss.resteasy.client.ClientRequest;
 import org.jboss.resteasy.client.ClientResponse;
 
@@ -21,6 +23,7 @@ import com.saasovation.common.domain.model.DomainEventPublisher;
 import com.saasovation.common.media.Link;
 import com.saasovation.common.notification.NotificationLog;
 import com.saasovation.common.notification.NotificationLogReader;
+import com.saasovation.common.notification.NotificationLogStreamReader;
 import com.saasovation.common.notification.NotificationReader;
 import com.saasovation.identityaccess.application.ApplicationServiceRegistry;
 import com.saasovation.identityaccess.application.command.ChangeEmailAddressCommand;
@@ -208,6 +211,76 @@ public class NotificationResourceTest extends ResourceTestCase {
         assertTrue(count >= 1);
     }
 
+    public void testNotModifiedNotificationLog() throws Exception {
+        this.generateUserEvents();
+
+        String url = "http://localhost:" + PORT + "/notifications";
+
+        ClientRequest request = new ClientRequest(url);
+        ClientResponse<String> response = request.get(String.class);
+        String eTag = response.getHeaders().getFirst("ETag");
+
+        assertEquals(200, response.getStatus());
+        assertNotNull(eTag);
+        assertFalse(response.getHeaders().getFirst("Cache-Control").contains("immutable"));
+
+        NotificationLogReader log = new NotificationLogReader(response.getEntity());
+
+        request = new ClientRequest(url);
+        request.header("If-None-Match", eTag);
+        response = request.get(String.class);
+
+        assertEquals(304, response.getStatus());
+
+        request = new ClientRequest(log.previous().getHref());
+        response = request.get(String.class);
+        String archivedETag = response.getHeaders().getFirst("ETag");
+
+        assertEquals(200, response.getStatus());
+        assertNotNull(archivedETag);
+        assertFalse(eTag.equals(archivedETag));
+        assertTrue(response.getHeaders().getFirst("Cache-Control").contains("immutable"));
+
+        request = new ClientRequest(log.previous().getHref());
+        request.header("If-None-Match", archivedETag);
+        response = request.get(String.class);
+
+        assertEquals(304, response.getStatus());
+    }
+
+    public void testBulkNotificationLog() throws Exception {
+        this.generateUserEvents();
+
+        String url = "http://localhost:" + PORT + "/notifications/bulk/1,1000";
+
+        ClientRequest request = new ClientRequest(url);
+        ClientResponse<String> response = request.get(String.class);
+
+        assertEquals(200, response.getStatus());
+
+        NotificationLogStreamReader log =
+                new NotificationLogStreamReader(new StringReader(response.getEntity()));
+
+        assertFalse(log.isArchived());
+        assertEquals("1,1000", log.id());
+        assertFalse(log.hasNext());
+        assertFalse(log.hasPrevious());
+        assertTrue(log.hasSelf());
+
+        long expectedId = 1;
+
+        for (NotificationReader notification : log) {
+            assertEquals(expectedId++, notification.notificationId());
+        }
+
+        assertTrue(expectedId > 21);
+
+        request = new ClientRequest("http://localhost:" + PORT + "/notifications/bulk/1,1000000");
+        response = request.get(String.class);
+
+        assertEquals(400, response.getStatus());
+    }
+
     private void generateUserEvents() {
         Tenant tenant = this.tenantAggregate();
         Person person = this.userAggregate().person();